@@ -0,0 +1,19 @@
+package com.moro.movie_recommender.config;
+
+import com.moro.movie_recommender.dto.MovieCatalog;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Provides the {@link MovieCatalog} shared by the user stores, the Trakt sync and the
+ * recommenders. Every {@link com.moro.movie_recommender.dto.TraktMovieList} holds indices into
+ * this one catalog, so the application has exactly one of them.
+ */
+@Configuration
+public class MovieCatalogConfig {
+
+    @Bean
+    public MovieCatalog movieCatalog() {
+        return new MovieCatalog();
+    }
+}
@@ -0,0 +1,72 @@
+package com.moro.movie_recommender.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.connection.init.ConnectionFactoryInitializer;
+import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.util.StringUtils;
+
+/**
+ * Database access for the R2DBC user repository, active with {@code storage.backend=r2dbc}.
+ *
+ * <p>Connections come from a pool built from {@code storage.r2dbc.*} rather than Spring Boot's
+ * {@code spring.r2dbc.*} auto-configuration, which is excluded so the default local backend
+ * needs no database at all. With {@code initialize-schema} the tables in
+ * {@code db/user-schema.sql} are created on startup if missing.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "storage", name = "backend", havingValue = "r2dbc")
+public class R2dbcStorageConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionPool userConnectionFactory(StorageProperties props) {
+        StorageProperties.R2dbc config = props.getR2dbc();
+        ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions.parse(config.getUrl()).mutate();
+        if (StringUtils.hasText(config.getUsername())) {
+            options.option(ConnectionFactoryOptions.USER, config.getUsername());
+        }
+        if (StringUtils.hasText(config.getPassword())) {
+            options.option(ConnectionFactoryOptions.PASSWORD, config.getPassword());
+        }
+        ConnectionFactory connectionFactory = ConnectionFactories.get(options.build());
+        return new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+                .name("users")
+                .maxSize(config.getPoolMaxSize())
+                .build());
+    }
+
+    @Bean
+    public DatabaseClient userDatabaseClient(ConnectionFactory userConnectionFactory) {
+        return DatabaseClient.create(userConnectionFactory);
+    }
+
+    @Bean
+    public ReactiveTransactionManager userTransactionManager(ConnectionFactory userConnectionFactory) {
+        return new R2dbcTransactionManager(userConnectionFactory);
+    }
+
+    @Bean
+    public TransactionalOperator userTransactionalOperator(ReactiveTransactionManager userTransactionManager) {
+        return TransactionalOperator.create(userTransactionManager);
+    }
+
+    @Bean
+    public ConnectionFactoryInitializer userSchemaInitializer(ConnectionFactory userConnectionFactory, StorageProperties props) {
+        ConnectionFactoryInitializer initializer = new ConnectionFactoryInitializer();
+        initializer.setConnectionFactory(userConnectionFactory);
+        initializer.setDatabasePopulator(new ResourceDatabasePopulator(new ClassPathResource("db/user-schema.sql")));
+        initializer.setEnabled(props.getR2dbc().isInitializeSchema());
+        return initializer;
+    }
+}
@@ -0,0 +1,167 @@
+package com.moro.movie_recommender.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Binds recommendation engine properties from {@code application.properties}
+ * using the {@code recommendations.*} prefix.
+ *
+ * <p>Expected keys include:
+ * <ul>
+ *   <li>{@code recommendations.rebuild-interval} - how often models are rebuilt from all users' libraries</li>
+ *   <li>{@code recommendations.default-limit} - recommendations returned when the request names no limit</li>
+ *   <li>{@code recommendations.max-items-per-user} - movies of one library used for training, beyond which the rest are ignored</li>
+ *   <li>{@code recommendations.item-cf.*} (see {@link ItemCf})</li>
+ *   <li>{@code recommendations.als.*} (see {@link Als})</li>
+ *   <li>{@code recommendations.hnsw.*} (see {@link Hnsw})</li>
+ *   <li>{@code recommendations.similar-users.*} (see {@link SimilarUsers})</li>
+ * </ul>
+ */
+@Component
+@ConfigurationProperties(prefix = "recommendations")
+public class RecommendationProperties {
+    private Duration rebuildInterval = Duration.ofHours(1);
+    private int defaultLimit = 20;
+    private int maxItemsPerUser = 1000;
+    private final ItemCf itemCf = new ItemCf();
+    private final Als als = new Als();
+    private final Hnsw hnsw = new Hnsw();
+    private final SimilarUsers similarUsers = new SimilarUsers();
+
+    public Duration getRebuildInterval() { return rebuildInterval; }
+    public void setRebuildInterval(Duration rebuildInterval) { this.rebuildInterval = rebuildInterval; }
+
+    public int getDefaultLimit() { return defaultLimit; }
+    public void setDefaultLimit(int defaultLimit) { this.defaultLimit = defaultLimit; }
+
+    public int getMaxItemsPerUser() { return maxItemsPerUser; }
+    public void setMaxItemsPerUser(int maxItemsPerUser) { this.maxItemsPerUser = maxItemsPerUser; }
+
+    public ItemCf getItemCf() { return itemCf; }
+
+    public Als getAls() { return als; }
+
+    public Hnsw getHnsw() { return hnsw; }
+
+    public SimilarUsers getSimilarUsers() { return similarUsers; }
+
+    /**
+     * Item-item collaborative filtering ({@code recommendations.item-cf.*}). Each movie keeps its
+     * {@code neighbors} most similar movies. Similarity blends the adjusted cosine of the
+     * ratings, shrunk towards 0 by {@code shrinkage} for movies with few raters in common, with
+     * the cosine of plain co-occurrence, weighted by {@code implicit-weight}; pairs watched
+     * together by fewer than {@code min-cooccurrence} users are ignored. Very popular movies
+     * are compared over a sample of {@code max-users-per-item} of their viewers.
+     */
+    public static class ItemCf {
+        private int neighbors = 50;
+        private double shrinkage = 10;
+        private double implicitWeight = 0.3;
+        private int minCooccurrence = 2;
+        private int maxUsersPerItem = 2000;
+
+        public int getNeighbors() { return neighbors; }
+        public void setNeighbors(int neighbors) { this.neighbors = neighbors; }
+
+        public double getShrinkage() { return shrinkage; }
+        public void setShrinkage(double shrinkage) { this.shrinkage = shrinkage; }
+
+        public double getImplicitWeight() { return implicitWeight; }
+        public void setImplicitWeight(double implicitWeight) { this.implicitWeight = implicitWeight; }
+
+        public int getMinCooccurrence() { return minCooccurrence; }
+        public void setMinCooccurrence(int minCooccurrence) { this.minCooccurrence = minCooccurrence; }
+
+        public int getMaxUsersPerItem() { return maxUsersPerItem; }
+        public void setMaxUsersPerItem(int maxUsersPerItem) { this.maxUsersPerItem = maxUsersPerItem; }
+    }
+
+    /**
+     * Alternating least squares matrix factorization ({@code recommendations.als.*}): each
+     * user and movie gets a vector of {@code factors} floats, fitted over {@code iterations}
+     * rounds with L2 {@code regularization}. With {@code implicit}, every watched movie counts
+     * with a confidence of {@code 1 + alpha * strength}; otherwise only ratings are fitted.
+     * {@code seed} makes training reproducible.
+     */
+    public static class Als {
+        private int factors = 32;
+        private int iterations = 10;
+        private double regularization = 0.1;
+        private double alpha = 10;
+        private boolean implicit = true;
+        private long seed = 42;
+
+        public int getFactors() { return factors; }
+        public void setFactors(int factors) { this.factors = factors; }
+
+        public int getIterations() { return iterations; }
+        public void setIterations(int iterations) { this.iterations = iterations; }
+
+        public double getRegularization() { return regularization; }
+        public void setRegularization(double regularization) { this.regularization = regularization; }
+
+        public double getAlpha() { return alpha; }
+        public void setAlpha(double alpha) { this.alpha = alpha; }
+
+        public boolean isImplicit() { return implicit; }
+        public void setImplicit(boolean implicit) { this.implicit = implicit; }
+
+        public long getSeed() { return seed; }
+        public void setSeed(long seed) { this.seed = seed; }
+    }
+
+    /**
+     * Approximate nearest neighbour index over movie embeddings ({@code recommendations.hnsw.*}).
+     * When {@code enabled}, embedding recommenders search an HNSW graph instead of scoring every
+     * movie. Each movie links to up to {@code m} others per layer ({@code 2m} on the bottom
+     * layer); {@code ef-construction} and {@code ef-search} are the candidate lists kept while
+     * inserting and searching, trading build time and latency for recall.
+     */
+    public static class Hnsw {
+        private boolean enabled = true;
+        private int m = 16;
+        private int efConstruction = 200;
+        private int efSearch = 100;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public int getM() { return m; }
+        public void setM(int m) { this.m = m; }
+
+        public int getEfConstruction() { return efConstruction; }
+        public void setEfConstruction(int efConstruction) { this.efConstruction = efConstruction; }
+
+        public int getEfSearch() { return efSearch; }
+        public void setEfSearch(int efSearch) { this.efSearch = efSearch; }
+    }
+
+    /**
+     * Similar-user lookups ({@code recommendations.similar-users.*}) by MinHash LSH. Each user's
+     * signature has {@code hashes} slots, the more the closer the similarity estimate; the first
+     * {@code bands * rows} are split into {@code bands} bands of {@code rows}, and users sharing
+     * any band are compared. More bands or fewer rows find less similar users, at the cost of
+     * memory and larger buckets; a lookup compares at most {@code max-candidates} users.
+     */
+    public static class SimilarUsers {
+        private int hashes = 128;
+        private int bands = 32;
+        private int rows = 2;
+        private int maxCandidates = 1000;
+
+        public int getHashes() { return hashes; }
+        public void setHashes(int hashes) { this.hashes = hashes; }
+
+        public int getBands() { return bands; }
+        public void setBands(int bands) { this.bands = bands; }
+
+        public int getRows() { return rows; }
+        public void setRows(int rows) { this.rows = rows; }
+
+        public int getMaxCandidates() { return maxCandidates; }
+        public void setMaxCandidates(int maxCandidates) { this.maxCandidates = maxCandidates; }
+    }
+}
@@ -0,0 +1,185 @@
+package com.moro.movie_recommender.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Binds user-store persistence properties from {@code application.properties}
+ * using the {@code storage.*} prefix.
+ *
+ * <p>Expected keys include:
+ * <ul>
+ *   <li>{@code storage.backend} - {@code local} (log and snapshots on local disk), {@code r2dbc}
+ *       or {@code off-heap}</li>
+ *   <li>{@code storage.enabled} - persist users to disk (otherwise purely in memory)</li>
+ *   <li>{@code storage.directory} - directory holding the log segments and snapshots</li>
+ *   <li>{@code storage.replay-parallelism} - threads used for recovery (0 = available processors)</li>
+ *   <li>{@code storage.wal.*} (see {@link Wal})</li>
+ *   <li>{@code storage.snapshot.*} (see {@link Snapshot})</li>
+ *   <li>{@code storage.tiering.*} (see {@link Tiering})</li>
+ *   <li>{@code storage.r2dbc.*} (see {@link R2dbc})</li>
+ *   <li>{@code storage.off-heap.*} (see {@link OffHeap})</li>
+ * </ul>
+ */
+@Component
+@ConfigurationProperties(prefix = "storage")
+public class StorageProperties {
+    private String backend = "local";
+    private boolean enabled = true;
+    private String directory = "data";
+    private int replayParallelism = 0;
+    private final Wal wal = new Wal();
+    private final Snapshot snapshot = new Snapshot();
+    private final Tiering tiering = new Tiering();
+    private final R2dbc r2dbc = new R2dbc();
+    private final OffHeap offHeap = new OffHeap();
+
+    public String getBackend() { return backend; }
+    public void setBackend(String backend) { this.backend = backend; }
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    public String getDirectory() { return directory; }
+    public void setDirectory(String directory) { this.directory = directory; }
+
+    public int getReplayParallelism() { return replayParallelism; }
+    public void setReplayParallelism(int replayParallelism) { this.replayParallelism = replayParallelism; }
+
+    public Wal getWal() { return wal; }
+
+    public Snapshot getSnapshot() { return snapshot; }
+
+    public Tiering getTiering() { return tiering; }
+
+    public R2dbc getR2dbc() { return r2dbc; }
+
+    public OffHeap getOffHeap() { return offHeap; }
+
+    /**
+     * Write-ahead log ({@code storage.wal.*}). Mutations queued while a batch is being
+     * written are committed together with a single {@code fsync}.
+     */
+    public static class Wal {
+        private boolean fsync = true;
+        private int maxBatch = 4096;
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        public boolean isFsync() { return fsync; }
+        public void setFsync(boolean fsync) { this.fsync = fsync; }
+
+        public int getMaxBatch() { return maxBatch; }
+        public void setMaxBatch(int maxBatch) { this.maxBatch = maxBatch; }
+
+        public DataSize getSegmentSize() { return segmentSize; }
+        public void setSegmentSize(DataSize segmentSize) { this.segmentSize = segmentSize; }
+    }
+
+    /**
+     * Compacted snapshots ({@code storage.snapshot.*}). A snapshot is written when the log
+     * has grown by {@code max-wal-size} bytes, or {@code interval} after the previous one if
+     * anything was logged since; log segments it covers are then deleted. On startup the
+     * snapshot is memory-mapped and users are decoded on first access; with {@code warm-up}
+     * a background thread decodes the rest.
+     */
+    public static class Snapshot {
+        private Duration interval = Duration.ofMinutes(10);
+        private DataSize maxWalSize = DataSize.ofMegabytes(256);
+        private Duration checkInterval = Duration.ofSeconds(10);
+        private boolean warmUp = true;
+
+        public Duration getInterval() { return interval; }
+        public void setInterval(Duration interval) { this.interval = interval; }
+
+        public DataSize getMaxWalSize() { return maxWalSize; }
+        public void setMaxWalSize(DataSize maxWalSize) { this.maxWalSize = maxWalSize; }
+
+        public Duration getCheckInterval() { return checkInterval; }
+        public void setCheckInterval(Duration checkInterval) { this.checkInterval = checkInterval; }
+
+        public boolean isWarmUp() { return warmUp; }
+        public void setWarmUp(boolean warmUp) { this.warmUp = warmUp; }
+    }
+
+    /**
+     * Hot/cold tiering of the local store ({@code storage.tiering.*}), which needs
+     * {@code storage.enabled}. Decoded users are kept in memory up to roughly
+     * {@code max-hot-size}; beyond that, users chosen by W-TinyLFU are spilled to memory-mapped
+     * segment files of {@code segment-size} bytes in the storage directory and decoded again
+     * on their next access.
+     */
+    public static class Tiering {
+        private boolean enabled = false;
+        private DataSize maxHotSize = DataSize.ofMegabytes(256);
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public DataSize getMaxHotSize() { return maxHotSize; }
+        public void setMaxHotSize(DataSize maxHotSize) { this.maxHotSize = maxHotSize; }
+
+        public DataSize getSegmentSize() { return segmentSize; }
+        public void setSegmentSize(DataSize segmentSize) { this.segmentSize = segmentSize; }
+    }
+
+    /**
+     * Relational user repository ({@code storage.r2dbc.*}), used with
+     * {@code storage.backend=r2dbc}. Sync results are written as multi-row upserts of at most
+     * {@code batch-size} rows per statement.
+     */
+    public static class R2dbc {
+        private String url = "r2dbc:postgresql://localhost:5432/movie_recommender";
+        private String username;
+        private String password;
+        private int poolMaxSize = 20;
+        private int batchSize = 500;
+        private boolean initializeSchema = true;
+
+        public String getUrl() { return url; }
+        public void setUrl(String url) { this.url = url; }
+
+        public String getUsername() { return username; }
+        public void setUsername(String username) { this.username = username; }
+
+        public String getPassword() { return password; }
+        public void setPassword(String password) { this.password = password; }
+
+        public int getPoolMaxSize() { return poolMaxSize; }
+        public void setPoolMaxSize(int poolMaxSize) { this.poolMaxSize = poolMaxSize; }
+
+        public int getBatchSize() { return batchSize; }
+        public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+        public boolean isInitializeSchema() { return initializeSchema; }
+        public void setInitializeSchema(boolean initializeSchema) { this.initializeSchema = initializeSchema; }
+    }
+
+    /**
+     * Off-heap user repository ({@code storage.off-heap.*}), used with
+     * {@code storage.backend=off-heap}. Users live in native memory slabs of {@code slab-size}
+     * bytes, at most {@code max-size} in total. Every {@code compaction-interval}, size classes
+     * whose slabs are less than {@code min-occupancy} full on average are compacted.
+     */
+    public static class OffHeap {
+        private DataSize slabSize = DataSize.ofMegabytes(4);
+        private DataSize maxSize = DataSize.ofGigabytes(4);
+        private double minOccupancy = 0.5;
+        private Duration compactionInterval = Duration.ofMinutes(1);
+
+        public DataSize getSlabSize() { return slabSize; }
+        public void setSlabSize(DataSize slabSize) { this.slabSize = slabSize; }
+
+        public DataSize getMaxSize() { return maxSize; }
+        public void setMaxSize(DataSize maxSize) { this.maxSize = maxSize; }
+
+        public double getMinOccupancy() { return minOccupancy; }
+        public void setMinOccupancy(double minOccupancy) { this.minOccupancy = minOccupancy; }
+
+        public Duration getCompactionInterval() { return compactionInterval; }
+        public void setCompactionInterval(Duration compactionInterval) { this.compactionInterval = compactionInterval; }
+    }
+}
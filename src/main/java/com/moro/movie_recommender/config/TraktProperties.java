@@ -3,6 +3,8 @@ package com.moro.movie_recommender.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+
 /**
  * Binds Trakt-related configuration properties from {@code application.properties}
  * using the {@code trakt.*} prefix.
@@ -15,6 +17,12 @@ import org.springframework.stereotype.Component;
  *   <li>{@code trakt.api-base}</li>
  *   <li>{@code trakt.web-base}</li>
  *   <li>{@code trakt.api-version}</li>
+ *   <li>{@code trakt.pagination.*} (see {@link Pagination})</li>
+ *   <li>{@code trakt.pool.*} (see {@link Pool})</li>
+ *   <li>{@code trakt.cache.*} (see {@link Cache})</li>
+ *   <li>{@code trakt.sync.*} (see {@link Sync})</li>
+ *   <li>{@code trakt.rate-limit.*} (see {@link RateLimit})</li>
+ *   <li>{@code trakt.scheduler.*} (see {@link Scheduler})</li>
  * </ul>
  */
 @Component
@@ -26,6 +34,12 @@ public class TraktProperties {
     private String apiBase;
     private String webBase;
     private String apiVersion;
+    private final Pagination pagination = new Pagination();
+    private final Pool pool = new Pool();
+    private final Cache cache = new Cache();
+    private final Sync sync = new Sync();
+    private final RateLimit rateLimit = new RateLimit();
+    private final Scheduler scheduler = new Scheduler();
 
     public String getClientId() { return clientId; }
     public void setClientId(String clientId) { this.clientId = clientId; }
@@ -44,4 +58,200 @@ public class TraktProperties {
 
     public String getApiVersion() { return apiVersion; }
     public void setApiVersion(String apiVersion) { this.apiVersion = apiVersion; }
+
+    public Pagination getPagination() { return pagination; }
+
+    public Pool getPool() { return pool; }
+
+    public Cache getCache() { return cache; }
+
+    public Sync getSync() { return sync; }
+
+    public RateLimit getRateLimit() { return rateLimit; }
+
+    public Scheduler getScheduler() { return scheduler; }
+
+    /**
+     * Paginated ingestion of large Trakt lists ({@code trakt.pagination.*}).
+     * When enabled, list endpoints are requested page by page following Trakt's
+     * {@code X-Pagination-*} headers instead of as a single response body.
+     */
+    public static class Pagination {
+        private boolean enabled = false;
+        private int pageSize = 1000;
+        private int prefetch = 2;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public int getPageSize() { return pageSize; }
+        public void setPageSize(int pageSize) { this.pageSize = pageSize; }
+
+        public int getPrefetch() { return prefetch; }
+        public void setPrefetch(int prefetch) { this.prefetch = prefetch; }
+    }
+
+    /**
+     * Connection pool and transport settings for the Trakt HTTP client ({@code trakt.pool.*}).
+     */
+    public static class Pool {
+        private int maxConnections = 200;
+        private int pendingAcquireMaxCount = 1000;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(30);
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(10);
+        private Duration evictionInterval = Duration.ofSeconds(15);
+        private boolean http2 = true;
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        private Duration responseTimeout = Duration.ofSeconds(30);
+
+        public int getMaxConnections() { return maxConnections; }
+        public void setMaxConnections(int maxConnections) { this.maxConnections = maxConnections; }
+
+        public int getPendingAcquireMaxCount() { return pendingAcquireMaxCount; }
+        public void setPendingAcquireMaxCount(int pendingAcquireMaxCount) { this.pendingAcquireMaxCount = pendingAcquireMaxCount; }
+
+        public Duration getPendingAcquireTimeout() { return pendingAcquireTimeout; }
+        public void setPendingAcquireTimeout(Duration pendingAcquireTimeout) { this.pendingAcquireTimeout = pendingAcquireTimeout; }
+
+        public Duration getMaxIdleTime() { return maxIdleTime; }
+        public void setMaxIdleTime(Duration maxIdleTime) { this.maxIdleTime = maxIdleTime; }
+
+        public Duration getMaxLifeTime() { return maxLifeTime; }
+        public void setMaxLifeTime(Duration maxLifeTime) { this.maxLifeTime = maxLifeTime; }
+
+        public Duration getEvictionInterval() { return evictionInterval; }
+        public void setEvictionInterval(Duration evictionInterval) { this.evictionInterval = evictionInterval; }
+
+        public boolean isHttp2() { return http2; }
+        public void setHttp2(boolean http2) { this.http2 = http2; }
+
+        public Duration getConnectTimeout() { return connectTimeout; }
+        public void setConnectTimeout(Duration connectTimeout) { this.connectTimeout = connectTimeout; }
+
+        public Duration getResponseTimeout() { return responseTimeout; }
+        public void setResponseTimeout(Duration responseTimeout) { this.responseTimeout = responseTimeout; }
+    }
+
+    /**
+     * Conditional-request (ETag / Last-Modified) response cache ({@code trakt.cache.*}).
+     * Bounded by number of cached responses and by total number of cached items. Items are
+     * not bytes: a watched movie takes about 400 bytes of heap, a rating about 130.
+     */
+    public static class Cache {
+        private boolean enabled = true;
+        private int maxEntries = 10_000;
+        private long maxItems = 2_000_000;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public int getMaxEntries() { return maxEntries; }
+        public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+
+        public long getMaxItems() { return maxItems; }
+        public void setMaxItems(long maxItems) { this.maxItems = maxItems; }
+    }
+
+    /**
+     * Movie sync behaviour ({@code trakt.sync.*}).
+     * In incremental mode a sync first checks {@code /sync/last_activities} and only
+     * fetches what changed since the checkpoint stored on the user's Trakt account.
+     * Concurrent syncs of the same user and access token are coalesced into one.
+     */
+    public static class Sync {
+        private boolean incremental = true;
+        private Duration freshness = Duration.ZERO;
+
+        public boolean isIncremental() { return incremental; }
+        public void setIncremental(boolean incremental) { this.incremental = incremental; }
+
+        /** How long a completed sync's result is returned to new callers without calling Trakt (0 disables). */
+        public Duration getFreshness() { return freshness; }
+        public void setFreshness(Duration freshness) { this.freshness = freshness; }
+    }
+
+    /**
+     * App-wide Trakt rate limiting and retry policy ({@code trakt.rate-limit.*}).
+     * GET requests and writes (POST/PUT/DELETE) draw from separate token buckets,
+     * mirroring Trakt's separate limits for each.
+     */
+    public static class RateLimit {
+        private boolean enabled = true;
+        private int getLimit = 1000;
+        private Duration getPeriod = Duration.ofMinutes(5);
+        private int writeLimit = 1;
+        private Duration writePeriod = Duration.ofSeconds(1);
+        private Duration maxQueueWait = Duration.ofSeconds(30);
+        private int maxRetries = 3;
+        private Duration backoffBase = Duration.ofMillis(500);
+        private Duration backoffMax = Duration.ofSeconds(30);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public int getGetLimit() { return getLimit; }
+        public void setGetLimit(int getLimit) { this.getLimit = getLimit; }
+
+        public Duration getGetPeriod() { return getPeriod; }
+        public void setGetPeriod(Duration getPeriod) { this.getPeriod = getPeriod; }
+
+        public int getWriteLimit() { return writeLimit; }
+        public void setWriteLimit(int writeLimit) { this.writeLimit = writeLimit; }
+
+        public Duration getWritePeriod() { return writePeriod; }
+        public void setWritePeriod(Duration writePeriod) { this.writePeriod = writePeriod; }
+
+        public Duration getMaxQueueWait() { return maxQueueWait; }
+        public void setMaxQueueWait(Duration maxQueueWait) { this.maxQueueWait = maxQueueWait; }
+
+        public int getMaxRetries() { return maxRetries; }
+        public void setMaxRetries(int maxRetries) { this.maxRetries = maxRetries; }
+
+        public Duration getBackoffBase() { return backoffBase; }
+        public void setBackoffBase(Duration backoffBase) { this.backoffBase = backoffBase; }
+
+        public Duration getBackoffMax() { return backoffMax; }
+        public void setBackoffMax(Duration backoffMax) { this.backoffMax = backoffMax; }
+    }
+
+    /**
+     * Background fleet sync of all Trakt-linked users ({@code trakt.scheduler.*}).
+     * Each user is re-synced between {@code min-interval} (very active users) and
+     * {@code max-interval} (idle users) after their last sync.
+     */
+    public static class Scheduler {
+        private boolean enabled = false;
+        private Duration tick = Duration.ofSeconds(10);
+        private int perTickBudget = 25;
+        private int concurrency = 8;
+        private Duration minInterval = Duration.ofMinutes(15);
+        private Duration maxInterval = Duration.ofHours(24);
+        private Duration activityHalfLife = Duration.ofDays(1);
+        private Duration rescanInterval = Duration.ofMinutes(1);
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public Duration getTick() { return tick; }
+        public void setTick(Duration tick) { this.tick = tick; }
+
+        public int getPerTickBudget() { return perTickBudget; }
+        public void setPerTickBudget(int perTickBudget) { this.perTickBudget = perTickBudget; }
+
+        public int getConcurrency() { return concurrency; }
+        public void setConcurrency(int concurrency) { this.concurrency = concurrency; }
+
+        public Duration getMinInterval() { return minInterval; }
+        public void setMinInterval(Duration minInterval) { this.minInterval = minInterval; }
+
+        public Duration getMaxInterval() { return maxInterval; }
+        public void setMaxInterval(Duration maxInterval) { this.maxInterval = maxInterval; }
+
+        public Duration getActivityHalfLife() { return activityHalfLife; }
+        public void setActivityHalfLife(Duration activityHalfLife) { this.activityHalfLife = activityHalfLife; }
+
+        public Duration getRescanInterval() { return rescanInterval; }
+        public void setRescanInterval(Duration rescanInterval) { this.rescanInterval = rescanInterval; }
+    }
 }
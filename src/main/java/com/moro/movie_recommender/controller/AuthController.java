@@ -105,13 +105,14 @@ public class AuthController {
                                         .onErrorReturn(java.util.Map.of())
                                         .map(profile -> {
                                             String username = extractTraktUsername(profile);
-                                            if (user.getTraktAccount() != null) {
-                                                user.getTraktAccount().setTraktUsername(username);
-                                            }
-                                            return user;
+                                            return user.getTraktAccount() != null
+                                                    ? user.withTraktAccount(user.getTraktAccount().withTraktUsername(username))
+                                                    : user;
                                         }))
-                                .flatMap(movieSyncService::syncTraktMovies)
-                                .flatMap(userService::replaceUser)
+                                // The account stays linked if Trakt fails now; the next sync catches up
+                                .flatMap(user -> movieSyncService.syncTraktMovies(user, true)
+                                        .onErrorResume(syncError -> Mono.just(user)))
+                                .flatMap(userService::saveSyncResult)
                                 .then(redirect);
                     }
                     return exchange.getSession()
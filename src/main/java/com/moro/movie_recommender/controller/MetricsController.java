@@ -0,0 +1,40 @@
+package com.moro.movie_recommender.controller;
+
+import com.moro.movie_recommender.service.MetricsSource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Exposes runtime metrics collected from all {@link MetricsSource} beans.
+ */
+@RestController
+@RequestMapping("/api/metrics")
+public class MetricsController {
+
+    private final List<MetricsSource> sources;
+
+    public MetricsController(List<MetricsSource> sources) {
+        this.sources = sources;
+    }
+
+    /**
+     * Gets a snapshot of all metrics, keyed by source name.
+     *
+     * @return 200 with metrics
+     */
+    @GetMapping
+    public Mono<ResponseEntity<Map<String, Map<String, Object>>>> getMetrics() {
+        Map<String, Map<String, Object>> metrics = new TreeMap<>();
+        for (MetricsSource source : sources) {
+            metrics.put(source.getMetricsName(), source.getMetrics());
+        }
+        return Mono.just(ResponseEntity.ok(metrics));
+    }
+}
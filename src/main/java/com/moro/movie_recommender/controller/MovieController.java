@@ -2,10 +2,16 @@ package com.moro.movie_recommender.controller;
 
 import com.moro.movie_recommender.dto.Movie;
 import com.moro.movie_recommender.dto.ManualMovie;
+import com.moro.movie_recommender.service.FleetSyncScheduler;
 import com.moro.movie_recommender.service.MovieSyncService;
 import com.moro.movie_recommender.service.UserService;
+import com.moro.movie_recommender.service.trakt.TraktRateLimitException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.reactive.function.client.WebClientException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -27,10 +33,12 @@ public class MovieController {
 
     private final UserService userService;
     private final MovieSyncService movieSyncService;
+    private final FleetSyncScheduler fleetSyncScheduler;
 
-    public MovieController(UserService userService, MovieSyncService movieSyncService) {
+    public MovieController(UserService userService, MovieSyncService movieSyncService, FleetSyncScheduler fleetSyncScheduler) {
         this.userService = userService;
         this.movieSyncService = movieSyncService;
+        this.fleetSyncScheduler = fleetSyncScheduler;
     }
 
     /**
@@ -43,6 +51,7 @@ public class MovieController {
      */
     @GetMapping("/{userName}/watched")
     public Mono<ResponseEntity<List<Movie>>> getWatchedMovies(@PathVariable String userName) {
+        fleetSyncScheduler.recordActivity(userName);
         return userService.getUser(userName)
                 .map(user -> ResponseEntity.ok(user.getAllWatchedMovies()))
                 .switchIfEmpty(Mono.just(ResponseEntity.<List<Movie>>notFound().build()));
@@ -57,6 +66,7 @@ public class MovieController {
      */
     @GetMapping("/{userName}/all")
     public Mono<ResponseEntity<Map<String, List<Movie>>>> getAllWatchedMovies(@PathVariable String userName) {
+        fleetSyncScheduler.recordActivity(userName);
         return userService.getUser(userName)
                 .map(user -> ResponseEntity.ok(movieSyncService.getAllMovies(user)))
                 .switchIfEmpty(Mono.just(ResponseEntity.<Map<String, List<Movie>>>notFound().build()));
@@ -66,7 +76,8 @@ public class MovieController {
      * Syncs Trakt movies for a user and updates their watched list.
      *
      * @param userName the user's name
-     * @return 200 with sync result; 404 if user not found
+     * @return 200 with sync result; 404 if user not found; 429 if Trakt's rate limit was hit;
+     *         503 if Trakt could not be reached or kept failing
      */
     @PostMapping("/{userName}/sync")
     public Mono<ResponseEntity<Map<String, Object>>> syncTraktMovies(@PathVariable String userName) {
@@ -78,13 +89,15 @@ public class MovieController {
                     }
                     
                     return movieSyncService.syncTraktMovies(user)
+                            .flatMap(userService::saveSyncResult)
                             .map(syncedUser -> ResponseEntity.ok(Map.<String, Object>of(
                                     "message", "Trakt movies synced successfully",
                                     "user", syncedUser.getName(),
                                     "totalMovies", syncedUser.getAllWatchedMovies().size(),
                                     "traktMovies", syncedUser.getTraktMovies().size(),
                                     "manualMovies", syncedUser.getManualMovies().size()
-                            )));
+                            )))
+                            .onErrorResume(MovieController::isTraktFailure, error -> Mono.just(syncFailed(error)));
                 })
                 .switchIfEmpty(Mono.just(ResponseEntity.<Map<String, Object>>notFound().build()));
     }
@@ -100,28 +113,27 @@ public class MovieController {
     public Mono<ResponseEntity<?>> addManualMovie(@PathVariable String userName, 
                                                   @RequestBody Map<String, Object> movieRequest) {
         return userService.getUser(userName)
-                .map(user -> {
+                .flatMap(user -> {
                     String title = getString(movieRequest, "title");
                     Integer year = getInteger(movieRequest, "year");
                     Integer userRating = getOptionalRating(movieRequest, "userRating");
 
                     if (title == null || title.isBlank()) {
-                        return ResponseEntity.badRequest()
-                                .body(Map.<String, Object>of("error", "title must be a non-empty string"));
+                        return Mono.<ResponseEntity<?>>just(ResponseEntity.badRequest()
+                                .body(Map.<String, Object>of("error", "title must be a non-empty string")));
                     }
                     if (year == null) {
-                        return ResponseEntity.badRequest()
-                                .body(Map.<String, Object>of("error", "year must be an integer"));
+                        return Mono.<ResponseEntity<?>>just(ResponseEntity.badRequest()
+                                .body(Map.<String, Object>of("error", "year must be an integer")));
                     }
                     if (movieRequest.containsKey("userRating") && userRating == null) {
-                        return ResponseEntity.badRequest()
-                                .body(Map.<String, Object>of("error", "userRating must be an integer between 1 and 10"));
+                        return Mono.<ResponseEntity<?>>just(ResponseEntity.badRequest()
+                                .body(Map.<String, Object>of("error", "userRating must be an integer between 1 and 10")));
                     }
 
                     ManualMovie movie = new ManualMovie(title, year, userRating);
-                    movieSyncService.addManualMovie(user, movie);
-
-                    return ResponseEntity.ok(movie);
+                    return userService.addManualMovie(userName, movie)
+                            .<ResponseEntity<?>>map(updated -> ResponseEntity.ok(movie));
                 })
                 .switchIfEmpty(Mono.just(ResponseEntity.notFound().build()));
     }
@@ -137,41 +149,62 @@ public class MovieController {
     public Mono<ResponseEntity<Map<String, Object>>> removeManualMovie(@PathVariable String userName,
                                                      @RequestBody Map<String, Object> movieRequest) {
         return userService.getUser(userName)
-                .map(user -> {
+                .flatMap(user -> {
                     String title = getString(movieRequest, "title");
                     Integer year = getInteger(movieRequest, "year");
                     
                     if (title == null || title.isBlank()) {
-                        return ResponseEntity.badRequest()
-                                .body(Map.<String, Object>of("error", "title must be a non-empty string"));
+                        return Mono.just(ResponseEntity.badRequest()
+                                .body(Map.<String, Object>of("error", "title must be a non-empty string")));
                     }
                     if (year == null) {
-                        return ResponseEntity.badRequest()
-                                .body(Map.<String, Object>of("error", "year must be an integer"));
+                        return Mono.just(ResponseEntity.badRequest()
+                                .body(Map.<String, Object>of("error", "year must be an integer")));
                     }
                     
-                    // Find and remove the movie from manual movies
-                    boolean removed = user.getManualMovies().stream()
-                            .filter(movie -> title.equals(movie.getTitle()) && year.equals(movie.getYear()))
-                            .findFirst()
-                            .map(movie -> movieSyncService.removeManualMovie(user, movie))
-                            .orElse(false);
-                    
-                    if (removed) {
-                        return ResponseEntity.ok(Map.<String, Object>of(
-                                "message", "Movie removed successfully",
-                                "title", title,
-                                "year", year
-                        ));
-                    } else {
-                        return ResponseEntity.badRequest()
-                                .body(Map.<String, Object>of("error", "Movie not found"));
-                    }
+                    // Remove the first manual movie with this title and year
+                    return userService.removeManualMovie(userName, title, year)
+                            .map(removed -> {
+                                if (removed) {
+                                    return ResponseEntity.ok(Map.<String, Object>of(
+                                            "message", "Movie removed successfully",
+                                            "title", title,
+                                            "year", year
+                                    ));
+                                }
+                                return ResponseEntity.badRequest()
+                                        .body(Map.<String, Object>of("error", "Movie not found"));
+                            });
                 })
                 .switchIfEmpty(Mono.just(ResponseEntity.<Map<String, Object>>notFound().build()));
     }
 
     // --- Helpers: safe extraction and validation ---
+    private static boolean isTraktFailure(Throwable error) {
+        return error instanceof TraktRateLimitException || error instanceof WebClientException;
+    }
+
+    /**
+     * Maps a failed Trakt sync to 429, passing on Trakt's {@code Retry-After}, or to 503.
+     */
+    private static ResponseEntity<Map<String, Object>> syncFailed(Throwable error) {
+        if (error instanceof TraktRateLimitException) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .body(Map.<String, Object>of("error", "Too many Trakt requests, try again later"));
+        }
+        if (error instanceof WebClientResponseException response
+                && response.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS)) {
+            ResponseEntity.BodyBuilder tooMany = ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS);
+            String retryAfter = response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+            if (retryAfter != null) {
+                tooMany.header(HttpHeaders.RETRY_AFTER, retryAfter);
+            }
+            return tooMany.body(Map.<String, Object>of("error", "Trakt rate limit exceeded, try again later"));
+        }
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(Map.<String, Object>of("error", "Trakt sync failed: " + error.getMessage()));
+    }
+
     private static String getString(Map<String, Object> map, String key) {
         Object v = map.get(key);
         return (v instanceof String s) ? s : null;
@@ -0,0 +1,67 @@
+package com.moro.movie_recommender.controller;
+
+import com.moro.movie_recommender.config.RecommendationProperties;
+import com.moro.movie_recommender.dto.Recommendation;
+import com.moro.movie_recommender.service.FleetSyncScheduler;
+import com.moro.movie_recommender.service.UserService;
+import com.moro.movie_recommender.service.recommendation.AlsRecommender;
+import com.moro.movie_recommender.service.recommendation.ItemCfRecommender;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Exposes movie recommendation endpoints.
+ */
+@RestController
+@RequestMapping("/api/recommendations")
+public class RecommendationController {
+
+    private static final int MAX_LIMIT = 1000;
+
+    private final UserService userService;
+    private final ItemCfRecommender itemCfRecommender;
+    private final AlsRecommender alsRecommender;
+    private final FleetSyncScheduler fleetSyncScheduler;
+    private final RecommendationProperties props;
+
+    public RecommendationController(UserService userService, ItemCfRecommender itemCfRecommender,
+                                    AlsRecommender alsRecommender, FleetSyncScheduler fleetSyncScheduler,
+                                    RecommendationProperties props) {
+        this.userService = userService;
+        this.itemCfRecommender = itemCfRecommender;
+        this.alsRecommender = alsRecommender;
+        this.fleetSyncScheduler = fleetSyncScheduler;
+        this.props = props;
+    }
+
+    /**
+     * Recommends movies the user has not watched yet, from what similar libraries contain.
+     *
+     * @param userName the user's name
+     * @param limit    maximum number of recommendations, 1 to 1000; defaults to {@code recommendations.default-limit}
+     * @param model    {@code item-cf} (item-item collaborative filtering) or {@code als} (matrix factorization)
+     * @return 200 with recommendations, best first; 400 for an invalid limit or an unknown model;
+     *         404 if user not found
+     */
+    @GetMapping("/{userName}")
+    public Mono<ResponseEntity<List<Recommendation>>> getRecommendations(@PathVariable String userName,
+                                                                         @RequestParam(required = false) Integer limit,
+                                                                         @RequestParam(defaultValue = "item-cf") String model) {
+        if (!model.equals("item-cf") && !model.equals("als")) {
+            return Mono.just(ResponseEntity.<List<Recommendation>>badRequest().build());
+        }
+        if (limit != null && (limit < 1 || limit > MAX_LIMIT)) {
+            return Mono.just(ResponseEntity.<List<Recommendation>>badRequest().build());
+        }
+        fleetSyncScheduler.recordActivity(userName);
+        int count = limit != null ? limit : Math.min(props.getDefaultLimit(), MAX_LIMIT);
+        return userService.getUser(userName)
+                .map(user -> ResponseEntity.ok(model.equals("als")
+                        ? alsRecommender.recommend(user, count)
+                        : itemCfRecommender.recommend(user, count)))
+                .switchIfEmpty(Mono.just(ResponseEntity.<List<Recommendation>>notFound().build()));
+    }
+}
@@ -1,16 +1,26 @@
 package com.moro.movie_recommender.controller;
 
 import com.moro.movie_recommender.config.TraktProperties;
+import com.moro.movie_recommender.dto.SimilarUser;
 import com.moro.movie_recommender.dto.User;
 import com.moro.movie_recommender.service.TraktService;
 import com.moro.movie_recommender.service.MovieSyncService;
 import com.moro.movie_recommender.service.UserService;
+import com.moro.movie_recommender.service.recommendation.AlsRecommender;
+import com.moro.movie_recommender.service.recommendation.SimilarUserIndex;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -19,17 +29,28 @@ import java.util.Map;
 @RestController
 @RequestMapping("/api/users")
 public class UserController {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    /** Fields accepted by the {@code fields} parameter of the listing endpoints. */
+    private static final List<String> USER_FIELDS = List.of(
+            "name", "hasTraktAccount", "traktUsername", "manualMovieCount", "traktMovieCount", "manualMovies", "traktMovies");
     
     private final UserService userService;
     private final TraktService traktService;
     private final MovieSyncService movieSyncService;
     private final TraktProperties traktProperties;
+    private final AlsRecommender alsRecommender;
+    private final SimilarUserIndex similarUserIndex;
     
-    public UserController(UserService userService, TraktService traktService, TraktProperties traktProperties, MovieSyncService movieSyncService) {
+    public UserController(UserService userService, TraktService traktService, TraktProperties traktProperties,
+                          MovieSyncService movieSyncService, AlsRecommender alsRecommender,
+                          SimilarUserIndex similarUserIndex) {
         this.userService = userService;
         this.traktService = traktService;
         this.traktProperties = traktProperties;
         this.movieSyncService = movieSyncService;
+        this.alsRecommender = alsRecommender;
+        this.similarUserIndex = similarUserIndex;
     }
     
     /**
@@ -64,6 +85,28 @@ public class UserController {
                 .switchIfEmpty(Mono.just(ResponseEntity.<User>notFound().build()));
     }
     
+    /**
+     * Finds the users whose watched movies, Trakt and manual, overlap the user's most.
+     *
+     * @param name  the user's name
+     * @param limit maximum number of users, 1 to 1000
+     * @return 200 with similar users, most similar first; 400 for an invalid limit; 404 if user not found
+     */
+    @GetMapping("/{name}/similar")
+    public Mono<ResponseEntity<List<SimilarUser>>> getSimilarUsers(@PathVariable String name,
+                                                                   @RequestParam(defaultValue = "20") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return Mono.just(ResponseEntity.<List<SimilarUser>>badRequest().build());
+        }
+        if (similarUserIndex.contains(name)) {
+            return Mono.just(ResponseEntity.ok(similarUserIndex.findSimilar(name, limit)));
+        }
+        // Not indexed (yet): only then is it worth loading the user to tell 200 from 404
+        return userService.getUser(name)
+                .map(user -> ResponseEntity.ok(similarUserIndex.findSimilar(name, limit)))
+                .switchIfEmpty(Mono.just(ResponseEntity.<List<SimilarUser>>notFound().build()));
+    }
+
     /**
      * Gets all users.
      * 
@@ -74,6 +117,107 @@ public class UserController {
         return userService.getAllUsers()
                 .map(ResponseEntity::ok);
     }
+
+    /**
+     * Lists users one page at a time, in name order.
+     *
+     * @param limit  page size, 1 to 1000
+     * @param cursor {@code nextCursor} of the previous page; omit for the first page
+     * @param fields comma-separated fields to include; omit for full users
+     * @return {@code users} and {@code nextCursor} (null on the last page), or 400 for invalid parameters
+     */
+    @GetMapping(params = "limit")
+    public Mono<ResponseEntity<Map<String, Object>>> getUsersPage(@RequestParam int limit,
+                                                               @RequestParam(required = false) String cursor,
+                                                               @RequestParam(required = false) String fields) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return Mono.just(ResponseEntity.badRequest()
+                    .body(Map.<String, Object>of("error", "limit must be between 1 and " + MAX_PAGE_SIZE)));
+        }
+        List<String> projection = parseFields(fields);
+        String after = decodeCursor(cursor);
+        if (projection == null || (cursor != null && after == null)) {
+            return Mono.just(ResponseEntity.badRequest()
+                    .body(Map.<String, Object>of("error", projection == null ? "fields must be a subset of " + USER_FIELDS : "invalid cursor")));
+        }
+
+        // Fetch one extra user to learn whether another page follows
+        return userService.getUsersPage(after, limit + 1)
+                .map(users -> {
+                    List<User> page = users.subList(0, Math.min(limit, users.size()));
+                    String nextCursor = users.size() > limit ? encodeCursor(page.get(page.size() - 1).getName()) : null;
+                    Map<String, Object> body = new LinkedHashMap<>();
+                    body.put("users", page.stream().map(user -> project(user, projection)).toList());
+                    body.put("nextCursor", nextCursor);
+                    return ResponseEntity.ok(body);
+                });
+    }
+
+    /**
+     * Streams all users in name order as newline-delimited JSON, one user per line.
+     * Users are read from the store as the client consumes the stream.
+     *
+     * @param cursor {@code nextCursor} of a page to continue after; omit to start at the first user
+     * @param fields comma-separated fields to include; omit for full users
+     * @return the user stream, or 400 for invalid parameters
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Flux<Object>> streamUsers(@RequestParam(required = false) String cursor,
+                                                    @RequestParam(required = false) String fields) {
+        List<String> projection = parseFields(fields);
+        String after = decodeCursor(cursor);
+        if (projection == null || (cursor != null && after == null)) {
+            return ResponseEntity.badRequest().body(Flux.<Object>just(Map.of(
+                    "error", projection == null ? "fields must be a subset of " + USER_FIELDS : "invalid cursor")));
+        }
+        return ResponseEntity.ok(userService.streamUsers(after).map(user -> project(user, projection)));
+    }
+
+    /** @return the requested fields, an empty list for full users, or null if any field is unknown */
+    private static List<String> parseFields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return List.of();
+        }
+        List<String> projection = Arrays.stream(fields.split(",")).map(String::trim).filter(f -> !f.isEmpty()).distinct().toList();
+        return USER_FIELDS.containsAll(projection) ? projection : null;
+    }
+
+    private static Object project(User user, List<String> fields) {
+        if (fields.isEmpty()) {
+            return user;
+        }
+        Map<String, Object> projected = new LinkedHashMap<>();
+        for (String field : fields) {
+            projected.put(field, switch (field) {
+                case "name" -> user.getName();
+                case "hasTraktAccount" -> user.hasTraktAccount();
+                case "traktUsername" -> user.getTraktAccount() != null ? user.getTraktAccount().getTraktUsername() : null;
+                case "manualMovieCount" -> user.getManualMovies().size();
+                case "traktMovieCount" -> user.getTraktMovies().size();
+                case "manualMovies" -> user.getManualMovies();
+                case "traktMovies" -> user.getTraktMovies();
+                default -> throw new IllegalArgumentException("Unknown user field: " + field);
+            });
+        }
+        return projected;
+    }
+
+    /** Cursors are the last user name of a page, base64url-encoded so clients treat them as opaque. */
+    private static String encodeCursor(String name) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** @return the user name in the cursor, or null if the cursor is absent or malformed */
+    private static String decodeCursor(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
     
     /**
      * Deletes a user.
@@ -153,13 +297,16 @@ public class UserController {
                                     .onErrorReturn(java.util.Map.of())
                                     .map(profile -> {
                                         String username = extractTraktUsername(profile);
-                                        if (user.getTraktAccount() != null) {
-                                            user.getTraktAccount().setTraktUsername(username);
-                                        }
-                                        return user;
+                                        return user.getTraktAccount() != null
+                                                ? user.withTraktAccount(user.getTraktAccount().withTraktUsername(username))
+                                                : user;
                                     }))
-                            .flatMap(movieSyncService::syncTraktMovies)
-                            .flatMap(userService::replaceUser)
+                            // The account stays linked if Trakt fails now; the next sync catches up
+                            .flatMap(user -> movieSyncService.syncTraktMovies(user, true)
+                                    .onErrorResume(syncError -> Mono.just(user)))
+                            .flatMap(userService::saveSyncResult)
+                            // Personal recommendations right away, without waiting for the next training
+                            .doOnNext(alsRecommender::foldIn)
                             .thenReturn(ResponseEntity.status(HttpStatus.FOUND)
                                     .location(URI.create("/index.html"))
                                     .build());
@@ -0,0 +1,192 @@
+package com.moro.movie_recommender.dto;
+
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+import com.moro.movie_recommender.util.LongIntHashMap;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Catalog of Trakt movies shared by all users. Each distinct movie is stored once and
+ * identified by a dense {@code int} index, so per-user lists ({@link TraktMovieList}) hold
+ * indices instead of their own copies of titles and ids. The application has a single
+ * catalog, a Spring bean; every list refers to the catalog its indices belong to.
+ *
+ * <p>Movies are canonicalized by Trakt id through a primitive {@link LongIntHashMap}, split
+ * into lock stripes so concurrent syncs rarely contend; the first metadata seen for an id is
+ * kept. Movies without a Trakt id are canonicalized by their trimmed, lower-cased title and
+ * year instead, so interning the same one again (e.g. each time its user is loaded) does not
+ * grow the catalog.
+ *
+ * <p>Storage is append-only, in fixed-size pages that are allocated as the catalog grows and
+ * never copied or freed, so reading an entry takes no lock and an index stays valid for the
+ * life of the catalog. New movies are appended one at a time, and {@link #size()} only counts
+ * a movie once it is fully written, so any index below the size can be read. An index obtained
+ * from {@link #intern(Movie)} may be handed to other threads through any safe publication
+ * (e.g. a stored user).
+ *
+ * <p>The stored movies carry no user rating and are shared: never modify them.
+ */
+public final class MovieCatalog {
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int MAX_PAGES = 1 << 14; // 67M movies
+    private static final int STRIPES = 64;
+    private static final long NO_TRAKT_ID = Long.MIN_VALUE;
+    private static final int MISSING = -1;
+
+    private final AtomicReferenceArray<TraktMovieDTO[]> moviePages = new AtomicReferenceArray<>(MAX_PAGES);
+    private final AtomicReferenceArray<long[]> traktIdPages = new AtomicReferenceArray<>(MAX_PAGES);
+    /** Number of fully written movies; written only while holding {@link #appendLock}. */
+    private final AtomicInteger size = new AtomicInteger();
+    private final Object appendLock = new Object();
+    /** Trakt id to index; each stripe is guarded by its own monitor. */
+    private final LongIntHashMap[] byTraktId = new LongIntHashMap[STRIPES];
+    /** Index of each movie without a Trakt id, by normalized title and year. */
+    private final Map<TitleAndYear, Integer> byTitleAndYear = new ConcurrentHashMap<>();
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    public MovieCatalog() {
+        for (int i = 0; i < STRIPES; i++) {
+            byTraktId[i] = new LongIntHashMap(1024, MISSING);
+        }
+    }
+
+    /**
+     * Returns the index of {@code movie}, adding it to the catalog if it is not there yet.
+     *
+     * @param movie a Trakt movie, or any movie (only its title and year are kept then)
+     * @return the movie's catalog index
+     */
+    public int intern(Movie movie) {
+        lookups.increment();
+        long traktId = movie instanceof TraktMovieDTO trakt && trakt.getIds() != null && trakt.getIds().getTrakt() != null
+                ? trakt.getIds().getTrakt()
+                : NO_TRAKT_ID;
+        if (traktId == NO_TRAKT_ID) {
+            TitleAndYear key = TitleAndYear.of(movie);
+            Integer index = byTitleAndYear.get(key);
+            if (index != null) {
+                hits.increment();
+                return index;
+            }
+            return byTitleAndYear.computeIfAbsent(key, k -> append(movie, NO_TRAKT_ID));
+        }
+        LongIntHashMap stripe = stripeFor(traktId);
+        synchronized (stripe) {
+            int index = stripe.get(traktId);
+            if (index != MISSING) {
+                hits.increment();
+                return index;
+            }
+            index = append(movie, traktId);
+            stripe.put(traktId, index);
+            return index;
+        }
+    }
+
+    /**
+     * @return the index of the movie with {@code traktId}, or -1 if it is not in the catalog
+     */
+    public int indexOf(long traktId) {
+        LongIntHashMap stripe = stripeFor(traktId);
+        synchronized (stripe) {
+            return stripe.get(traktId);
+        }
+    }
+
+    /**
+     * @return the movie at {@code index}, without a user rating
+     */
+    public TraktMovieDTO get(int index) {
+        checkIndex(index);
+        return moviePages.get(index >>> PAGE_BITS)[index & PAGE_MASK];
+    }
+
+    /**
+     * @return the Trakt id of the movie at {@code index}, or null if it has none
+     */
+    public Long traktId(int index) {
+        checkIndex(index);
+        long traktId = traktIdPages.get(index >>> PAGE_BITS)[index & PAGE_MASK];
+        return traktId != NO_TRAKT_ID ? traktId : null;
+    }
+
+    /**
+     * @return number of distinct movies in the catalog
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return number of {@link #intern(Movie)} calls
+     */
+    public long getLookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * @return number of {@link #intern(Movie)} calls that found the movie already in the catalog
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    private int append(Movie movie, long traktId) {
+        TraktMovieDTO canonical = canonical(movie);
+        synchronized (appendLock) {
+            int index = size.get();
+            int page = index >>> PAGE_BITS;
+            if (page >= MAX_PAGES) {
+                throw new IllegalStateException("Movie catalog is full");
+            }
+            if (moviePages.get(page) == null) {
+                traktIdPages.set(page, new long[PAGE_SIZE]);
+                moviePages.set(page, new TraktMovieDTO[PAGE_SIZE]);
+            }
+            traktIdPages.get(page)[index & PAGE_MASK] = traktId;
+            moviePages.get(page)[index & PAGE_MASK] = canonical;
+            // Publishes the entry: readers check the index against the size first
+            size.set(index + 1);
+            return index;
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size.get()) {
+            throw new IndexOutOfBoundsException("No catalog movie " + index);
+        }
+    }
+
+    private LongIntHashMap stripeFor(long traktId) {
+        return byTraktId[(int) (traktId ^ (traktId >>> 32)) & (STRIPES - 1)];
+    }
+
+    /** A private copy without the rating, so later changes to {@code movie} cannot leak in. */
+    private static TraktMovieDTO canonical(Movie movie) {
+        if (movie instanceof TraktMovieDTO trakt) {
+            return trakt.copy(null);
+        }
+        TraktMovieDTO copy = new TraktMovieDTO();
+        copy.setTitle(movie.getTitle());
+        copy.setYear(movie.getYear());
+        return copy;
+    }
+
+    private record TitleAndYear(String title, Integer year) {
+
+        static TitleAndYear of(Movie movie) {
+            String title = movie.getTitle() != null ? movie.getTitle().trim().toLowerCase(Locale.ROOT) : "";
+            return new TitleAndYear(title, movie.getYear());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.moro.movie_recommender.dto;
+
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+
+/**
+ * A movie recommended to a user, with the model's score for it. Scores rank the movies of one
+ * response; they are not comparable across users or models.
+ */
+public class Recommendation {
+    private final TraktMovieDTO movie;
+    private final double score;
+
+    public Recommendation(TraktMovieDTO movie, double score) {
+        this.movie = movie;
+        this.score = score;
+    }
+
+    public TraktMovieDTO getMovie() {
+        return movie;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
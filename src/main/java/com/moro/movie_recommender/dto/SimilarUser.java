@@ -0,0 +1,23 @@
+package com.moro.movie_recommender.dto;
+
+/**
+ * A user whose watched movies overlap another user's, with the estimated Jaccard similarity
+ * of the two sets: the share of the movies either of them watched that both watched.
+ */
+public class SimilarUser {
+    private final String name;
+    private final double similarity;
+
+    public SimilarUser(String name, double similarity) {
+        this.name = name;
+        this.similarity = similarity;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getSimilarity() {
+        return similarity;
+    }
+}
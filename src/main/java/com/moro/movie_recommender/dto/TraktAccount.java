@@ -5,6 +5,9 @@ import java.time.OffsetDateTime;
 /**
  * Represents a linked Trakt account with its access token and metadata.
  * This is stored within a User object to associate Trakt credentials with a specific user.
+ *
+ * <p>Once attached to a stored {@link User} an account is shared and must not be modified;
+ * use the {@code with...} methods to derive a changed copy.
  */
 public class TraktAccount {
     private String accessToken;
@@ -12,6 +15,8 @@ public class TraktAccount {
     private OffsetDateTime linkedAt;
     private String traktUsername;
     private String traktUserId;
+    private OffsetDateTime lastWatchedAt; // Trakt movies.watched_at activity seen at last sync
+    private OffsetDateTime lastRatedAt; // Trakt movies.rated_at activity seen at last sync
 
     public TraktAccount() {}
 
@@ -20,6 +25,35 @@ public class TraktAccount {
         this.linkedAt = OffsetDateTime.now();
     }
 
+    private TraktAccount(TraktAccount other) {
+        this.accessToken = other.accessToken;
+        this.refreshToken = other.refreshToken;
+        this.linkedAt = other.linkedAt;
+        this.traktUsername = other.traktUsername;
+        this.traktUserId = other.traktUserId;
+        this.lastWatchedAt = other.lastWatchedAt;
+        this.lastRatedAt = other.lastRatedAt;
+    }
+
+    /**
+     * @return a copy of this account with the Trakt username set
+     */
+    public TraktAccount withTraktUsername(String traktUsername) {
+        TraktAccount copy = new TraktAccount(this);
+        copy.traktUsername = traktUsername;
+        return copy;
+    }
+
+    /**
+     * @return a copy of this account with the sync checkpoints set
+     */
+    public TraktAccount withSyncCheckpoint(OffsetDateTime lastWatchedAt, OffsetDateTime lastRatedAt) {
+        TraktAccount copy = new TraktAccount(this);
+        copy.lastWatchedAt = lastWatchedAt;
+        copy.lastRatedAt = lastRatedAt;
+        return copy;
+    }
+
     public String getAccessToken() {
         return accessToken;
     }
@@ -60,6 +94,32 @@ public class TraktAccount {
         this.traktUserId = traktUserId;
     }
 
+    public OffsetDateTime getLastWatchedAt() {
+        return lastWatchedAt;
+    }
+
+    public void setLastWatchedAt(OffsetDateTime lastWatchedAt) {
+        this.lastWatchedAt = lastWatchedAt;
+    }
+
+    public OffsetDateTime getLastRatedAt() {
+        return lastRatedAt;
+    }
+
+    public void setLastRatedAt(OffsetDateTime lastRatedAt) {
+        this.lastRatedAt = lastRatedAt;
+    }
+
+    /**
+     * Checks whether a previous sync recorded activity checkpoints,
+     * i.e. whether an incremental sync is possible.
+     *
+     * @return true if the watched activity checkpoint is set
+     */
+    public boolean hasSyncCheckpoint() {
+        return lastWatchedAt != null;
+    }
+
     /**
      * Checks if this Trakt account has a valid access token.
      * 
@@ -0,0 +1,318 @@
+package com.moro.movie_recommender.dto;
+
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A user's Trakt movies in columnar form: parallel primitive arrays holding, per watched
+ * movie, its {@link MovieCatalog} index, the user's rating, the play count and when it was
+ * last watched. About 11 bytes per movie, where a list of {@link TraktMovieDTO}s costs a few
+ * hundred bytes per movie in objects, boxed numbers and duplicated strings.
+ *
+ * <p>Implements {@code List<Movie>} read-only: {@link #get(int)} materializes a
+ * {@link TraktMovieDTO} from the list's catalog on each call, so movie objects exist only while
+ * the API is serializing them. Immutable; use a {@link Builder} to derive a changed list.
+ *
+ * <p>Last-watched times are kept to the second.
+ */
+public final class TraktMovieList extends AbstractList<Movie> implements RandomAccess {
+
+    /** Holds no index, so it needs no catalog. */
+    private static final TraktMovieList EMPTY = new TraktMovieList(null, new int[0], new byte[0], new short[0], new int[0]);
+    /** Bytes per movie in the columnar layout of {@link #writeColumns}. */
+    private static final int COLUMN_BYTES = Integer.BYTES + Byte.BYTES + Short.BYTES + Integer.BYTES;
+
+    private final MovieCatalog catalog;
+    private final int[] movies; // catalog indices
+    private final byte[] ratings; // 0 = not rated
+    private final short[] plays;
+    private final int[] lastWatched; // unsigned epoch seconds, 0 = unknown
+
+    private TraktMovieList(MovieCatalog catalog, int[] movies, byte[] ratings, short[] plays, int[] lastWatched) {
+        this.catalog = catalog;
+        this.movies = movies;
+        this.ratings = ratings;
+        this.plays = plays;
+        this.lastWatched = lastWatched;
+    }
+
+    public static TraktMovieList empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return {@code movies} itself if it already is a {@code TraktMovieList} of
+     *         {@code catalog}, otherwise a columnar copy with every movie interned in
+     *         {@code catalog} (and no plays recorded)
+     */
+    public static TraktMovieList copyOf(MovieCatalog catalog, List<? extends Movie> movies) {
+        if (movies instanceof TraktMovieList list && (list.catalog == catalog || list.isEmpty())) {
+            return list;
+        }
+        Builder builder = builder(catalog, movies.size());
+        for (Movie movie : movies) {
+            builder.add(movie, 0, null);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return a builder for a new list of movies in {@code catalog}
+     */
+    public static Builder builder(MovieCatalog catalog, int expectedSize) {
+        return new Builder(catalog, expectedSize);
+    }
+
+    /**
+     * @return a builder starting from this list; building it without changes returns this list.
+     *         The empty list belongs to no catalog, so its builder cannot add movies
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    @Override
+    public int size() {
+        return movies.length;
+    }
+
+    /**
+     * @return a new copy of the movie at {@code index}, materialized from the catalog with the
+     *         user's rating; callers may modify it
+     */
+    @Override
+    public TraktMovieDTO get(int index) {
+        return catalog.get(movies[index]).copy(getUserRating(index));
+    }
+
+    public int getCatalogIndex(int index) {
+        return movies[index];
+    }
+
+    public Long getTraktId(int index) {
+        return catalog.traktId(movies[index]);
+    }
+
+    public Integer getUserRating(int index) {
+        return ratings[index] != 0 ? (int) ratings[index] : null;
+    }
+
+    public int getPlays(int index) {
+        return plays[index];
+    }
+
+    public OffsetDateTime getLastWatchedAt(int index) {
+        return toTimestamp(lastWatched[index]);
+    }
+
+    /**
+     * @return bytes {@link #writeColumns(MemorySegment, long)} takes for {@code size} movies
+     */
+    public static long columnsSize(int size) {
+        return (long) size * COLUMN_BYTES;
+    }
+
+    /**
+     * Copies the columns as they are, one after the other, to {@code target} at {@code offset}.
+     * Catalog indices are only meaningful within this process.
+     */
+    public void writeColumns(MemorySegment target, long offset) {
+        int size = size();
+        MemorySegment.copy(movies, 0, target, ValueLayout.JAVA_INT_UNALIGNED, offset, size);
+        offset += (long) size * Integer.BYTES;
+        MemorySegment.copy(ratings, 0, target, ValueLayout.JAVA_BYTE, offset, size);
+        offset += size;
+        MemorySegment.copy(plays, 0, target, ValueLayout.JAVA_SHORT_UNALIGNED, offset, size);
+        offset += (long) size * Short.BYTES;
+        MemorySegment.copy(lastWatched, 0, target, ValueLayout.JAVA_INT_UNALIGNED, offset, size);
+    }
+
+    /**
+     * Reads back columns written by {@link #writeColumns(MemorySegment, long)} from a list of
+     * {@code catalog}.
+     */
+    public static TraktMovieList readColumns(MovieCatalog catalog, MemorySegment source, long offset, int size) {
+        if (size == 0) {
+            return EMPTY;
+        }
+        int[] movies = new int[size];
+        byte[] ratings = new byte[size];
+        short[] plays = new short[size];
+        int[] lastWatched = new int[size];
+        MemorySegment.copy(source, ValueLayout.JAVA_INT_UNALIGNED, offset, movies, 0, size);
+        offset += (long) size * Integer.BYTES;
+        MemorySegment.copy(source, ValueLayout.JAVA_BYTE, offset, ratings, 0, size);
+        offset += size;
+        MemorySegment.copy(source, ValueLayout.JAVA_SHORT_UNALIGNED, offset, plays, 0, size);
+        offset += (long) size * Short.BYTES;
+        MemorySegment.copy(source, ValueLayout.JAVA_INT_UNALIGNED, offset, lastWatched, 0, size);
+        return new TraktMovieList(catalog, movies, ratings, plays, lastWatched);
+    }
+
+    /**
+     * Two columnar lists are equal if they hold the same movies of the same catalog with the
+     * same ratings, plays and last-watched times; materialized movies have no value equality
+     * of their own.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof TraktMovieList other) {
+            return this == other || (catalog == other.catalog && Arrays.equals(movies, other.movies) && Arrays.equals(ratings, other.ratings)
+                    && Arrays.equals(plays, other.plays) && Arrays.equals(lastWatched, other.lastWatched));
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(movies) + Arrays.hashCode(ratings);
+    }
+
+    private static OffsetDateTime toTimestamp(int epochSeconds) {
+        return epochSeconds != 0
+                ? OffsetDateTime.ofInstant(Instant.ofEpochSecond(Integer.toUnsignedLong(epochSeconds)), ZoneOffset.UTC)
+                : null;
+    }
+
+    private static int fromTimestamp(OffsetDateTime timestamp) {
+        if (timestamp == null) {
+            return 0;
+        }
+        long seconds = timestamp.toEpochSecond();
+        return (int) Math.max(1, Math.min(0xFFFF_FFFFL, seconds));
+    }
+
+    private static byte fromRating(Integer rating) {
+        if (rating == null) {
+            return 0;
+        }
+        if (rating < 1 || rating > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Rating out of range: " + rating);
+        }
+        return rating.byteValue();
+    }
+
+    /**
+     * Builds a {@link TraktMovieList}. Starting from an existing list, the arrays are copied
+     * only on the first change.
+     */
+    public static final class Builder {
+        private final MovieCatalog catalog;
+        private final TraktMovieList source;
+        private int[] movies;
+        private byte[] ratings;
+        private short[] plays;
+        private int[] lastWatched;
+        private int size;
+        private boolean modified;
+
+        private Builder(MovieCatalog catalog, int expectedSize) {
+            this.catalog = catalog;
+            this.source = null;
+            int capacity = Math.max(4, expectedSize);
+            this.movies = new int[capacity];
+            this.ratings = new byte[capacity];
+            this.plays = new short[capacity];
+            this.lastWatched = new int[capacity];
+            this.modified = true;
+        }
+
+        private Builder(TraktMovieList source) {
+            this.catalog = source.catalog;
+            this.source = source;
+            this.movies = source.movies;
+            this.ratings = source.ratings;
+            this.plays = source.plays;
+            this.lastWatched = source.lastWatched;
+            this.size = source.size();
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public Long traktId(int index) {
+            return catalog.traktId(movies[index]);
+        }
+
+        /**
+         * Appends a movie, interning it in the catalog.
+         *
+         * @param plays         number of plays, 0 if unknown
+         * @param lastWatchedAt when it was last watched, or null if unknown
+         * @return the position of the new movie
+         */
+        public int add(Movie movie, int plays, OffsetDateTime lastWatchedAt) {
+            return add(requireCatalog().intern(movie), movie.getUserRating(), plays, lastWatchedAt);
+        }
+
+        /**
+         * Appends a movie already in the catalog.
+         *
+         * @param catalogIndex  the movie's {@link MovieCatalog} index
+         * @param rating        the user's rating, or null if not rated
+         * @param plays         number of plays, 0 if unknown
+         * @param lastWatchedAt when it was last watched, or null if unknown
+         * @return the position of the new movie
+         */
+        public int add(int catalogIndex, Integer rating, int plays, OffsetDateTime lastWatchedAt) {
+            requireCatalog();
+            ensureWritable(size + 1);
+            movies[size] = catalogIndex;
+            ratings[size] = fromRating(rating);
+            this.plays[size] = (short) Math.min(Short.MAX_VALUE, Math.max(0, plays));
+            lastWatched[size] = fromTimestamp(lastWatchedAt);
+            return size++;
+        }
+
+        /**
+         * Sets the user's rating of the movie at {@code index}.
+         */
+        public void setUserRating(int index, Integer rating) {
+            byte value = fromRating(rating);
+            if (ratings[index] != value) {
+                ensureWritable(size);
+                ratings[index] = value;
+            }
+        }
+
+        public TraktMovieList build() {
+            if (!modified && source != null) {
+                return source;
+            }
+            if (size == 0) {
+                return EMPTY;
+            }
+            return new TraktMovieList(catalog, Arrays.copyOf(movies, size), Arrays.copyOf(ratings, size),
+                    Arrays.copyOf(plays, size), Arrays.copyOf(lastWatched, size));
+        }
+
+        private MovieCatalog requireCatalog() {
+            if (catalog == null) {
+                throw new IllegalStateException("The empty list belongs to no catalog, start from TraktMovieList.builder");
+            }
+            return catalog;
+        }
+
+        /** Copies shared source arrays before the first write and grows them to {@code capacity}. */
+        private void ensureWritable(int capacity) {
+            if (!modified || capacity > movies.length) {
+                int length = Math.max(capacity, modified ? movies.length * 2 : movies.length + 16);
+                movies = Arrays.copyOf(movies, length);
+                ratings = Arrays.copyOf(ratings, length);
+                plays = Arrays.copyOf(plays, length);
+                lastWatched = Arrays.copyOf(lastWatched, length);
+                modified = true;
+            }
+        }
+    }
+}
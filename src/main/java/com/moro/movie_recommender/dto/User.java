@@ -1,5 +1,7 @@
 package com.moro.movie_recommender.dto;
 
+import com.moro.movie_recommender.util.PersistentVector;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -7,122 +9,130 @@ import java.util.List;
  * Represents a user with a name and separate lists for watched movies.
  * Users can optionally have a linked Trakt account for automatic movie syncing,
  * or they can manually add movies without any Trakt integration.
- * 
+ *
  * Movies are stored in separate lists to prevent manual movies from being lost during Trakt syncs.
+ *
+ * <p>Users are immutable: the {@code with...} methods return a new user that shares every
+ * unchanged part with the original. Stored users can therefore be handed out without copying.
+ * Manual movies are a {@link PersistentVector}; Trakt movies, the bulk of most libraries, are a
+ * columnar {@link TraktMovieList} of indices into the shared {@link MovieCatalog}. Movies and
+ * the {@link TraktAccount} reachable from a user must not be modified either; replace them
+ * instead.
+ *
+ * <p>{@link #getVersion()} identifies the stored version of a user; the store assigns a new,
+ * higher version on every change, so comparing versions is a cheap way to detect one. The
+ * {@code with...} methods keep the version of the user they were derived from.
  */
-public class User {
-    private String name;
-    private List<Movie> manualMovies; // Manually added movies (preserved during syncs)
-    private List<Movie> traktMovies; // Trakt-synced movies (updated during syncs)
-    private TraktAccount traktAccount; // Optional - null if user doesn't have Trakt linked
+public final class User {
+    private final String name;
+    private final PersistentVector<Movie> manualMovies; // Manually added movies (preserved during syncs)
+    private final TraktMovieList traktMovies; // Trakt-synced movies (updated during syncs)
+    private final TraktAccount traktAccount; // Optional - null if user doesn't have Trakt linked
+    private final long version; // 0 until stored
 
     public User(String name) {
-        this.name = name;
-        this.manualMovies = new ArrayList<>();
-        this.traktMovies = new ArrayList<>();
-        this.traktAccount = null; // No Trakt account by default
+        this(name, null, null, null);
     }
 
-    public User(String name, List<Movie> manualMovies, List<Movie> traktMovies) {
-        this.name = name;
-        this.manualMovies = manualMovies != null ? new ArrayList<>(manualMovies) : new ArrayList<>();
-        this.traktMovies = traktMovies != null ? new ArrayList<>(traktMovies) : new ArrayList<>();
-        this.traktAccount = null; // No Trakt account by default
+    public User(String name, List<Movie> manualMovies, TraktMovieList traktMovies) {
+        this(name, manualMovies, traktMovies, null);
+    }
+
+    public User(String name, List<Movie> manualMovies, TraktMovieList traktMovies, TraktAccount traktAccount) {
+        this(name, manualMovies, traktMovies, traktAccount, 0);
     }
 
-    public User(String name, List<Movie> manualMovies, List<Movie> traktMovies, TraktAccount traktAccount) {
+    private User(String name, List<Movie> manualMovies, TraktMovieList traktMovies, TraktAccount traktAccount, long version) {
         this.name = name;
-        this.manualMovies = manualMovies != null ? new ArrayList<>(manualMovies) : new ArrayList<>();
-        this.traktMovies = traktMovies != null ? new ArrayList<>(traktMovies) : new ArrayList<>();
+        this.manualMovies = manualMovies != null ? PersistentVector.copyOf(manualMovies) : PersistentVector.empty();
+        this.traktMovies = traktMovies != null ? traktMovies : TraktMovieList.empty();
         this.traktAccount = traktAccount;
+        this.version = version;
     }
 
     public String getName() {
         return name;
     }
 
-    public void setName(String name) {
-        this.name = name;
+    public long getVersion() {
+        return version;
     }
 
-    public List<Movie> getManualMovies() {
-        return manualMovies;
+    /**
+     * @return a copy of this user stamped with {@code version}; used by the store
+     */
+    public User withVersion(long version) {
+        return version == this.version ? this : new User(name, manualMovies, traktMovies, traktAccount, version);
     }
 
-    public void setManualMovies(List<Movie> manualMovies) {
-        this.manualMovies = manualMovies != null ? new ArrayList<>(manualMovies) : new ArrayList<>();
+    public List<Movie> getManualMovies() {
+        return manualMovies;
     }
 
-    public List<Movie> getTraktMovies() {
+    public TraktMovieList getTraktMovies() {
         return traktMovies;
     }
 
-    public void setTraktMovies(List<Movie> traktMovies) {
-        this.traktMovies = traktMovies != null ? new ArrayList<>(traktMovies) : new ArrayList<>();
-    }
-
     /**
      * Gets all watched movies (both manual and Trakt).
-     * 
+     *
      * @return combined list of all movies
      */
     public List<Movie> getAllWatchedMovies() {
-        List<Movie> allMovies = new ArrayList<>();
+        List<Movie> allMovies = new ArrayList<>(manualMovies.size() + traktMovies.size());
         allMovies.addAll(manualMovies);
         allMovies.addAll(traktMovies);
         return allMovies;
     }
 
-    public void addManualMovie(Movie movie) {
-        if (movie != null) {
-            this.manualMovies.add(movie);
+    /**
+     * @return a copy of this user with {@code movie} appended to the manual movies
+     */
+    public User withManualMovie(Movie movie) {
+        if (movie == null) {
+            return this;
         }
+        return new User(name, manualMovies.plus(movie), traktMovies, traktAccount, version);
+    }
+
+    /**
+     * @return a copy of this user without the manual movie at {@code index}
+     */
+    public User withoutManualMovie(int index) {
+        return new User(name, manualMovies.minus(index), traktMovies, traktAccount, version);
     }
 
-    public boolean removeManualMovie(Movie movie) {
-        return this.manualMovies.remove(movie);
+    /**
+     * @return a copy of this user with its Trakt movies replaced
+     */
+    public User withTraktMovies(TraktMovieList traktMovies) {
+        return new User(name, manualMovies, traktMovies, traktAccount, version);
     }
 
     public TraktAccount getTraktAccount() {
         return traktAccount;
     }
 
-    public void setTraktAccount(TraktAccount traktAccount) {
-        this.traktAccount = traktAccount;
+    /**
+     * @param traktAccount the account to link, or null to unlink
+     * @return a copy of this user with its Trakt account replaced
+     */
+    public User withTraktAccount(TraktAccount traktAccount) {
+        return new User(name, manualMovies, traktMovies, traktAccount, version);
     }
 
     /**
      * Checks if this user has a linked Trakt account.
-     * 
+     *
      * @return true if user has a Trakt account with valid token
      */
     public boolean hasTraktAccount() {
         return traktAccount != null && traktAccount.hasValidToken();
     }
 
-    /**
-     * Links a Trakt account to this user.
-     * 
-     * @param accessToken the Trakt access token
-     * @param refreshToken the Trakt refresh token (optional)
-     */
-    public void linkTraktAccount(String accessToken, String refreshToken) {
-        this.traktAccount = new TraktAccount(accessToken);
-        if (refreshToken != null) {
-            this.traktAccount.setRefreshToken(refreshToken);
-        }
-    }
-
-    /**
-     * Unlinks the Trakt account from this user.
-     */
-    public void unlinkTraktAccount() {
-        this.traktAccount = null;
-    }
-
     /**
      * Gets the Trakt access token if available.
-     * 
+     *
      * @return the access token or null if no Trakt account
      */
     public String getTraktAccessToken() {
@@ -21,4 +21,13 @@ public class TraktIdsDTO {
 
     public String getSlug() { return slug; }
     public void setSlug(String slug) { this.slug = slug; }
+
+    public TraktIdsDTO copy() {
+        TraktIdsDTO copy = new TraktIdsDTO();
+        copy.trakt = trakt;
+        copy.imdb = imdb;
+        copy.tmdb = tmdb;
+        copy.slug = slug;
+        return copy;
+    }
 }
@@ -0,0 +1,22 @@
+package com.moro.movie_recommender.dto.trakt;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.time.OffsetDateTime;
+
+/**
+ * Response of Trakt's {@code GET /sync/last_activities}.
+ * Only the overall and movie activity timestamps are mapped.
+ */
+public class TraktLastActivitiesDTO {
+    @JsonProperty("all")
+    private OffsetDateTime all;
+
+    @JsonProperty("movies")
+    private TraktMovieActivitiesDTO movies;
+
+    public OffsetDateTime getAll() { return all; }
+    public void setAll(OffsetDateTime all) { this.all = all; }
+
+    public TraktMovieActivitiesDTO getMovies() { return movies; }
+    public void setMovies(TraktMovieActivitiesDTO movies) { this.movies = movies; }
+}
@@ -0,0 +1,22 @@
+package com.moro.movie_recommender.dto.trakt;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.time.OffsetDateTime;
+
+/**
+ * The {@code movies} block of Trakt's last-activities response: when the user's
+ * movie history and movie ratings last changed.
+ */
+public class TraktMovieActivitiesDTO {
+    @JsonProperty("watched_at")
+    private OffsetDateTime watchedAt;
+
+    @JsonProperty("rated_at")
+    private OffsetDateTime ratedAt;
+
+    public OffsetDateTime getWatchedAt() { return watchedAt; }
+    public void setWatchedAt(OffsetDateTime watchedAt) { this.watchedAt = watchedAt; }
+
+    public OffsetDateTime getRatedAt() { return ratedAt; }
+    public void setRatedAt(OffsetDateTime ratedAt) { this.ratedAt = ratedAt; }
+}
@@ -2,6 +2,8 @@ package com.moro.movie_recommender.dto.trakt;
 
 import com.moro.movie_recommender.dto.Movie;
 
+import java.util.Objects;
+
 /**
  * Minimal movie representation as returned by Trakt API in many endpoints.
  * Includes human-readable fields and a nested {@link TraktIdsDTO} block.
@@ -23,4 +25,31 @@ public class TraktMovieDTO implements Movie {
 
     public Integer getUserRating() { return userRating; }
     public void setUserRating(Integer userRating) { this.userRating = userRating; }
+
+    /**
+     * @return this movie if it already has {@code userRating}, otherwise a copy with it set
+     */
+    public TraktMovieDTO withUserRating(Integer userRating) {
+        if (Objects.equals(this.userRating, userRating)) {
+            return this;
+        }
+        TraktMovieDTO copy = new TraktMovieDTO();
+        copy.title = title;
+        copy.year = year;
+        copy.ids = ids;
+        copy.userRating = userRating;
+        return copy;
+    }
+
+    /**
+     * @return a copy with {@code userRating} set, sharing nothing mutable with this movie
+     */
+    public TraktMovieDTO copy(Integer userRating) {
+        TraktMovieDTO copy = new TraktMovieDTO();
+        copy.title = title;
+        copy.year = year;
+        copy.ids = ids != null ? ids.copy() : null;
+        copy.userRating = userRating;
+        return copy;
+    }
 }
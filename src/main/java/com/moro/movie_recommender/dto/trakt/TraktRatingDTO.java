@@ -0,0 +1,30 @@
+package com.moro.movie_recommender.dto.trakt;
+
+import java.time.OffsetDateTime;
+
+/**
+ * A single entry from Trakt's movie ratings list ({@code GET /sync/ratings/movies}).
+ * Holds only the fields the app uses: the movie's Trakt ID, the rating and when it was given.
+ */
+public class TraktRatingDTO {
+    private long traktId;
+    private int rating;
+    private OffsetDateTime ratedAt;
+
+    public TraktRatingDTO() {}
+
+    public TraktRatingDTO(long traktId, int rating, OffsetDateTime ratedAt) {
+        this.traktId = traktId;
+        this.rating = rating;
+        this.ratedAt = ratedAt;
+    }
+
+    public long getTraktId() { return traktId; }
+    public void setTraktId(long traktId) { this.traktId = traktId; }
+
+    public int getRating() { return rating; }
+    public void setRating(int rating) { this.rating = rating; }
+
+    public OffsetDateTime getRatedAt() { return ratedAt; }
+    public void setRatedAt(OffsetDateTime ratedAt) { this.ratedAt = ratedAt; }
+}
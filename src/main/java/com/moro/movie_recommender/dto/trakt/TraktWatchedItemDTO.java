@@ -25,4 +25,18 @@ public class TraktWatchedItemDTO {
 
     public TraktMovieDTO getMovie() { return movie; }
     public void setMovie(TraktMovieDTO movie) { this.movie = movie; }
+
+    /**
+     * @return this item if it already refers to {@code movie}, otherwise a copy that does
+     */
+    public TraktWatchedItemDTO withMovie(TraktMovieDTO movie) {
+        if (this.movie == movie) {
+            return this;
+        }
+        TraktWatchedItemDTO copy = new TraktWatchedItemDTO();
+        copy.plays = plays;
+        copy.lastWatchedAt = lastWatchedAt;
+        copy.movie = movie;
+        return copy;
+    }
 }
@@ -0,0 +1,280 @@
+package com.moro.movie_recommender.service;
+
+import com.moro.movie_recommender.config.TraktProperties;
+import com.moro.movie_recommender.dto.User;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps every Trakt-linked user fresh by syncing them in the background.
+ *
+ * <p>Users are held in a queue ordered by when they are next due. A user's re-sync interval
+ * shrinks from {@code max-interval} towards {@code min-interval} as their activity (API
+ * reads, recorded via {@link #recordActivity(String)}, decaying with a configurable
+ * half-life) grows, so active users are refreshed more often than dormant ones and
+ * never-synced users go first.
+ *
+ * <p>On every tick at most {@code per-tick-budget} due users are taken from the head of the
+ * queue, and no more than {@code concurrency} syncs run at once across ticks, which keeps
+ * the fleet's Trakt traffic smooth. Syncs go through {@link MovieSyncService}, so they are
+ * coalesced with user-triggered syncs and pass through the Trakt rate governor.
+ * Disabled unless {@code trakt.scheduler.enabled} is set.
+ */
+@Service
+public class FleetSyncScheduler implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(FleetSyncScheduler.class);
+
+    /** Scheduling state of one user. Mutated only while holding the queue lock. */
+    private static final class Entry {
+        final String name;
+        long lastSyncedNanos = -1;
+        long dueAtNanos;
+        double activity;
+        long activityAtNanos;
+        boolean queued;
+
+        Entry(String name, long now) {
+            this.name = name;
+            this.dueAtNanos = now;
+            this.activityAtNanos = now;
+        }
+    }
+
+    private final UserService userService;
+    private final MovieSyncService movieSyncService;
+    private final TraktProperties.Scheduler config;
+
+    private final Map<String, Entry> tracked = new ConcurrentHashMap<>();
+    private final TreeSet<Entry> queue = new TreeSet<>(Comparator
+            .comparingLong((Entry e) -> e.dueAtNanos)
+            .thenComparing(e -> e.name));
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private long lastRescanNanos;
+    private long completedAtLastTick;
+    private long lastTickNanos;
+    private volatile double syncsPerSecond;
+
+    private Disposable ticker;
+
+    public FleetSyncScheduler(UserService userService, MovieSyncService movieSyncService, TraktProperties props) {
+        this.userService = userService;
+        this.movieSyncService = movieSyncService;
+        this.config = props.getScheduler();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!config.isEnabled() || ticker != null) {
+            return;
+        }
+        logger.info("Starting fleet sync scheduler (tick {}, budget {}, concurrency {})",
+                config.getTick(), config.getPerTickBudget(), config.getConcurrency());
+        lastTickNanos = System.nanoTime();
+        lastRescanNanos = lastTickNanos - config.getRescanInterval().toNanos();
+        ticker = Flux.interval(config.getTick())
+                .onBackpressureDrop()
+                .subscribe(t -> tick(), error -> logger.error("Fleet sync scheduler stopped: {}", error.getMessage()));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.dispose();
+            ticker = null;
+        }
+    }
+
+    /**
+     * Records a read of the user's data, raising their sync priority.
+     *
+     * @param userName the user's name
+     */
+    public void recordActivity(String userName) {
+        Entry entry = tracked.get(userName);
+        if (entry == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        synchronized (queue) {
+            boolean wasQueued = entry.queued && queue.remove(entry);
+            entry.activity = decayedActivity(entry, now) + 1;
+            entry.activityAtNanos = now;
+            if (entry.lastSyncedNanos >= 0) {
+                entry.dueAtNanos = entry.lastSyncedNanos + intervalNanos(entry.activity);
+            }
+            if (wasQueued) {
+                queue.add(entry);
+            }
+        }
+    }
+
+    private void tick() {
+        try {
+            long now = System.nanoTime();
+            if (now - lastRescanNanos >= config.getRescanInterval().toNanos()) {
+                // The user list may come from a database: reconcile whenever it arrives
+                lastRescanNanos = now;
+                userService.getTraktLinkedUserNames()
+                        .subscribe(linked -> rescan(linked, now),
+                                e -> logger.error("Fleet sync rescan failed: {}", e.getMessage(), e));
+            }
+            updateThroughput(now);
+
+            int capacity = Math.min(config.getPerTickBudget(), config.getConcurrency() - inFlight.get());
+            List<Entry> batch = pollDue(now, capacity);
+            if (batch.isEmpty()) {
+                return;
+            }
+            logger.debug("Fleet sync tick: syncing {} users, {} queued", batch.size(), queue.size());
+            Flux.fromIterable(batch)
+                    .flatMap(this::syncOne, config.getConcurrency())
+                    .subscribe();
+        } catch (RuntimeException e) {
+            logger.error("Fleet sync tick failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reconciles the queue with the current set of Trakt-linked users.
+     */
+    private void rescan(List<String> linkedNames, long now) {
+        Set<String> linked = new HashSet<>(linkedNames);
+        synchronized (queue) {
+            for (String name : linked) {
+                if (!tracked.containsKey(name)) {
+                    Entry entry = new Entry(name, now);
+                    tracked.put(name, entry);
+                    entry.queued = true;
+                    queue.add(entry);
+                }
+            }
+            tracked.values().removeIf(entry -> {
+                if (linked.contains(entry.name)) {
+                    return false;
+                }
+                if (entry.queued) {
+                    queue.remove(entry);
+                    entry.queued = false;
+                }
+                return true;
+            });
+        }
+    }
+
+    private List<Entry> pollDue(long now, int max) {
+        List<Entry> batch = new ArrayList<>(Math.max(0, max));
+        synchronized (queue) {
+            while (batch.size() < max && !queue.isEmpty() && queue.first().dueAtNanos - now <= 0) {
+                Entry entry = queue.pollFirst();
+                entry.queued = false;
+                batch.add(entry);
+            }
+        }
+        inFlight.addAndGet(batch.size());
+        return batch;
+    }
+
+    private Mono<Void> syncOne(Entry entry) {
+        return userService.getUser(entry.name)
+                .filter(User::hasTraktAccount)
+                .flatMap(movieSyncService::syncTraktMovies)
+                .flatMap(userService::saveSyncResult)
+                .then()
+                .onErrorResume(error -> {
+                    failed.increment();
+                    logger.warn("Background sync failed for user {}: {}", entry.name, error.getMessage());
+                    return Mono.empty();
+                })
+                .doFinally(signal -> {
+                    inFlight.decrementAndGet();
+                    completed.increment();
+                    reschedule(entry);
+                });
+    }
+
+    private void reschedule(Entry entry) {
+        long now = System.nanoTime();
+        synchronized (queue) {
+            if (tracked.get(entry.name) != entry) {
+                return; // unlinked or deleted while syncing
+            }
+            entry.lastSyncedNanos = now;
+            entry.dueAtNanos = now + intervalNanos(decayedActivity(entry, now));
+            entry.queued = true;
+            queue.add(entry);
+        }
+    }
+
+    private double decayedActivity(Entry entry, long now) {
+        double halfLives = (double) (now - entry.activityAtNanos) / config.getActivityHalfLife().toNanos();
+        return entry.activity * Math.pow(0.5, halfLives);
+    }
+
+    private long intervalNanos(double activity) {
+        long max = config.getMaxInterval().toNanos();
+        long min = config.getMinInterval().toNanos();
+        return Math.max(min, (long) (max / (1 + activity)));
+    }
+
+    private void updateThroughput(long now) {
+        long done = completed.sum();
+        double seconds = (now - lastTickNanos) / 1e9;
+        if (seconds > 0) {
+            double rate = (done - completedAtLastTick) / seconds;
+            syncsPerSecond = 0.8 * syncsPerSecond + 0.2 * rate;
+        }
+        completedAtLastTick = done;
+        lastTickNanos = now;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "fleetSync";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        long now = System.nanoTime();
+        int depth;
+        long lagMillis = 0;
+        synchronized (queue) {
+            depth = queue.size();
+            if (!queue.isEmpty()) {
+                lagMillis = Math.max(0, (now - queue.first().dueAtNanos) / 1_000_000);
+            }
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", config.isEnabled());
+        metrics.put("trackedUsers", tracked.size());
+        metrics.put("queueDepth", depth);
+        metrics.put("inFlight", inFlight.get());
+        metrics.put("lagMillis", lagMillis);
+        metrics.put("completed", completed.sum());
+        metrics.put("failed", failed.sum());
+        metrics.put("syncsPerSecond", Math.round(syncsPerSecond * 100) / 100.0);
+        return metrics;
+    }
+}
@@ -0,0 +1,20 @@
+package com.moro.movie_recommender.service;
+
+import java.util.Map;
+
+/**
+ * A component that exposes runtime gauges and counters.
+ * All beans implementing this interface are published under {@code GET /api/metrics}.
+ */
+public interface MetricsSource {
+
+    /**
+     * @return a stable, unique name used as the key in the metrics response
+     */
+    String getMetricsName();
+
+    /**
+     * @return a point-in-time snapshot of this component's metrics
+     */
+    Map<String, Object> getMetrics();
+}
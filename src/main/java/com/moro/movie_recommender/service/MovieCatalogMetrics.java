@@ -0,0 +1,37 @@
+package com.moro.movie_recommender.service;
+
+import com.moro.movie_recommender.dto.MovieCatalog;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Publishes the size and hit rate of the application's {@link MovieCatalog}.
+ */
+@Component
+public class MovieCatalogMetrics implements MetricsSource {
+
+    private final MovieCatalog catalog;
+
+    public MovieCatalogMetrics(MovieCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "movieCatalog";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        long lookups = catalog.getLookups();
+        long hits = catalog.getHits();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("movies", catalog.size());
+        metrics.put("lookups", lookups);
+        metrics.put("hits", hits);
+        metrics.put("hitRate", lookups > 0 ? (double) hits / lookups : 0.0);
+        return metrics;
+    }
+}
@@ -1,116 +1,357 @@
 package com.moro.movie_recommender.service;
 
+import com.moro.movie_recommender.config.TraktProperties;
 import com.moro.movie_recommender.dto.Movie;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.TraktAccount;
+import com.moro.movie_recommender.dto.TraktMovieList;
 import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.dto.trakt.TraktLastActivitiesDTO;
+import com.moro.movie_recommender.dto.trakt.TraktMovieActivitiesDTO;
 import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
 import com.moro.movie_recommender.dto.trakt.TraktWatchedItemDTO;
+import com.moro.movie_recommender.service.trakt.TraktCallTrace;
+import com.moro.movie_recommender.service.trakt.TraktRateLimitException;
+import com.moro.movie_recommender.util.LongIntHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientException;
 import reactor.core.publisher.Mono;
 
+import java.time.OffsetDateTime;
+import java.util.Arrays;
 import java.util.List;
-import java.util.ArrayList;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Service for syncing Trakt movies with user's watched movies list.
  * Handles merging Trakt movies with manually added movies.
  */
 @Service
-public class MovieSyncService {
+public class MovieSyncService implements MetricsSource {
     
     private static final Logger logger = LoggerFactory.getLogger(MovieSyncService.class);
+
+    /** Recent results are swept for expiry after this many new ones. */
+    private static final int SWEEP_INTERVAL = 256;
+
+    /**
+     * Syncs are shared per user and access token: a sync running with a token the user has
+     * since replaced must not stand in for one with the new token.
+     */
+    private record SyncKey(String name, String accessToken) {}
+
+    private record CompletedSync(User user, long completedAtNanos) {}
     
     private final TraktService traktService;
+    private final ApplicationEventPublisher events;
+    private final MovieCatalog catalog;
+    private final boolean incremental;
+    private final long freshnessNanos;
+
+    // Single-flight state, keyed by user name and access token
+    private final Map<SyncKey, CompletableFuture<User>> inFlight = new ConcurrentHashMap<>();
+    private final Map<SyncKey, CompletedSync> recentSyncs = new ConcurrentHashMap<>();
+    private final AtomicInteger recordedSyncs = new AtomicInteger();
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder freshHits = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder traktCalls = new LongAdder();
+    private final LongAdder syncMillis = new LongAdder();
     
-    public MovieSyncService(TraktService traktService) {
+    public MovieSyncService(TraktService traktService, TraktProperties traktProperties, MovieCatalog catalog,
+                            ApplicationEventPublisher events) {
         this.traktService = traktService;
+        this.catalog = catalog;
+        this.events = events;
+        this.incremental = traktProperties.getSync().isIncremental();
+        this.freshnessNanos = traktProperties.getSync().getFreshness().toNanos();
     }
     
     /**
      * Syncs Trakt movies for a user, preserving manually added movies.
+     *
+     * <p>In incremental mode ({@code trakt.sync.incremental}) the sync first asks Trakt for the
+     * user's last activity timestamps. If neither watched history nor ratings moved since the
+     * checkpoint stored on the {@link TraktAccount}, nothing else is fetched. Otherwise only
+     * what moved is fetched again: the watched list (a conditional request) if watched history
+     * moved, ratings if ratings moved; the user's current ratings carry over if they did not.
+     * The first sync of an account is always a full sync.
      * 
      * @param user the user to sync movies for
-     * @return the updated user with synced movies
+     * @return the updated user with synced movies; fails with {@link TraktRateLimitException}
+     *         if Trakt requests could not be admitted, or a {@link WebClientException} if Trakt
+     *         failed or answered with an error after retries
      */
     public Mono<User> syncTraktMovies(User user) {
+        return syncTraktMovies(user, false);
+    }
+
+    /**
+     * Syncs Trakt movies for a user, coalescing concurrent requests.
+     *
+     * <p>At most one sync per user and access token is in flight: callers arriving while one
+     * runs subscribe to it and receive the same result. Unless {@code force} is set, a result
+     * younger than {@code trakt.sync.freshness} is returned without calling Trakt at all.
+     *
+     * @param user  the user to sync movies for
+     * @param force true to start a new sync rather than join one in flight or reuse a fresh
+     *              result (e.g. right after linking an account); callers arriving while it
+     *              runs join it
+     * @return the updated user with synced movies; a failed sync fails every caller sharing it
+     *         and is not reused as a fresh result
+     */
+    public Mono<User> syncTraktMovies(User user, boolean force) {
         if (!user.hasTraktAccount()) {
             logger.debug("User {} has no Trakt account, skipping sync", user.getName());
             return Mono.just(user);
         }
-        
-        String accessToken = user.getTraktAccessToken();
+        SyncKey key = new SyncKey(user.getName(), user.getTraktAccessToken());
+
+        return Mono.defer(() -> {
+            if (!force && freshnessNanos > 0) {
+                CompletedSync last = recentSyncs.get(key);
+                if (last != null && isFresh(last)) {
+                    freshHits.increment();
+                    logger.debug("Returning fresh sync result for user {}", key.name());
+                    return Mono.just(last.user());
+                }
+                if (last != null) {
+                    recentSyncs.remove(key, last);
+                }
+            }
+
+            CompletableFuture<User> promise = new CompletableFuture<>();
+            if (force) {
+                inFlight.put(key, promise); // later callers join this sync instead
+            } else {
+                CompletableFuture<User> existing = inFlight.putIfAbsent(key, promise);
+                if (existing != null) {
+                    coalesced.increment();
+                    logger.debug("Joining in-flight sync for user {}", key.name());
+                    return Mono.fromFuture(existing, true);
+                }
+            }
+
+            started.increment();
+            doSync(user)
+                    .doOnSuccess(synced -> record(key, synced))
+                    .doFinally(signal -> inFlight.remove(key, promise))
+                    .subscribe(promise::complete, promise::completeExceptionally, () -> promise.complete(user));
+            // Cancelling one caller must not cancel the sync other callers share
+            return Mono.fromFuture(promise, true);
+        });
+    }
+
+    /**
+     * Keeps a sync result for the freshness window, if there is one. Expired results are
+     * dropped when read, and swept every {@value #SWEEP_INTERVAL} results so that users who
+     * are never synced again do not stay in memory.
+     */
+    private void record(SyncKey key, User synced) {
+        if (freshnessNanos <= 0 || synced == null) {
+            return;
+        }
+        recentSyncs.put(key, new CompletedSync(synced, System.nanoTime()));
+        if (recordedSyncs.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            recentSyncs.values().removeIf(last -> !isFresh(last));
+        }
+    }
+
+    private boolean isFresh(CompletedSync sync) {
+        return System.nanoTime() - sync.completedAtNanos() < freshnessNanos;
+    }
+
+    /**
+     * Syncs the user, counting and logging a failure before passing it on.
+     */
+    private Mono<User> doSync(User user) {
         logger.info("Syncing Trakt movies for user: {}", user.getName());
+        TraktCallTrace trace = new TraktCallTrace();
+
+        Mono<User> sync = incremental
+                ? traktService.getLastActivities(user.getTraktAccessToken())
+                        .flatMap(activities -> syncSince(user, activities, trace))
+                : fullSync(user, trace);
         
-        return traktService.getWatchedMovies(accessToken)
+        return sync
+                .doOnSuccess(synced -> {
+                    traktCalls.add(trace.getCalls());
+                    syncMillis.add(trace.getElapsedMillis());
+                })
+                .doOnError(error -> {
+                    failed.increment();
+                    logger.error("Failed to sync Trakt movies for user {} after {} Trakt calls, {} ms: {}", 
+                            user.getName(), trace.getCalls(), trace.getElapsedMillis(), error.getMessage());
+                })
+                .contextWrite(ctx -> ctx.put(TraktCallTrace.CONTEXT_KEY, trace));
+    }
+
+    /**
+     * Replaces the user's Trakt movies with the full watched list from Trakt.
+     */
+    private Mono<User> fullSync(User user, TraktCallTrace trace) {
+        return traktService.getWatchedMovies(user.getName(), user.getTraktAccessToken())
                 .collectList()
                 .map(traktWatchedItems -> {
-                    // Extract TraktMovieDTO objects from watched items
-                    List<TraktMovieDTO> newTraktMovies = traktWatchedItems.stream()
-                            .map(TraktWatchedItemDTO::getMovie)
-                            .collect(Collectors.toList());
-                    
-                    // Update only the Trakt movies list (preserve manual movies)
-                    user.setTraktMovies(new ArrayList<>(newTraktMovies));
+                    int catalogSize = catalog.size();
+                    TraktMovieList newTraktMovies = toTraktMovies(traktWatchedItems).build();
                     
-                    logger.info("Synced {} Trakt movies and preserved {} manual movies for user: {}", 
-                            newTraktMovies.size(), user.getManualMovies().size(), user.getName());
+                    logger.info("Synced {} Trakt movies and preserved {} manual movies for user: {} ({} Trakt calls, {} ms)", 
+                            newTraktMovies.size(), user.getManualMovies().size(), user.getName(),
+                            trace.getCalls(), trace.getElapsedMillis());
                     
-                    return user;
-                })
-                .onErrorResume(error -> {
-                    logger.error("Failed to sync Trakt movies for user {}: {}", user.getName(), error.getMessage());
-                    return Mono.just(user); // Return user unchanged on error
+                    // Replace only the Trakt movies list (preserve manual movies)
+                    return publishDiscovered(user.withTraktMovies(newTraktMovies), catalogSize);
                 });
     }
-    
+
     /**
-     * Syncs Trakt movies for a user and returns the updated user.
-     * This is a convenience method that doesn't modify the original user object.
-     * 
-     * @param user the user to sync movies for
-     * @return a new user object with synced movies
+     * Incremental sync driven by the last-activities timestamps.
+     *
+     * <p>A moved watched timestamp re-reads the whole watched list rather than the history
+     * since the checkpoint: Trakt stamps the activity when a play is added, but plays can be
+     * added with any watched time, so a backdated play would never show up in that window.
+     * The watched list is a conditional request, so this costs little when Trakt answers 304.
      */
-    public Mono<User> syncTraktMoviesCopy(User user) {
-        // Create a copy of the user to avoid modifying the original
-        User userCopy = new User(user.getName(), 
-                new java.util.ArrayList<>(user.getManualMovies()),
-                new java.util.ArrayList<>(user.getTraktMovies()),
-                user.getTraktAccount());
-        
-        return syncTraktMovies(userCopy);
+    private Mono<User> syncSince(User user, TraktLastActivitiesDTO activities, TraktCallTrace trace) {
+        TraktAccount account = user.getTraktAccount();
+        TraktMovieActivitiesDTO movieActivities = activities.getMovies();
+        OffsetDateTime watchedAt = movieActivities != null ? movieActivities.getWatchedAt() : null;
+        OffsetDateTime ratedAt = movieActivities != null ? movieActivities.getRatedAt() : null;
+
+        if (!account.hasSyncCheckpoint() || watchedAt == null) {
+            return fullSync(user, trace)
+                    .map(synced -> checkpoint(synced, watchedAt, ratedAt));
+        }
+
+        boolean watchedMoved = !sameInstant(account.getLastWatchedAt(), watchedAt);
+        boolean ratedMoved = !sameInstant(account.getLastRatedAt(), ratedAt);
+        if (!watchedMoved && !ratedMoved) {
+            logger.info("Trakt movies for user {} unchanged since last sync ({} Trakt calls, {} ms)",
+                    user.getName(), trace.getCalls(), trace.getElapsedMillis());
+            return Mono.just(user);
+        }
+
+        String accessToken = user.getTraktAccessToken();
+        Mono<LongIntHashMap> ratings = ratedMoved
+                ? traktService.getRatingsIndex(user.getName(), accessToken)
+                : Mono.fromSupplier(() -> ratingsOf(user.getTraktMovies()));
+        Mono<List<TraktWatchedItemDTO>> watched = watchedMoved
+                ? traktService.getWatchedItems(user.getName(), accessToken).collectList()
+                : Mono.just(List.of());
+
+        return Mono.zip(watched, ratings)
+                .map(tuple -> {
+                    int catalogSize = catalog.size();
+                    TraktMovieList.Builder movies = watchedMoved
+                            ? toTraktMovies(tuple.getT1())
+                            : user.getTraktMovies().toBuilder();
+                    TraktMovieList updated = applyRatings(movies, tuple.getT2());
+                    logger.info("Incrementally synced user {}: {} Trakt movies, watched list {}, ratings {} ({} Trakt calls, {} ms)",
+                            user.getName(), updated.size(), watchedMoved ? "refreshed" : "unchanged",
+                            ratedMoved ? "refreshed" : "unchanged", trace.getCalls(), trace.getElapsedMillis());
+                    return checkpoint(publishDiscovered(user.withTraktMovies(updated), catalogSize), watchedAt, ratedAt);
+                });
     }
-    
+
     /**
-     * Adds a manual movie to a user's watched list.
-     * 
-     * @param user the user to add the movie to
-     * @param movie the movie to add
-     * @return the updated user
+     * Canonicalizes each watched movie in the shared catalog; the user keeps only its index,
+     * rating, plays and last-watched time.
+     */
+    private TraktMovieList.Builder toTraktMovies(List<TraktWatchedItemDTO> watchedItems) {
+        TraktMovieList.Builder builder = TraktMovieList.builder(catalog, watchedItems.size());
+        for (TraktWatchedItemDTO item : watchedItems) {
+            TraktMovieDTO movie = item.getMovie();
+            builder.add(catalog.intern(movie), movie.getUserRating(),
+                    item.getPlays() != null ? item.getPlays() : 0, item.getLastWatchedAt());
+        }
+        return builder;
+    }
+
+    /**
+     * Sets every movie's rating from the index, clearing ratings of movies not in it.
+     *
+     * <p>Works copy-on-write: a builder started from an existing list leaves it untouched,
+     * and returns it as is if no rating changed.
+     *
+     * @return the rated Trakt movies
+     */
+    private static TraktMovieList applyRatings(TraktMovieList.Builder movies, LongIntHashMap ratings) {
+        for (int i = 0; i < movies.size(); i++) {
+            Long traktId = movies.traktId(i);
+            if (traktId != null) {
+                int rating = ratings.get(traktId);
+                movies.setUserRating(i, rating != ratings.missingValue() ? rating : null);
+            }
+        }
+        return movies.build();
+    }
+
+    /**
+     * @return the movies' current ratings, indexed by Trakt ID like {@link TraktService#getRatingsIndex(String, String)}
      */
-    public User addManualMovie(User user, Movie movie) {
-        if (movie != null) {
-            user.addManualMovie(movie);
-            logger.info("Added manual movie '{}' to user: {}", movie.getTitle(), user.getName());
+    private static LongIntHashMap ratingsOf(TraktMovieList movies) {
+        LongIntHashMap ratings = new LongIntHashMap(movies.size(), 0);
+        for (int i = 0; i < movies.size(); i++) {
+            Long traktId = movies.getTraktId(i);
+            Integer rating = movies.getUserRating(i);
+            if (traktId != null && rating != null) {
+                ratings.put(traktId, rating);
+            }
+        }
+        return ratings;
+    }
+
+    /**
+     * Publishes a {@link MoviesDiscoveredEvent} if the user's Trakt movies include movies
+     * catalogued since the catalog had {@code catalogSize} movies.
+     *
+     * @return the user
+     */
+    private User publishDiscovered(User user, int catalogSize) {
+        TraktMovieList movies = user.getTraktMovies();
+        int[] discovered = new int[movies.size()];
+        int count = 0;
+        for (int i = 0; i < movies.size(); i++) {
+            if (movies.getCatalogIndex(i) >= catalogSize) {
+                discovered[count++] = movies.getCatalogIndex(i);
+            }
+        }
+        if (count > 0) {
+            events.publishEvent(new MoviesDiscoveredEvent(user, Arrays.copyOf(discovered, count)));
         }
         return user;
     }
+
+    private static User checkpoint(User user, OffsetDateTime watchedAt, OffsetDateTime ratedAt) {
+        return user.withTraktAccount(user.getTraktAccount().withSyncCheckpoint(watchedAt, ratedAt));
+    }
+
+    private static boolean sameInstant(OffsetDateTime a, OffsetDateTime b) {
+        return a == null ? b == null : b != null && a.isEqual(b);
+    }
     
     /**
-     * Removes a manual movie from a user's watched list.
+     * Syncs Trakt movies for a user and returns the updated user.
+     * This is a convenience method that doesn't modify the original user object.
      * 
-     * @param user the user to remove the movie from
-     * @param movie the movie to remove
-     * @return true if the movie was removed, false if not found
+     * @param user the user to sync movies for
+     * @return a new user object with synced movies
      */
-    public boolean removeManualMovie(User user, Movie movie) {
-        boolean removed = user.removeManualMovie(movie);
-        if (removed) {
-            logger.info("Removed manual movie '{}' from user: {}", movie.getTitle(), user.getName());
-        }
-        return removed;
+    public Mono<User> syncTraktMoviesCopy(User user) {
+        // Users are immutable, so the sync never modifies the original; run it directly
+        // rather than joining a shared in-flight sync
+        return doSync(user);
     }
     
     /**
@@ -126,4 +367,22 @@ public class MovieSyncService {
             "allMovies", user.getAllWatchedMovies()
         );
     }
+
+    @Override
+    public String getMetricsName() {
+        return "movieSync";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("inFlight", inFlight.size());
+        metrics.put("started", started.sum());
+        metrics.put("coalesced", coalesced.sum());
+        metrics.put("freshHits", freshHits.sum());
+        metrics.put("failed", failed.sum());
+        metrics.put("traktCalls", traktCalls.sum());
+        metrics.put("syncMillis", syncMillis.sum());
+        return metrics;
+    }
 }
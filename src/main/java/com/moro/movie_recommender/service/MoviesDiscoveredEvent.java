@@ -0,0 +1,12 @@
+package com.moro.movie_recommender.service;
+
+import com.moro.movie_recommender.dto.User;
+
+/**
+ * Published by {@link MovieSyncService} when a sync added movies to the shared
+ * {@link com.moro.movie_recommender.dto.MovieCatalog} that it did not hold before.
+ *
+ * @param user            the synced user, whose Trakt movies include the new ones
+ * @param catalogIndexes  catalog indexes of the new movies
+ */
+public record MoviesDiscoveredEvent(User user, int[] catalogIndexes) {}
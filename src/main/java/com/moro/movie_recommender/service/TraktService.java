@@ -1,16 +1,28 @@
 package com.moro.movie_recommender.service;
 
 import com.moro.movie_recommender.config.TraktProperties;
+import com.moro.movie_recommender.dto.trakt.TraktLastActivitiesDTO;
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+import com.moro.movie_recommender.dto.trakt.TraktRatingDTO;
 import com.moro.movie_recommender.dto.trakt.TraktWatchedItemDTO;
+import com.moro.movie_recommender.service.trakt.TraktCallTrace;
+import com.moro.movie_recommender.service.trakt.TraktPager;
+import com.moro.movie_recommender.service.trakt.TraktRateGovernor;
+import com.moro.movie_recommender.service.trakt.TraktRatingsDecoder;
+import com.moro.movie_recommender.service.trakt.TraktResponseCache;
+import com.moro.movie_recommender.util.LongIntHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -24,23 +36,49 @@ import java.util.Map;
 public class TraktService {
 
     private static final Logger logger = LoggerFactory.getLogger(TraktService.class);
+
+    /** Sentinel used in the ratings index for "no rating". */
+    private static final int NO_RATING = 0;
+
+    private static final String WATCHED_MOVIES_URI = "/sync/watched/movies?extended=full";
+    private static final String RATINGS_URI = "/sync/ratings/movies";
     
     private final WebClient webClient;
     private final TraktProperties props;
+    private final TraktResponseCache responseCache;
+    private final TraktPager pager;
 
     /**
      * Constructs a WebClient pre-configured with Trakt base URL and headers.
      *
-     * @param builder shared WebClient builder
-     * @param props   Trakt configuration properties
+     * @param builder       shared WebClient builder
+     * @param props         Trakt configuration properties
+     * @param responseCache conditional-request cache for list endpoints
+     * @param rateGovernor  app-wide rate limiter and retry policy applied to every request
      */
-    public TraktService(WebClient.Builder builder, TraktProperties props) {
+    public TraktService(WebClient.Builder builder, TraktProperties props, TraktResponseCache responseCache,
+                        TraktRateGovernor rateGovernor) {
         this.props = props;
+        this.responseCache = responseCache;
         this.webClient = builder
                 .baseUrl(props.getApiBase())
                 .defaultHeader("trakt-api-key", props.getClientId())
                 .defaultHeader("trakt-api-version", props.getApiVersion())
+                .filter(rateGovernor.filter())
+                .filter(traceCalls())
                 .build();
+        this.pager = new TraktPager(webClient, responseCache, props.getPagination().getPageSize(), props.getPagination().getPrefetch());
+    }
+
+    /**
+     * Records each outgoing request against the {@link TraktCallTrace} in the subscriber
+     * context, if any, so syncs can report how many Trakt calls they made.
+     */
+    private static ExchangeFilterFunction traceCalls() {
+        return (request, next) -> Mono.deferContextual(ctx -> {
+            ctx.<TraktCallTrace>getOrEmpty(TraktCallTrace.CONTEXT_KEY).ifPresent(TraktCallTrace::recordCall);
+            return next.exchange(request);
+        });
     }
 
     /**
@@ -70,42 +108,81 @@ public class TraktService {
      * {@code GET /sync/watched/movies?extended=full}.
      * Also fetches user ratings and merges them into the movie objects.
      *
+     * <p>Both endpoints are requested exactly once, conditionally: if Trakt answers
+     * {@code 304 Not Modified}, the previously decoded list is reused from
+     * {@link TraktResponseCache}. Ratings are indexed by Trakt ID into a primitive map and
+     * joined onto the watched items in a single pass.
+     *
+     * <p>With {@code trakt.pagination.enabled}, both lists are ingested page by page
+     * (see {@link TraktPager}) and watched items are streamed through the join as they
+     * are decoded, so memory use does not grow with the size of the library.
+     *
+     * @param userName    user the lists belong to, whose response cache entries they use
      * @param accessToken bearer token obtained via OAuth exchange
      * @return a Flux streaming watched items mapped to DTOs with ratings
      */
-    public Flux<TraktWatchedItemDTO> getWatchedMovies(String accessToken) {
-        // Fetch both watched movies and ratings in parallel
-        Flux<TraktWatchedItemDTO> watchedMovies = webClient.get()
-                .uri("/sync/watched/movies?extended=full")
+    public Flux<TraktWatchedItemDTO> getWatchedMovies(String userName, String accessToken) {
+        if (props.getPagination().isEnabled()) {
+            // Ratings index is small (primitive map); build it first, then stream watched pages through it
+            return indexRatings(getUserRatings(userName, accessToken))
+                    .flatMapMany(ratingsIndex -> getWatchedItems(userName, accessToken)
+                            .map(watchedItem -> applyRating(watchedItem, ratingsIndex)));
+        }
+
+        // Fetch both watched movies and ratings in parallel, one (conditional) request each
+        Mono<List<TraktWatchedItemDTO>> watchedMovies = getWatchedItems(userName, accessToken).collectList();
+
+        Mono<LongIntHashMap> ratingsIndex = indexRatings(getUserRatings(userName, accessToken));
+
+        return Mono.zip(watchedMovies, ratingsIndex)
+                .flatMapIterable(tuple -> joinRatings(tuple.getT1(), tuple.getT2()));
+    }
+
+    /**
+     * Fetches the user's watched movies like {@link #getWatchedMovies(String, String)}, but
+     * without ratings: every movie's user rating is left unset.
+     *
+     * @param userName    user the list belongs to, whose response cache entries it uses
+     * @param accessToken bearer token obtained via OAuth exchange
+     * @return a Flux streaming watched items as returned by Trakt; they may be shared with
+     *         {@link TraktResponseCache} and must not be modified
+     */
+    public Flux<TraktWatchedItemDTO> getWatchedItems(String userName, String accessToken) {
+        if (props.getPagination().isEnabled()) {
+            return pager.fetchAll(WATCHED_MOVIES_URI, userName, accessToken,
+                    response -> response.bodyToFlux(TraktWatchedItemDTO.class));
+        }
+        return responseCache
+                .fetch(webClient, WATCHED_MOVIES_URI, userName, accessToken,
+                        response -> response.bodyToFlux(TraktWatchedItemDTO.class))
+                .flatMapIterable(TraktResponseCache.Page::items);
+    }
+
+    /**
+     * Fetches the timestamps of the user's most recent activity at
+     * {@code GET /sync/last_activities}. A single small request that tells
+     * whether watched history or ratings changed since a previous sync.
+     *
+     * @param accessToken bearer token obtained via OAuth exchange
+     * @return a Mono emitting the last-activities response
+     */
+    public Mono<TraktLastActivitiesDTO> getLastActivities(String accessToken) {
+        return webClient.get()
+                .uri("/sync/last_activities")
                 .headers(h -> h.setBearerAuth(accessToken))
                 .retrieve()
-                .bodyToFlux(TraktWatchedItemDTO.class);
-
-        // Fetch all ratings once and cache them
-        Mono<List<Map<String, Object>>> ratingsMono = getUserRatings(accessToken).collectList();
-
-        // Combine watched movies with ratings
-        return watchedMovies.flatMap(watchedItem -> 
-            ratingsMono.map(ratingsList -> {
-                // Find matching rating for this movie using trakt ID
-                Long movieTraktId = watchedItem.getMovie().getIds().getTrakt();
-                Integer userRating = findUserRatingForMovie(ratingsList, movieTraktId);
-                
-                // Set the user rating on the movie (null if no rating found)
-                watchedItem.getMovie().setUserRating(userRating);
-                
-                // Log rating status for debugging
-                if (userRating != null) {
-                    logger.debug("Found rating {} for movie '{}' (Trakt ID: {})", 
-                        userRating, watchedItem.getMovie().getTitle(), movieTraktId);
-                } else {
-                    logger.debug("No rating found for movie '{}' (Trakt ID: {})", 
-                        watchedItem.getMovie().getTitle(), movieTraktId);
-                }
-                
-                return watchedItem;
-            })
-        );
+                .bodyToMono(TraktLastActivitiesDTO.class);
+    }
+
+    /**
+     * Fetches the user's ratings and indexes them by movie Trakt ID.
+     *
+     * @param userName    user the list belongs to, whose response cache entries it uses
+     * @param accessToken bearer token obtained via OAuth exchange
+     * @return a Mono emitting a Trakt ID to rating (1-10) index; absent movies map to 0
+     */
+    public Mono<LongIntHashMap> getRatingsIndex(String userName, String accessToken) {
+        return indexRatings(getUserRatings(userName, accessToken));
     }
 
     /**
@@ -121,78 +198,68 @@ public class TraktService {
     }
 
     /**
-     * Finds the user rating for a specific movie by its Trakt ID.
-     * Returns null if no rating is found.
+     * Sets the user rating on each watched movie from the ratings index (null if unrated).
      *
-     * @param ratingsList list of all user ratings
-     * @param movieTraktId the Trakt ID of the movie to find rating for
-     * @return the user rating (1-10) or null if not found
+     * @param watchedItems watched items as returned by Trakt
+     * @param ratingsIndex Trakt ID to rating index built by {@link #indexRatings(Flux)}
+     * @return the items with ratings applied; the given items are left unchanged
      */
-    private Integer findUserRatingForMovie(List<Map<String, Object>> ratingsList, Long movieTraktId) {
-        if (movieTraktId == null || ratingsList == null) {
-            return null;
+    private List<TraktWatchedItemDTO> joinRatings(List<TraktWatchedItemDTO> watchedItems, LongIntHashMap ratingsIndex) {
+        List<TraktWatchedItemDTO> rated = new ArrayList<>(watchedItems.size());
+        for (TraktWatchedItemDTO watchedItem : watchedItems) {
+            rated.add(applyRating(watchedItem, ratingsIndex));
+        }
+        logger.debug("Joined {} ratings onto {} watched movies", ratingsIndex.size(), watchedItems.size());
+        return rated;
+    }
+
+    private TraktWatchedItemDTO applyRating(TraktWatchedItemDTO watchedItem, LongIntHashMap ratingsIndex) {
+        TraktMovieDTO movie = watchedItem.getMovie();
+        if (movie == null) {
+            return watchedItem;
         }
+        Long movieTraktId = movie.getIds() != null ? movie.getIds().getTrakt() : null;
+        int rating = movieTraktId != null ? ratingsIndex.get(movieTraktId) : NO_RATING;
+        // Watched items may come from the response cache, shared with other requests, and their
+        // movies may already be held by stored users, so neither is modified in place
+        return watchedItem.withMovie(movie.withUserRating(rating != NO_RATING ? rating : null));
+    }
 
-        return ratingsList.stream()
-                .filter(rating -> {
-                    try {
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> movie = (Map<String, Object>) rating.get("movie");
-                        if (movie == null) return false;
-                        
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> ids = (Map<String, Object>) movie.get("ids");
-                        if (ids == null) return false;
-                        
-                        Object traktIdObj = ids.get("trakt");
-                        if (traktIdObj == null) return false;
-                        
-                        // Handle both Integer and Long trakt IDs
-                        Long traktId = null;
-                        if (traktIdObj instanceof Integer) {
-                            traktId = ((Integer) traktIdObj).longValue();
-                        } else if (traktIdObj instanceof Long) {
-                            traktId = (Long) traktIdObj;
-                        }
-                        
-                        return movieTraktId.equals(traktId);
-                    } catch (Exception e) {
-                        // Log error but continue processing other ratings
-                        logger.debug("Error parsing rating for movie ID {}: {}", movieTraktId, e.getMessage());
-                        return false;
-                    }
-                })
-                .map(rating -> {
-                    try {
-                        Object ratingObj = rating.get("rating");
-                        if (ratingObj instanceof Integer) {
-                            return (Integer) ratingObj;
-                        } else if (ratingObj instanceof Long) {
-                            return ((Long) ratingObj).intValue();
-                        }
-                        return null;
-                    } catch (Exception e) {
-                        logger.debug("Error extracting rating value: {}", e.getMessage());
-                        return null;
-                    }
-                })
-                .filter(rating -> rating != null && rating >= 1 && rating <= 10)
-                .findFirst()
-                .orElse(null);
+    /**
+     * Builds a Trakt ID to rating index from the ratings stream.
+     * Entries with a rating outside 1-10 are skipped.
+     *
+     * @param ratings ratings as returned by {@link #getUserRatings(String, String)}
+     * @return a Mono emitting the populated index
+     */
+    private Mono<LongIntHashMap> indexRatings(Flux<TraktRatingDTO> ratings) {
+        return ratings.collect(() -> new LongIntHashMap(256, NO_RATING), (index, rating) -> {
+            if (rating.getRating() >= 1 && rating.getRating() <= 10) {
+                index.put(rating.getTraktId(), rating.getRating());
+            }
+        });
     }
 
     /**
      * Fetches the user's movie ratings from Trakt at
      * {@code GET /sync/ratings/movies}.
      *
+     * <p>The body is decoded incrementally by {@link TraktRatingsDecoder}, which reads only
+     * the Trakt ID, rating and {@code rated_at} of each entry. Requests are conditional
+     * (see {@link TraktResponseCache}); an unchanged list is served from cache.
+     *
+     * @param userName    user the list belongs to, whose response cache entries it uses
      * @param accessToken bearer token obtained via OAuth exchange
-     * @return a Flux streaming rating objects
+     * @return a Flux streaming typed ratings
      */
-    public Flux<Map<String, Object>> getUserRatings(String accessToken) {
-        return webClient.get()
-                .uri("/sync/ratings/movies")
-                .headers(h -> h.setBearerAuth(accessToken))
-                .retrieve()
-                .bodyToFlux(new ParameterizedTypeReference<Map<String, Object>>() {});
+    public Flux<TraktRatingDTO> getUserRatings(String userName, String accessToken) {
+        if (props.getPagination().isEnabled()) {
+            return pager.fetchAll(RATINGS_URI, userName, accessToken,
+                    response -> response.bodyToFlux(DataBuffer.class).transform(TraktRatingsDecoder::decode));
+        }
+        return responseCache
+                .fetch(webClient, RATINGS_URI, userName, accessToken,
+                        response -> response.bodyToFlux(DataBuffer.class).transform(TraktRatingsDecoder::decode))
+                .flatMapIterable(TraktResponseCache.Page::items);
     }
 }
@@ -0,0 +1,11 @@
+package com.moro.movie_recommender.service;
+
+import com.moro.movie_recommender.dto.User;
+
+/**
+ * Published by {@link UserService} after a change to a user is stored.
+ *
+ * @param userName the user's name
+ * @param user     the stored user, or null if the user was deleted
+ */
+public record UserChangedEvent(String userName, User user) {}
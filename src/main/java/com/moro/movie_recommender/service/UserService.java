@@ -1,29 +1,48 @@
 package com.moro.movie_recommender.service;
 
 import com.moro.movie_recommender.dto.ManualMovie;
-import com.moro.movie_recommender.dto.Movie;
-import com.moro.movie_recommender.dto.TraktAccount;
 import com.moro.movie_recommender.dto.User;
-import com.moro.movie_recommender.dto.trakt.TraktIdsDTO;
-import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+import com.moro.movie_recommender.service.storage.UserMutation;
+import com.moro.movie_recommender.service.storage.UserRepository;
+import com.moro.movie_recommender.service.storage.VersionConflictException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
-import java.util.HashMap;
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
 
 /**
  * Service for managing users and their Trakt accounts.
- * In a real application, this would use a database, but for now
- * we'll use in-memory storage for simplicity.
+ *
+ * <p>Users live in the configured {@link UserRepository}: by default the local store with its
+ * write-ahead log, or a shared database. Every change is expressed as a {@link UserMutation},
+ * so users, linked accounts, manual movies and sync results survive restarts either way.
+ *
+ * <p>Every stored change is announced with a {@link UserChangedEvent}.
  */
 @Service
 public class UserService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserService.class);
+
+    /** Attempts of an optimistic update before the conflict is reported to the caller. */
+    private static final int MAX_UPDATE_ATTEMPTS = 8;
     
-    // In-memory storage - in production, this would be a database
-    private final Map<String, User> users = new ConcurrentHashMap<>();
+    private final UserRepository repository;
+    private final ApplicationEventPublisher events;
+
+    public UserService(UserRepository repository, ApplicationEventPublisher events) {
+        this.repository = repository;
+        this.events = events;
+    }
     
     /**
      * Creates a new user with the given name.
@@ -32,13 +51,9 @@ public class UserService {
      * @return the created user
      */
     public Mono<User> createUser(String name) {
-        // Prevent overwriting existing users; ensure atomicity via putIfAbsent
-        User newUser = new User(name);
-        User existing = users.putIfAbsent(name, newUser);
-        if (existing != null) {
-            return Mono.error(new IllegalStateException("User already exists: " + name));
-        }
-        return Mono.just(newUser);
+        // Prevent overwriting existing users; the repository creates only if the name is free
+        return apply(new UserMutation.Create(name))
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("User already exists: " + name)));
     }
     
     /**
@@ -48,8 +63,7 @@ public class UserService {
      * @return the user or empty if not found
      */
     public Mono<User> getUser(String name) {
-        User user = users.get(name);
-        return user != null ? Mono.just(user) : Mono.empty();
+        return repository.findByName(name);
     }
     
     /**
@@ -61,11 +75,7 @@ public class UserService {
      * @return the updated user or empty if user not found
      */
     public Mono<User> linkTraktAccount(String userName, String accessToken, String refreshToken) {
-        return getUser(userName)
-                .map(user -> {
-                    user.linkTraktAccount(accessToken, refreshToken);
-                    return user;
-                });
+        return apply(new UserMutation.LinkTrakt(userName, accessToken, refreshToken, OffsetDateTime.now()));
     }
     
     /**
@@ -75,39 +85,127 @@ public class UserService {
      * @return the updated user or empty if user not found
      */
     public Mono<User> unlinkTraktAccount(String userName) {
-        return getUser(userName)
-                .map(user -> {
-                    user.unlinkTraktAccount();
-                    return user;
-                });
+        return apply(new UserMutation.UnlinkTrakt(userName));
     }
 
     /**
-     * Replaces the stored user with the provided instance if present.
-     * Returns empty if the user does not exist.
+     * Adds a manually entered movie to a user's watched list.
+     *
+     * @param userName the user's name
+     * @param movie    the movie to add
+     * @return the updated user or empty if user not found
      */
-    public Mono<User> replaceUser(User user) {
-        if (user == null || user.getName() == null) {
-            return Mono.empty();
-        }
-        return getUser(user.getName())
-                .map(existing -> {
-                    users.put(user.getName(), user);
-                    return user;
-                });
+    public Mono<User> addManualMovie(String userName, ManualMovie movie) {
+        return apply(new UserMutation.AddManualMovie(userName, movie))
+                .doOnNext(user -> logger.info("Added manual movie '{}' to user: {}", movie.getTitle(), userName));
+    }
+
+    /**
+     * Removes a manually entered movie, matched by title and year, from a user's watched list.
+     *
+     * @param userName the user's name
+     * @param title    the movie title
+     * @param year     the movie year
+     * @return true if the movie was removed, false if the user or movie was not found
+     */
+    public Mono<Boolean> removeManualMovie(String userName, String title, Integer year) {
+        return apply(new UserMutation.RemoveManualMovie(userName, title, year))
+                .doOnNext(user -> logger.info("Removed manual movie '{}' from user: {}", title, userName))
+                .hasElement();
+    }
+
+    /**
+     * Updates a user with optimistic concurrency: {@code update} is applied to the current
+     * version of the user and the result is stored only if no other write happened in
+     * between; otherwise the update is re-applied to the newer version. No lock is held
+     * while {@code update} runs.
+     *
+     * @param userName the user's name
+     * @param update   computes the new user from the current one; returning the argument
+     *                 itself means no change. May run more than once.
+     * @return the stored user, stamped with its new version, or empty if user not found; a
+     *         {@link VersionConflictException} error if every attempt met a conflict
+     */
+    public Mono<User> updateUser(String userName, UnaryOperator<User> update) {
+        return repository.findByName(userName)
+                .flatMap(current -> {
+                    User updated = update.apply(current);
+                    if (updated == current) {
+                        return Mono.just(current);
+                    }
+                    return repository.compareAndApply(new UserMutation.Replace(updated), current.getVersion())
+                            .doOnNext(this::publishChanged);
+                })
+                .retryWhen(Retry.max(MAX_UPDATE_ATTEMPTS - 1)
+                        .filter(VersionConflictException.class::isInstance)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    /**
+     * Stores the outcome of a Trakt sync. The sync ran against an earlier version of the user,
+     * so only its Trakt movies and account checkpoint are merged into the current version;
+     * manual movies added meanwhile are kept. If the Trakt account was unlinked or replaced
+     * during the sync, the stale result is dropped.
+     *
+     * @param synced the user returned by the sync
+     * @return the stored user, or empty if user not found
+     */
+    public Mono<User> saveSyncResult(User synced) {
+        return updateUser(synced.getName(), current -> {
+            if (current == synced
+                    || !Objects.equals(current.getTraktAccessToken(), synced.getTraktAccessToken())) {
+                return current;
+            }
+            if (current.getTraktMovies() == synced.getTraktMovies()
+                    && current.getTraktAccount() == synced.getTraktAccount()) {
+                return current; // nothing new from Trakt
+            }
+            return current.withTraktMovies(synced.getTraktMovies()).withTraktAccount(synced.getTraktAccount());
+        });
     }
     
     /**
      * Gets all users.
      * 
-     * @return all users
+     * @return all users, read-only
      */
     public Mono<Map<String, User>> getAllUsers() {
-        // Create a deep, read-only snapshot so callers cannot mutate internal state
-        Map<String, User> snapshotSource = new HashMap<>(users); // weakly consistent snapshot
-        Map<String, User> copies = new HashMap<>(snapshotSource.size());
-        snapshotSource.forEach((name, user) -> copies.put(name, deepCopyUser(user)));
-        return Mono.just(Map.copyOf(copies));
+        return repository.findAll();
+    }
+    
+    /**
+     * Gets one page of users in name order.
+     *
+     * <p>The page costs {@code O(log n + limit)} however many users there are: the local
+     * store seeks its sorted name index, the database its primary key.
+     *
+     * @param after the last name of the previous page, or null for the first page
+     * @param limit maximum number of users to return
+     * @return users whose names sort after {@code after}
+     */
+    public Mono<List<User>> getUsersPage(String after, int limit) {
+        return repository.findPage(after, limit);
+    }
+
+    /**
+     * Streams users in name order, fetching them only as they are requested downstream.
+     * Users created or deleted while the stream runs may or may not be included.
+     *
+     * @param after name to start after, or null to start with the first user
+     * @return the users
+     */
+    public Flux<User> streamUsers(String after) {
+        return repository.findAllAfter(after);
+    }
+
+    /**
+     * Gets the names of all users with a linked Trakt account,
+     * without copying any user state.
+     *
+     * @return names of Trakt-linked users
+     */
+    public Mono<List<String>> getTraktLinkedUserNames() {
+        return repository.findTraktLinkedNames().collectList();
     }
     
     /**
@@ -117,56 +215,16 @@ public class UserService {
      * @return true if user was deleted, false if not found
      */
     public Mono<Boolean> deleteUser(String userName) {
-        User removed = users.remove(userName);
-        return Mono.just(removed != null);
-    }
-
-    // --------- Defensive copy helpers ---------
-    private User deepCopyUser(User original) {
-        if (original == null) return null;
-        List<Movie> manualCopy = original.getManualMovies().stream()
-                .map(this::copyMovie)
-                .toList();
-        List<Movie> traktCopy = original.getTraktMovies().stream()
-                .map(this::copyMovie)
-                .toList();
-        TraktAccount accountCopy = copyTraktAccount(original.getTraktAccount());
-        return new User(original.getName(), manualCopy, traktCopy, accountCopy);
+        return repository.apply(new UserMutation.Delete(userName))
+                .doOnNext(deleted -> events.publishEvent(new UserChangedEvent(userName, null)))
+                .hasElement();
     }
 
-    private Movie copyMovie(Movie m) {
-        if (m == null) return null;
-        if (m instanceof ManualMovie mm) {
-            return new ManualMovie(mm.getTitle(), mm.getYear(), mm.getUserRating());
-        }
-        if (m instanceof TraktMovieDTO tm) {
-            TraktMovieDTO copy = new TraktMovieDTO();
-            copy.setTitle(tm.getTitle());
-            copy.setYear(tm.getYear());
-            copy.setUserRating(tm.getUserRating());
-            TraktIdsDTO ids = tm.getIds();
-            if (ids != null) {
-                TraktIdsDTO idsCopy = new TraktIdsDTO();
-                idsCopy.setTrakt(ids.getTrakt());
-                idsCopy.setImdb(ids.getImdb());
-                idsCopy.setTmdb(ids.getTmdb());
-                idsCopy.setSlug(ids.getSlug());
-                copy.setIds(idsCopy);
-            }
-            return copy;
-        }
-        // Fallback: snapshot using a ManualMovie with common fields only
-        return new ManualMovie(m.getTitle(), m.getYear(), m.getUserRating());
+    private Mono<User> apply(UserMutation mutation) {
+        return repository.apply(mutation).doOnNext(this::publishChanged);
     }
 
-    private TraktAccount copyTraktAccount(TraktAccount acct) {
-        if (acct == null) return null;
-        TraktAccount c = new TraktAccount();
-        c.setAccessToken(acct.getAccessToken());
-        c.setRefreshToken(acct.getRefreshToken());
-        c.setLinkedAt(acct.getLinkedAt());
-        c.setTraktUsername(acct.getTraktUsername());
-        c.setTraktUserId(acct.getTraktUserId());
-        return c;
+    private void publishChanged(User user) {
+        events.publishEvent(new UserChangedEvent(user.getName(), user));
     }
 }
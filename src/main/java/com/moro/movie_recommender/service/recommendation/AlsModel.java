@@ -0,0 +1,420 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import com.moro.movie_recommender.config.RecommendationProperties;
+import com.moro.movie_recommender.dto.TraktMovieList;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * A matrix factorization of the user x movie matrix by alternating least squares: every user
+ * and every movie gets a vector of {@code factors} floats, and a user's predicted affinity for
+ * a movie is the dot product of the two. The vectors of all users and all movies are each
+ * stored in one contiguous array, row {@code r} at {@code r * factors}.
+ *
+ * <p>Two objectives, selected by {@code recommendations.als.implicit}:
+ * <ul>
+ *   <li>implicit (Hu, Koren and Volinsky): every movie a user watched is a preference of 1,
+ *       every other movie 0, weighted by a confidence of {@code 1 + alpha * strength} where
+ *       strength is 1 for a watched movie and {@code 1 + rating / 10} for a rated one, so a
+ *       rating, even a low one, always adds confidence to the watch</li>
+ *   <li>explicit: only ratings are fitted, with the regularization scaled by each row's
+ *       number of ratings</li>
+ * </ul>
+ *
+ * <p>Users who were not part of training are folded in: their vector is the least-squares
+ * solution against the trained movie vectors, exactly one user half-step of training.
+ * Immutable once built apart from the folded-in users.
+ */
+final class AlsModel {
+
+    /** Rows solved per fork-join task. */
+    private static final int BLOCK = 256;
+
+    final int factors;
+    final int itemCount;
+    final float[] userFactors;
+    final float[] itemFactors;
+    /** {@link #itemFactors} in the {@link ScoringKernel} layout, for scoring. */
+    private final float[] packedItemFactors;
+    /** Most watched movies, for users the model knows too little about. */
+    final int[] popular;
+    private final Map<String, Integer> userRows;
+    private final Solver solver;
+    /** Gram matrices of the movie and user vectors, reused by every implicit fold-in. */
+    private final double[] itemGram;
+    private final double[] userGram;
+    /** Largest movie vector norm, the common norm of {@link #itemEmbedding}s. */
+    private final float maxItemNorm;
+    private final Map<String, float[]> foldedIn = new ConcurrentHashMap<>();
+
+    private AlsModel(int factors, int itemCount, float[] userFactors, float[] itemFactors, int[] popular,
+                     Map<String, Integer> userRows, Solver solver) {
+        this.factors = factors;
+        this.itemCount = itemCount;
+        this.userFactors = userFactors;
+        this.itemFactors = itemFactors;
+        this.packedItemFactors = ScoringKernel.get().pack(itemFactors, itemCount, factors);
+        this.popular = popular;
+        this.userRows = userRows;
+        this.solver = solver;
+        this.itemGram = solver.implicit ? gram(itemFactors, itemCount, factors) : null;
+        this.userGram = solver.implicit ? gram(userFactors, userFactors.length / factors, factors) : null;
+        double maxNorm = 0;
+        for (int item = 0; item < itemCount; item++) {
+            maxNorm = Math.max(maxNorm, norm(itemFactors, item * factors, factors));
+        }
+        this.maxItemNorm = (float) maxNorm;
+    }
+
+    static AlsModel empty(int factors) {
+        return new AlsModel(factors, 0, new float[0], new float[0], new int[0], Map.of(),
+                new Solver(factors, true, 0, 0));
+    }
+
+    int userCount() {
+        return userRows.size();
+    }
+
+    int foldedInCount() {
+        return foldedIn.size();
+    }
+
+    /**
+     * Trains a model, each half-step solving blocks of {@code BLOCK} users or movies in
+     * parallel on the common fork-join pool.
+     *
+     * @param popular most watched movies, for cold start
+     */
+    static AlsModel train(Interactions data, RecommendationProperties.Als config, int[] popular) {
+        int f = config.getFactors();
+        int users = data.userCount();
+        int items = data.itemCount;
+        Solver solver = new Solver(f, config.isImplicit(), (float) config.getAlpha(), (float) config.getRegularization());
+
+        float[] userFactors = new float[users * f];
+        float[] itemFactors = new float[items * f];
+        Random random = new Random(config.getSeed());
+        float scale = (float) (1 / Math.sqrt(f));
+        for (int k = 0; k < itemFactors.length; k++) {
+            itemFactors[k] = (float) random.nextGaussian() * scale * 0.1f;
+        }
+        for (int iteration = 0; iteration < config.getIterations(); iteration++) {
+            solveAll(solver, users, data.userOffsets, data.userItems, data.userRatings, itemFactors, items, userFactors);
+            solveAll(solver, items, data.itemOffsets, data.itemUsers, data.itemRatings, userFactors, users, itemFactors);
+        }
+
+        Map<String, Integer> userRows = new HashMap<>(users * 2);
+        for (int u = 0; u < users; u++) {
+            userRows.put(data.userNames[u], u);
+        }
+        return new AlsModel(f, items, userFactors, itemFactors, popular, userRows, solver);
+    }
+
+    /**
+     * @return the user's vector: trained, or folded in since training; null if the model has
+     *         neither or training had nothing to fit for the user
+     */
+    float[] userVector(String name) {
+        Integer row = userRows.get(name);
+        if (row != null) {
+            float[] vector = Arrays.copyOfRange(userFactors, row * factors, (row + 1) * factors);
+            for (float value : vector) {
+                if (value != 0) {
+                    return vector;
+                }
+            }
+            return null;
+        }
+        return foldedIn.get(name);
+    }
+
+    /**
+     * Solves a user's vector against the trained movie vectors and keeps it until the next
+     * training, which includes the user properly.
+     *
+     * @return the vector, or null if none of the movies are known to the model
+     */
+    float[] foldIn(String name, TraktMovieList movies) {
+        int[] items = new int[movies.size()];
+        float[] ratings = new float[movies.size()];
+        int count = 0;
+        for (int k = 0; k < movies.size(); k++) {
+            int item = movies.getCatalogIndex(k);
+            if (item < itemCount) {
+                Integer rating = movies.getUserRating(k);
+                items[count] = item;
+                ratings[count++] = rating != null ? rating : 0;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        float[] vector = new float[factors];
+        if (!solver.solve(items, ratings, 0, count, itemFactors, itemGram, vector, 0, new Scratch(factors))) {
+            return null;
+        }
+        foldedIn.put(name, vector);
+        return vector;
+    }
+
+    /**
+     * Solves a movie's vector against one user's vector, for a movie that was not part of
+     * training: the movie half-step of training with the user as its only viewer.
+     *
+     * @param rating the user's rating of the movie, or 0 if unrated
+     * @return the vector, or null if there is nothing to fit
+     */
+    float[] foldInItem(float[] userVector, float rating) {
+        float[] vector = new float[factors];
+        if (!solver.solve(new int[]{0}, new float[]{rating}, 0, 1, userVector, userGram, vector, 0, new Scratch(factors))) {
+            return null;
+        }
+        return vector;
+    }
+
+    /**
+     * @return the trained movie's vector, or null if nobody watched it
+     */
+    float[] itemVector(int item) {
+        int base = item * factors;
+        return norm(itemFactors, base, factors) > 0 ? Arrays.copyOfRange(itemFactors, base, base + factors) : null;
+    }
+
+    /**
+     * Maps a movie vector to one more dimension so all movies have the same norm: the extra
+     * component is {@code sqrt(maxNorm² - |v|²)}, 0 for vectors longer than any trained movie.
+     * Inner products with {@link #queryEmbedding}s are unchanged, so the nearest neighbours of
+     * a query among the embeddings are the movies with the highest score.
+     */
+    float[] itemEmbedding(float[] itemVector) {
+        float[] embedding = Arrays.copyOf(itemVector, factors + 1);
+        double norm = norm(itemVector, 0, factors);
+        embedding[factors] = (float) Math.sqrt(Math.max(0, (double) maxItemNorm * maxItemNorm - norm * norm));
+        return embedding;
+    }
+
+    /**
+     * @return the user vector padded with a 0 to match {@link #itemEmbedding}s
+     */
+    float[] queryEmbedding(float[] userVector) {
+        return Arrays.copyOf(userVector, factors + 1);
+    }
+
+    /**
+     * Offers every movie not marked in {@code skip} to {@code best}, scored by its dot product
+     * with the user's vector.
+     */
+    void scoreAll(float[] user, boolean[] skip, TopK best) {
+        ScoringKernel.get().topK(user, packedItemFactors, itemCount, factors, skip, best);
+    }
+
+    private static double norm(float[] vectors, int offset, int length) {
+        double sum = 0;
+        for (int k = 0; k < length; k++) {
+            sum += vectors[offset + k] * vectors[offset + k];
+        }
+        return Math.sqrt(sum);
+    }
+
+    // --- Training ---
+
+    /**
+     * Solves every row of {@code target} given the fixed {@code other} side.
+     */
+    private static void solveAll(Solver solver, int rows, int[] offsets, int[] columns, float[] ratings,
+                                 float[] other, int otherRows, float[] target) {
+        int f = solver.factors;
+        double[] gram = solver.implicit ? gram(other, otherRows, f) : null;
+        int blocks = (rows + BLOCK - 1) / BLOCK;
+        IntStream.range(0, blocks).parallel().forEach(block -> {
+            Scratch scratch = new Scratch(f);
+            int end = Math.min(rows, (block + 1) * BLOCK);
+            for (int r = block * BLOCK; r < end; r++) {
+                if (!solver.solve(columns, ratings, offsets[r], offsets[r + 1], other, gram, target, r * f, scratch)) {
+                    Arrays.fill(target, r * f, (r + 1) * f, 0);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the lower triangle of {@code VᵀV} of the row vectors, which is all the Cholesky
+     *         factorization reads
+     */
+    private static double[] gram(float[] vectors, int rows, int f) {
+        int blocks = (rows + BLOCK - 1) / BLOCK;
+        double[] gram = IntStream.range(0, blocks).parallel()
+                .mapToObj(block -> {
+                    double[] partial = new double[f * f];
+                    int end = Math.min(rows, (block + 1) * BLOCK);
+                    for (int r = block * BLOCK; r < end; r++) {
+                        addOuter(partial, vectors, r * f, f, 1);
+                    }
+                    return partial;
+                })
+                .reduce((a, b) -> {
+                    for (int k = 0; k < a.length; k++) {
+                        a[k] += b[k];
+                    }
+                    return a;
+                })
+                .orElseGet(() -> new double[f * f]);
+        return gram;
+    }
+
+    /** Adds {@code weight * v vᵀ} to the lower triangle of {@code matrix}. */
+    private static void addOuter(double[] matrix, float[] vectors, int offset, int f, double weight) {
+        for (int i = 0; i < f; i++) {
+            double vi = vectors[offset + i] * weight;
+            if (vi == 0) {
+                continue;
+            }
+            int row = i * f;
+            for (int j = 0; j <= i; j++) {
+                matrix[row + j] += vi * vectors[offset + j];
+            }
+        }
+    }
+
+    /** Per-task normal equations. */
+    private static final class Scratch {
+        final double[] a;
+        final double[] b;
+
+        Scratch(int factors) {
+            a = new double[factors * factors];
+            b = new double[factors];
+        }
+    }
+
+    /** Sets up and solves the normal equations of one row. */
+    private static final class Solver {
+        final int factors;
+        final boolean implicit;
+        final float alpha;
+        final float regularization;
+
+        Solver(int factors, boolean implicit, float alpha, float regularization) {
+            this.factors = factors;
+            this.implicit = implicit;
+            this.alpha = alpha;
+            this.regularization = regularization;
+        }
+
+        /**
+         * Solves the row whose entries are {@code columns[from..to]} against the fixed
+         * {@code other} vectors, writing the result to {@code out[outOffset..]}.
+         *
+         * @param gram {@code VᵀV} of all of {@code other}; implicit only
+         * @return false if the row has nothing to fit
+         */
+        boolean solve(int[] columns, float[] ratings, int from, int to, float[] other, double[] gram,
+                      float[] out, int outOffset, Scratch scratch) {
+            int f = factors;
+            double[] a = scratch.a;
+            double[] b = scratch.b;
+            Arrays.fill(b, 0);
+            int fitted = 0;
+            if (implicit) {
+                // (VᵀV + Vᵀ(C - I)V + λI) x = VᵀC p, with p = 1 on every watched movie
+                System.arraycopy(gram, 0, a, 0, f * f);
+                for (int k = from; k < to; k++) {
+                    float rating = ratings[k];
+                    double confidence = 1 + alpha * (1 + rating / 10f);
+                    int offset = columns[k] * f;
+                    addOuter(a, other, offset, f, confidence - 1);
+                    for (int i = 0; i < f; i++) {
+                        b[i] += confidence * other[offset + i];
+                    }
+                    fitted++;
+                }
+                if (fitted == 0) {
+                    return false;
+                }
+                for (int i = 0; i < f; i++) {
+                    a[i * f + i] += regularization;
+                }
+            } else {
+                // (VᵀV + λnI) x = Vᵀr over the n rated movies only
+                Arrays.fill(a, 0);
+                for (int k = from; k < to; k++) {
+                    float rating = ratings[k];
+                    if (rating <= 0) {
+                        continue;
+                    }
+                    int offset = columns[k] * f;
+                    addOuter(a, other, offset, f, 1);
+                    for (int i = 0; i < f; i++) {
+                        b[i] += rating * other[offset + i];
+                    }
+                    fitted++;
+                }
+                if (fitted == 0) {
+                    return false;
+                }
+                for (int i = 0; i < f; i++) {
+                    a[i * f + i] += regularization * fitted;
+                }
+            }
+            if (!cholesky(a, f)) {
+                return false;
+            }
+            substitute(a, b, f);
+            for (int i = 0; i < f; i++) {
+                out[outOffset + i] = (float) b[i];
+            }
+            return true;
+        }
+
+        /**
+         * Replaces the lower triangle of a symmetric positive definite matrix with its
+         * Cholesky factor {@code L}, {@code A = L Lᵀ}.
+         */
+        private static boolean cholesky(double[] a, int f) {
+            for (int j = 0; j < f; j++) {
+                int rowJ = j * f;
+                double diagonal = a[rowJ + j];
+                for (int k = 0; k < j; k++) {
+                    diagonal -= a[rowJ + k] * a[rowJ + k];
+                }
+                if (diagonal <= 0) {
+                    return false;
+                }
+                double pivot = Math.sqrt(diagonal);
+                a[rowJ + j] = pivot;
+                for (int i = j + 1; i < f; i++) {
+                    int rowI = i * f;
+                    double sum = a[rowI + j];
+                    for (int k = 0; k < j; k++) {
+                        sum -= a[rowI + k] * a[rowJ + k];
+                    }
+                    a[rowI + j] = sum / pivot;
+                }
+            }
+            return true;
+        }
+
+        /** Solves {@code L Lᵀ x = b} in place of {@code b}. */
+        private static void substitute(double[] l, double[] b, int f) {
+            for (int i = 0; i < f; i++) {
+                double sum = b[i];
+                for (int k = 0; k < i; k++) {
+                    sum -= l[i * f + k] * b[k];
+                }
+                b[i] = sum / l[i * f + i];
+            }
+            for (int i = f - 1; i >= 0; i--) {
+                double sum = b[i];
+                for (int k = i + 1; k < f; k++) {
+                    sum -= l[k * f + i] * b[k];
+                }
+                b[i] = sum / l[i * f + i];
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import com.moro.movie_recommender.config.RecommendationProperties;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.Recommendation;
+import com.moro.movie_recommender.dto.TraktMovieList;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.service.MetricsSource;
+import com.moro.movie_recommender.service.MoviesDiscoveredEvent;
+import com.moro.movie_recommender.service.UserService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Recommendations from an {@link AlsModel} matrix factorization of all users' synced Trakt
+ * libraries and ratings.
+ *
+ * <p>The model is retrained every {@code recommendations.rebuild-interval}, off the request
+ * path; requests always read the latest complete model. Users who joined or linked Trakt
+ * since then are folded in against it: right after linking (see {@link #foldIn(User)}), or
+ * else on their first request. A user's recommendations are the unwatched movies with the
+ * highest dot product with their vector.
+ *
+ * <p>With {@code recommendations.hnsw.enabled}, the movies are found by an approximate search
+ * of a {@link HnswIndex} over the movie vectors instead of scoring the whole catalog. Movies a
+ * sync adds to the catalog after training are folded in against the syncing user's vector and
+ * inserted into the index as they are discovered.
+ */
+@Service
+public class AlsRecommender implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlsRecommender.class);
+
+    private static final int POPULAR_ITEMS = 1000;
+
+    /** A trained model with its index, or a null index if approximate search is disabled. */
+    private record Trained(AlsModel model, HnswIndex index) {}
+
+    /** Per-thread marks of the requesting user's watched movies, cleared after each use. */
+    private static final class Scratch {
+        boolean[] watched = new boolean[0];
+
+        void ensureCapacity(int items) {
+            if (watched.length < items) {
+                watched = new boolean[items];
+            }
+        }
+    }
+
+    private final UserService userService;
+    private final RecommendationProperties props;
+    private final MovieCatalog catalog;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+    private final AtomicBoolean training = new AtomicBoolean();
+
+    private volatile Trained current;
+    private Disposable retraining;
+
+    private final LongAdder trainings = new LongAdder();
+    private final LongAdder foldIns = new LongAdder();
+    private final LongAdder discoveredMovies = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder requestNanos = new LongAdder();
+    private volatile long lastTrainingMillis;
+    private volatile long lastIndexMillis;
+
+    public AlsRecommender(UserService userService, RecommendationProperties props, MovieCatalog catalog) {
+        this.userService = userService;
+        this.props = props;
+        this.catalog = catalog;
+        this.current = new Trained(AlsModel.empty(props.getAls().getFactors()), null);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        retraining = Flux.interval(Duration.ZERO, props.getRebuildInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> train().onErrorResume(error -> {
+                    logger.error("ALS training failed: {}", error.getMessage(), error);
+                    return Mono.empty();
+                }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (retraining != null) {
+            retraining.dispose();
+        }
+    }
+
+    /**
+     * Retrains the model from every user's current library. Does nothing if training is
+     * already running.
+     *
+     * @return a Mono that completes once the new model is in use
+     */
+    public Mono<Void> train() {
+        if (!training.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        long start = System.nanoTime();
+        return userService.streamUsers(null)
+                .reduce(Interactions.builder(props.getMaxItemsPerUser()),
+                        (builder, user) -> builder.add(user.getName(), user.getTraktMovies()))
+                .publishOn(Schedulers.boundedElastic())
+                .map(builder -> {
+                    Interactions data = builder.build();
+                    AlsModel model = AlsModel.train(data, props.getAls(), data.mostWatched(POPULAR_ITEMS));
+                    lastTrainingMillis = (System.nanoTime() - start) / 1_000_000;
+                    return new Trained(model, props.getHnsw().isEnabled() ? index(model) : null);
+                })
+                .doOnNext(trained -> {
+                    current = trained;
+                    trainings.increment();
+                    logger.info("Trained ALS model: {} users, {} movies, {} factors in {} ms, indexed in {} ms",
+                            trained.model().userCount(), trained.model().itemCount, trained.model().factors,
+                            lastTrainingMillis, lastIndexMillis);
+                })
+                .doFinally(signal -> training.set(false))
+                .then();
+    }
+
+    /**
+     * Inserts every trained movie into a new index, in parallel on the common fork-join pool.
+     */
+    private HnswIndex index(AlsModel model) {
+        long start = System.nanoTime();
+        RecommendationProperties.Hnsw config = props.getHnsw();
+        HnswIndex index = new HnswIndex(model.factors + 1, config.getM(), config.getEfConstruction());
+        IntStream.range(0, model.itemCount).parallel().forEach(item -> {
+            float[] vector = model.itemVector(item);
+            if (vector != null) {
+                index.add(item, model.itemEmbedding(vector));
+            }
+        });
+        lastIndexMillis = (System.nanoTime() - start) / 1_000_000;
+        return index;
+    }
+
+    /**
+     * Fits the user's vector against the current model from their current library, so a
+     * newly linked user gets personal recommendations before the next training.
+     *
+     * @param user the user, after their first sync
+     */
+    public void foldIn(User user) {
+        if (current.model().foldIn(user.getName(), user.getTraktMovies()) != null) {
+            foldIns.increment();
+        }
+    }
+
+    /**
+     * Adds movies new to the catalog to the index, off the sync's thread, each folded in
+     * against the vector of the user whose sync found it.
+     */
+    @EventListener
+    public void onMoviesDiscovered(MoviesDiscoveredEvent event) {
+        Trained trained = current;
+        if (trained.index() != null) {
+            Schedulers.boundedElastic().schedule(() -> addDiscovered(trained, event));
+        }
+    }
+
+    private void addDiscovered(Trained trained, MoviesDiscoveredEvent event) {
+        AlsModel model = trained.model();
+        User user = event.user();
+        TraktMovieList movies = user.getTraktMovies();
+        float[] userVector = model.userVector(user.getName());
+        if (userVector == null) {
+            userVector = model.foldIn(user.getName(), movies);
+            if (userVector == null) {
+                return; // nothing else the model knows in this library
+            }
+            foldIns.increment();
+        }
+        Set<Integer> discovered = new HashSet<>();
+        for (int item : event.catalogIndexes()) {
+            if (item >= model.itemCount) {
+                discovered.add(item);
+            }
+        }
+        for (int k = 0; k < movies.size() && !discovered.isEmpty(); k++) {
+            int item = movies.getCatalogIndex(k);
+            if (discovered.remove(item) && !trained.index().contains(item)) {
+                Integer rating = movies.getUserRating(k);
+                float[] vector = model.foldInItem(userVector, rating != null ? rating : 0);
+                if (vector != null && trained.index().add(item, model.itemEmbedding(vector))) {
+                    discoveredMovies.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Recommends movies the user has not watched.
+     *
+     * @param user  the user
+     * @param limit maximum number of recommendations
+     * @return recommendations, best first
+     */
+    public List<Recommendation> recommend(User user, int limit) {
+        long start = System.nanoTime();
+        Trained trained = current;
+        AlsModel model = trained.model();
+        TraktMovieList movies = user.getTraktMovies();
+        float[] vector = model.userVector(user.getName());
+        if (vector == null && movies.size() > 0) {
+            vector = model.foldIn(user.getName(), movies);
+            if (vector != null) {
+                foldIns.increment();
+            }
+        }
+
+        // Sized to the catalog: the index may hold movies discovered after training
+        Scratch s = scratch.get();
+        s.ensureCapacity(Math.max(model.itemCount, catalog.size()));
+        for (int k = 0; k < movies.size(); k++) {
+            s.watched[movies.getCatalogIndex(k)] = true;
+        }
+        Set<String> manual = Recommendations.manualKeys(user);
+        TopK best = new TopK(limit + manual.size());
+        if (vector != null && trained.index() != null) {
+            int ef = Math.max(props.getHnsw().getEfSearch(), limit + manual.size());
+            boolean[] watched = s.watched;
+            trained.index().search(model.queryEmbedding(vector), ef,
+                    item -> item >= watched.length || !watched[item], best);
+        } else if (vector != null) {
+            model.scoreAll(vector, s.watched, best);
+        }
+        int found = best.size();
+        int[] items = new int[found];
+        float[] scores = new float[found];
+        best.drainInto(items, scores);
+
+        List<Recommendation> result = Recommendations.assemble(catalog, items, scores, found, limit, manual,
+                model.popular, item -> s.watched[item]);
+
+        for (int k = 0; k < movies.size(); k++) {
+            s.watched[movies.getCatalogIndex(k)] = false;
+        }
+        requests.increment();
+        requestNanos.add(System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "als";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Trained trained = current;
+        AlsModel model = trained.model();
+        long count = requests.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("users", model.userCount());
+        metrics.put("movies", model.itemCount);
+        metrics.put("factors", model.factors);
+        metrics.put("scoringKernel", ScoringKernel.get().name());
+        metrics.put("foldedInUsers", model.foldedInCount());
+        metrics.put("indexedMovies", trained.index() != null ? trained.index().size() : 0);
+        metrics.put("discoveredMovies", discoveredMovies.sum());
+        metrics.put("trainings", trainings.sum());
+        metrics.put("lastTrainingMillis", lastTrainingMillis);
+        metrics.put("lastIndexMillis", lastIndexMillis);
+        metrics.put("foldIns", foldIns.sum());
+        metrics.put("requests", count);
+        metrics.put("avgRecommendMicros", count > 0 ? requestNanos.sum() / count / 1000 : 0);
+        return metrics;
+    }
+}
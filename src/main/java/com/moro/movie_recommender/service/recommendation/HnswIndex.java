@@ -0,0 +1,421 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntPredicate;
+
+/**
+ * Approximate maximum inner product search over movie vectors with a hierarchical navigable
+ * small world graph (Malkov and Yashunin). Movies are identified by their
+ * {@link com.moro.movie_recommender.dto.MovieCatalog} index.
+ *
+ * <p>Every movie is a node on layer 0 and, with geometrically decreasing probability, on the
+ * layers above; on each of its layers it links to up to {@code m} similar movies ({@code 2m}
+ * on layer 0), chosen so the links point in different directions. A search descends greedily
+ * from the single top-layer entry point and then explores layer 0 best first, keeping the
+ * {@code ef} best movies seen; larger {@code ef} trades latency for recall.
+ *
+ * <p>Inner product is not a metric, so callers should give all movies the same norm (see
+ * {@link AlsModel#itemEmbedding}), which makes the largest inner product the nearest neighbour.
+ *
+ * <p>Vectors are stored in contiguous pages by catalog index, so visiting a neighbour touches
+ * only its vector. Inserts and searches may run concurrently: links are changed copy-on-write
+ * under the owning node's monitor and read without locking, and a node is findable once the
+ * first of its neighbours links to it.
+ */
+final class HnswIndex {
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int MAX_PAGES = 1 << 14;
+
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final ScoringKernel kernel = ScoringKernel.get();
+
+    private final AtomicReferenceArray<AtomicReferenceArray<Node>> pages = new AtomicReferenceArray<>(MAX_PAGES);
+    private final AtomicReferenceArray<float[]> vectorPages = new AtomicReferenceArray<>(MAX_PAGES);
+    private final AtomicInteger size = new AtomicInteger();
+    private final Object entryLock = new Object();
+    private volatile Node entryPoint;
+    private final ThreadLocal<Scratch> scratch;
+
+    HnswIndex(int dimensions, int m, int efConstruction) {
+        if (m < 2) {
+            throw new IllegalArgumentException("m must be at least 2");
+        }
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1 / Math.log(m);
+        this.scratch = ThreadLocal.withInitial(Scratch::new);
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    boolean contains(int id) {
+        return node(id) != null;
+    }
+
+    /**
+     * Adds a movie. Safe to call from several threads at once.
+     *
+     * @return false if the movie is already in the index
+     */
+    boolean add(int id, float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        int level = (int) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * levelMultiplier);
+        Node node = new Node(id, level);
+        if (!slots(id).compareAndSet(id & PAGE_MASK, null, node)) {
+            return false;
+        }
+        // Published to searches by the first link to the node, which happens after this write
+        System.arraycopy(vector, 0, vectorPage(id), (id & PAGE_MASK) * dimensions, dimensions);
+        size.incrementAndGet();
+
+        Node entry = entryPoint;
+        if (entry == null) {
+            synchronized (entryLock) {
+                if (entryPoint == null) {
+                    entryPoint = node;
+                    return true;
+                }
+                entry = entryPoint;
+            }
+        }
+
+        float[] query = vector.clone();
+        int[] entries = {entry.id};
+        float[] entryScores = {score(query, entry.id)};
+        int entryCount = 1;
+        TopK nearest = new TopK(1);
+        for (int layer = entry.level(); layer > level; layer--) {
+            searchLayer(query, entries, entryScores, entryCount, layer, null, nearest);
+            nearest.drainInto(entries, entryScores);
+        }
+        TopK found = new TopK(efConstruction);
+        for (int layer = Math.min(level, entry.level()); layer >= 0; layer--) {
+            searchLayer(query, entries, entryScores, entryCount, layer, null, found);
+            entryCount = found.size();
+            entries = new int[entryCount];
+            entryScores = new float[entryCount];
+            found.drainInto(entries, entryScores);
+
+            int[] selected = Arrays.copyOf(entries, entryCount);
+            float[] selectedScores = Arrays.copyOf(entryScores, entryCount);
+            int count = selectNeighbors(id, selected, selectedScores, entryCount, m);
+            int maxLinks = layer == 0 ? maxM0 : m;
+            for (int k = 0; k < count; k++) {
+                // Appended rather than assigned: a concurrent insert may already link here
+                link(node, node(selected[k]), layer, maxLinks);
+                link(node(selected[k]), node, layer, maxLinks);
+            }
+        }
+
+        if (level > entry.level()) {
+            synchronized (entryLock) {
+                if (level > entryPoint.level()) {
+                    entryPoint = node;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the movies with the largest inner product with {@code query}, among those
+     * {@code accept} lets through. Rejected movies are still walked through, so a filter that
+     * rejects many movies costs recall rather than correctness.
+     *
+     * @param ef      candidates kept during the search; at least the capacity of {@code results}
+     *                makes sense
+     * @param accept  which movies may be returned, or null for all
+     * @param results receives the best movies found
+     */
+    void search(float[] query, int ef, IntPredicate accept, TopK results) {
+        Node entry = entryPoint;
+        if (entry == null) {
+            return;
+        }
+        int[] entries = {entry.id};
+        float[] entryScores = {score(query, entry.id)};
+        TopK nearest = new TopK(1);
+        for (int layer = entry.level(); layer > 0; layer--) {
+            searchLayer(query, entries, entryScores, 1, layer, null, nearest);
+            nearest.drainInto(entries, entryScores);
+        }
+        TopK found = new TopK(Math.max(ef, 1));
+        searchLayer(query, entries, entryScores, 1, 0, accept, found);
+        int count = found.size();
+        int[] ids = new int[count];
+        float[] scores = new float[count];
+        found.drainInto(ids, scores);
+        for (int k = 0; k < count; k++) {
+            results.offer(ids[k], scores[k]);
+        }
+    }
+
+    /**
+     * Best-first search of one layer from the given entry points, keeping the best accepted
+     * nodes in {@code results} (whose capacity is the search's ef).
+     */
+    private void searchLayer(float[] query, int[] entries, float[] entryScores, int entryCount, int layer,
+                             IntPredicate accept, TopK results) {
+        Scratch s = scratch.get();
+        int stamp = s.nextStamp();
+        CandidateQueue candidates = s.candidates;
+        candidates.clear();
+        for (int k = 0; k < entryCount; k++) {
+            s.visit(entries[k], stamp);
+            candidates.push(entries[k], entryScores[k]);
+            if (accept == null || accept.test(entries[k])) {
+                results.offer(entries[k], entryScores[k]);
+            }
+        }
+        while (!candidates.isEmpty()) {
+            if (candidates.peekScore() < results.threshold()) {
+                break; // every remaining candidate is worse than the worst result
+            }
+            int[] links = node(candidates.pop()).links(layer);
+            for (int id : links) {
+                if (!s.visit(id, stamp)) {
+                    continue;
+                }
+                float score = score(query, id);
+                if (score > results.threshold()) {
+                    candidates.push(id, score);
+                    if (accept == null || accept.test(id)) {
+                        results.offer(id, score);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps, from candidates sorted best first, those more similar to the base node than to
+     * any candidate kept before them, so links spread out instead of bunching in one cluster.
+     *
+     * @return the number kept, moved to the front of the arrays
+     */
+    private int selectNeighbors(int base, int[] ids, float[] scores, int count, int max) {
+        int kept = 0;
+        for (int k = 0; k < count && kept < max; k++) {
+            if (ids[k] == base) {
+                continue;
+            }
+            boolean diverse = true;
+            for (int r = 0; r < kept && diverse; r++) {
+                diverse = similarity(ids[k], ids[r]) <= scores[k];
+            }
+            if (diverse) {
+                ids[kept] = ids[k];
+                scores[kept] = scores[k];
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Adds a link from {@code from} to {@code to}, re-selecting {@code from}'s links if it
+     * already has as many as it may.
+     */
+    private void link(Node from, Node to, int layer, int maxLinks) {
+        synchronized (from) {
+            int[] links = from.links(layer);
+            int count = links.length;
+            if (count < maxLinks) {
+                int[] grown = Arrays.copyOf(links, count + 1);
+                grown[count] = to.id;
+                from.setLinks(layer, grown);
+                return;
+            }
+            TopK ranked = new TopK(count + 1);
+            ranked.offer(to.id, similarity(from.id, to.id));
+            for (int link : links) {
+                ranked.offer(link, similarity(from.id, link));
+            }
+            int[] ids = new int[count + 1];
+            float[] scores = new float[count + 1];
+            ranked.drainInto(ids, scores);
+            int kept = selectNeighbors(from.id, ids, scores, count + 1, maxLinks);
+            from.setLinks(layer, Arrays.copyOf(ids, kept));
+        }
+    }
+
+    /** Inner product of a query with a stored vector. */
+    private float score(float[] query, int id) {
+        return kernel.dot(query, 0, vectorPages.get(id >>> PAGE_BITS), (id & PAGE_MASK) * dimensions, dimensions);
+    }
+
+    /** Inner product of two stored vectors. */
+    private float similarity(int a, int b) {
+        return kernel.dot(vectorPages.get(a >>> PAGE_BITS), (a & PAGE_MASK) * dimensions,
+                vectorPages.get(b >>> PAGE_BITS), (b & PAGE_MASK) * dimensions, dimensions);
+    }
+
+    private float[] vectorPage(int id) {
+        int pageIndex = id >>> PAGE_BITS;
+        float[] page = vectorPages.get(pageIndex);
+        if (page == null) {
+            vectorPages.compareAndSet(pageIndex, null, new float[PAGE_SIZE * dimensions]);
+            page = vectorPages.get(pageIndex);
+        }
+        return page;
+    }
+
+    private Node node(int id) {
+        AtomicReferenceArray<Node> page = pages.get(id >>> PAGE_BITS);
+        return page != null ? page.get(id & PAGE_MASK) : null;
+    }
+
+    private AtomicReferenceArray<Node> slots(int id) {
+        int pageIndex = id >>> PAGE_BITS;
+        AtomicReferenceArray<Node> page = pages.get(pageIndex);
+        if (page == null) {
+            pages.compareAndSet(pageIndex, null, new AtomicReferenceArray<>(PAGE_SIZE));
+            page = pages.get(pageIndex);
+        }
+        return page;
+    }
+
+    /**
+     * A movie on layers 0 to {@code level}, with its links on each. Link arrays are never
+     * modified once set, so readers need no lock; writers replace them holding the node's
+     * monitor.
+     */
+    private static final class Node {
+        private static final int[] NO_LINKS = new int[0];
+
+        final int id;
+        private final AtomicReferenceArray<int[]> links;
+
+        Node(int id, int level) {
+            this.id = id;
+            this.links = new AtomicReferenceArray<>(level + 1);
+            for (int layer = 0; layer <= level; layer++) {
+                links.set(layer, NO_LINKS);
+            }
+        }
+
+        int level() {
+            return links.length() - 1;
+        }
+
+        int[] links(int layer) {
+            return layer < links.length() ? links.get(layer) : NO_LINKS;
+        }
+
+        void setLinks(int layer, int[] ids) {
+            links.set(layer, ids);
+        }
+    }
+
+    /** Per-thread search state: visited marks by generation, and the candidate queue. */
+    private static final class Scratch {
+        int[] visited = new int[PAGE_SIZE];
+        int stamp;
+        final CandidateQueue candidates = new CandidateQueue();
+
+        int nextStamp() {
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+
+        /**
+         * @return true if {@code id} had not been visited in this search
+         */
+        boolean visit(int id, int stamp) {
+            if (id >= visited.length) {
+                visited = Arrays.copyOf(visited, Math.max(id + 1, visited.length * 2));
+            }
+            if (visited[id] == stamp) {
+                return false;
+            }
+            visited[id] = stamp;
+            return true;
+        }
+    }
+
+    /** Max-heap of nodes still to expand, best first. */
+    private static final class CandidateQueue {
+        private int[] ids = new int[64];
+        private float[] scores = new float[64];
+        private int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        float peekScore() {
+            return scores[0];
+        }
+
+        void push(int id, float score) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int k = size++;
+            while (k > 0) {
+                int parent = (k - 1) >>> 1;
+                if (scores[parent] >= score) {
+                    break;
+                }
+                ids[k] = ids[parent];
+                scores[k] = scores[parent];
+                k = parent;
+            }
+            ids[k] = id;
+            scores[k] = score;
+        }
+
+        int pop() {
+            int top = ids[0];
+            int lastId = ids[--size];
+            float lastScore = scores[size];
+            int k = 0;
+            while (true) {
+                int child = 2 * k + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && scores[child + 1] > scores[child]) {
+                    child++;
+                }
+                if (scores[child] <= lastScore) {
+                    break;
+                }
+                ids[k] = ids[child];
+                scores[k] = scores[child];
+                k = child;
+            }
+            ids[k] = lastId;
+            scores[k] = lastScore;
+            return top;
+        }
+    }
+}
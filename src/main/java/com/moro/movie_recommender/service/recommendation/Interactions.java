@@ -0,0 +1,159 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import com.moro.movie_recommender.dto.TraktMovieList;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Every user's watched Trakt movies as a sparse user x movie matrix, stored both by user and by
+ * movie in compressed sparse row form: {@code offsets[u]..offsets[u + 1]} delimit user
+ * {@code u}'s entries in the parallel {@code items} and {@code ratings} arrays. Movies are
+ * identified by their {@link com.moro.movie_recommender.dto.MovieCatalog} index; a rating of
+ * 0 means watched but not rated. Immutable once built.
+ */
+final class Interactions {
+
+    final String[] userNames;
+    final int itemCount;
+    final int[] userOffsets;
+    final int[] userItems;
+    final float[] userRatings;
+    /** Each user's mean rating, or 0 if they rated nothing. */
+    final float[] userMeans;
+    final int[] itemOffsets;
+    final int[] itemUsers;
+    final float[] itemRatings;
+    private final Map<String, Integer> userIndex;
+
+    private Interactions(String[] userNames, int itemCount, int[] userOffsets, int[] userItems, float[] userRatings) {
+        this.userNames = userNames;
+        this.itemCount = itemCount;
+        this.userOffsets = userOffsets;
+        this.userItems = userItems;
+        this.userRatings = userRatings;
+        this.userMeans = new float[userNames.length];
+        this.userIndex = new HashMap<>(userNames.length * 2);
+        for (int u = 0; u < userNames.length; u++) {
+            userIndex.put(userNames[u], u);
+            double sum = 0;
+            int rated = 0;
+            for (int k = userOffsets[u]; k < userOffsets[u + 1]; k++) {
+                if (userRatings[k] > 0) {
+                    sum += userRatings[k];
+                    rated++;
+                }
+            }
+            userMeans[u] = rated > 0 ? (float) (sum / rated) : 0;
+        }
+
+        // Transpose by counting sort on the movie
+        this.itemOffsets = new int[itemCount + 1];
+        for (int item : userItems) {
+            itemOffsets[item + 1]++;
+        }
+        for (int i = 0; i < itemCount; i++) {
+            itemOffsets[i + 1] += itemOffsets[i];
+        }
+        this.itemUsers = new int[userItems.length];
+        this.itemRatings = new float[userItems.length];
+        int[] next = Arrays.copyOf(itemOffsets, itemCount);
+        for (int u = 0; u < userNames.length; u++) {
+            for (int k = userOffsets[u]; k < userOffsets[u + 1]; k++) {
+                int slot = next[userItems[k]]++;
+                itemUsers[slot] = u;
+                itemRatings[slot] = userRatings[k];
+            }
+        }
+    }
+
+    int userCount() {
+        return userNames.length;
+    }
+
+    int interactionCount() {
+        return userItems.length;
+    }
+
+    /**
+     * @return the user's row, or -1 if the user was not included
+     */
+    int userIndex(String name) {
+        Integer index = userIndex.get(name);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * @return up to {@code limit} movies with the most viewers, most watched first
+     */
+    int[] mostWatched(int limit) {
+        TopK top = new TopK(limit);
+        for (int i = 0; i < itemCount; i++) {
+            int viewers = itemOffsets[i + 1] - itemOffsets[i];
+            if (viewers > 0) {
+                top.offer(i, viewers);
+            }
+        }
+        int[] items = new int[top.size()];
+        top.drainInto(items, new float[items.length]);
+        return items;
+    }
+
+    static Builder builder(int maxItemsPerUser) {
+        return new Builder(maxItemsPerUser);
+    }
+
+    /**
+     * Collects users one at a time. Not thread-safe.
+     */
+    static final class Builder {
+        private final int maxItemsPerUser;
+        private String[] names = new String[1024];
+        private int[] offsets = new int[1025];
+        private int[] items = new int[16384];
+        private float[] ratings = new float[16384];
+        private int users;
+        private int maxItem = -1;
+
+        private Builder(int maxItemsPerUser) {
+            this.maxItemsPerUser = maxItemsPerUser;
+        }
+
+        /**
+         * Adds a user's library; users without Trakt movies are skipped.
+         */
+        Builder add(String name, TraktMovieList movies) {
+            int count = Math.min(movies.size(), maxItemsPerUser);
+            if (count == 0) {
+                return this;
+            }
+            if (users == names.length) {
+                names = Arrays.copyOf(names, users * 2);
+                offsets = Arrays.copyOf(offsets, users * 2 + 1);
+            }
+            int start = offsets[users];
+            if (start + count > items.length) {
+                int capacity = Math.max(start + count, items.length * 2);
+                items = Arrays.copyOf(items, capacity);
+                ratings = Arrays.copyOf(ratings, capacity);
+            }
+            for (int i = 0; i < count; i++) {
+                int item = movies.getCatalogIndex(i);
+                Integer rating = movies.getUserRating(i);
+                items[start + i] = item;
+                ratings[start + i] = rating != null ? rating : 0;
+                maxItem = Math.max(maxItem, item);
+            }
+            names[users++] = name;
+            offsets[users] = start + count;
+            return this;
+        }
+
+        Interactions build() {
+            int total = offsets[users];
+            return new Interactions(Arrays.copyOf(names, users), maxItem + 1, Arrays.copyOf(offsets, users + 1),
+                    Arrays.copyOf(items, total), Arrays.copyOf(ratings, total));
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import com.moro.movie_recommender.config.RecommendationProperties;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.Recommendation;
+import com.moro.movie_recommender.dto.TraktMovieList;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.service.MetricsSource;
+import com.moro.movie_recommender.service.UserService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Item-item collaborative filtering over all users' synced Trakt libraries.
+ *
+ * <p>An {@link ItemSimilarityIndex} is rebuilt every {@code recommendations.rebuild-interval}
+ * from every user in {@link UserService}, off the request path; requests always read the
+ * latest complete index. A user's candidates are scored by walking the neighbours of the
+ * movies they watched: each neighbour gains its similarity times the user's preference for
+ * the watched movie (1 if watched without a rating, higher or lower with the rating's
+ * distance from the user's mean rating). Watched movies are skipped, and users with too
+ * little history are topped up with the most watched movies.
+ *
+ * <p>Scoring touches at most {@code neighbors} entries per watched movie and allocates only
+ * the response, so it takes well under a millisecond for typical libraries.
+ */
+@Service
+public class ItemCfRecommender implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ItemCfRecommender.class);
+
+    private static final int POPULAR_ITEMS = 1000;
+
+    /** A built index with the data it was built from. */
+    private record Model(ItemSimilarityIndex index, int[] popular, int users, int interactions) {}
+
+    /** Per-thread score accumulators, sized to the current model and cleared after each use. */
+    private static final class Scratch {
+        float[] scores = new float[0];
+        int[] touched = new int[0];
+        boolean[] excluded = new boolean[0];
+
+        void ensureCapacity(int items) {
+            if (scores.length < items) {
+                scores = new float[items];
+                touched = new int[items];
+                excluded = new boolean[items];
+            }
+        }
+    }
+
+    private final UserService userService;
+    private final RecommendationProperties props;
+    private final MovieCatalog catalog;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    private volatile Model model = new Model(ItemSimilarityIndex.empty(), new int[0], 0, 0);
+    private Disposable rebuilds;
+
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder requestNanos = new LongAdder();
+    private volatile long lastBuildMillis;
+
+    public ItemCfRecommender(UserService userService, RecommendationProperties props, MovieCatalog catalog) {
+        this.userService = userService;
+        this.props = props;
+        this.catalog = catalog;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        rebuilds = Flux.interval(Duration.ZERO, props.getRebuildInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> rebuild().onErrorResume(error -> {
+                    logger.error("Item similarity rebuild failed: {}", error.getMessage(), error);
+                    return Mono.empty();
+                }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (rebuilds != null) {
+            rebuilds.dispose();
+        }
+    }
+
+    /**
+     * Rebuilds the similarity index from every user's current library. Does nothing if a
+     * rebuild is already running.
+     *
+     * @return a Mono that completes once the new index is in use
+     */
+    public Mono<Void> rebuild() {
+        if (!building.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        long start = System.nanoTime();
+        return userService.streamUsers(null)
+                .reduce(Interactions.builder(props.getMaxItemsPerUser()),
+                        (builder, user) -> builder.add(user.getName(), user.getTraktMovies()))
+                .publishOn(Schedulers.boundedElastic())
+                .map(builder -> {
+                    Interactions data = builder.build();
+                    ItemSimilarityIndex index = ItemSimilarityIndex.build(data, props.getItemCf());
+                    return new Model(index, data.mostWatched(POPULAR_ITEMS), data.userCount(), data.interactionCount());
+                })
+                .doOnNext(built -> {
+                    model = built;
+                    builds.increment();
+                    lastBuildMillis = (System.nanoTime() - start) / 1_000_000;
+                    logger.info("Built item similarities: {} users, {} movies, {} neighbour pairs in {} ms",
+                            built.users(), built.index().itemCount, built.index().pairCount(), lastBuildMillis);
+                })
+                .doFinally(signal -> building.set(false))
+                .then();
+    }
+
+    /**
+     * Recommends movies the user has not watched.
+     *
+     * @param user  the user
+     * @param limit maximum number of recommendations
+     * @return recommendations, best first
+     */
+    public List<Recommendation> recommend(User user, int limit) {
+        long start = System.nanoTime();
+        Model current = model;
+        ItemSimilarityIndex index = current.index();
+        Scratch s = scratch.get();
+        s.ensureCapacity(index.itemCount);
+        TraktMovieList movies = user.getTraktMovies();
+
+        double ratingSum = 0;
+        int rated = 0;
+        for (int k = 0; k < movies.size(); k++) {
+            Integer rating = movies.getUserRating(k);
+            if (rating != null) {
+                ratingSum += rating;
+                rated++;
+            }
+        }
+        double mean = rated > 0 ? ratingSum / rated : 0;
+
+        int touchedCount = 0;
+        for (int k = 0; k < movies.size(); k++) {
+            int item = movies.getCatalogIndex(k);
+            if (item >= index.itemCount) {
+                continue; // catalogued after the index was built
+            }
+            s.excluded[item] = true;
+            Integer rating = movies.getUserRating(k);
+            float preference = rating != null ? (float) Math.max(0, 1 + (rating - mean) / 5) : 1f;
+            if (preference == 0) {
+                continue;
+            }
+            for (int n = index.offsets[item]; n < index.offsets[item + 1]; n++) {
+                int j = index.neighbors[n];
+                if (s.scores[j] == 0) {
+                    s.touched[touchedCount++] = j;
+                }
+                s.scores[j] += index.similarities[n] * preference;
+            }
+        }
+        Set<String> manual = Recommendations.manualKeys(user);
+        TopK best = new TopK(limit + manual.size());
+        for (int t = 0; t < touchedCount; t++) {
+            int j = s.touched[t];
+            if (!s.excluded[j]) {
+                best.offer(j, s.scores[j]);
+            }
+            s.scores[j] = 0;
+        }
+        int found = best.size();
+        int[] items = new int[found];
+        float[] scores = new float[found];
+        best.drainInto(items, scores);
+
+        List<Recommendation> result = Recommendations.assemble(catalog, items, scores, found, limit, manual,
+                current.popular(), item -> s.excluded[item]);
+
+        for (int k = 0; k < movies.size(); k++) {
+            int item = movies.getCatalogIndex(k);
+            if (item < index.itemCount) {
+                s.excluded[item] = false;
+            }
+        }
+        requests.increment();
+        requestNanos.add(System.nanoTime() - start);
+        return result;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "itemCf";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Model current = model;
+        long count = requests.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("users", current.users());
+        metrics.put("movies", current.index().itemCount);
+        metrics.put("interactions", current.interactions());
+        metrics.put("neighbourPairs", current.index().pairCount());
+        metrics.put("builds", builds.sum());
+        metrics.put("lastBuildMillis", lastBuildMillis);
+        metrics.put("requests", count);
+        metrics.put("avgRecommendMicros", count > 0 ? requestNanos.sum() / count / 1000 : 0);
+        return metrics;
+    }
+}
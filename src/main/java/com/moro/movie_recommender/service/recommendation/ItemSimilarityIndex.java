@@ -0,0 +1,170 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import com.moro.movie_recommender.config.RecommendationProperties;
+
+import java.util.stream.IntStream;
+
+/**
+ * The top-N most similar movies of every movie, in compressed sparse row form: the neighbours
+ * of movie {@code i} are {@code neighbors[offsets[i]..offsets[i + 1]]}, most similar first,
+ * with their similarities in {@code similarities}. Immutable once built.
+ *
+ * <p>Similarity blends two signals over the users who watched both movies:
+ * <ul>
+ *   <li>the adjusted cosine of their ratings, each rating taken relative to its user's mean,
+ *       multiplied by {@code n / (n + shrinkage)} for {@code n} users who rated both, so a
+ *       handful of agreeing raters do not make two movies look identical</li>
+ *   <li>the cosine of co-occurrence, {@code both / sqrt(watchedI * watchedJ)}, which also
+ *       covers the many movies watched without a rating</li>
+ * </ul>
+ */
+final class ItemSimilarityIndex {
+
+    final int itemCount;
+    final int[] offsets;
+    final int[] neighbors;
+    final float[] similarities;
+
+    private ItemSimilarityIndex(int itemCount, int[] offsets, int[] neighbors, float[] similarities) {
+        this.itemCount = itemCount;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        this.similarities = similarities;
+    }
+
+    static ItemSimilarityIndex empty() {
+        return new ItemSimilarityIndex(0, new int[1], new int[0], new float[0]);
+    }
+
+    int pairCount() {
+        return neighbors.length;
+    }
+
+    /**
+     * Computes every movie's neighbours, one movie per task on the common fork-join pool.
+     * Each task accumulates the movie's co-occurrences in dense per-thread arrays, touching
+     * only the libraries of users who watched it.
+     */
+    static ItemSimilarityIndex build(Interactions data, RecommendationProperties.ItemCf config) {
+        int items = data.itemCount;
+        int topN = config.getNeighbors();
+        float shrinkage = (float) config.getShrinkage();
+        float implicitWeight = (float) config.getImplicitWeight();
+        int minCooccurrence = Math.max(1, config.getMinCooccurrence());
+        int maxUsersPerItem = config.getMaxUsersPerItem();
+
+        // Rating deviations from each user's mean, and per-movie norms of them
+        float[] deviations = new float[data.itemUsers.length];
+        double[] norms = new double[items];
+        for (int i = 0; i < items; i++) {
+            for (int k = data.itemOffsets[i]; k < data.itemOffsets[i + 1]; k++) {
+                float rating = data.itemRatings[k];
+                if (rating > 0) {
+                    float deviation = rating - data.userMeans[data.itemUsers[k]];
+                    deviations[k] = deviation;
+                    norms[i] += deviation * deviation;
+                }
+            }
+            norms[i] = Math.sqrt(norms[i]);
+        }
+        float[] userDeviations = new float[data.userItems.length];
+        for (int u = 0; u < data.userCount(); u++) {
+            for (int k = data.userOffsets[u]; k < data.userOffsets[u + 1]; k++) {
+                float rating = data.userRatings[k];
+                userDeviations[k] = rating > 0 ? rating - data.userMeans[u] : 0;
+            }
+        }
+
+        int[][] rowNeighbors = new int[items][];
+        float[][] rowSimilarities = new float[items][];
+        ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(items, topN));
+        IntStream.range(0, items).parallel().forEach(i -> {
+            int start = data.itemOffsets[i];
+            int viewers = data.itemOffsets[i + 1] - start;
+            if (viewers == 0) {
+                return;
+            }
+            Scratch s = scratch.get();
+            // Popular movies: an even stride through their viewers bounds the work per movie
+            int step = Math.max(1, (viewers + maxUsersPerItem - 1) / maxUsersPerItem);
+            int sampled = 0;
+            for (int k = start; k < start + viewers; k += step) {
+                sampled++;
+                int u = data.itemUsers[k];
+                float deviation = deviations[k];
+                for (int m = data.userOffsets[u]; m < data.userOffsets[u + 1]; m++) {
+                    int j = data.userItems[m];
+                    if (j == i) {
+                        continue;
+                    }
+                    if (s.cooccurrence[j]++ == 0) {
+                        s.touched[s.touchedCount++] = j;
+                    }
+                    float other = userDeviations[m];
+                    if (deviation != 0 && other != 0) {
+                        s.dot[j] += deviation * other;
+                        s.coRated[j]++;
+                    }
+                }
+            }
+            double scale = (double) viewers / sampled; // undo sampling in the co-occurrence counts
+            s.best.clear();
+            for (int t = 0; t < s.touchedCount; t++) {
+                int j = s.touched[t];
+                int both = s.cooccurrence[j];
+                if (both * scale >= minCooccurrence) {
+                    int viewersJ = data.itemOffsets[j + 1] - data.itemOffsets[j];
+                    double implicit = both * scale / Math.sqrt((double) viewers * viewersJ);
+                    double explicit = 0;
+                    if (s.coRated[j] > 0 && norms[i] > 0 && norms[j] > 0) {
+                        explicit = s.dot[j] / (norms[i] * norms[j]) * step
+                                * (s.coRated[j] / (s.coRated[j] + shrinkage));
+                    }
+                    float similarity = (float) ((1 - implicitWeight) * explicit + implicitWeight * implicit);
+                    if (similarity > 0) {
+                        s.best.offer(j, similarity);
+                    }
+                }
+                s.cooccurrence[j] = 0;
+                s.coRated[j] = 0;
+                s.dot[j] = 0;
+            }
+            s.touchedCount = 0;
+            rowNeighbors[i] = new int[s.best.size()];
+            rowSimilarities[i] = new float[s.best.size()];
+            s.best.drainInto(rowNeighbors[i], rowSimilarities[i]);
+        });
+
+        int[] offsets = new int[items + 1];
+        for (int i = 0; i < items; i++) {
+            offsets[i + 1] = offsets[i] + (rowNeighbors[i] != null ? rowNeighbors[i].length : 0);
+        }
+        int[] neighbors = new int[offsets[items]];
+        float[] similarities = new float[offsets[items]];
+        for (int i = 0; i < items; i++) {
+            if (rowNeighbors[i] != null) {
+                System.arraycopy(rowNeighbors[i], 0, neighbors, offsets[i], rowNeighbors[i].length);
+                System.arraycopy(rowSimilarities[i], 0, similarities, offsets[i], rowSimilarities[i].length);
+            }
+        }
+        return new ItemSimilarityIndex(items, offsets, neighbors, similarities);
+    }
+
+    /** Per-thread accumulators, all zero between movies, plus the best neighbours so far. */
+    private static final class Scratch {
+        final int[] cooccurrence;
+        final int[] coRated;
+        final float[] dot;
+        final int[] touched;
+        int touchedCount;
+        final TopK best;
+
+        Scratch(int items, int topN) {
+            cooccurrence = new int[items];
+            coRated = new int[items];
+            dot = new float[items];
+            touched = new int[items];
+            best = new TopK(topN);
+        }
+    }
+}
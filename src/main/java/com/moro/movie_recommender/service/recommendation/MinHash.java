@@ -0,0 +1,130 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import com.moro.movie_recommender.dto.Movie;
+import com.moro.movie_recommender.dto.TraktMovieList;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * MinHash signatures of users' watched sets, and their LSH band keys.
+ *
+ * <p>A signature holds, for each of {@code hashes} hash functions, the smallest hash of any
+ * movie in the set; two signatures agree in a slot with probability equal to the Jaccard
+ * similarity of the sets, so the fraction of agreeing slots estimates it. Adding movies only
+ * ever lowers slots, so a signature can be updated from the added movies alone. The first
+ * {@code bands * rows} slots are grouped into {@code bands} of {@code rows}; two users share a
+ * band key, and so an LSH bucket, if all slots of the band agree, which makes users with a
+ * similarity of about {@code (1 / bands)^(1 / rows)} or more likely to collide.
+ *
+ * <p>Trakt movies are keyed by their Trakt id, manual movies by their lower-cased title and year.
+ * Immutable and thread-safe.
+ */
+final class MinHash {
+
+    /** Manual movie keys have the top bit set, so they never equal a Trakt id. */
+    private static final long MANUAL_KEY = Long.MIN_VALUE;
+
+    final int bands;
+    final int rows;
+    private final long[] seeds;
+
+    MinHash(int hashes, int bands, int rows, long seed) {
+        if (bands < 1 || rows < 1 || (long) bands * rows > hashes) {
+            throw new IllegalArgumentException(
+                    "MinHash bands of rows must fit in the hashes: " + bands + "x" + rows + " > " + hashes);
+        }
+        this.bands = bands;
+        this.rows = rows;
+        SplittableRandom random = new SplittableRandom(seed);
+        this.seeds = new long[hashes];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = random.nextLong();
+        }
+    }
+
+    int hashes() {
+        return seeds.length;
+    }
+
+    /**
+     * @return the signature of the movies, or null if there are none
+     */
+    int[] signature(TraktMovieList traktMovies, List<Movie> manualMovies) {
+        if (traktMovies.isEmpty() && manualMovies.isEmpty()) {
+            return null;
+        }
+        int[] signature = new int[seeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        addAll(signature, traktMovies, 0, manualMovies, 0);
+        return signature;
+    }
+
+    /**
+     * Lowers {@code signature} to cover the Trakt movies from {@code traktFrom} and the manual
+     * movies from {@code manualFrom} on.
+     */
+    void addAll(int[] signature, TraktMovieList traktMovies, int traktFrom, List<Movie> manualMovies, int manualFrom) {
+        for (int k = traktFrom; k < traktMovies.size(); k++) {
+            Long traktId = traktMovies.getTraktId(k);
+            add(signature, traktId != null ? traktId : manualKey(traktMovies.get(k)));
+        }
+        for (int k = manualFrom; k < manualMovies.size(); k++) {
+            add(signature, manualKey(manualMovies.get(k)));
+        }
+    }
+
+    private void add(int[] signature, long key) {
+        long base = mix(key);
+        for (int i = 0; i < signature.length; i++) {
+            // Non-negative, so Integer.MAX_VALUE stays above every real hash
+            int hash = (int) (mix(base ^ seeds[i]) >>> 33);
+            if (hash < signature[i]) {
+                signature[i] = hash;
+            }
+        }
+    }
+
+    static long manualKey(Movie movie) {
+        String title = movie.getTitle() != null ? movie.getTitle().trim().toLowerCase(Locale.ROOT) : "";
+        int year = movie.getYear() != null ? movie.getYear() : 0;
+        return MANUAL_KEY | (title.hashCode() & 0xffffffffL) << 16 | (year & 0xffff);
+    }
+
+    /**
+     * @return one key per band, distinct across bands
+     */
+    long[] bandKeys(int[] signature) {
+        long[] keys = new long[bands];
+        for (int b = 0; b < bands; b++) {
+            long key = b;
+            for (int r = b * rows; r < (b + 1) * rows; r++) {
+                key = mix(key * 31 + signature[r]);
+            }
+            keys[b] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * @return the estimated Jaccard similarity: the fraction of slots the signatures agree in
+     */
+    static float similarity(int[] a, int[] b) {
+        int same = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                same++;
+            }
+        }
+        return (float) same / a.length;
+    }
+
+    /** The SplitMix64 finalizer. */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,81 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import com.moro.movie_recommender.dto.Movie;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.Recommendation;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * Turns a recommender's ranked catalog indexes into the response, shared by all recommenders.
+ */
+final class Recommendations {
+
+    private Recommendations() {
+    }
+
+    /**
+     * Manual movies have no catalog entry; catalog movies with the same title and year count
+     * as watched. A recommender asks for this many extra candidates to make up for them.
+     *
+     * @return lower-cased {@code title|year} keys of the user's manual movies
+     */
+    static Set<String> manualKeys(User user) {
+        if (user.getManualMovies().isEmpty()) {
+            return Set.of();
+        }
+        Set<String> keys = new HashSet<>();
+        for (Movie movie : user.getManualMovies()) {
+            keys.add(key(movie));
+        }
+        return keys;
+    }
+
+    /**
+     * Builds the response from ranked candidates, dropping movies matching a manual movie, then
+     * fills up with the most watched movies the user has not watched (score 0). The response
+     * holds copies of the catalog's movies, never the shared ones.
+     *
+     * @param items    candidate catalog indexes, best first
+     * @param scores   their scores
+     * @param found    number of candidates
+     * @param popular  catalog indexes of the most watched movies, most watched first
+     * @param watched  whether the user watched a catalog index
+     */
+    static List<Recommendation> assemble(MovieCatalog catalog, int[] items, float[] scores, int found, int limit,
+                                         Set<String> manual, int[] popular, IntPredicate watched) {
+        List<Recommendation> result = new ArrayList<>(limit);
+        Set<Integer> included = new HashSet<>();
+        for (int r = 0; r < found && result.size() < limit; r++) {
+            TraktMovieDTO movie = catalog.get(items[r]);
+            if (manual.isEmpty() || !manual.contains(key(movie))) {
+                result.add(new Recommendation(movie.copy(null), scores[r]));
+                included.add(items[r]);
+            }
+        }
+        // Cold start: fill up with the most watched movies
+        for (int p = 0; p < popular.length && result.size() < limit; p++) {
+            int item = popular[p];
+            if (watched.test(item) || included.contains(item)) {
+                continue;
+            }
+            TraktMovieDTO movie = catalog.get(item);
+            if (manual.isEmpty() || !manual.contains(key(movie))) {
+                result.add(new Recommendation(movie.copy(null), 0));
+                included.add(item);
+            }
+        }
+        return result;
+    }
+
+    private static String key(Movie movie) {
+        String title = movie.getTitle() != null ? movie.getTitle().toLowerCase() : "";
+        return title + "|" + movie.getYear();
+    }
+}
@@ -0,0 +1,64 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import java.util.Arrays;
+
+/**
+ * Plain loop {@link ScoringKernel}, the fallback and the reference for the SIMD kernel.
+ */
+final class ScalarScoringKernel implements ScoringKernel {
+
+    private static final int BLOCK = 8;
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public int blockRows() {
+        return BLOCK;
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0;
+        for (int k = 0; k < length; k++) {
+            sum += a[aOffset + k] * b[bOffset + k];
+        }
+        return sum;
+    }
+
+    @Override
+    public void dotAll(float[] vector, float[] packed, int rows, int dimensions, float[] scores) {
+        float[] block = new float[BLOCK];
+        for (int first = 0; first < rows; first += BLOCK) {
+            scoreBlock(vector, packed, first, dimensions, block);
+            System.arraycopy(block, 0, scores, first, Math.min(BLOCK, rows - first));
+        }
+    }
+
+    @Override
+    public void topK(float[] vector, float[] packed, int rows, int dimensions, boolean[] skip, TopK best) {
+        float[] block = new float[BLOCK];
+        for (int first = 0; first < rows; first += BLOCK) {
+            scoreBlock(vector, packed, first, dimensions, block);
+            for (int lane = 0, end = Math.min(BLOCK, rows - first); lane < end; lane++) {
+                if (!skip[first + lane] && block[lane] > best.threshold()) {
+                    best.offer(first + lane, block[lane]);
+                }
+            }
+        }
+    }
+
+    private static void scoreBlock(float[] vector, float[] packed, int first, int dimensions, float[] block) {
+        int base = first * dimensions;
+        Arrays.fill(block, 0);
+        for (int k = 0; k < dimensions; k++) {
+            float value = vector[k];
+            int column = base + k * BLOCK;
+            for (int lane = 0; lane < BLOCK; lane++) {
+                block[lane] += value * packed[column + lane];
+            }
+        }
+    }
+}
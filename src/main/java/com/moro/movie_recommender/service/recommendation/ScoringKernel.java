@@ -0,0 +1,132 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+
+/**
+ * Dot products of one user vector against every row of a movie matrix, the inner loop of every
+ * factor and embedding recommender.
+ *
+ * <p>Batched scoring reads the matrix in a packed layout (see {@link #pack}): rows in blocks of
+ * {@link #blockRows()}, each block stored dimension by dimension. A block's scores then come
+ * out of {@code dimensions} multiply-adds of the block's column by one user value, without
+ * summing across lanes per row as a row-major layout would need.
+ *
+ * <p>{@link #get()} returns the SIMD implementation on the Vector API when the
+ * {@code jdk.incubator.vector} module is present (the build adds it) and agrees with the scalar
+ * implementation on random input; the scalar loop otherwise.
+ */
+interface ScoringKernel {
+
+    /**
+     * @return the name of the implementation, for metrics
+     */
+    String name();
+
+    /**
+     * @return rows per block of the packed layout
+     */
+    int blockRows();
+
+    /**
+     * @return {@code a[aOffset..aOffset + length] · b[bOffset..bOffset + length]}
+     */
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * Scores the first {@code rows} rows of a packed matrix against {@code vector} into
+     * {@code scores}.
+     */
+    void dotAll(float[] vector, float[] packed, int rows, int dimensions, float[] scores);
+
+    /**
+     * Offers every row of a packed matrix not marked in {@code skip} to {@code best}, scored
+     * by its dot product with {@code vector}, without materializing the scores of all rows.
+     */
+    void topK(float[] vector, float[] packed, int rows, int dimensions, boolean[] skip, TopK best);
+
+    /**
+     * Copies a row-major {@code rows x dimensions} matrix into this kernel's packed layout:
+     * row {@code r}, dimension {@code k} goes to
+     * {@code ((r / blockRows) * dimensions + k) * blockRows + r % blockRows}. The last block is
+     * padded with zero rows.
+     */
+    default float[] pack(float[] matrix, int rows, int dimensions) {
+        int block = blockRows();
+        float[] packed = new float[(rows + block - 1) / block * block * dimensions];
+        for (int r = 0; r < rows; r++) {
+            int base = (r / block) * dimensions * block + r % block;
+            for (int k = 0; k < dimensions; k++) {
+                packed[base + k * block] = matrix[r * dimensions + k];
+            }
+        }
+        return packed;
+    }
+
+    static ScoringKernel get() {
+        return Holder.KERNEL;
+    }
+
+    /** Picks the implementation once, on first use. */
+    final class Holder {
+        private static final Logger logger = LoggerFactory.getLogger(ScoringKernel.class);
+        private static final ScoringKernel KERNEL = select();
+
+        private Holder() {
+        }
+
+        private static ScoringKernel select() {
+            ScoringKernel scalar = new ScalarScoringKernel();
+            if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+                logger.info("jdk.incubator.vector not available; scoring with the scalar kernel");
+                return scalar;
+            }
+            ScoringKernel simd;
+            try {
+                simd = new VectorScoringKernel();
+            } catch (LinkageError e) {
+                logger.warn("Vector API unusable ({}); scoring with the scalar kernel", e.toString());
+                return scalar;
+            }
+            if (!agree(simd, scalar)) {
+                logger.warn("SIMD kernel disagrees with the scalar kernel; scoring with the scalar kernel");
+                return scalar;
+            }
+            logger.info("Scoring with the {} kernel", simd.name());
+            return simd;
+        }
+
+        /**
+         * Cross-checks two kernels on random matrices of awkward sizes, allowing for the
+         * different order of floating point additions.
+         */
+        static boolean agree(ScoringKernel a, ScoringKernel b) {
+            Random random = new Random(7);
+            for (int dimensions : new int[]{1, 3, 8, 17, 32, 64, 100, 129}) {
+                int rows = 37;
+                float[] vector = new float[dimensions];
+                float[] matrix = new float[rows * dimensions];
+                for (int k = 0; k < vector.length; k++) {
+                    vector[k] = (float) random.nextGaussian();
+                }
+                for (int k = 0; k < matrix.length; k++) {
+                    matrix[k] = (float) random.nextGaussian();
+                }
+                float[] expected = new float[rows];
+                float[] actual = new float[rows];
+                a.dotAll(vector, a.pack(matrix, rows, dimensions), rows, dimensions, expected);
+                b.dotAll(vector, b.pack(matrix, rows, dimensions), rows, dimensions, actual);
+                for (int row = 0; row < rows; row++) {
+                    float rowMajor = a.dot(vector, 0, matrix, row * dimensions, dimensions);
+                    float tolerance = 1e-4f * (dimensions + Math.abs(expected[row]));
+                    if (Math.abs(expected[row] - actual[row]) > tolerance || Math.abs(rowMajor - actual[row]) > tolerance) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,438 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import com.moro.movie_recommender.config.RecommendationProperties;
+import com.moro.movie_recommender.dto.Movie;
+import com.moro.movie_recommender.dto.SimilarUser;
+import com.moro.movie_recommender.dto.TraktMovieList;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.service.MetricsSource;
+import com.moro.movie_recommender.service.UserChangedEvent;
+import com.moro.movie_recommender.service.UserService;
+import com.moro.movie_recommender.util.LongIntHashMap;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds the users whose watched movies overlap a user's most, without comparing all pairs:
+ * every user's {@link MinHash} signature is filed under its band keys in an LSH index, and
+ * only users sharing a bucket with the user are compared.
+ *
+ * <p>The index is loaded from {@link UserService} once the application is ready and then kept
+ * current from {@link UserChangedEvent}s. A change that only appends movies, as a sync or a
+ * manual add does, lowers the stored signature by the appended movies alone; anything else
+ * (a full sync, a removal) recomputes it. Changes are applied in order on a thread of the
+ * index's own, so neither a recomputation nor a failure to index ever holds up or fails the
+ * write that caused it. Lookups only hold a bucket's stripe lock while collecting its users.
+ * A lookup compares the collected users' signatures after releasing it.
+ *
+ * <p>Users are only compared with at most {@code recommendations.similar-users.max-candidates}
+ * others, so a lookup stays well under a millisecond however many users share its buckets.
+ */
+@Service
+public class SimilarUserIndex implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimilarUserIndex.class);
+
+    private static final long SEED = 42;
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int MAX_PAGES = 1 << 14;
+    private static final int STRIPES = 64;
+    private static final int NONE = -1;
+
+    /**
+     * A user as last indexed: a fingerprint of the movies the signature was computed from (how
+     * many of each kind, and a rolling hash of their keys) rather than the lists themselves, so
+     * the index keeps no user's library alive, yet the next change can tell whether it only
+     * appended movies. A null signature means no movies.
+     */
+    private record Entry(int id, String name, long version, int traktSize, long traktHash,
+                         int manualSize, long manualHash, int[] signature, long[] bandKeys) {}
+
+    /** Per-thread marks of the users already found in a lookup, and the users found. */
+    private static final class Scratch {
+        int[] seen = new int[PAGE_SIZE];
+        int stamp;
+        int[] candidates = new int[0];
+
+        boolean firstVisit(int id) {
+            if (id >= seen.length) {
+                seen = Arrays.copyOf(seen, Math.max(id + 1, seen.length * 2));
+            }
+            if (seen[id] == stamp) {
+                return false;
+            }
+            seen[id] = stamp;
+            return true;
+        }
+
+        void next(int maxCandidates) {
+            if (candidates.length < maxCandidates) {
+                candidates = new int[maxCandidates];
+            }
+            if (++stamp == 0) {
+                Arrays.fill(seen, 0);
+                stamp = 1;
+            }
+        }
+    }
+
+    private final UserService userService;
+    private final MinHash minHash;
+    private final int maxCandidates;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<AtomicReferenceArray<Entry>> pages = new AtomicReferenceArray<>(MAX_PAGES);
+    /**
+     * Band key to the first user filed under it, each stripe guarded by its own monitor. The
+     * other users of a bucket are chained through {@link #next(int, int)}, under the same monitor.
+     */
+    private final LongIntHashMap[] buckets = new LongIntHashMap[STRIPES];
+    /** Per user and band, the next user in the same bucket, or {@link #NONE}. */
+    private final AtomicReferenceArray<int[]> nextPages = new AtomicReferenceArray<>(MAX_PAGES);
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+    private final ExecutorService updater = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "similar-users");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Disposable loading;
+
+    private final LongAdder incrementalUpdates = new LongAdder();
+    private final LongAdder fullUpdates = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder lookupNanos = new LongAdder();
+    private final LongAdder comparisons = new LongAdder();
+    private volatile long loadMillis;
+
+    public SimilarUserIndex(UserService userService, RecommendationProperties props) {
+        RecommendationProperties.SimilarUsers config = props.getSimilarUsers();
+        this.userService = userService;
+        this.minHash = new MinHash(config.getHashes(), config.getBands(), config.getRows(), SEED);
+        this.maxCandidates = config.getMaxCandidates();
+        for (int i = 0; i < STRIPES; i++) {
+            buckets[i] = new LongIntHashMap(1024, NONE);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        long start = System.nanoTime();
+        loading = userService.streamUsers(null)
+                .doOnNext(user -> apply(user.getName(), user))
+                .count()
+                .subscribe(count -> {
+                    loadMillis = (System.nanoTime() - start) / 1_000_000;
+                    logger.info("Indexed {} users for similar-user lookups in {} ms", count, loadMillis);
+                }, error -> logger.error("Similar-user index load failed: {}", error.getMessage(), error));
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (loading != null) {
+            loading.dispose();
+        }
+        updater.shutdownNow();
+    }
+
+    /**
+     * Queues the change for the index's thread; the publisher is typically a reactive pipeline
+     * that has just stored it.
+     */
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        try {
+            updater.execute(() -> apply(event.userName(), event.user()));
+        } catch (RejectedExecutionException e) {
+            logger.debug("Similar-user index stopped, not indexing user {}", event.userName());
+        }
+    }
+
+    /**
+     * Indexes or, for a null user, removes the user, logging rather than throwing on failure.
+     */
+    private void apply(String userName, User user) {
+        try {
+            if (user != null) {
+                update(user);
+            } else {
+                remove(userName);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Failed to index user {} for similar-user lookups: {}", userName, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Indexes the user's current movies. Does nothing if a later version is already indexed.
+     */
+    void update(User user) {
+        entries.compute(user.getName(), (name, old) -> {
+            if (old != null && user.getVersion() < old.version()) {
+                return old; // the initial load read the user before a change that is already indexed
+            }
+            TraktMovieList traktMovies = user.getTraktMovies();
+            List<Movie> manualMovies = user.getManualMovies();
+            int id = old != null ? old.id() : newId();
+            // Hash up to the indexed sizes first: matching prefixes mean movies were only appended
+            int traktPrefix = old != null ? Math.min(old.traktSize(), traktMovies.size()) : 0;
+            int manualPrefix = old != null ? Math.min(old.manualSize(), manualMovies.size()) : 0;
+            long traktPrefixHash = traktHash(traktMovies, 0, traktPrefix, 0);
+            long manualPrefixHash = manualHash(manualMovies, 0, manualPrefix, 0);
+            long traktHash = traktHash(traktMovies, traktPrefix, traktMovies.size(), traktPrefixHash);
+            long manualHash = manualHash(manualMovies, manualPrefix, manualMovies.size(), manualPrefixHash);
+            boolean appended = old != null
+                    && traktPrefix == old.traktSize() && traktPrefixHash == old.traktHash()
+                    && manualPrefix == old.manualSize() && manualPrefixHash == old.manualHash();
+            if (appended && traktMovies.size() == old.traktSize() && manualMovies.size() == old.manualSize()) {
+                Entry same = new Entry(id, name, user.getVersion(), old.traktSize(), old.traktHash(),
+                        old.manualSize(), old.manualHash(), old.signature(), old.bandKeys());
+                slots(id).set(id & PAGE_MASK, same);
+                return same;
+            }
+
+            int[] signature;
+            if (appended && old.signature() != null) {
+                signature = old.signature().clone();
+                minHash.addAll(signature, traktMovies, old.traktSize(), manualMovies, old.manualSize());
+                incrementalUpdates.increment();
+            } else {
+                signature = minHash.signature(traktMovies, manualMovies);
+                fullUpdates.increment();
+            }
+            long[] bandKeys = signature != null ? minHash.bandKeys(signature) : null;
+            Entry entry = new Entry(id, name, user.getVersion(), traktMovies.size(), traktHash,
+                    manualMovies.size(), manualHash, signature, bandKeys);
+            slots(id).set(id & PAGE_MASK, entry);
+            refile(id, old != null ? old.bandKeys() : null, bandKeys);
+            return entry;
+        });
+    }
+
+    void remove(String userName) {
+        entries.computeIfPresent(userName, (name, old) -> {
+            refile(old.id(), old.bandKeys(), null);
+            slots(old.id()).set(old.id() & PAGE_MASK, null);
+            return null;
+        });
+    }
+
+    /**
+     * @return {@code hash} continued over the catalog indexes of the Trakt movies from
+     *         {@code from} to {@code to}
+     */
+    private static long traktHash(TraktMovieList traktMovies, int from, int to, long hash) {
+        for (int k = from; k < to; k++) {
+            hash = MinHash.mix(hash + traktMovies.getCatalogIndex(k));
+        }
+        return hash;
+    }
+
+    /**
+     * @return {@code hash} continued over the keys of the manual movies from {@code from} to
+     *         {@code to}; the keys are all the signature depends on
+     */
+    private static long manualHash(List<Movie> manualMovies, int from, int to, long hash) {
+        for (int k = from; k < to; k++) {
+            hash = MinHash.mix(hash + MinHash.manualKey(manualMovies.get(k)));
+        }
+        return hash;
+    }
+
+    /** Moves the user from the buckets of {@code from} to those of {@code to}, band by band. */
+    private void refile(int id, long[] from, long[] to) {
+        for (int b = 0; b < minHash.bands; b++) {
+            if (from != null && to != null && from[b] == to[b]) {
+                continue;
+            }
+            if (from != null) {
+                unlink(id, b, from[b]);
+            }
+            if (to != null) {
+                LongIntHashMap stripe = stripeFor(to[b]);
+                synchronized (stripe) {
+                    setNext(id, b, stripe.put(to[b], id));
+                }
+            }
+        }
+    }
+
+    private void unlink(int id, int band, long key) {
+        LongIntHashMap stripe = stripeFor(key);
+        synchronized (stripe) {
+            int head = stripe.get(key);
+            if (head == id) {
+                int next = next(id, band);
+                if (next == NONE) {
+                    stripe.remove(key);
+                } else {
+                    stripe.put(key, next);
+                }
+                return;
+            }
+            for (int previous = head; previous != NONE; previous = next(previous, band)) {
+                if (next(previous, band) == id) {
+                    setNext(previous, band, next(id, band));
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the user is indexed; every user is once the initial load has finished
+     */
+    public boolean contains(String userName) {
+        return entries.containsKey(userName);
+    }
+
+    /**
+     * Finds the users whose watched movies overlap the user's most.
+     *
+     * @param userName the user's name
+     * @param limit    maximum number of users
+     * @return similar users, most similar first; empty if the user has no movies indexed
+     */
+    public List<SimilarUser> findSimilar(String userName, int limit) {
+        long start = System.nanoTime();
+        Entry self = entries.get(userName);
+        if (self == null || self.signature() == null) {
+            return List.of();
+        }
+        Scratch s = scratch.get();
+        s.next(maxCandidates);
+        s.firstVisit(self.id());
+        int candidates = 0;
+        search:
+        for (int b = 0; b < minHash.bands; b++) {
+            long key = self.bandKeys()[b];
+            LongIntHashMap stripe = stripeFor(key);
+            synchronized (stripe) {
+                for (int id = stripe.get(key); id != NONE; id = next(id, b)) {
+                    if (s.firstVisit(id)) {
+                        s.candidates[candidates++] = id;
+                        if (candidates == maxCandidates) {
+                            break search;
+                        }
+                    }
+                }
+            }
+        }
+        TopK best = new TopK(limit);
+        int compared = 0;
+        for (int c = 0; c < candidates; c++) {
+            Entry other = entry(s.candidates[c]);
+            if (other != null && other.signature() != null) {
+                best.offer(other.id(), MinHash.similarity(self.signature(), other.signature()));
+                compared++;
+            }
+        }
+        int found = best.size();
+        int[] ids = new int[found];
+        float[] similarities = new float[found];
+        best.drainInto(ids, similarities);
+        List<SimilarUser> result = new ArrayList<>(found);
+        for (int k = 0; k < found; k++) {
+            Entry other = entry(ids[k]);
+            if (other != null) {
+                result.add(new SimilarUser(other.name(), similarities[k]));
+            }
+        }
+        comparisons.add(compared);
+        lookups.increment();
+        lookupNanos.add(System.nanoTime() - start);
+        return result;
+    }
+
+    private int newId() {
+        int id = nextId.getAndIncrement();
+        if (id >>> PAGE_BITS >= MAX_PAGES) {
+            throw new IllegalStateException("Similar-user index is full");
+        }
+        return id;
+    }
+
+    private Entry entry(int id) {
+        AtomicReferenceArray<Entry> page = pages.get(id >>> PAGE_BITS);
+        return page != null ? page.get(id & PAGE_MASK) : null;
+    }
+
+    private AtomicReferenceArray<Entry> slots(int id) {
+        int pageIndex = id >>> PAGE_BITS;
+        AtomicReferenceArray<Entry> page = pages.get(pageIndex);
+        if (page == null) {
+            pages.compareAndSet(pageIndex, null, new AtomicReferenceArray<>(PAGE_SIZE));
+            page = pages.get(pageIndex);
+        }
+        return page;
+    }
+
+    private LongIntHashMap stripeFor(long key) {
+        return buckets[(int) (key ^ (key >>> 32)) & (STRIPES - 1)];
+    }
+
+    private int next(int id, int band) {
+        return nextPages.get(id >>> PAGE_BITS)[(id & PAGE_MASK) * minHash.bands + band];
+    }
+
+    private void setNext(int id, int band, int next) {
+        int pageIndex = id >>> PAGE_BITS;
+        int[] page = nextPages.get(pageIndex);
+        if (page == null) {
+            nextPages.compareAndSet(pageIndex, null, new int[PAGE_SIZE * minHash.bands]);
+            page = nextPages.get(pageIndex);
+        }
+        page[(id & PAGE_MASK) * minHash.bands + band] = next;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "similarUsers";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        long count = lookups.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("users", entries.size());
+        metrics.put("hashes", minHash.hashes());
+        metrics.put("bands", minHash.bands);
+        metrics.put("buckets", bucketCount());
+        metrics.put("incrementalUpdates", incrementalUpdates.sum());
+        metrics.put("fullUpdates", fullUpdates.sum());
+        metrics.put("loadMillis", loadMillis);
+        metrics.put("lookups", count);
+        metrics.put("avgComparisons", count > 0 ? comparisons.sum() / count : 0);
+        metrics.put("avgLookupMicros", count > 0 ? lookupNanos.sum() / count / 1000 : 0);
+        return metrics;
+    }
+
+    private int bucketCount() {
+        int count = 0;
+        for (LongIntHashMap stripe : buckets) {
+            synchronized (stripe) {
+                count += stripe.size();
+            }
+        }
+        return count;
+    }
+}
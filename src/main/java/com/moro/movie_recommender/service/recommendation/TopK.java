@@ -0,0 +1,98 @@
+package com.moro.movie_recommender.service.recommendation;
+
+/**
+ * Keeps the {@code k} highest-scoring items offered to it, in a min-heap over primitive
+ * arrays. Reusable after {@link #drainInto} or {@link #clear()}. Not thread-safe.
+ */
+final class TopK {
+
+    private final int[] items;
+    private final float[] scores;
+    private int size;
+
+    TopK(int k) {
+        this.items = new int[k];
+        this.scores = new float[k];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the score an offer must beat to be kept
+     */
+    float threshold() {
+        if (size < items.length) {
+            return Float.NEGATIVE_INFINITY;
+        }
+        return size > 0 ? scores[0] : Float.POSITIVE_INFINITY;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void offer(int item, float score) {
+        if (size < items.length) {
+            items[size] = item;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (items.length > 0 && score > scores[0]) {
+            items[0] = item;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Empties the heap into the arrays, highest score first.
+     */
+    void drainInto(int[] itemsOut, float[] scoresOut) {
+        while (size > 0) {
+            int last = --size;
+            itemsOut[last] = items[0];
+            scoresOut[last] = scores[0];
+            items[0] = items[last];
+            scores[0] = scores[last];
+            siftDown(0);
+        }
+    }
+
+    private void siftUp(int k) {
+        while (k > 0) {
+            int parent = (k - 1) >>> 1;
+            if (scores[parent] <= scores[k]) {
+                break;
+            }
+            swap(k, parent);
+            k = parent;
+        }
+    }
+
+    private void siftDown(int k) {
+        while (true) {
+            int child = 2 * k + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && scores[child + 1] < scores[child]) {
+                child++;
+            }
+            if (scores[k] <= scores[child]) {
+                return;
+            }
+            swap(k, child);
+            k = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int item = items[a];
+        items[a] = items[b];
+        items[b] = item;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
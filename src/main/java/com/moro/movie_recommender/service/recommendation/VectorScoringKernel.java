@@ -0,0 +1,87 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ScoringKernel} on the Vector API, one packed block per vector of the widest float
+ * species the CPU supports. Only loaded when the {@code jdk.incubator.vector} module is present.
+ *
+ * <p>{@link #topK} compares each block's scores against the heap's threshold in one vector
+ * comparison and only looks at individual rows when one of them would make the cut, which,
+ * once the heap has filled up, is rare.
+ */
+final class VectorScoringKernel implements ScoringKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public String name() {
+        return "simd-" + SPECIES.vectorBitSize();
+    }
+
+    @Override
+    public int blockRows() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int bound = SPECIES.loopBound(length);
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int k = 0;
+        for (; k < bound; k += SPECIES.length()) {
+            acc = FloatVector.fromArray(SPECIES, a, aOffset + k)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + k), acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; k < length; k++) {
+            sum += a[aOffset + k] * b[bOffset + k];
+        }
+        return sum;
+    }
+
+    @Override
+    public void dotAll(float[] vector, float[] packed, int rows, int dimensions, float[] scores) {
+        int lanes = SPECIES.length();
+        float[] block = new float[lanes];
+        for (int first = 0; first < rows; first += lanes) {
+            scoreBlock(vector, packed, first, dimensions).intoArray(block, 0);
+            System.arraycopy(block, 0, scores, first, Math.min(lanes, rows - first));
+        }
+    }
+
+    @Override
+    public void topK(float[] vector, float[] packed, int rows, int dimensions, boolean[] skip, TopK best) {
+        int lanes = SPECIES.length();
+        float[] block = new float[lanes];
+        FloatVector threshold = FloatVector.broadcast(SPECIES, best.threshold());
+        for (int first = 0; first < rows; first += lanes) {
+            FloatVector scores = scoreBlock(vector, packed, first, dimensions);
+            VectorMask<Float> candidates = scores.compare(VectorOperators.GT, threshold);
+            if (!candidates.anyTrue()) {
+                continue;
+            }
+            scores.intoArray(block, 0);
+            for (int lane = 0, end = Math.min(lanes, rows - first); lane < end; lane++) {
+                if (!skip[first + lane] && block[lane] > best.threshold()) {
+                    best.offer(first + lane, block[lane]);
+                }
+            }
+            threshold = FloatVector.broadcast(SPECIES, best.threshold());
+        }
+    }
+
+    private static FloatVector scoreBlock(float[] vector, float[] packed, int first, int dimensions) {
+        int lanes = SPECIES.length();
+        int base = first * dimensions;
+        FloatVector acc = FloatVector.zero(SPECIES);
+        for (int k = 0; k < dimensions; k++) {
+            acc = FloatVector.fromArray(SPECIES, packed, base + k * lanes)
+                    .fma(FloatVector.broadcast(SPECIES, vector[k]), acc);
+        }
+        return acc;
+    }
+}
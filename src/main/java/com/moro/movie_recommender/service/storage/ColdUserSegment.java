@@ -0,0 +1,144 @@
+package com.moro.movie_recommender.service.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Spill space for users evicted from memory: encoded user records appended to memory-mapped
+ * files of {@code chunkSize} bytes ({@code users-cold-<n>.seg}), with a new file begun when the
+ * current one is full. Appending returns a slice of the mapping, which stands in for the user
+ * until it is faulted back in; the page cache, not the heap, then decides what stays in RAM.
+ *
+ * <p>Every record is written once and released once, when its user is faulted back in. A file
+ * whose records have all been released is deleted; existing slices stay readable until
+ * dropped, as the mapping outlives the file.
+ *
+ * <p>The files are scratch space: the log and snapshots remain the source of truth, so files
+ * left over from a previous run are deleted on open.
+ */
+final class ColdUserSegment {
+
+    private static final String PREFIX = "users-cold-";
+    private static final String SUFFIX = ".seg";
+
+    private static final class Chunk {
+        final Path file;
+        final MemorySegment memory;
+        long position;
+        long liveBytes;
+
+        Chunk(Path file, MemorySegment memory) {
+            this.file = file;
+            this.memory = memory;
+        }
+    }
+
+    private final Path directory;
+    private final long chunkSize;
+    /** Chunks by base address of their mapping, to find the chunk a released slice belongs to. */
+    private final TreeMap<Long, Chunk> chunks = new TreeMap<>();
+    private Chunk current;
+    private int nextFile;
+    private long fileBytes;
+    private long liveBytes;
+
+    ColdUserSegment(Path directory, long chunkSize) throws IOException {
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @return the record's bytes in the mapped file
+     */
+    synchronized MemorySegment append(byte[] record) {
+        if (current == null || current.position + record.length > current.memory.byteSize()) {
+            Chunk full = current;
+            current = newChunk(Math.max(chunkSize, record.length));
+            if (full != null && full.liveBytes == 0) {
+                delete(full);
+            }
+        }
+        MemorySegment slice = current.memory.asSlice(current.position, record.length);
+        MemorySegment.copy(record, 0, slice, ValueLayout.JAVA_BYTE, 0, record.length);
+        current.position += record.length;
+        current.liveBytes += record.length;
+        liveBytes += record.length;
+        return slice;
+    }
+
+    /**
+     * Marks a record returned by {@link #append(byte[])} as no longer needed. Slices that did
+     * not come from this segment (e.g. of the snapshot) are ignored.
+     */
+    synchronized void release(MemorySegment record) {
+        Map.Entry<Long, Chunk> entry = chunks.floorEntry(record.address());
+        if (entry == null || record.address() >= entry.getKey() + entry.getValue().memory.byteSize()) {
+            return;
+        }
+        Chunk chunk = entry.getValue();
+        chunk.liveBytes -= record.byteSize();
+        liveBytes -= record.byteSize();
+        if (chunk.liveBytes == 0 && chunk != current) {
+            delete(chunk);
+        }
+    }
+
+    /**
+     * @return size of the segment files on disk
+     */
+    synchronized long fileBytes() {
+        return fileBytes;
+    }
+
+    /**
+     * @return bytes of records not yet released
+     */
+    synchronized long liveBytes() {
+        return liveBytes;
+    }
+
+    private Chunk newChunk(long size) {
+        Path file = directory.resolve(PREFIX + (nextFile++) + SUFFIX);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping is released by the GC once no slice of it remains
+            MemorySegment memory = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, Arena.ofAuto());
+            Chunk chunk = new Chunk(file, memory);
+            chunks.put(memory.address(), chunk);
+            fileBytes += size;
+            return chunk;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void delete(Chunk chunk) {
+        chunks.remove(chunk.memory.address());
+        fileBytes -= chunk.memory.byteSize();
+        try {
+            Files.deleteIfExists(chunk.file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
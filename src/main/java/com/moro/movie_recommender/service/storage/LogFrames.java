@@ -0,0 +1,109 @@
+package com.moro.movie_recommender.service.storage;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * Record framing used by log segments.
+ *
+ * <p>Each frame is {@code [int length][long seq][int crc32c(payload)][payload]}. Readers
+ * stop at the first frame that is truncated or fails its checksum, which is how a torn
+ * write at the tail of a segment is detected.
+ */
+final class LogFrames {
+
+    static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    /** Upper bound on a payload; larger lengths can only come from a damaged frame. */
+    static final int MAX_PAYLOAD_BYTES = 1 << 28;
+
+    /** A decoded frame; {@code payload} is an independent heap copy. */
+    record Frame(long seq, byte[] payload) {}
+
+    private LogFrames() {}
+
+    static void write(DataOutputStream out, long seq, byte[] payload) throws IOException {
+        out.writeInt(payload.length);
+        out.writeLong(seq);
+        out.writeInt(crc(payload));
+        out.write(payload);
+    }
+
+    static int crc(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Streams frames from a file channel through a reusable read buffer.
+     */
+    static final class Reader {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 20).limit(0);
+        private boolean eof;
+        private boolean corrupt;
+
+        Reader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /** @return the next valid frame, or null at end of input or at the first damaged frame */
+        Frame next() throws IOException {
+            if (corrupt) {
+                return null;
+            }
+            if (!fill(Integer.BYTES)) {
+                corrupt = buffer.hasRemaining();
+                return null;
+            }
+            int length = buffer.getInt(buffer.position());
+            if (length < 0 || length > MAX_PAYLOAD_BYTES || !fill(HEADER_BYTES + length)) {
+                corrupt = true;
+                return null;
+            }
+            buffer.getInt();
+            long seq = buffer.getLong();
+            int crc = buffer.getInt();
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            if (crc(payload) != crc) {
+                corrupt = true;
+                return null;
+            }
+            return new Frame(seq, payload);
+        }
+
+        /** @return true if reading stopped at a truncated or corrupt frame rather than at end of file */
+        boolean stoppedEarly() {
+            return corrupt;
+        }
+
+        /**
+         * Ensures at least {@code bytes} bytes are buffered, growing the buffer for large frames.
+         *
+         * @return false if the input ends first
+         */
+        private boolean fill(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return true;
+            }
+            if (bytes > buffer.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(bytes);
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+            while (buffer.position() < bytes && !eof) {
+                if (channel.read(buffer) < 0) {
+                    eof = true;
+                }
+            }
+            buffer.flip();
+            return buffer.remaining() >= bytes;
+        }
+    }
+}
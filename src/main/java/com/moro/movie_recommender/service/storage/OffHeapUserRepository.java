@@ -0,0 +1,309 @@
+package com.moro.movie_recommender.service.storage;
+
+import com.moro.movie_recommender.config.StorageProperties;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.TraktMovieList;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.service.MetricsSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Users kept in native memory outside the Java heap ({@code storage.backend=off-heap}), so the
+ * heap, and with it GC pauses, stays small and stable however many movies users have watched.
+ *
+ * <p>Each user is one record in a {@link SlabAllocator} block: the account and manual movies
+ * encoded by {@link UserRecordCodec}, followed by the Trakt movies as raw columns
+ * ({@link TraktMovieList#writeColumns}), about 11 bytes per watched movie. The heap holds only a
+ * sorted index of names to block addresses and versions. A user is decoded on every read, into
+ * an immutable {@link User} that callers may keep.
+ *
+ * <p>A mutation writes the new record to a fresh block and then frees the old one, under a
+ * per-user lock stripe that readers of the user take as well, so a block is never freed while
+ * being read. Compaction runs periodically on a background thread with all access locked out,
+ * since it moves blocks of every user.
+ *
+ * <p>Nothing is persisted: users are lost on restart, as with {@code storage.enabled=false} on
+ * the local backend.
+ */
+@Component
+@ConditionalOnProperty(prefix = "storage", name = "backend", havingValue = "off-heap")
+public class OffHeapUserRepository implements UserRepository, MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapUserRepository.class);
+
+    private static final int LOCK_STRIPES = 256;
+    private static final long ANY_VERSION = -1;
+
+    /** Where a user's record is, and the user's version and Trakt link, so listings need not decode. */
+    private record Entry(long address, int length, long version, boolean traktLinked) {}
+
+    private final StorageProperties.OffHeap config;
+    private final SlabAllocator allocator;
+    private final MovieCatalog catalog;
+    private final NavigableMap<String, Entry> index = new ConcurrentSkipListMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    /** Held shared by every access and exclusively by compaction. */
+    private final ReadWriteLock compactionLock = new ReentrantReadWriteLock();
+    private final AtomicLong versions = new AtomicLong();
+    private ScheduledExecutorService compactor;
+
+    private final LongAdder mutations = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder recordBytes = new LongAdder();
+    private final LongAdder interactions = new LongAdder();
+
+    public OffHeapUserRepository(StorageProperties props, MovieCatalog catalog) {
+        this.config = props.getOffHeap();
+        this.catalog = catalog;
+        this.allocator = new SlabAllocator(config.getSlabSize().toBytes(), config.getMaxSize().toBytes());
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Starts periodic compaction.
+     */
+    @PostConstruct
+    public void open() {
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "off-heap-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = config.getCompactionInterval().toMillis();
+        compactor.scheduleWithFixedDelay(this::compactSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("Storing users off-heap in {} slabs, at most {}", config.getSlabSize(), config.getMaxSize());
+    }
+
+    /**
+     * Stops compaction and frees all native memory.
+     */
+    @PreDestroy
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        compactionLock.writeLock().lock();
+        try {
+            index.clear();
+            allocator.close();
+        } finally {
+            compactionLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Mono<User> findByName(String name) {
+        return Mono.fromSupplier(() -> get(name));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Only the users on the page are decoded.
+     */
+    @Override
+    public Mono<List<User>> findPage(String after, int limit) {
+        return findAllAfter(after).take(limit, true).collectList();
+    }
+
+    @Override
+    public Flux<User> findAllAfter(String after) {
+        return Flux.defer(() -> {
+            NavigableMap<String, Entry> tail = after != null ? index.tailMap(after, false) : index;
+            // Names deleted since the index was read resolve to null and are skipped
+            return Flux.fromIterable(tail.keySet()).mapNotNull(this::get);
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Decodes every user onto the heap; prefer paging through {@link #findAllAfter(String)}.
+     */
+    @Override
+    public Mono<Map<String, User>> findAll() {
+        return findAllAfter(null).collectMap(User::getName, user -> user, LinkedHashMap::new);
+    }
+
+    @Override
+    public Flux<String> findTraktLinkedNames() {
+        return Flux.defer(() -> Flux.fromIterable(index.entrySet()))
+                .filter(entry -> entry.getValue().traktLinked())
+                .map(Map.Entry::getKey);
+    }
+
+    @Override
+    public Mono<User> apply(UserMutation mutation) {
+        return Mono.defer(() -> Mono.justOrEmpty(apply(mutation, ANY_VERSION)));
+    }
+
+    @Override
+    public Mono<User> compareAndApply(UserMutation mutation, long expectedVersion) {
+        return Mono.defer(() -> Mono.justOrEmpty(apply(mutation, expectedVersion)));
+    }
+
+    /**
+     * Compacts the slab allocator now.
+     *
+     * @return number of slabs released
+     */
+    public int compact() {
+        compactionLock.writeLock().lock();
+        try {
+            return allocator.compact(config.getMinOccupancy(), (owner, from, to) -> {
+                String name = (String) owner;
+                Entry entry = index.get(name);
+                index.put(name, new Entry(to, entry.length(), entry.version(), entry.traktLinked()));
+            });
+        } finally {
+            compactionLock.writeLock().unlock();
+        }
+    }
+
+    private User get(String name) {
+        compactionLock.readLock().lock();
+        try {
+            synchronized (lockFor(name)) {
+                Entry entry = index.get(name);
+                return entry != null ? read(entry) : null;
+            }
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+    }
+
+    private User apply(UserMutation mutation, long expectedVersion) {
+        String name = mutation.userName();
+        compactionLock.readLock().lock();
+        try {
+            synchronized (lockFor(name)) {
+                Entry entry = index.get(name);
+                User before = entry != null ? read(entry) : null;
+                if (expectedVersion != ANY_VERSION && before != null && before.getVersion() != expectedVersion) {
+                    conflicts.increment();
+                    throw new VersionConflictException(name, expectedVersion, before.getVersion());
+                }
+                User after = mutation.applyTo(before);
+                if (after == before) {
+                    return null;
+                }
+                if (after != null) {
+                    after = after.withVersion(versions.incrementAndGet());
+                    index.put(name, write(after));
+                } else {
+                    index.remove(name);
+                }
+                if (entry != null) {
+                    free(entry);
+                }
+                mutations.increment();
+                return after != null ? after : before;
+            }
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Record layout: metadata length, metadata ({@link UserRecordCodec} with no Trakt movies),
+     * Trakt movie count, Trakt movie columns.
+     */
+    private Entry write(User user) {
+        TraktMovieList movies = user.getTraktMovies();
+        byte[] meta = UserRecordCodec.encode(user.withTraktMovies(TraktMovieList.empty()));
+        long length = Integer.BYTES + meta.length + Integer.BYTES + TraktMovieList.columnsSize(movies.size());
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("User " + user.getName() + " is too large to store off-heap");
+        }
+        long address = allocator.allocate((int) length, user.getName());
+        MemorySegment record = allocator.segment(address, (int) length);
+        record.set(ValueLayout.JAVA_INT_UNALIGNED, 0, meta.length);
+        MemorySegment.copy(meta, 0, record, ValueLayout.JAVA_BYTE, Integer.BYTES, meta.length);
+        record.set(ValueLayout.JAVA_INT_UNALIGNED, Integer.BYTES + meta.length, movies.size());
+        movies.writeColumns(record, 2L * Integer.BYTES + meta.length);
+        recordBytes.add(length);
+        interactions.add(movies.size());
+        return new Entry(address, (int) length, user.getVersion(), user.hasTraktAccount());
+    }
+
+    private User read(Entry entry) {
+        MemorySegment record = allocator.segment(entry.address(), entry.length());
+        int metaLength = record.get(ValueLayout.JAVA_INT_UNALIGNED, 0);
+        User meta = UserRecordCodec.decodeUser(record.asSlice(Integer.BYTES, metaLength).asByteBuffer(), catalog);
+        int count = record.get(ValueLayout.JAVA_INT_UNALIGNED, Integer.BYTES + metaLength);
+        TraktMovieList movies = TraktMovieList.readColumns(catalog, record, 2L * Integer.BYTES + metaLength, count);
+        return meta.withTraktMovies(movies).withVersion(entry.version());
+    }
+
+    private void free(Entry entry) {
+        MemorySegment record = allocator.segment(entry.address(), entry.length());
+        int metaLength = record.get(ValueLayout.JAVA_INT_UNALIGNED, 0);
+        interactions.add(-record.get(ValueLayout.JAVA_INT_UNALIGNED, Integer.BYTES + metaLength));
+        recordBytes.add(-entry.length());
+        allocator.free(entry.address());
+    }
+
+    private void compactSafely() {
+        try {
+            long start = System.nanoTime();
+            int released = compact();
+            if (released > 0) {
+                logger.info("Compacted off-heap users, released {} slabs in {} ms", released,
+                        (System.nanoTime() - start) / 1_000_000);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Off-heap compaction failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private Object lockFor(String name) {
+        int h = name.hashCode();
+        return locks[Math.floorMod(h ^ (h >>> 16), LOCK_STRIPES)];
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "offHeapUserStore";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("users", index.size());
+        metrics.put("interactions", interactions.sum());
+        metrics.put("mutations", mutations.sum());
+        metrics.put("versionConflicts", conflicts.sum());
+        metrics.put("slabs", allocator.slabCount());
+        metrics.put("reservedBytes", allocator.reservedBytes());
+        metrics.put("allocatedBytes", allocator.allocatedBytes());
+        metrics.put("recordBytes", recordBytes.sum());
+        metrics.put("slabsReleased", allocator.slabsReleased());
+        metrics.put("compactions", allocator.compactions());
+        metrics.put("relocatedBlocks", allocator.relocatedBlocks());
+        return metrics;
+    }
+}
@@ -0,0 +1,453 @@
+package com.moro.movie_recommender.service.storage;
+
+import com.moro.movie_recommender.config.StorageProperties;
+import com.moro.movie_recommender.dto.ManualMovie;
+import com.moro.movie_recommender.dto.Movie;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.TraktAccount;
+import com.moro.movie_recommender.dto.TraktMovieList;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.dto.trakt.TraktIdsDTO;
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+import com.moro.movie_recommender.service.MetricsSource;
+import io.r2dbc.spi.Readable;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.Parameter;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link UserRepository} over a relational database through R2DBC, selected with
+ * {@code storage.backend=r2dbc}. Any number of app nodes can share one database.
+ *
+ * <p>The schema ({@code db/user-schema.sql}) is normalized into {@code users} (name, version
+ * and Trakt account), {@code movies} (one row per distinct movie, shared across users) and
+ * {@code user_movie} (a user's manual and Trakt lists, one row per position with the rating,
+ * and for Trakt movies the play count and last-watched time).
+ *
+ * <p>A mutation runs in one transaction: the user is read, the mutation applied in memory,
+ * and only the difference is written back. Positions whose movie or rating changed become
+ * rows of a multi-row {@code MERGE} of at most {@code storage.r2dbc.batch-size} rows, and a
+ * list that shrank is trimmed with a single {@code DELETE}; so an incremental sync that added
+ * a handful of movies costs a handful of rows, not a rewrite of the user's library.
+ *
+ * <p>The version is a counter in the {@code users} row. Writes update the row only
+ * {@code WHERE version} is still the one read, so concurrent writers on any node are detected
+ * as a {@link VersionConflictException}; {@link #apply(UserMutation)} retries those itself.
+ */
+@Component
+@ConditionalOnProperty(prefix = "storage", name = "backend", havingValue = "r2dbc")
+public class R2dbcUserRepository implements UserRepository, MetricsSource {
+
+    static final String MANUAL = "manual";
+    static final String TRAKT = "trakt";
+
+    private static final long ANY_VERSION = -1;
+    private static final int MAX_APPLY_ATTEMPTS = 8;
+
+    private static final String USER_COLUMNS = "name, version, trakt_access_token, trakt_refresh_token, "
+            + "trakt_linked_at, trakt_username, trakt_user_id, trakt_last_watched_at, trakt_last_rated_at";
+    private static final String MOVIES_OF_USERS = "SELECT um.user_name, um.list_name, um.rating, um.plays, um.last_watched_at, "
+            + "m.title, m.release_year, m.trakt_id, m.imdb_id, m.tmdb_id, m.slug "
+            + "FROM user_movie um JOIN movies m ON m.movie_key = um.movie_key "
+            + "WHERE um.user_name IN (:names) ORDER BY um.user_name, um.list_name, um.list_index";
+
+    private final DatabaseClient db;
+    private final TransactionalOperator transactions;
+    private final int batchSize;
+    private final MovieCatalog catalog;
+
+    private final LongAdder mutations = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder upsertStatements = new LongAdder();
+    private final LongAdder upsertedRows = new LongAdder();
+    private final LongAdder trimmedRows = new LongAdder();
+
+    public R2dbcUserRepository(DatabaseClient db, TransactionalOperator transactions, StorageProperties props,
+                               MovieCatalog catalog) {
+        this.db = db;
+        this.transactions = transactions;
+        this.batchSize = Math.max(1, props.getR2dbc().getBatchSize());
+        this.catalog = catalog;
+    }
+
+    @Override
+    public Mono<User> findByName(String name) {
+        return load(db.sql("SELECT " + USER_COLUMNS + " FROM users WHERE name = :name").bind("name", name))
+                .flatMap(users -> Mono.justOrEmpty(users.isEmpty() ? null : users.get(0)));
+    }
+
+    @Override
+    public Mono<List<User>> findPage(String after, int limit) {
+        DatabaseClient.GenericExecuteSpec users = after != null
+                ? db.sql("SELECT " + USER_COLUMNS + " FROM users WHERE name > :after ORDER BY name LIMIT :limit")
+                        .bind("after", after)
+                : db.sql("SELECT " + USER_COLUMNS + " FROM users ORDER BY name LIMIT :limit");
+        return load(users.bind("limit", limit));
+    }
+
+    @Override
+    public Mono<Map<String, User>> findAll() {
+        return findAllAfter(null)
+                .collectMap(User::getName, user -> user, LinkedHashMap::new)
+                .map(Collections::unmodifiableMap);
+    }
+
+    @Override
+    public Flux<String> findTraktLinkedNames() {
+        return db.sql("SELECT name FROM users WHERE trakt_access_token IS NOT NULL AND TRIM(trakt_access_token) <> ''")
+                .map(row -> row.get("name", String.class))
+                .all();
+    }
+
+    @Override
+    public Mono<User> apply(UserMutation mutation) {
+        return write(mutation, ANY_VERSION)
+                .retryWhen(Retry.max(MAX_APPLY_ATTEMPTS - 1).filter(VersionConflictException.class::isInstance));
+    }
+
+    @Override
+    public Mono<User> compareAndApply(UserMutation mutation, long expectedVersion) {
+        return write(mutation, expectedVersion);
+    }
+
+    private Mono<User> write(UserMutation mutation, long expectedVersion) {
+        String name = mutation.userName();
+        Mono<User> write = findByName(name)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(current -> {
+                    User before = current.orElse(null);
+                    if (expectedVersion != ANY_VERSION && before != null && before.getVersion() != expectedVersion) {
+                        return Mono.<User>error(new VersionConflictException(name, expectedVersion, before.getVersion()));
+                    }
+                    User after = mutation.applyTo(before);
+                    if (after == before) {
+                        return Mono.<User>empty();
+                    }
+                    if (after == null) {
+                        return deleteUser(before).thenReturn(before);
+                    }
+                    User stamped = after.withVersion(before != null ? before.getVersion() + 1 : 1);
+                    List<Movie> noMovies = List.of();
+                    return (before != null ? updateUser(before, stamped) : insertUser(stamped))
+                            .then(writeList(name, MANUAL, before != null ? before.getManualMovies() : noMovies, stamped.getManualMovies()))
+                            .then(writeList(name, TRAKT, before != null ? before.getTraktMovies() : noMovies, stamped.getTraktMovies()))
+                            .thenReturn(stamped);
+                });
+        return transactions.transactional(write)
+                // A concurrent insert of the same user or movie; re-reading resolves it
+                .onErrorMap(DataIntegrityViolationException.class, e -> new VersionConflictException(name, expectedVersion))
+                .doOnNext(user -> mutations.increment())
+                .doOnError(VersionConflictException.class, e -> conflicts.increment());
+    }
+
+    private Mono<Void> insertUser(User user) {
+        return bindUser(db.sql("INSERT INTO users (" + USER_COLUMNS + ") VALUES (:name, :version, :accessToken, "
+                        + ":refreshToken, :linkedAt, :traktUsername, :traktUserId, :lastWatchedAt, :lastRatedAt)"), user)
+                .fetch()
+                .rowsUpdated()
+                .then();
+    }
+
+    private Mono<Void> updateUser(User before, User after) {
+        return bindUser(db.sql("UPDATE users SET version = :version, trakt_access_token = :accessToken, "
+                        + "trakt_refresh_token = :refreshToken, trakt_linked_at = :linkedAt, trakt_username = :traktUsername, "
+                        + "trakt_user_id = :traktUserId, trakt_last_watched_at = :lastWatchedAt, trakt_last_rated_at = :lastRatedAt "
+                        + "WHERE name = :name AND version = :expected"), after)
+                .bind("expected", before.getVersion())
+                .fetch()
+                .rowsUpdated()
+                .flatMap(updated -> updated == 0
+                        ? Mono.<Void>error(new VersionConflictException(before.getName(), before.getVersion()))
+                        : Mono.<Void>empty());
+    }
+
+    private Mono<Void> deleteUser(User before) {
+        // user_movie rows go with it (ON DELETE CASCADE); shared movies stay
+        return db.sql("DELETE FROM users WHERE name = :name AND version = :expected")
+                .bind("name", before.getName())
+                .bind("expected", before.getVersion())
+                .fetch()
+                .rowsUpdated()
+                .flatMap(deleted -> deleted == 0
+                        ? Mono.<Void>error(new VersionConflictException(before.getName(), before.getVersion()))
+                        : Mono.<Void>empty());
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindUser(DatabaseClient.GenericExecuteSpec spec, User user) {
+        TraktAccount account = user.getTraktAccount();
+        return spec.bind("name", user.getName())
+                .bind("version", user.getVersion())
+                .bind("accessToken", Parameter.fromOrEmpty(account != null ? account.getAccessToken() : null, String.class))
+                .bind("refreshToken", Parameter.fromOrEmpty(account != null ? account.getRefreshToken() : null, String.class))
+                .bind("linkedAt", Parameter.fromOrEmpty(account != null ? account.getLinkedAt() : null, OffsetDateTime.class))
+                .bind("traktUsername", Parameter.fromOrEmpty(account != null ? account.getTraktUsername() : null, String.class))
+                .bind("traktUserId", Parameter.fromOrEmpty(account != null ? account.getTraktUserId() : null, String.class))
+                .bind("lastWatchedAt", Parameter.fromOrEmpty(account != null ? account.getLastWatchedAt() : null, OffsetDateTime.class))
+                .bind("lastRatedAt", Parameter.fromOrEmpty(account != null ? account.getLastRatedAt() : null, OffsetDateTime.class));
+    }
+
+    /**
+     * Writes the positions of one list that differ between {@code old} and {@code updated}.
+     */
+    private Mono<Void> writeList(String userName, String list, List<Movie> old, List<Movie> updated) {
+        if (old == updated) {
+            return Mono.empty();
+        }
+        List<Slot> changed = new ArrayList<>();
+        for (int i = 0; i < updated.size(); i++) {
+            if (i >= old.size() || !sameRow(old, updated, i)) {
+                changed.add(slot(updated, i));
+            }
+        }
+        Mono<Void> trim = Mono.empty();
+        if (updated.size() < old.size()) {
+            trim = db.sql("DELETE FROM user_movie WHERE user_name = :name AND list_name = :list AND list_index >= :size")
+                    .bind("name", userName)
+                    .bind("list", list)
+                    .bind("size", updated.size())
+                    .fetch()
+                    .rowsUpdated()
+                    .doOnNext(trimmedRows::add)
+                    .then();
+        }
+        // Movies first: user_movie references them
+        return trim.then(upsertMovies(changed)).then(upsertSlots(userName, list, changed));
+    }
+
+    private Mono<Void> upsertMovies(List<Slot> slots) {
+        Map<String, Movie> distinct = new LinkedHashMap<>();
+        for (Slot slot : slots) {
+            distinct.putIfAbsent(movieKey(slot.movie()), slot.movie());
+        }
+        List<Map.Entry<String, Movie>> movies = new ArrayList<>(distinct.entrySet());
+        return Flux.fromIterable(partition(movies))
+                .concatMap(batch -> {
+                    StringBuilder sql = new StringBuilder("MERGE INTO movies t USING (VALUES ");
+                    for (int i = 0; i < batch.size(); i++) {
+                        sql.append(i > 0 ? ", " : "")
+                                .append("(:k").append(i).append(", :title").append(i).append(", :year").append(i)
+                                .append(", :trakt").append(i).append(", :imdb").append(i).append(", :tmdb").append(i)
+                                .append(", :slug").append(i).append(')');
+                    }
+                    sql.append(") AS s (movie_key, title, release_year, trakt_id, imdb_id, tmdb_id, slug) "
+                            + "ON t.movie_key = s.movie_key "
+                            + "WHEN NOT MATCHED THEN INSERT (movie_key, title, release_year, trakt_id, imdb_id, tmdb_id, slug) "
+                            + "VALUES (s.movie_key, s.title, s.release_year, s.trakt_id, s.imdb_id, s.tmdb_id, s.slug)");
+                    DatabaseClient.GenericExecuteSpec spec = db.sql(sql.toString());
+                    for (int i = 0; i < batch.size(); i++) {
+                        Movie movie = batch.get(i).getValue();
+                        TraktIdsDTO ids = movie instanceof TraktMovieDTO trakt ? trakt.getIds() : null;
+                        spec = spec.bind("k" + i, batch.get(i).getKey())
+                                .bind("title" + i, Parameter.fromOrEmpty(movie.getTitle(), String.class))
+                                .bind("year" + i, Parameter.fromOrEmpty(movie.getYear(), Integer.class))
+                                .bind("trakt" + i, Parameter.fromOrEmpty(ids != null ? ids.getTrakt() : null, Long.class))
+                                .bind("imdb" + i, Parameter.fromOrEmpty(ids != null ? ids.getImdb() : null, String.class))
+                                .bind("tmdb" + i, Parameter.fromOrEmpty(ids != null ? ids.getTmdb() : null, Long.class))
+                                .bind("slug" + i, Parameter.fromOrEmpty(ids != null ? ids.getSlug() : null, String.class));
+                    }
+                    upsertStatements.increment();
+                    return spec.fetch().rowsUpdated();
+                })
+                .then();
+    }
+
+    private Mono<Void> upsertSlots(String userName, String list, List<Slot> slots) {
+        return Flux.fromIterable(partition(slots))
+                .concatMap(batch -> {
+                    StringBuilder sql = new StringBuilder("MERGE INTO user_movie t USING (VALUES ");
+                    for (int i = 0; i < batch.size(); i++) {
+                        sql.append(i > 0 ? ", " : "")
+                                .append("(:name, :list, :i").append(i).append(", :k").append(i)
+                                .append(", :rating").append(i).append(", :plays").append(i)
+                                .append(", :watched").append(i).append(')');
+                    }
+                    sql.append(") AS s (user_name, list_name, list_index, movie_key, rating, plays, last_watched_at) "
+                            + "ON t.user_name = s.user_name AND t.list_name = s.list_name AND t.list_index = s.list_index "
+                            + "WHEN MATCHED THEN UPDATE SET movie_key = s.movie_key, rating = s.rating, "
+                            + "plays = s.plays, last_watched_at = s.last_watched_at "
+                            + "WHEN NOT MATCHED THEN INSERT (user_name, list_name, list_index, movie_key, rating, plays, last_watched_at) "
+                            + "VALUES (s.user_name, s.list_name, s.list_index, s.movie_key, s.rating, s.plays, s.last_watched_at)");
+                    DatabaseClient.GenericExecuteSpec spec = db.sql(sql.toString())
+                            .bind("name", userName)
+                            .bind("list", list);
+                    for (int i = 0; i < batch.size(); i++) {
+                        Slot slot = batch.get(i);
+                        spec = spec.bind("i" + i, slot.index())
+                                .bind("k" + i, movieKey(slot.movie()))
+                                .bind("rating" + i, Parameter.fromOrEmpty(slot.movie().getUserRating(), Integer.class))
+                                .bind("plays" + i, Parameter.fromOrEmpty(slot.plays(), Integer.class))
+                                .bind("watched" + i, Parameter.fromOrEmpty(slot.lastWatchedAt(), OffsetDateTime.class));
+                    }
+                    upsertStatements.increment();
+                    upsertedRows.add(batch.size());
+                    return spec.fetch().rowsUpdated();
+                })
+                .then();
+    }
+
+    private <T> List<List<T>> partition(List<T> items) {
+        List<List<T>> batches = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += batchSize) {
+            batches.add(items.subList(from, Math.min(items.size(), from + batchSize)));
+        }
+        return batches;
+    }
+
+    /**
+     * Row key of a movie in {@code movies}: the Trakt id when known, otherwise title and year.
+     */
+    static String movieKey(Movie movie) {
+        if (movie instanceof TraktMovieDTO trakt && trakt.getIds() != null && trakt.getIds().getTrakt() != null) {
+            return "trakt:" + trakt.getIds().getTrakt();
+        }
+        return "title:" + movie.getYear() + ":" + movie.getTitle();
+    }
+
+    /** @return true if position {@code i} of both lists is stored as the same {@code user_movie} row */
+    private static boolean sameRow(List<Movie> old, List<Movie> updated, int i) {
+        if (old instanceof TraktMovieList a && updated instanceof TraktMovieList b) {
+            // Columnar lists compare without materializing movies: catalog indices identify them
+            return a.getCatalogIndex(i) == b.getCatalogIndex(i)
+                    && Objects.equals(a.getUserRating(i), b.getUserRating(i))
+                    && a.getPlays(i) == b.getPlays(i)
+                    && Objects.equals(a.getLastWatchedAt(i), b.getLastWatchedAt(i));
+        }
+        Movie a = old.get(i);
+        Movie b = updated.get(i);
+        return a == b || (movieKey(a).equals(movieKey(b)) && Objects.equals(a.getUserRating(), b.getUserRating()));
+    }
+
+    private static Slot slot(List<Movie> movies, int i) {
+        if (movies instanceof TraktMovieList trakt) {
+            return new Slot(i, trakt.get(i), trakt.getPlays(i), trakt.getLastWatchedAt(i));
+        }
+        return new Slot(i, movies.get(i), null, null);
+    }
+
+    /** A movie at a position of one of the user's lists. */
+    private record Slot(int index, Movie movie, Integer plays, OffsetDateTime lastWatchedAt) {}
+
+    /** A {@code users} row, before its movies are attached. */
+    private record UserRow(String name, long version, TraktAccount account) {}
+
+    /** A {@code user_movie} row joined with its movie. */
+    private record MovieRow(String userName, String list, Movie movie, int plays, OffsetDateTime lastWatchedAt) {}
+
+    /**
+     * Runs a query over {@code users} and attaches every returned user's movies with one more
+     * query, in the query's order.
+     */
+    private Mono<List<User>> load(DatabaseClient.GenericExecuteSpec users) {
+        return users.map(R2dbcUserRepository::readUser)
+                .all()
+                .collectList()
+                .flatMap(rows -> {
+                    if (rows.isEmpty()) {
+                        return Mono.just(List.<User>of());
+                    }
+                    return db.sql(MOVIES_OF_USERS)
+                            .bind("names", rows.stream().map(UserRow::name).toList())
+                            .map(R2dbcUserRepository::readMovie)
+                            .all()
+                            .collectList()
+                            .map(movies -> assemble(rows, movies));
+                });
+    }
+
+    private List<User> assemble(List<UserRow> rows, List<MovieRow> movies) {
+        Map<String, List<Movie>> manual = new HashMap<>();
+        Map<String, TraktMovieList.Builder> trakt = new HashMap<>();
+        for (MovieRow row : movies) {
+            if (MANUAL.equals(row.list())) {
+                manual.computeIfAbsent(row.userName(), name -> new ArrayList<>()).add(row.movie());
+            } else {
+                trakt.computeIfAbsent(row.userName(), name -> TraktMovieList.builder(catalog, 16))
+                        .add(row.movie(), row.plays(), row.lastWatchedAt());
+            }
+        }
+        List<User> users = new ArrayList<>(rows.size());
+        for (UserRow row : rows) {
+            TraktMovieList.Builder traktMovies = trakt.get(row.name());
+            users.add(new User(row.name(), manual.get(row.name()), traktMovies != null ? traktMovies.build() : null,
+                    row.account()).withVersion(row.version()));
+        }
+        return users;
+    }
+
+    private static UserRow readUser(Readable row) {
+        TraktAccount account = null;
+        String accessToken = row.get("trakt_access_token", String.class);
+        if (accessToken != null) {
+            account = new TraktAccount();
+            account.setAccessToken(accessToken);
+            account.setRefreshToken(row.get("trakt_refresh_token", String.class));
+            account.setLinkedAt(row.get("trakt_linked_at", OffsetDateTime.class));
+            account.setTraktUsername(row.get("trakt_username", String.class));
+            account.setTraktUserId(row.get("trakt_user_id", String.class));
+            account.setLastWatchedAt(row.get("trakt_last_watched_at", OffsetDateTime.class));
+            account.setLastRatedAt(row.get("trakt_last_rated_at", OffsetDateTime.class));
+        }
+        Long version = row.get("version", Long.class);
+        return new UserRow(row.get("name", String.class), version != null ? version : 0, account);
+    }
+
+    private static MovieRow readMovie(Readable row) {
+        String list = row.get("list_name", String.class);
+        String title = row.get("title", String.class);
+        Integer year = row.get("release_year", Integer.class);
+        Integer rating = row.get("rating", Integer.class);
+        Movie movie;
+        if (MANUAL.equals(list)) {
+            movie = new ManualMovie(title, year, rating);
+        } else {
+            TraktIdsDTO ids = new TraktIdsDTO();
+            ids.setTrakt(row.get("trakt_id", Long.class));
+            ids.setImdb(row.get("imdb_id", String.class));
+            ids.setTmdb(row.get("tmdb_id", Long.class));
+            ids.setSlug(row.get("slug", String.class));
+            TraktMovieDTO trakt = new TraktMovieDTO();
+            trakt.setTitle(title);
+            trakt.setYear(year);
+            trakt.setIds(ids);
+            trakt.setUserRating(rating);
+            movie = trakt;
+        }
+        Integer plays = row.get("plays", Integer.class);
+        return new MovieRow(row.get("user_name", String.class), list, movie,
+                plays != null ? plays : 0, row.get("last_watched_at", OffsetDateTime.class));
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "userRepository";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("mutations", mutations.sum());
+        metrics.put("versionConflicts", conflicts.sum());
+        metrics.put("upsertStatements", upsertStatements.sum());
+        metrics.put("upsertedRows", upsertedRows.sum());
+        metrics.put("trimmedRows", trimmedRows.sum());
+        return metrics;
+    }
+}
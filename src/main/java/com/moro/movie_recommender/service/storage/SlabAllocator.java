@@ -0,0 +1,316 @@
+package com.moro.movie_recommender.service.storage;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Allocates variable-length records off-heap, in slabs of native memory.
+ *
+ * <p>Each slab is one segment of its own shared {@link Arena}, carved into equal blocks of
+ * one size class (powers of two from {@value #MIN_BLOCK} bytes up to the slab size); a record
+ * takes the smallest block it fits. Records larger than a slab get a slab to themselves.
+ * Freeing a block returns it to its slab, and a slab whose blocks are all free is released
+ * right away by closing its arena, so memory goes back to the OS without waiting for a GC.
+ *
+ * <p>Churn still leaves slabs thinly occupied. {@link #compact(double, Relocator)} moves the
+ * blocks of the emptiest slabs of a size class into free blocks of the fullest ones, then
+ * releases the emptied slabs.
+ *
+ * <p>A block is addressed by a {@code long} holding its slab id and block number. Each block
+ * remembers an owner object, handed back to the {@link Relocator} when the block moves.
+ *
+ * <p>Allocation, freeing and compaction are synchronized. {@link #segment(long, int)} is not:
+ * callers must make sure a block is not freed or moved while they access it.
+ */
+final class SlabAllocator {
+
+    static final int MIN_BLOCK = 64;
+    private static final int MIN_BLOCK_SHIFT = Integer.numberOfTrailingZeros(MIN_BLOCK);
+    private static final int LARGE = -1;
+
+    /** Called for every block compaction moves. */
+    interface Relocator {
+        void relocated(Object owner, long from, long to);
+    }
+
+    private static final class Slab {
+        final int id;
+        final int sizeClass;
+        final Arena arena;
+        final MemorySegment memory;
+        final long blockSize;
+        final Object[] owners; // null = free block
+        final int[] free; // stack of free block numbers
+        int freeCount;
+
+        Slab(int id, int sizeClass, long blockSize, int blocks) {
+            this.id = id;
+            this.sizeClass = sizeClass;
+            this.arena = Arena.ofShared();
+            this.memory = arena.allocate(blockSize * blocks, 8);
+            this.blockSize = blockSize;
+            this.owners = new Object[blocks];
+            this.free = new int[blocks];
+            for (int i = 0; i < blocks; i++) {
+                free[i] = blocks - 1 - i;
+            }
+            this.freeCount = blocks;
+        }
+
+        int live() {
+            return owners.length - freeCount;
+        }
+    }
+
+    private final long slabSize;
+    private final long maxSize;
+    /** Slabs by id; replaced when it grows, so unsynchronized readers see a consistent array. */
+    private volatile Slab[] slabs = new Slab[16];
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+    private int nextId;
+    /** Per size class: slabs with at least one free block. */
+    private final List<Set<Slab>> partial = new ArrayList<>();
+    /** Per size class: all slabs. */
+    private final List<Set<Slab>> bySizeClass = new ArrayList<>();
+
+    private long reservedBytes;
+    private long allocatedBytes;
+    private long slabsReleased;
+    private long compactions;
+    private long relocatedBlocks;
+
+    /**
+     * @param slabSize size of a slab in bytes, a power of two of at least {@value #MIN_BLOCK}
+     * @param maxSize  most native memory to reserve, in bytes
+     */
+    SlabAllocator(long slabSize, long maxSize) {
+        if (Long.bitCount(slabSize) != 1 || slabSize < MIN_BLOCK || slabSize > (1L << 30)) {
+            throw new IllegalArgumentException("Slab size must be a power of two between " + MIN_BLOCK + " bytes and 1 GB: " + slabSize);
+        }
+        this.slabSize = slabSize;
+        this.maxSize = maxSize;
+        int classes = Long.numberOfTrailingZeros(slabSize) - MIN_BLOCK_SHIFT + 1;
+        for (int i = 0; i < classes; i++) {
+            partial.add(new LinkedHashSet<>());
+            bySizeClass.add(new LinkedHashSet<>());
+        }
+    }
+
+    /**
+     * Allocates a block of at least {@code length} bytes.
+     *
+     * @param owner handed to the {@link Relocator} if compaction moves the block
+     * @return the block's address
+     * @throws IllegalStateException if that would exceed the memory limit
+     */
+    synchronized long allocate(int length, Object owner) {
+        if (length > slabSize) {
+            Slab slab = newSlab(LARGE, length, 1);
+            return take(slab, owner);
+        }
+        int sizeClass = sizeClass(length);
+        Set<Slab> candidates = partial.get(sizeClass);
+        Slab slab = candidates.isEmpty()
+                ? newSlab(sizeClass, blockSize(sizeClass), (int) (slabSize / blockSize(sizeClass)))
+                : candidates.iterator().next();
+        return take(slab, owner);
+    }
+
+    /**
+     * Frees a block, releasing its slab if that was the slab's last block in use.
+     */
+    synchronized void free(long address) {
+        Slab slab = slab(address);
+        int block = block(address);
+        if (slab.owners[block] == null) {
+            throw new IllegalStateException("Block " + Long.toHexString(address) + " is not allocated");
+        }
+        slab.owners[block] = null;
+        slab.free[slab.freeCount++] = block;
+        allocatedBytes -= slab.blockSize;
+        if (slab.live() == 0) {
+            release(slab);
+        } else if (slab.sizeClass != LARGE) {
+            partial.get(slab.sizeClass).add(slab);
+        }
+    }
+
+    /**
+     * @return the memory of the block at {@code address}, {@code length} bytes long
+     */
+    MemorySegment segment(long address, int length) {
+        Slab slab = slabs[(int) (address >>> 32)];
+        return slab.memory.asSlice(block(address) * slab.blockSize, length);
+    }
+
+    /**
+     * Compacts every size class whose slabs are on average less than {@code minOccupancy}
+     * full: blocks of the emptiest slabs move to the fullest ones until no further slab can be
+     * emptied. The caller must keep all blocks from being accessed meanwhile.
+     *
+     * @return number of slabs released
+     */
+    synchronized int compact(double minOccupancy, Relocator relocator) {
+        int released = 0;
+        for (int sizeClass = 0; sizeClass < bySizeClass.size(); sizeClass++) {
+            Set<Slab> slabsOfClass = bySizeClass.get(sizeClass);
+            if (slabsOfClass.size() < 2) {
+                continue;
+            }
+            long live = 0;
+            long capacity = 0;
+            for (Slab slab : slabsOfClass) {
+                live += slab.live();
+                capacity += slab.owners.length;
+            }
+            if ((double) live / capacity >= minOccupancy) {
+                continue;
+            }
+            // Empty the sparsest slabs into the free blocks of the densest ones
+            List<Slab> order = new ArrayList<>(slabsOfClass);
+            order.sort(Comparator.comparingInt(Slab::live));
+            int target = order.size() - 1;
+            for (int source = 0; source < target; source++) {
+                Slab from = order.get(source);
+                int freeElsewhere = 0;
+                for (int i = source + 1; i <= target; i++) {
+                    freeElsewhere += order.get(i).freeCount;
+                }
+                if (from.live() > freeElsewhere) {
+                    break;
+                }
+                for (int block = 0; block < from.owners.length && from.live() > 0; block++) {
+                    Object owner = from.owners[block];
+                    if (owner == null) {
+                        continue;
+                    }
+                    while (order.get(target).freeCount == 0) {
+                        target--;
+                    }
+                    Slab to = order.get(target);
+                    long fromAddress = address(from, block);
+                    long toAddress = take(to, owner);
+                    MemorySegment.copy(from.memory, block * from.blockSize, to.memory,
+                            block(toAddress) * to.blockSize, from.blockSize);
+                    relocator.relocated(owner, fromAddress, toAddress);
+                    relocatedBlocks++;
+                    free(fromAddress);
+                }
+                released++;
+            }
+        }
+        if (released > 0) {
+            compactions++;
+        }
+        return released;
+    }
+
+    synchronized int slabCount() {
+        return nextId - freeIds.size();
+    }
+
+    synchronized long reservedBytes() {
+        return reservedBytes;
+    }
+
+    synchronized long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    synchronized long slabsReleased() {
+        return slabsReleased;
+    }
+
+    synchronized long compactions() {
+        return compactions;
+    }
+
+    synchronized long relocatedBlocks() {
+        return relocatedBlocks;
+    }
+
+    /**
+     * Releases all native memory. No block may be accessed afterwards.
+     */
+    synchronized void close() {
+        for (Slab slab : slabs) {
+            if (slab != null) {
+                release(slab);
+            }
+        }
+    }
+
+    private long take(Slab slab, Object owner) {
+        int block = slab.free[--slab.freeCount];
+        slab.owners[block] = owner;
+        allocatedBytes += slab.blockSize;
+        if (slab.freeCount == 0 && slab.sizeClass != LARGE) {
+            partial.get(slab.sizeClass).remove(slab);
+        }
+        return address(slab, block);
+    }
+
+    private Slab newSlab(int sizeClass, long blockSize, int blocks) {
+        long size = blockSize * blocks;
+        if (reservedBytes + size > maxSize) {
+            throw new IllegalStateException("Off-heap memory limit of " + maxSize + " bytes reached");
+        }
+        int id = freeIds.isEmpty() ? nextId++ : freeIds.pop();
+        if (id >= slabs.length) {
+            slabs = Arrays.copyOf(slabs, slabs.length * 2);
+        }
+        Slab slab = new Slab(id, sizeClass, blockSize, blocks);
+        slabs[id] = slab;
+        reservedBytes += size;
+        if (sizeClass != LARGE) {
+            bySizeClass.get(sizeClass).add(slab);
+            partial.get(sizeClass).add(slab);
+        }
+        return slab;
+    }
+
+    private void release(Slab slab) {
+        if (slab.sizeClass != LARGE) {
+            bySizeClass.get(slab.sizeClass).remove(slab);
+            partial.get(slab.sizeClass).remove(slab);
+        }
+        slabs[slab.id] = null;
+        freeIds.push(slab.id);
+        reservedBytes -= slab.memory.byteSize();
+        slabsReleased++;
+        slab.arena.close();
+    }
+
+    private Slab slab(long address) {
+        Slab slab = slabs[(int) (address >>> 32)];
+        if (slab == null) {
+            throw new IllegalStateException("Block " + Long.toHexString(address) + " is not allocated");
+        }
+        return slab;
+    }
+
+    private static int sizeClass(int length) {
+        int shift = 64 - Long.numberOfLeadingZeros(Math.max(MIN_BLOCK, length) - 1L);
+        return shift - MIN_BLOCK_SHIFT;
+    }
+
+    private static long blockSize(int sizeClass) {
+        return (long) MIN_BLOCK << sizeClass;
+    }
+
+    private static long address(Slab slab, int block) {
+        return ((long) slab.id << 32) | block;
+    }
+
+    private static int block(long address) {
+        return (int) address;
+    }
+}
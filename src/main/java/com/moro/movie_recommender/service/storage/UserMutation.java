@@ -0,0 +1,113 @@
+package com.moro.movie_recommender.service.storage;
+
+import com.moro.movie_recommender.dto.ManualMovie;
+import com.moro.movie_recommender.dto.Movie;
+import com.moro.movie_recommender.dto.TraktAccount;
+import com.moro.movie_recommender.dto.User;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A change to one user, as recorded in the write-ahead log.
+ *
+ * <p>The same {@link #applyTo(User)} code runs for live requests and for log replay on
+ * startup, so recovery reproduces exactly the state the mutations produced originally.
+ */
+public sealed interface UserMutation {
+
+    /** @return name of the user this mutation changes */
+    String userName();
+
+    /**
+     * Applies the mutation to the current version of the user. Users are immutable, so a
+     * change returns a new instance and leaves {@code existing} untouched.
+     *
+     * @param existing the user, or null if there is no user with this name
+     * @return the user after the change, null if the user is (now) absent, or
+     *         {@code existing} itself if the mutation changed nothing (and need not be logged)
+     */
+    User applyTo(User existing);
+
+    /** Creates an empty user if the name is free. */
+    record Create(String userName) implements UserMutation {
+        @Override
+        public User applyTo(User existing) {
+            return existing != null ? existing : new User(userName);
+        }
+    }
+
+    /** Deletes a user. */
+    record Delete(String userName) implements UserMutation {
+        @Override
+        public User applyTo(User existing) {
+            return null;
+        }
+    }
+
+    /** Links a Trakt account, replacing any previously linked one. */
+    record LinkTrakt(String userName, String accessToken, String refreshToken, OffsetDateTime linkedAt)
+            implements UserMutation {
+        @Override
+        public User applyTo(User existing) {
+            if (existing == null) {
+                return null;
+            }
+            TraktAccount account = new TraktAccount(accessToken);
+            account.setRefreshToken(refreshToken);
+            account.setLinkedAt(linkedAt);
+            return existing.withTraktAccount(account);
+        }
+    }
+
+    /** Unlinks the user's Trakt account. */
+    record UnlinkTrakt(String userName) implements UserMutation {
+        @Override
+        public User applyTo(User existing) {
+            return existing != null ? existing.withTraktAccount(null) : null;
+        }
+    }
+
+    /** Appends a manually entered movie. */
+    record AddManualMovie(String userName, ManualMovie movie) implements UserMutation {
+        @Override
+        public User applyTo(User existing) {
+            return existing != null ? existing.withManualMovie(movie) : null;
+        }
+    }
+
+    /** Removes the first manual movie with the given title and year. */
+    record RemoveManualMovie(String userName, String title, Integer year) implements UserMutation {
+        @Override
+        public User applyTo(User existing) {
+            if (existing == null) {
+                return null;
+            }
+            List<Movie> movies = existing.getManualMovies();
+            for (int i = 0; i < movies.size(); i++) {
+                Movie movie = movies.get(i);
+                if (Objects.equals(title, movie.getTitle()) && Objects.equals(year, movie.getYear())) {
+                    return existing.withoutManualMovie(i);
+                }
+            }
+            return existing;
+        }
+    }
+
+    /**
+     * Replaces an existing user wholesale, e.g. with the result of an optimistic update.
+     * Logged as a full image of the user, Trakt account included.
+     */
+    record Replace(User user) implements UserMutation {
+        @Override
+        public String userName() {
+            return user.getName();
+        }
+
+        @Override
+        public User applyTo(User existing) {
+            return existing != null ? user : null;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.moro.movie_recommender.service.storage;
+
+import com.moro.movie_recommender.dto.ManualMovie;
+import com.moro.movie_recommender.dto.Movie;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.TraktAccount;
+import com.moro.movie_recommender.dto.TraktMovieList;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.dto.trakt.TraktIdsDTO;
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of users and {@link UserMutation}s for the write-ahead log and
+ * snapshots. Encoding is big-endian via {@link DataOutputStream}; decoding reads from a
+ * {@link ByteBuffer} so it works equally on heap arrays and mapped files.
+ *
+ * <p>Nullable values are prefixed with a presence byte; strings are a length (-1 for null)
+ * followed by UTF-8 bytes. Trakt movies are written in full and interned into the given
+ * {@link MovieCatalog} when decoded, since catalog indices only hold within one process.
+ */
+public final class UserRecordCodec {
+
+    private static final byte CREATE = 1;
+    private static final byte DELETE = 2;
+    private static final byte LINK_TRAKT = 3;
+    private static final byte UNLINK_TRAKT = 4;
+    private static final byte ADD_MANUAL_MOVIE = 5;
+    private static final byte REMOVE_MANUAL_MOVIE = 6;
+    private static final byte REPLACE = 7;
+
+    private static final byte MANUAL_MOVIE = 0;
+    private static final byte TRAKT_MOVIE = 1;
+    /** A Trakt movie followed by the user's play count and last-watched time. */
+    private static final byte WATCHED_TRAKT_MOVIE = 2;
+
+    private UserRecordCodec() {}
+
+    // --- Mutations ---
+
+    public static byte[] encode(UserMutation mutation) {
+        return write(out -> {
+            switch (mutation) {
+                case UserMutation.Create m -> {
+                    out.writeByte(CREATE);
+                    writeString(out, m.userName());
+                }
+                case UserMutation.Delete m -> {
+                    out.writeByte(DELETE);
+                    writeString(out, m.userName());
+                }
+                case UserMutation.LinkTrakt m -> {
+                    out.writeByte(LINK_TRAKT);
+                    writeString(out, m.userName());
+                    writeString(out, m.accessToken());
+                    writeString(out, m.refreshToken());
+                    writeTimestamp(out, m.linkedAt());
+                }
+                case UserMutation.UnlinkTrakt m -> {
+                    out.writeByte(UNLINK_TRAKT);
+                    writeString(out, m.userName());
+                }
+                case UserMutation.AddManualMovie m -> {
+                    out.writeByte(ADD_MANUAL_MOVIE);
+                    writeString(out, m.userName());
+                    writeMovie(out, m.movie());
+                }
+                case UserMutation.RemoveManualMovie m -> {
+                    out.writeByte(REMOVE_MANUAL_MOVIE);
+                    writeString(out, m.userName());
+                    writeString(out, m.title());
+                    writeInteger(out, m.year());
+                }
+                case UserMutation.Replace m -> {
+                    out.writeByte(REPLACE);
+                    writeUser(out, m.user());
+                }
+            }
+        });
+    }
+
+    public static UserMutation decodeMutation(ByteBuffer in, MovieCatalog catalog) {
+        byte type = in.get();
+        return switch (type) {
+            case CREATE -> new UserMutation.Create(readString(in));
+            case DELETE -> new UserMutation.Delete(readString(in));
+            case LINK_TRAKT -> new UserMutation.LinkTrakt(readString(in), readString(in), readString(in), readTimestamp(in));
+            case UNLINK_TRAKT -> new UserMutation.UnlinkTrakt(readString(in));
+            case ADD_MANUAL_MOVIE -> {
+                String userName = readString(in);
+                Movie movie = readMovie(in);
+                yield new UserMutation.AddManualMovie(userName, (ManualMovie) movie);
+            }
+            case REMOVE_MANUAL_MOVIE -> new UserMutation.RemoveManualMovie(readString(in), readString(in), readInteger(in));
+            case REPLACE -> new UserMutation.Replace(readUser(in, catalog));
+            default -> throw new IllegalStateException("Unknown user mutation type " + type);
+        };
+    }
+
+    // --- Users ---
+
+    public static byte[] encode(User user) {
+        return write(out -> writeUser(out, user));
+    }
+
+    public static User decodeUser(ByteBuffer in, MovieCatalog catalog) {
+        return readUser(in, catalog);
+    }
+
+    static void writeUser(DataOutputStream out, User user) throws IOException {
+        writeString(out, user.getName());
+        writeMovies(out, user.getManualMovies());
+        writeTraktMovies(out, user.getTraktMovies());
+        TraktAccount account = user.getTraktAccount();
+        out.writeBoolean(account != null);
+        if (account != null) {
+            writeString(out, account.getAccessToken());
+            writeString(out, account.getRefreshToken());
+            writeTimestamp(out, account.getLinkedAt());
+            writeString(out, account.getTraktUsername());
+            writeString(out, account.getTraktUserId());
+            writeTimestamp(out, account.getLastWatchedAt());
+            writeTimestamp(out, account.getLastRatedAt());
+        }
+    }
+
+    static User readUser(ByteBuffer in, MovieCatalog catalog) {
+        String name = readString(in);
+        List<Movie> manualMovies = readMovies(in);
+        TraktMovieList traktMovies = readTraktMovies(in, catalog);
+        TraktAccount account = null;
+        if (in.get() != 0) {
+            account = new TraktAccount();
+            account.setAccessToken(readString(in));
+            account.setRefreshToken(readString(in));
+            account.setLinkedAt(readTimestamp(in));
+            account.setTraktUsername(readString(in));
+            account.setTraktUserId(readString(in));
+            account.setLastWatchedAt(readTimestamp(in));
+            account.setLastRatedAt(readTimestamp(in));
+        }
+        return new User(name, manualMovies, traktMovies, account);
+    }
+
+    private static void writeMovies(DataOutputStream out, List<Movie> movies) throws IOException {
+        out.writeInt(movies.size());
+        for (Movie movie : movies) {
+            writeMovie(out, movie);
+        }
+    }
+
+    private static List<Movie> readMovies(ByteBuffer in) {
+        int size = in.getInt();
+        List<Movie> movies = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            movies.add(readMovie(in));
+        }
+        return movies;
+    }
+
+    private static void writeTraktMovies(DataOutputStream out, TraktMovieList movies) throws IOException {
+        out.writeInt(movies.size());
+        for (int i = 0; i < movies.size(); i++) {
+            out.writeByte(WATCHED_TRAKT_MOVIE);
+            writeTraktMovie(out, movies.get(i));
+            out.writeShort(movies.getPlays(i));
+            writeTimestamp(out, movies.getLastWatchedAt(i));
+        }
+    }
+
+    private static TraktMovieList readTraktMovies(ByteBuffer in, MovieCatalog catalog) {
+        int size = in.getInt();
+        TraktMovieList.Builder movies = TraktMovieList.builder(catalog, size);
+        for (int i = 0; i < size; i++) {
+            byte type = in.get();
+            if (type != WATCHED_TRAKT_MOVIE) {
+                throw new IllegalStateException("Unknown Trakt movie type " + type);
+            }
+            TraktMovieDTO movie = readTraktMovie(in);
+            short plays = in.getShort();
+            movies.add(movie, plays, readTimestamp(in));
+        }
+        return movies.build();
+    }
+
+    private static void writeMovie(DataOutputStream out, Movie movie) throws IOException {
+        if (movie instanceof TraktMovieDTO traktMovie) {
+            out.writeByte(TRAKT_MOVIE);
+            writeTraktMovie(out, traktMovie);
+            return;
+        }
+        // Manual movies and any other implementation keep the common fields only
+        out.writeByte(MANUAL_MOVIE);
+        writeString(out, movie.getTitle());
+        writeInteger(out, movie.getYear());
+        writeInteger(out, movie.getUserRating());
+    }
+
+    private static void writeTraktMovie(DataOutputStream out, TraktMovieDTO movie) throws IOException {
+        writeString(out, movie.getTitle());
+        writeInteger(out, movie.getYear());
+        writeInteger(out, movie.getUserRating());
+        TraktIdsDTO ids = movie.getIds();
+        out.writeBoolean(ids != null);
+        if (ids != null) {
+            writeLong(out, ids.getTrakt());
+            writeString(out, ids.getImdb());
+            writeLong(out, ids.getTmdb());
+            writeString(out, ids.getSlug());
+        }
+    }
+
+    private static Movie readMovie(ByteBuffer in) {
+        byte type = in.get();
+        if (type == MANUAL_MOVIE) {
+            return new ManualMovie(readString(in), readInteger(in), readInteger(in));
+        }
+        if (type != TRAKT_MOVIE) {
+            throw new IllegalStateException("Unknown movie type " + type);
+        }
+        return readTraktMovie(in);
+    }
+
+    private static TraktMovieDTO readTraktMovie(ByteBuffer in) {
+        TraktMovieDTO movie = new TraktMovieDTO();
+        movie.setTitle(readString(in));
+        movie.setYear(readInteger(in));
+        movie.setUserRating(readInteger(in));
+        if (in.get() != 0) {
+            TraktIdsDTO ids = new TraktIdsDTO();
+            ids.setTrakt(readLong(in));
+            ids.setImdb(readString(in));
+            ids.setTmdb(readLong(in));
+            ids.setSlug(readString(in));
+            movie.setIds(ids);
+        }
+        return movie;
+    }
+
+    // --- Primitives ---
+
+    @FunctionalInterface
+    interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    static byte[] write(Writer writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // cannot happen for an in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(ByteBuffer in) {
+        return in.get() != 0 ? in.getInt() : null;
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(ByteBuffer in) {
+        return in.get() != 0 ? in.getLong() : null;
+    }
+
+    private static void writeTimestamp(DataOutputStream out, OffsetDateTime value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.toEpochSecond());
+            out.writeInt(value.getNano());
+            out.writeInt(value.getOffset().getTotalSeconds());
+        }
+    }
+
+    private static OffsetDateTime readTimestamp(ByteBuffer in) {
+        if (in.get() == 0) {
+            return null;
+        }
+        Instant instant = Instant.ofEpochSecond(in.getLong(), in.getInt());
+        return OffsetDateTime.ofInstant(instant, ZoneOffset.ofTotalSeconds(in.getInt()));
+    }
+}
@@ -0,0 +1,86 @@
+package com.moro.movie_recommender.service.storage;
+
+import com.moro.movie_recommender.dto.User;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Where users are stored. Selected with {@code storage.backend}:
+ * <ul>
+ *   <li>{@code local} (default) - {@link UserStore}, in memory with a write-ahead log on local disk</li>
+ *   <li>{@code r2dbc} - {@link R2dbcUserRepository}, a shared relational database, so several
+ *       stateless app nodes can serve the same users</li>
+ *   <li>{@code off-heap} - {@link OffHeapUserRepository}, in native memory outside the Java heap,
+ *       not persisted</li>
+ * </ul>
+ *
+ * <p>Every change is a {@link UserMutation}. Each stored change stamps the user with a new
+ * version, which {@link #compareAndApply(UserMutation, long)} uses for optimistic updates.
+ */
+public interface UserRepository {
+
+    /** Users fetched per round trip by the default {@link #findAllAfter(String)}. */
+    int STREAM_PAGE_SIZE = 256;
+
+    /**
+     * @return the user, or empty if not found
+     */
+    Mono<User> findByName(String name);
+
+    /**
+     * Gets one page of users in name order.
+     *
+     * @param after the last name of the previous page, or null for the first page
+     * @param limit maximum number of users to return
+     * @return users whose names sort after {@code after}
+     */
+    Mono<List<User>> findPage(String after, int limit);
+
+    /**
+     * Streams users in name order, one page at a time. Users created or deleted while the
+     * stream runs may or may not be included.
+     *
+     * @param after name to start after, or null to start with the first user
+     * @return the users
+     */
+    default Flux<User> findAllAfter(String after) {
+        return findPage(after, STREAM_PAGE_SIZE)
+                .expand(page -> page.size() < STREAM_PAGE_SIZE
+                        ? Mono.empty()
+                        : findPage(page.get(page.size() - 1).getName(), STREAM_PAGE_SIZE))
+                .flatMapIterable(page -> page);
+    }
+
+    /**
+     * @return every user keyed by name
+     */
+    Mono<Map<String, User>> findAll();
+
+    /**
+     * @return names of all users with a linked Trakt account
+     */
+    Flux<String> findTraktLinkedNames();
+
+    /**
+     * Applies a mutation to the current version of the user and stores the result.
+     *
+     * @param mutation the change to apply
+     * @return a Mono emitting the affected user, stamped with its new version, once the
+     *         change is durable, or empty if the mutation changed nothing
+     */
+    Mono<User> apply(UserMutation mutation);
+
+    /**
+     * Applies a mutation only if the user is still at {@code expectedVersion}, i.e. nobody
+     * changed it since the caller read it.
+     *
+     * @param mutation        the change to apply
+     * @param expectedVersion version of the user the change was computed from
+     * @return as {@link #apply(UserMutation)}, or a {@link VersionConflictException} error
+     *         if the user has moved on to another version
+     */
+    Mono<User> compareAndApply(UserMutation mutation, long expectedVersion);
+}
@@ -0,0 +1,203 @@
+package com.moro.movie_recommender.service.storage;
+
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.User;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Compacted, memory-mappable image of the user store.
+ *
+ * <p>Layout (version 2, big-endian):
+ * <pre>
+ *   header  [int magic][int version][long walSeq][int userCount][int reserved][long indexOffset]
+ *   data    user records encoded by {@link UserRecordCodec}, back to back
+ *   index   per user: [int nameLength][name UTF-8][long lastSeq][long offset][int length][int crc32c]
+ *   footer  [int endMagic]
+ * </pre>
+ * {@code walSeq} is the first sequence number of the log segment started just before the
+ * snapshot was taken: every earlier record is reflected in the snapshot, later ones are
+ * replayed on recovery. {@code lastSeq} is the last log record applied to each user.
+ *
+ * <p>{@link #open(Path, Map)} maps the file and reads only the index; each user's record stays in
+ * the mapping as a {@link Ref} and is decoded when first needed, so the store can serve
+ * requests before every user has been deserialized.
+ *
+ * <p>Snapshots are written to a temporary file, synced, and atomically renamed into place,
+ * so a crash never leaves a partial snapshot behind. The directory is synced after the
+ * rename, so the new snapshot is durable before the log segments it covers are deleted.
+ */
+final class UserSnapshot {
+
+    static final String FILE_NAME = "users.snapshot";
+    private static final int MAGIC = 0x4D525553; // "MRUS"
+    private static final int END_MAGIC = 0x454E4421; // "END!"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 32;
+
+    /**
+     * One user to write.
+     *
+     * @param name    user name
+     * @param lastSeq last log record applied to the user
+     * @param payload user record encoded by {@link UserRecordCodec}
+     */
+    record Entry(String name, long lastSeq, byte[] payload) {}
+
+    /**
+     * A user record still in the snapshot, not yet decoded.
+     *
+     * @param lastSeq last log record applied to the user
+     * @param bytes   the encoded record, usually a slice of the mapped file
+     * @param crc     CRC32C of the record
+     */
+    record Ref(long lastSeq, MemorySegment bytes, int crc) {
+
+        User decode(MovieCatalog catalog) {
+            ByteBuffer buffer = bytes.asByteBuffer();
+            CRC32C checksum = new CRC32C();
+            checksum.update(buffer.duplicate());
+            if ((int) checksum.getValue() != crc) {
+                throw new IllegalStateException("User snapshot record is damaged");
+            }
+            return UserRecordCodec.decodeUser(buffer, catalog);
+        }
+
+        byte[] toByteArray() {
+            return bytes.toArray(ValueLayout.JAVA_BYTE);
+        }
+    }
+
+    private record IndexEntry(String name, long lastSeq, long offset, int length, int crc) {}
+
+    private UserSnapshot() {}
+
+    /**
+     * Writes a snapshot atomically.
+     *
+     * @param directory storage directory
+     * @param walSeq    first log sequence number not covered by the snapshot
+     * @param users     users to write
+     * @return size of the snapshot in bytes
+     */
+    static long write(Path directory, long walSeq, Iterable<Entry> users) throws IOException {
+        Path target = directory.resolve(FILE_NAME);
+        Path temp = directory.resolve(FILE_NAME + ".tmp");
+        long size;
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 20));
+            out.write(new byte[HEADER_BYTES]); // filled in once the index position is known
+
+            // Data section; index entries are kept until the data is written
+            List<IndexEntry> index = new ArrayList<>();
+            long offset = HEADER_BYTES;
+            for (Entry user : users) {
+                byte[] payload = user.payload();
+                out.write(payload);
+                index.add(new IndexEntry(user.name(), user.lastSeq(), offset, payload.length, LogFrames.crc(payload)));
+                offset += payload.length;
+            }
+
+            long indexOffset = offset;
+            for (IndexEntry entry : index) {
+                byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeLong(entry.lastSeq());
+                out.writeLong(entry.offset());
+                out.writeInt(entry.length());
+                out.writeInt(entry.crc());
+            }
+            out.writeInt(END_MAGIC);
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(walSeq)
+                    .putInt(index.size())
+                    .putInt(0)
+                    .putLong(indexOffset)
+                    .flip();
+            channel.write(header, 0);
+            channel.force(true);
+            size = channel.size();
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        WriteAheadLog.syncDirectory(directory);
+        return size;
+    }
+
+    /**
+     * Maps the snapshot, if one exists, and indexes its users without decoding them.
+     *
+     * @param directory storage directory
+     * @param users     receives a {@link Ref} per user, keyed by name
+     * @return the snapshot's {@code walSeq}, or 0 if there is no snapshot
+     * @throws IOException if the snapshot is unreadable, incomplete or of an unknown version
+     */
+    static long open(Path directory, Map<String, Ref> users) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer magic = ByteBuffer.allocate(2 * Integer.BYTES);
+            channel.read(magic, 0);
+            magic.flip();
+            if (magic.remaining() < magic.capacity() || magic.getInt() != MAGIC) {
+                throw new IOException("Not a user snapshot: " + file);
+            }
+            int version = magic.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported user snapshot version " + version + ": " + file);
+            }
+            if (size < HEADER_BYTES + Integer.BYTES) {
+                throw new IOException("User snapshot is damaged: " + file);
+            }
+
+            // The mapping is released by the GC once no Ref into it remains
+            MemorySegment mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, Arena.ofAuto());
+            ByteBuffer header = mapped.asSlice(2 * Integer.BYTES, HEADER_BYTES - 2 * Integer.BYTES).asByteBuffer();
+            long walSeq = header.getLong();
+            int userCount = header.getInt();
+            header.getInt();
+            long indexOffset = header.getLong();
+            if (indexOffset < HEADER_BYTES || indexOffset > size - Integer.BYTES
+                    || mapped.asSlice(size - Integer.BYTES).asByteBuffer().getInt() != END_MAGIC) {
+                throw new IOException("User snapshot is damaged: " + file);
+            }
+
+            ByteBuffer index = mapped.asSlice(indexOffset, size - Integer.BYTES - indexOffset).asByteBuffer();
+            for (int i = 0; i < userCount; i++) {
+                byte[] name = new byte[index.getInt()];
+                index.get(name);
+                long lastSeq = index.getLong();
+                long offset = index.getLong();
+                int length = index.getInt();
+                int crc = index.getInt();
+                users.put(new String(name, StandardCharsets.UTF_8), new Ref(lastSeq, mapped.asSlice(offset, length), crc));
+            }
+            return walSeq;
+        }
+    }
+}
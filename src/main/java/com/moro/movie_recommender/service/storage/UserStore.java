@@ -0,0 +1,769 @@
+package com.moro.movie_recommender.service.storage;
+
+import com.moro.movie_recommender.config.StorageProperties;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.TraktMovieList;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.service.MetricsSource;
+import com.moro.movie_recommender.util.PersistentHashMap;
+import com.moro.movie_recommender.util.WTinyLfuPolicy;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+/**
+ * Durable home of all users: an in-memory map backed by a write-ahead log and snapshots.
+ *
+ * <p>The map is a {@link PersistentHashMap} of immutable {@link User}s held in an atomic
+ * reference. A mutation builds the new user and swaps in a new map version that copies only
+ * the trie path to that user, so {@link #users()} hands out a consistent snapshot of every
+ * user by reading one reference, without copying anything.
+ *
+ * <p>Every change goes through {@link #apply(UserMutation)}, which applies it to the map and
+ * appends it to the {@link WriteAheadLog} under a per-user lock stripe, then completes once
+ * the log record is durable (group-committed with concurrent writers). Periodically the map
+ * is compacted into a {@link UserSnapshot} and the log segments it covers are deleted.
+ *
+ * <p>A change is visible in the map before its record is durable. If a log write fails, the
+ * map may hold changes the log never got, and later changes may build on them, so the store
+ * fails as a whole: every read and write is rejected with an {@link UncheckedIOException} and
+ * no snapshot is taken, until a restart recovers the users from what the log did make durable.
+ *
+ * <p>Each change stamps the user with a new version: the sequence number of its log record
+ * (or a counter when storage is disabled). Read-modify-write flows that span I/O, such as a
+ * Trakt sync, use {@link #compareAndApply(UserMutation, long)} and retry on conflict instead
+ * of holding a lock.
+ *
+ * <p>On startup the snapshot is memory-mapped and only its index is read; each user stays
+ * encoded in the mapping until first accessed (or until the background warm-up reaches it),
+ * so the service can take requests without deserializing every user first. The remaining
+ * log records are then decoded in parallel and replayed in parallel shards, each shard owning
+ * a disjoint set of users so per-user order is preserved. A user's version is the sequence
+ * number of the last record applied to it, so records already reflected are skipped exactly.
+ *
+ * <p>With {@code storage.tiering.enabled} only frequently used users stay decoded, within a
+ * memory budget. {@link WTinyLfuPolicy} picks the users to spill; each is encoded into a
+ * {@link ColdUserSegment} and put back among the unloaded users, from where it is faulted in
+ * like a snapshot user on its next access. Listings of every user decode cold users without
+ * faulting them in, so they do not flush the hot set.
+ *
+ * <p>With {@code storage.enabled=false} the store is purely in memory. This is the default
+ * {@link UserRepository} ({@code storage.backend=local}); it serves a single app node.
+ */
+@Component
+@ConditionalOnProperty(prefix = "storage", name = "backend", havingValue = "local", matchIfMissing = true)
+public class UserStore implements UserRepository, MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserStore.class);
+
+    private static final int LOCK_STRIPES = 256;
+    private static final long ANY_VERSION = -1;
+
+    private final StorageProperties props;
+    private final Path directory;
+    private final MovieCatalog catalog;
+
+    /** Current version of the user map; replaced, never modified. */
+    private final AtomicReference<PersistentHashMap<String, User>> users = new AtomicReference<>(PersistentHashMap.empty());
+    /** Names of all users, loaded or not, in sorted order; updated together with {@link #users}. */
+    private final NavigableSet<String> names = new ConcurrentSkipListSet<>();
+    /** Users still encoded in the mapped snapshot; moved into {@link #users} on first access. */
+    private final Map<String, UserSnapshot.Ref> unloaded = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    /** Source of user versions when there is no log to take sequence numbers from. */
+    private final AtomicLong memoryVersions = new AtomicLong();
+
+    private WriteAheadLog wal;
+    private ScheduledExecutorService snapshotter;
+
+    /** Decides which users stay decoded; null unless tiering is enabled. Guarded by {@link #hotSetLock}. */
+    private WTinyLfuPolicy<String> hotSet;
+    private final ReentrantLock hotSetLock = new ReentrantLock();
+    private ColdUserSegment cold;
+    /** Users the hot set gave up, evicted by whichever thread gets to them first, outside any lock. */
+    private final Queue<String> pendingEvictions = new ConcurrentLinkedQueue<>();
+    /** Whether unloaded users have a linked Trakt account, where known, so listings need not decode them. */
+    private final Map<String, Boolean> coldTraktLinked = new ConcurrentHashMap<>();
+    private long recoveredWalBytes;
+    private volatile long walBytesAtSnapshot;
+    private volatile long lastSnapshotNanos;
+
+    private final LongAdder mutations = new LongAdder();
+    private final LongAdder snapshots = new LongAdder();
+    private final LongAdder materialized = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder hotHits = new LongAdder();
+    private final LongAdder faultIns = new LongAdder();
+    private final LongAdder faultInNanos = new LongAdder();
+    private final LongAccumulator maxFaultInNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder evictions = new LongAdder();
+    private volatile long lastSnapshotBytes;
+    private volatile long lastSnapshotMillis;
+    private long recoveryMillis;
+    private long replayedRecords;
+
+    public UserStore(StorageProperties props, MovieCatalog catalog) {
+        this.props = props;
+        this.directory = Path.of(props.getDirectory());
+        this.catalog = catalog;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Recovers users from disk and opens the log for writing.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        if (!props.isEnabled()) {
+            logger.info("User storage disabled, users are kept in memory only");
+            return;
+        }
+        Files.createDirectories(directory);
+        long nextSeq = recover();
+        StorageProperties.Wal walConfig = props.getWal();
+        wal = new WriteAheadLog(directory, nextSeq, walConfig.isFsync(), walConfig.getMaxBatch(), walConfig.getSegmentSize().toBytes());
+        lastSnapshotNanos = System.nanoTime();
+
+        snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkMillis = props.getSnapshot().getCheckInterval().toMillis();
+        snapshotter.scheduleWithFixedDelay(this::maybeSnapshot, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+
+        if (props.getTiering().isEnabled()) {
+            openTiering();
+        }
+        if (props.getSnapshot().isWarmUp() && !unloaded.isEmpty()) {
+            // With tiering, warm-up only learns which users are linked to Trakt; they are
+            // decoded for good on first access
+            Thread warmUp = new Thread(hotSet != null ? this::classifyUnloaded : this::warmUp, "user-warm-up");
+            warmUp.setDaemon(true);
+            warmUp.start();
+        }
+    }
+
+    /**
+     * Stops snapshotting and flushes the log.
+     */
+    @PreDestroy
+    public void close() {
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+            try {
+                snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (wal != null) {
+            wal.close();
+        }
+    }
+
+    /**
+     * Gets a user by name.
+     *
+     * @return the user, or null if not found
+     */
+    public User get(String name) {
+        checkNotFailed();
+        User user = users.get().get(name);
+        if (user != null) {
+            recordHit(name);
+            return user;
+        }
+        if (unloaded.isEmpty()) {
+            return null;
+        }
+        user = materialize(name);
+        drainEvictions();
+        return user;
+    }
+
+    /**
+     * Returns the names of all users in sorted order, including users not yet decoded from
+     * the snapshot. Seeking with {@link NavigableSet#tailSet(Object, boolean)} costs
+     * {@code O(log n)}, so listing a page of users never touches the others.
+     *
+     * @return a live, weakly consistent, read-only view of the user names
+     */
+    public NavigableSet<String> names() {
+        checkNotFailed();
+        return Collections.unmodifiableNavigableSet(names);
+    }
+
+    /**
+     * Returns every user. Users not yet decoded from the snapshot are decoded first; with
+     * tiering, cold users are decoded into the result only and stay cold.
+     *
+     * @return an immutable, consistent snapshot of all users keyed by name
+     */
+    public Map<String, User> users() {
+        checkNotFailed();
+        if (hotSet == null) {
+            loadAll();
+            return users.get();
+        }
+        PersistentHashMap<String, User> all = users.get();
+        for (String name : names) {
+            if (!all.containsKey(name)) {
+                User user = peek(name);
+                if (user != null) {
+                    all = all.plus(name, user);
+                }
+            }
+        }
+        return all;
+    }
+
+    @Override
+    public Mono<User> findByName(String name) {
+        return Mono.fromSupplier(() -> get(name));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Served from the sorted name index: the page costs {@code O(log n + limit)} however
+     * many users there are, and only the users on the page are decoded.
+     */
+    @Override
+    public Mono<List<User>> findPage(String after, int limit) {
+        return findAllAfter(after).take(limit, true).collectList();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Each user is fetched only as it is requested downstream.
+     */
+    @Override
+    public Flux<User> findAllAfter(String after) {
+        return Flux.defer(() -> {
+            NavigableSet<String> tail = after != null ? names().tailSet(after, false) : names();
+            // Names deleted since the index was read resolve to null and are skipped
+            return Flux.fromIterable(tail).mapNotNull(this::get);
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Users and the map holding them are immutable, so this is a consistent snapshot
+     * taken without copying.
+     */
+    @Override
+    public Mono<Map<String, User>> findAll() {
+        return Mono.fromSupplier(this::users);
+    }
+
+    @Override
+    public Flux<String> findTraktLinkedNames() {
+        if (hotSet != null) {
+            return Flux.defer(() -> Flux.fromIterable(names())).filter(this::isTraktLinked);
+        }
+        return Flux.defer(() -> Flux.fromIterable(users().values()))
+                .filter(User::hasTraktAccount)
+                .map(User::getName);
+    }
+
+    /**
+     * Applies a mutation and logs it.
+     *
+     * @param mutation the change to apply
+     * @return a Mono emitting the affected user, stamped with its new version, once the
+     *         change is durable, or empty if the mutation changed nothing
+     */
+    @Override
+    public Mono<User> apply(UserMutation mutation) {
+        return apply(mutation, ANY_VERSION);
+    }
+
+    /**
+     * Applies a mutation only if the user is still at {@code expectedVersion}, i.e. nobody
+     * changed it since the caller read it. This lets a caller compute a change from a user
+     * without holding any lock, and retry on conflict.
+     *
+     * @param mutation        the change to apply
+     * @param expectedVersion version of the user the change was computed from
+     * @return as {@link #apply(UserMutation)}, or a {@link VersionConflictException} error
+     *         if the user has moved on to another version
+     */
+    @Override
+    public Mono<User> compareAndApply(UserMutation mutation, long expectedVersion) {
+        return apply(mutation, expectedVersion);
+    }
+
+    private Mono<User> apply(UserMutation mutation, long expectedVersion) {
+        return Mono.defer(() -> {
+            checkNotFailed();
+            String name = mutation.userName();
+            User result;
+            WriteAheadLog.Append append = null;
+            // Held only to order the in-memory change and its log record, never across I/O
+            synchronized (lockFor(name)) {
+                User before = materialize(name);
+                if (expectedVersion != ANY_VERSION && before != null && before.getVersion() != expectedVersion) {
+                    conflicts.increment();
+                    return Mono.error(new VersionConflictException(name, expectedVersion, before.getVersion()));
+                }
+                User after = mutation.applyTo(before);
+                if (after == before) {
+                    return Mono.empty();
+                }
+                // The log sequence number doubles as the version, so versions survive restarts
+                long version;
+                if (wal != null) {
+                    append = wal.append(UserRecordCodec.encode(mutation));
+                    version = append.seq();
+                } else {
+                    version = memoryVersions.incrementAndGet();
+                }
+                after = after != null ? after.withVersion(version) : null;
+                put(name, after);
+                if (after != null) {
+                    admit(name, after);
+                } else {
+                    forget(name);
+                }
+                result = after != null ? after : before;
+            }
+            mutations.increment();
+            drainEvictions();
+            if (append == null) {
+                return Mono.just(result);
+            }
+            // Completion happens on the log writer thread; don't run callers' work there
+            return Mono.fromFuture(append.durable())
+                    .publishOn(Schedulers.parallel())
+                    .thenReturn(result);
+        });
+    }
+
+    /**
+     * @throws UncheckedIOException if a log write failed, so the map may hold changes that
+     *                              were never made durable
+     */
+    private void checkNotFailed() {
+        IOException failure = wal != null ? wal.getFailure() : null;
+        if (failure != null) {
+            throw new UncheckedIOException("User store failed, restart to recover users from the log", failure);
+        }
+    }
+
+    /**
+     * Installs a new version of a user, or removes it if {@code user} is null.
+     * Callers hold the user's lock stripe; the swap itself only races other stripes.
+     */
+    private void put(String name, User user) {
+        users.updateAndGet(map -> user != null ? map.plus(name, user) : map.minus(name));
+        if (user != null) {
+            names.add(name);
+        } else {
+            names.remove(name);
+        }
+    }
+
+    /**
+     * Moves a user from the mapped snapshot into the map, decoding it. The user is inserted
+     * before the reference is dropped, so concurrent readers always find it in one place.
+     *
+     * @return the user, or null if not found
+     */
+    private User materialize(String name) {
+        synchronized (lockFor(name)) {
+            UserSnapshot.Ref ref = unloaded.get(name);
+            if (ref == null) {
+                return users.get().get(name);
+            }
+            long start = System.nanoTime();
+            User user = ref.decode(catalog).withVersion(ref.lastSeq());
+            put(name, user);
+            unloaded.remove(name);
+            materialized.increment();
+            if (hotSet != null) {
+                cold.release(ref.bytes());
+                coldTraktLinked.remove(name);
+                long nanos = System.nanoTime() - start;
+                faultIns.increment();
+                faultInNanos.add(nanos);
+                maxFaultInNanos.accumulate(nanos);
+                admit(name, user);
+            }
+            return user;
+        }
+    }
+
+    /**
+     * Reads a user without faulting it in.
+     *
+     * @return the user, or null if not found
+     */
+    private User peek(String name) {
+        synchronized (lockFor(name)) {
+            UserSnapshot.Ref ref = unloaded.get(name);
+            return ref != null ? ref.decode(catalog).withVersion(ref.lastSeq()) : users.get().get(name);
+        }
+    }
+
+    private boolean isTraktLinked(String name) {
+        User user = users.get().get(name);
+        if (user != null) {
+            return user.hasTraktAccount();
+        }
+        Boolean linked = coldTraktLinked.get(name);
+        if (linked != null) {
+            return linked;
+        }
+        user = peek(name);
+        return user != null && user.hasTraktAccount();
+    }
+
+    private void loadAll() {
+        if (!unloaded.isEmpty()) {
+            unloaded.keySet().parallelStream().forEach(this::materialize);
+        }
+    }
+
+    // --- Tiering ---
+
+    private void openTiering() throws IOException {
+        StorageProperties.Tiering tiering = props.getTiering();
+        cold = new ColdUserSegment(directory, tiering.getSegmentSize().toBytes());
+        hotSet = new WTinyLfuPolicy<>(tiering.getMaxHotSize().toBytes(), Math.max(1024, names.size()));
+        for (Map.Entry<String, User> entry : users.get().entrySet()) {
+            admit(entry.getKey(), entry.getValue());
+        }
+        drainEvictions();
+        logger.info("User tiering enabled: at most {} of decoded users in memory", tiering.getMaxHotSize());
+    }
+
+    private void recordHit(String name) {
+        if (hotSet == null) {
+            return;
+        }
+        hotHits.increment();
+        // Reads only sharpen the policy; under contention skip them rather than wait
+        if (hotSetLock.tryLock()) {
+            try {
+                hotSet.recordAccess(name);
+            } finally {
+                hotSetLock.unlock();
+            }
+        }
+    }
+
+    /** Adds a decoded user to the hot set, queueing whichever users it pushes out. */
+    private void admit(String name, User user) {
+        if (hotSet == null) {
+            return;
+        }
+        List<String> victims = new ArrayList<>();
+        hotSetLock.lock();
+        try {
+            hotSet.add(name, weigh(user), victims);
+        } finally {
+            hotSetLock.unlock();
+        }
+        pendingEvictions.addAll(victims);
+    }
+
+    private void forget(String name) {
+        if (hotSet == null) {
+            return;
+        }
+        hotSetLock.lock();
+        try {
+            hotSet.remove(name);
+        } finally {
+            hotSetLock.unlock();
+        }
+    }
+
+    /** Evicts queued users. Called without holding any user lock. */
+    private void drainEvictions() {
+        String name;
+        while ((name = pendingEvictions.poll()) != null) {
+            evict(name);
+        }
+    }
+
+    /**
+     * Spills a decoded user to the cold segment. It goes into unloaded before it leaves the
+     * map, so concurrent readers always find it in one place.
+     */
+    private void evict(String name) {
+        synchronized (lockFor(name)) {
+            User user = users.get().get(name);
+            if (user == null || isHot(name)) {
+                return; // deleted, or admitted again since it was queued
+            }
+            byte[] record = UserRecordCodec.encode(user);
+            unloaded.put(name, new UserSnapshot.Ref(user.getVersion(), cold.append(record), LogFrames.crc(record)));
+            coldTraktLinked.put(name, user.hasTraktAccount());
+            users.updateAndGet(map -> map.minus(name));
+            evictions.increment();
+        }
+    }
+
+    private boolean isHot(String name) {
+        hotSetLock.lock();
+        try {
+            return hotSet.contains(name);
+        } finally {
+            hotSetLock.unlock();
+        }
+    }
+
+    /** Decodes each snapshot user once to note whether it is linked to Trakt, keeping it unloaded. */
+    private void classifyUnloaded() {
+        try {
+            for (String name : unloaded.keySet()) {
+                synchronized (lockFor(name)) {
+                    UserSnapshot.Ref ref = unloaded.get(name);
+                    if (ref != null && !coldTraktLinked.containsKey(name)) {
+                        coldTraktLinked.put(name, ref.decode(catalog).hasTraktAccount());
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("User warm-up failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /** Rough heap footprint of a decoded user, charged against the hot-set budget. */
+    private static long weigh(User user) {
+        return 256 + TraktMovieList.columnsSize(user.getTraktMovies().size()) + 160L * user.getManualMovies().size();
+    }
+
+    private void warmUp() {
+        long start = System.nanoTime();
+        try {
+            loadAll();
+            logger.info("Decoded all snapshot users in {} ms", (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            logger.error("User warm-up failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private Object lockFor(String name) {
+        int h = name.hashCode();
+        return locks[Math.floorMod(h ^ (h >>> 16), LOCK_STRIPES)];
+    }
+
+    // --- Recovery ---
+
+    /**
+     * Loads the snapshot and replays the log.
+     *
+     * @return the sequence number to continue the log at
+     */
+    private long recover() throws IOException {
+        long start = System.nanoTime();
+        int parallelism = props.getReplayParallelism() > 0
+                ? props.getReplayParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // Snapshot: index only, users are decoded on demand
+            long snapshotSeq = UserSnapshot.open(directory, unloaded);
+            names.addAll(unloaded.keySet());
+            int snapshotUsers = unloaded.size();
+
+            // Log: collect records the snapshot does not cover
+            List<LogFrames.Frame> records = new ArrayList<>();
+            long[] maxSeq = {snapshotSeq - 1};
+            recoveredWalBytes = WriteAheadLog.readAll(directory, frame -> {
+                maxSeq[0] = Math.max(maxSeq[0], frame.seq());
+                if (frame.seq() >= snapshotSeq) {
+                    records.add(frame);
+                }
+            });
+            UserMutation[] decoded = pool.submit(() -> records.parallelStream()
+                    .map(frame -> UserRecordCodec.decodeMutation(ByteBuffer.wrap(frame.payload()), catalog))
+                    .toArray(UserMutation[]::new)).join();
+
+            // Replay in shards by user, in log order within each shard
+            int shards = parallelism;
+            pool.submit(() -> IntStream.range(0, shards).parallel().forEach(shard -> {
+                for (int i = 0; i < decoded.length; i++) {
+                    if (Math.floorMod(decoded[i].userName().hashCode(), shards) == shard) {
+                        replay(records.get(i).seq(), decoded[i]);
+                    }
+                }
+            })).join();
+
+            replayedRecords = decoded.length;
+            recoveryMillis = (System.nanoTime() - start) / 1_000_000;
+            logger.info("Recovered {} users ({} from snapshot, {} log records replayed) in {} ms",
+                    userCount(), snapshotUsers, replayedRecords, recoveryMillis);
+            return Math.max(1, Math.max(snapshotSeq, maxSeq[0] + 1));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void replay(long seq, UserMutation mutation) {
+        String name = mutation.userName();
+        User before = materialize(name);
+        if (before != null && seq <= before.getVersion()) {
+            return; // already reflected in the snapshot
+        }
+        User after = mutation.applyTo(before);
+        if (after != before) {
+            put(name, after != null ? after.withVersion(seq) : null);
+        }
+    }
+
+    // --- Snapshots ---
+
+    private void maybeSnapshot() {
+        try {
+            long pending = pendingWalBytes();
+            boolean due = System.nanoTime() - lastSnapshotNanos >= props.getSnapshot().getInterval().toNanos();
+            if (pending >= props.getSnapshot().getMaxWalSize().toBytes() || (due && pending > 0)) {
+                snapshot();
+            }
+        } catch (Exception e) {
+            logger.error("User snapshot failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of all users and deletes the log segments it covers.
+     * Writers are only blocked per user, for the time it takes to encode that user; users
+     * never decoded since startup are copied from the previous snapshot as raw bytes.
+     */
+    private void snapshot() throws IOException {
+        long start = System.nanoTime();
+        long walSeq = wal.roll().join();
+        long walBytes = wal.getBytesWritten();
+        // Every user is in names whether decoded or not, and tiering moves users both ways, so
+        // each is looked up in both places under its lock
+        Iterable<UserSnapshot.Entry> entries = () -> names.stream()
+                .map(this::snapshotEntry)
+                .filter(Objects::nonNull)
+                .iterator();
+        long bytes = UserSnapshot.write(directory, walSeq, entries);
+        wal.deleteSegmentsBefore(walSeq);
+
+        recoveredWalBytes = 0;
+        walBytesAtSnapshot = walBytes;
+        lastSnapshotNanos = System.nanoTime();
+        lastSnapshotBytes = bytes;
+        lastSnapshotMillis = (lastSnapshotNanos - start) / 1_000_000;
+        snapshots.increment();
+        logger.info("Wrote user snapshot: {} bytes in {} ms, log compacted before seq {}", bytes, lastSnapshotMillis, walSeq);
+    }
+
+    private UserSnapshot.Entry snapshotEntry(String name) {
+        synchronized (lockFor(name)) {
+            UserSnapshot.Ref ref = unloaded.get(name);
+            if (ref != null) {
+                return new UserSnapshot.Entry(name, ref.lastSeq(), ref.toByteArray());
+            }
+            User user = users.get().get(name);
+            if (user == null) {
+                return null;
+            }
+            return new UserSnapshot.Entry(name, user.getVersion(), UserRecordCodec.encode(user));
+        }
+    }
+
+    /** Users in the map plus those still in the snapshot; may briefly double-count one being decoded. */
+    private int userCount() {
+        return users.get().size() + unloaded.size();
+    }
+
+    private long pendingWalBytes() {
+        return recoveredWalBytes + wal.getBytesWritten() - walBytesAtSnapshot;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "userStore";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("persistent", wal != null);
+        metrics.put("users", userCount());
+        metrics.put("mutations", mutations.sum());
+        metrics.put("versionConflicts", conflicts.sum());
+        if (wal != null) {
+            long batches = wal.getBatches();
+            metrics.put("walNextSeq", wal.getNextSeq());
+            metrics.put("walRecords", wal.getRecords());
+            metrics.put("walBatches", batches);
+            metrics.put("walAvgBatchSize", batches > 0 ? Math.round(100.0 * wal.getRecords() / batches) / 100.0 : 0.0);
+            metrics.put("walSyncs", wal.getSyncs());
+            metrics.put("walFailed", wal.getFailure() != null);
+            metrics.put("walBytesSinceSnapshot", pendingWalBytes());
+            metrics.put("snapshots", snapshots.sum());
+            metrics.put("lastSnapshotBytes", lastSnapshotBytes);
+            metrics.put("lastSnapshotMillis", lastSnapshotMillis);
+            metrics.put("recoveryMillis", recoveryMillis);
+            metrics.put("replayedRecords", replayedRecords);
+            metrics.put("unloadedUsers", unloaded.size());
+            metrics.put("materializedUsers", materialized.sum());
+        }
+        if (hotSet != null) {
+            long hits = hotHits.sum();
+            long faults = faultIns.sum();
+            hotSetLock.lock();
+            try {
+                metrics.put("hotUsers", hotSet.size());
+                metrics.put("hotBytes", hotSet.weight());
+            } finally {
+                hotSetLock.unlock();
+            }
+            metrics.put("hitRatio", hits + faults > 0 ? Math.round(10000.0 * hits / (hits + faults)) / 10000.0 : 0.0);
+            metrics.put("hotHits", hits);
+            metrics.put("faultIns", faults);
+            metrics.put("faultInAvgMicros", faults > 0 ? faultInNanos.sum() / faults / 1000 : 0);
+            metrics.put("faultInMaxMicros", maxFaultInNanos.get() / 1000);
+            metrics.put("evictions", evictions.sum());
+            metrics.put("coldFileBytes", cold.fileBytes());
+            metrics.put("coldLiveBytes", cold.liveBytes());
+        }
+        return metrics;
+    }
+}
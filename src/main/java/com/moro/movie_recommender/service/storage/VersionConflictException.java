@@ -0,0 +1,16 @@
+package com.moro.movie_recommender.service.storage;
+
+/**
+ * Thrown by {@link UserRepository#compareAndApply(UserMutation, long)} when the user was changed
+ * by another writer after the caller read it. Callers re-read the user and retry.
+ */
+public class VersionConflictException extends RuntimeException {
+
+    public VersionConflictException(String userName, long expectedVersion, long actualVersion) {
+        super("User " + userName + " is at version " + actualVersion + ", expected " + expectedVersion);
+    }
+
+    public VersionConflictException(String userName, long expectedVersion) {
+        super("User " + userName + " is no longer at version " + expectedVersion);
+    }
+}
@@ -0,0 +1,347 @@
+package com.moro.movie_recommender.service.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Append-only, segmented log of opaque records with group commit.
+ *
+ * <p>{@link #append(byte[])} assigns the next sequence number and queues the record; a single
+ * writer thread drains everything queued so far, writes it as one batch and makes it durable
+ * with a single {@code fsync}, then completes every record's future. Under load many
+ * appends therefore share one disk flush.
+ *
+ * <p>Records live in segment files named after the sequence number of their first record
+ * ({@code wal-<seq>.log}); a new segment is started once the current one exceeds the
+ * configured size, or on {@link #roll()}, so that covered segments can be deleted after a
+ * snapshot. The log never appends to a segment left over from a previous run. With fsync
+ * enabled, the directory is synced too once a segment is created or deleted, so that the
+ * file itself survives a crash and not just its contents.
+ */
+public class WriteAheadLog implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * A queued record.
+     *
+     * @param seq     sequence number assigned on append
+     * @param durable completes once the record has been written (and synced, if enabled)
+     */
+    public record Append(long seq, CompletableFuture<Void> durable) {}
+
+    /** A queued record or, with a null payload, a request to start a new segment. */
+    private record Pending(long seq, byte[] payload, CompletableFuture<?> done) {}
+
+    private final Path directory;
+    private final boolean fsync;
+    private final int maxBatch;
+    private final long segmentSize;
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile IOException failure;
+    private long nextSeq;
+
+    // Writer-thread state
+    private FileChannel channel;
+    private DataOutputStream out;
+    private long segmentBytes;
+
+    private final LongAdder records = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    /**
+     * Opens a new segment starting at {@code nextSeq} and starts the writer thread.
+     *
+     * @param directory   directory holding the segments
+     * @param nextSeq     sequence number of the first record to append
+     * @param fsync       force each batch to disk before acknowledging it
+     * @param maxBatch    maximum number of records written per batch
+     * @param segmentSize size after which a new segment is started
+     */
+    public WriteAheadLog(Path directory, long nextSeq, boolean fsync, int maxBatch, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.nextSeq = nextSeq;
+        this.fsync = fsync;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.segmentSize = Math.max(1, segmentSize);
+        Files.createDirectories(directory);
+        openSegment(nextSeq);
+        this.writer = new Thread(this::writeLoop, "user-wal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a record for writing.
+     *
+     * @param payload record bytes
+     * @return the assigned sequence number and a future completing once the record is durable
+     */
+    public synchronized Append append(byte[] payload) {
+        checkOpen();
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        long seq = nextSeq++;
+        queue.add(new Pending(seq, payload, durable));
+        return new Append(seq, durable);
+    }
+
+    /**
+     * Starts a new segment once everything appended so far has been written.
+     *
+     * @return a future completing with the first sequence number of the new segment;
+     *         every earlier record is in an older segment
+     */
+    public synchronized CompletableFuture<Long> roll() {
+        checkOpen();
+        CompletableFuture<Long> rolled = new CompletableFuture<>();
+        queue.add(new Pending(nextSeq, null, rolled));
+        return rolled;
+    }
+
+    /**
+     * Deletes segments that only contain records below {@code seq}.
+     * The segment currently being written is never deleted.
+     */
+    public void deleteSegmentsBefore(long seq) throws IOException {
+        List<Long> starts = segmentStarts(directory);
+        boolean deleted = false;
+        for (int i = 0; i + 1 < starts.size(); i++) {
+            if (starts.get(i + 1) <= seq) {
+                deleted |= Files.deleteIfExists(segmentPath(directory, starts.get(i)));
+            }
+        }
+        if (deleted && fsync) {
+            syncDirectory(directory);
+        }
+    }
+
+    /**
+     * Makes files created, renamed or deleted in {@code directory} durable, by syncing the
+     * directory itself. Does nothing on platforms that cannot open a directory (Windows).
+     */
+    static void syncDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Reads every intact record from the segments in {@code directory}, in sequence order.
+     * Reading a segment stops at its first truncated or corrupt frame.
+     *
+     * @param directory directory holding the segments
+     * @param consumer  receives each frame
+     * @return total size of the segments read, in bytes
+     */
+    static long readAll(Path directory, Consumer<LogFrames.Frame> consumer) throws IOException {
+        long bytes = 0;
+        if (!Files.isDirectory(directory)) {
+            return bytes;
+        }
+        for (long start : segmentStarts(directory)) {
+            Path segment = segmentPath(directory, start);
+            try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ)) {
+                bytes += in.size();
+                LogFrames.Reader reader = new LogFrames.Reader(in);
+                LogFrames.Frame frame;
+                while ((frame = reader.next()) != null) {
+                    consumer.accept(frame);
+                }
+                if (reader.stoppedEarly()) {
+                    logger.warn("Ignoring damaged tail of log segment {}", segment.getFileName());
+                }
+            }
+        }
+        return bytes;
+    }
+
+    public long getRecords() {
+        return records.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getSyncs() {
+        return syncs.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public synchronized long getNextSeq() {
+        return nextSeq;
+    }
+
+    /**
+     * Stops accepting records, writes everything already queued and closes the current segment.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the error that stopped the log, or null if every write so far succeeded
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * @throws IllegalStateException if the log is closed
+     * @throws UncheckedIOException  if an earlier write failed
+     */
+    public void checkOpen() {
+        if (!running) {
+            throw new IllegalStateException("Write-ahead log is closed");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Write-ahead log failed", failure);
+        }
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                logger.error("Write-ahead log write failed, rejecting further mutations: {}", e.getMessage(), e);
+                failure = e;
+                batch.forEach(pending -> pending.done().completeExceptionally(e));
+                queue.forEach(pending -> pending.done().completeExceptionally(e));
+                queue.clear();
+            } finally {
+                batch.clear();
+            }
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close write-ahead log segment: {}", e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeBatch(List<Pending> batch) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        int written = 0;
+        for (Pending pending : batch) {
+            if (pending.payload() == null) {
+                sync();
+                out.close();
+                openSegment(pending.seq());
+                continue;
+            }
+            if (segmentBytes >= segmentSize) {
+                sync();
+                out.close();
+                openSegment(pending.seq());
+            }
+            LogFrames.write(out, pending.seq(), pending.payload());
+            long frameBytes = LogFrames.HEADER_BYTES + pending.payload().length;
+            segmentBytes += frameBytes;
+            bytesWritten.add(frameBytes);
+            written++;
+        }
+        sync();
+        records.add(written);
+        batches.increment();
+        for (Pending pending : batch) {
+            if (pending.payload() == null) {
+                ((CompletableFuture<Long>) pending.done()).complete(pending.seq());
+            } else {
+                ((CompletableFuture<Void>) pending.done()).complete(null);
+            }
+        }
+    }
+
+    private void sync() throws IOException {
+        out.flush();
+        if (fsync) {
+            channel.force(false);
+            syncs.increment();
+        }
+    }
+
+    private void openSegment(long firstSeq) throws IOException {
+        channel = FileChannel.open(segmentPath(directory, firstSeq),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+        segmentBytes = 0;
+        if (fsync) {
+            syncDirectory(directory);
+        }
+    }
+
+    private static Path segmentPath(Path directory, long firstSeq) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSeq, SEGMENT_SUFFIX));
+    }
+
+    private static List<Long> segmentStarts(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.moro.movie_recommender.service.trakt;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-operation trace of Trakt HTTP traffic.
+ *
+ * <p>A trace is placed in the Reactor {@link reactor.util.context.Context} of a sync pipeline
+ * (see {@link #CONTEXT_KEY}); the Trakt WebClient filter records every outgoing request
+ * against it, so callers can report how many calls and how much time a sync cost.
+ */
+public class TraktCallTrace {
+
+    /** Reactor context key under which the active trace is stored. */
+    public static final Class<TraktCallTrace> CONTEXT_KEY = TraktCallTrace.class;
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    /** Records a single outgoing HTTP request. */
+    public void recordCall() {
+        calls.incrementAndGet();
+    }
+
+    /** @return number of HTTP requests issued so far */
+    public int getCalls() {
+        return calls.get();
+    }
+
+    /** @return milliseconds elapsed since the trace was created */
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
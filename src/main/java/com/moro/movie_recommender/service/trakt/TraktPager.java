@@ -0,0 +1,81 @@
+package com.moro.movie_recommender.service.trakt;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+
+import java.util.function.Function;
+
+/**
+ * Streams paginated Trakt list endpoints as a single {@link Flux}.
+ *
+ * <p>The first page is requested with {@code page=1&limit=pageSize}; its
+ * {@code X-Pagination-Page-Count} header determines how many further pages follow.
+ * Subsequent pages are fetched with at most {@code prefetch} requests in flight and are
+ * emitted in page order, so at most {@code prefetch} decoded pages are buffered at any time.
+ * Responses without pagination headers are treated as a single page.
+ */
+public class TraktPager {
+
+    public static final String PAGE_COUNT_HEADER = "X-Pagination-Page-Count";
+
+    private final WebClient webClient;
+    private final TraktResponseCache responseCache;
+    private final int pageSize;
+    private final int prefetch;
+
+    public TraktPager(WebClient webClient, TraktResponseCache responseCache, int pageSize, int prefetch) {
+        this.webClient = webClient;
+        this.responseCache = responseCache;
+        this.pageSize = Math.max(1, pageSize);
+        this.prefetch = Math.max(1, prefetch);
+    }
+
+    /**
+     * Fetches every page of {@code uri} and streams the decoded items.
+     * Each page is requested through the {@link TraktResponseCache}, so unchanged pages
+     * are answered from cache on {@code 304 Not Modified}.
+     *
+     * @param uri         endpoint path, optionally with query parameters
+     * @param userName    user the list belongs to, whose cache entries it uses
+     * @param accessToken bearer token obtained via OAuth exchange
+     * @param decoder     decodes one page's response body into items
+     * @return items of all pages, in order
+     */
+    public <T> Flux<T> fetchAll(String uri, String userName, String accessToken,
+                                Function<ClientResponse, Flux<T>> decoder) {
+        return responseCache.fetch(webClient, pageUri(uri, 1), userName, accessToken, decoder)
+                .flatMapMany(firstPage -> {
+                    Flux<T> first = Flux.fromIterable(firstPage.items());
+                    if (firstPage.pageCount() <= 1) {
+                        return first;
+                    }
+                    return first.concatWith(Flux.range(2, firstPage.pageCount() - 1)
+                            .flatMapSequential(page -> responseCache
+                                    .fetch(webClient, pageUri(uri, page), userName, accessToken, decoder)
+                                    .flatMapIterable(TraktResponseCache.Page::items), prefetch));
+                });
+    }
+
+    private String pageUri(String uri, int page) {
+        return uri + (uri.contains("?") ? "&" : "?") + "page=" + page + "&limit=" + pageSize;
+    }
+
+    /**
+     * Reads the total page count from Trakt's pagination headers.
+     *
+     * @return the page count, or 1 if the response is not paginated
+     */
+    static int pageCount(HttpHeaders headers) {
+        String value = headers.getFirst(PAGE_COUNT_HEADER);
+        if (value == null) {
+            return 1;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.moro.movie_recommender.service.trakt;
+
+import com.moro.movie_recommender.service.MetricsSource;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.SocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects gauges from the Trakt client's Reactor Netty connection pools.
+ *
+ * <p>Registered as the pool's {@link ConnectionProvider.MeterRegistrar}, so Reactor Netty hands
+ * over the live {@link ConnectionPoolMetrics} of every per-remote-address pool it creates.
+ * Gauges are read on demand and summed across pools.
+ */
+public class TraktPoolMetrics implements ConnectionProvider.MeterRegistrar, MetricsSource {
+
+    private final Map<String, ConnectionPoolMetrics> pools = new ConcurrentHashMap<>();
+
+    @Override
+    public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+        pools.put(key(poolName, id, remoteAddress), metrics);
+    }
+
+    @Override
+    public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+        pools.remove(key(poolName, id, remoteAddress));
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "traktConnectionPool";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        int active = 0;
+        int idle = 0;
+        int allocated = 0;
+        int pending = 0;
+        int maxAllocated = 0;
+        int maxPending = 0;
+        for (ConnectionPoolMetrics m : pools.values()) {
+            active += m.acquiredSize();
+            idle += m.idleSize();
+            allocated += m.allocatedSize();
+            pending += m.pendingAcquireSize();
+            maxAllocated += m.maxAllocatedSize();
+            maxPending += m.maxPendingAcquireSize();
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("pools", pools.size());
+        metrics.put("activeConnections", active);
+        metrics.put("idleConnections", idle);
+        metrics.put("allocatedConnections", allocated);
+        metrics.put("pendingAcquires", pending);
+        metrics.put("maxConnections", maxAllocated);
+        metrics.put("maxPendingAcquires", maxPending);
+        return metrics;
+    }
+
+    private static String key(String poolName, String id, SocketAddress remoteAddress) {
+        return poolName + "|" + id + "|" + remoteAddress;
+    }
+}
@@ -0,0 +1,230 @@
+package com.moro.movie_recommender.service.trakt;
+
+import com.moro.movie_recommender.config.TraktProperties;
+import com.moro.movie_recommender.service.MetricsSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * App-wide governor for all Trakt HTTP traffic.
+ *
+ * <p>Every request reserves a permit from a token bucket before it is sent: GETs from one
+ * bucket, writes (POST/PUT/PATCH/DELETE) from another, each sized from
+ * {@code trakt.rate-limit.*}. Reservations may go into debt, which queues callers behind
+ * each other instead of failing; a request that would have to wait longer than
+ * {@code max-queue-wait} is rejected with {@link TraktRateLimitException}.
+ *
+ * <p>On {@code 429 Too Many Requests} the bucket is paused until Trakt's {@code Retry-After}
+ * has passed, so other callers back off too, and the request is retried. Idempotent GETs are
+ * also retried on 502/503/504. Retries use exponential backoff with full jitter, never
+ * shorter than {@code Retry-After}.
+ */
+@Component
+public class TraktRateGovernor implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(TraktRateGovernor.class);
+
+    private final boolean enabled;
+    private final TokenBucket getBucket;
+    private final TokenBucket writeBucket;
+    private final long maxQueueWaitNanos;
+    private final int maxRetries;
+    private final long backoffBaseNanos;
+    private final long backoffMaxNanos;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder queuedTotal = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    public TraktRateGovernor(TraktProperties props) {
+        TraktProperties.RateLimit limit = props.getRateLimit();
+        this.enabled = limit.isEnabled();
+        this.getBucket = new TokenBucket(limit.getGetLimit(), limit.getGetPeriod());
+        this.writeBucket = new TokenBucket(limit.getWriteLimit(), limit.getWritePeriod());
+        this.maxQueueWaitNanos = limit.getMaxQueueWait().toNanos();
+        this.maxRetries = Math.max(0, limit.getMaxRetries());
+        this.backoffBaseNanos = limit.getBackoffBase().toNanos();
+        this.backoffMaxNanos = limit.getBackoffMax().toNanos();
+    }
+
+    /**
+     * @return a WebClient filter applying rate limiting and retries to each request
+     */
+    public ExchangeFilterFunction filter() {
+        return (request, next) -> enabled ? exchange(request, next, 0) : next.exchange(request);
+    }
+
+    private Mono<ClientResponse> exchange(ClientRequest request, ExchangeFunction next, int attempt) {
+        TokenBucket bucket = HttpMethod.GET.equals(request.method()) ? getBucket : writeBucket;
+        return acquire(bucket, request)
+                .then(Mono.defer(() -> next.exchange(request)))
+                .flatMap(response -> {
+                    HttpStatusCode status = response.statusCode();
+                    if (!isRetryable(status, request.method()) || attempt >= maxRetries) {
+                        return Mono.just(response);
+                    }
+                    long retryAfterNanos = retryAfterNanos(response.headers().asHttpHeaders());
+                    if (status.isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS)) {
+                        throttled.increment();
+                        bucket.pauseFor(retryAfterNanos);
+                    }
+                    long delayNanos = Math.max(retryAfterNanos, jitteredBackoff(attempt));
+                    retries.increment();
+                    logger.warn("Trakt answered {} for {} {}, retry {}/{} in {} ms", status.value(),
+                            request.method(), request.url().getPath(), attempt + 1, maxRetries, delayNanos / 1_000_000);
+                    return response.releaseBody()
+                            .then(Mono.delay(Duration.ofNanos(delayNanos)))
+                            .then(Mono.defer(() -> exchange(request, next, attempt + 1)));
+                });
+    }
+
+    private Mono<Void> acquire(TokenBucket bucket, ClientRequest request) {
+        return Mono.defer(() -> {
+            long waitNanos = bucket.reserve(maxQueueWaitNanos);
+            if (waitNanos < 0) {
+                rejected.increment();
+                return Mono.error(new TraktRateLimitException("Trakt rate limit queue full, rejected "
+                        + request.method() + " " + request.url().getPath()));
+            }
+            if (waitNanos == 0) {
+                return Mono.empty();
+            }
+            queued.incrementAndGet();
+            queuedTotal.increment();
+            return Mono.delay(Duration.ofNanos(waitNanos))
+                    .doFinally(signal -> queued.decrementAndGet())
+                    .then();
+        });
+    }
+
+    private static boolean isRetryable(HttpStatusCode status, HttpMethod method) {
+        if (status.isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS)) {
+            return true; // Request was not processed, safe to repeat for any method
+        }
+        return HttpMethod.GET.equals(method)
+                && (status.isSameCodeAs(HttpStatus.BAD_GATEWAY)
+                || status.isSameCodeAs(HttpStatus.SERVICE_UNAVAILABLE)
+                || status.isSameCodeAs(HttpStatus.GATEWAY_TIMEOUT));
+    }
+
+    private long jitteredBackoff(int attempt) {
+        long ceiling = backoffBaseNanos << Math.min(attempt, 20);
+        if (ceiling <= 0 || ceiling > backoffMaxNanos) {
+            ceiling = backoffMaxNanos;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static long retryAfterNanos(HttpHeaders headers) {
+        String value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim())).toNanos();
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toNanos());
+            } catch (DateTimeParseException ignore) {
+                return 0;
+            }
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "traktRateGovernor";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("queuedRequests", queued.get());
+        metrics.put("queuedTotal", queuedTotal.sum());
+        metrics.put("rejected", rejected.sum());
+        metrics.put("throttled", throttled.sum());
+        metrics.put("retries", retries.sum());
+        metrics.put("getPermitsAvailable", getBucket.available());
+        metrics.put("writePermitsAvailable", writeBucket.available());
+        return metrics;
+    }
+
+    /**
+     * Token bucket allowing negative balance: a reservation that finds no permit takes one
+     * on credit and is told how long to wait until it is covered.
+     */
+    private static final class TokenBucket {
+        private final double capacity;
+        private final double permitsPerNano;
+        private double permits;
+        private long lastRefillNanos;
+        private long pausedUntilNanos;
+
+        TokenBucket(int limit, Duration period) {
+            this.capacity = Math.max(1, limit);
+            this.permitsPerNano = capacity / Math.max(1, period.toNanos());
+            this.permits = capacity;
+            this.lastRefillNanos = System.nanoTime();
+            this.pausedUntilNanos = lastRefillNanos;
+        }
+
+        /**
+         * @return nanoseconds to wait before sending, or -1 if that would exceed {@code maxWaitNanos}
+         */
+        synchronized long reserve(long maxWaitNanos) {
+            long now = System.nanoTime();
+            refill(now);
+            long pauseNanos = Math.max(0, pausedUntilNanos - now);
+            long debtNanos = permits >= 1 ? 0 : (long) Math.ceil((1 - permits) / permitsPerNano);
+            long waitNanos = Math.max(pauseNanos, debtNanos);
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            permits -= 1;
+            return waitNanos;
+        }
+
+        synchronized void pauseFor(long nanos) {
+            if (nanos > 0) {
+                long until = System.nanoTime() + nanos;
+                if (until - pausedUntilNanos > 0) {
+                    pausedUntilNanos = until;
+                }
+            }
+        }
+
+        synchronized long available() {
+            refill(System.nanoTime());
+            return (long) Math.floor(permits);
+        }
+
+        private void refill(long now) {
+            permits = Math.min(capacity, permits + (now - lastRefillNanos) * permitsPerNano);
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.moro.movie_recommender.service.trakt;
+
+/**
+ * Thrown when a Trakt request cannot be admitted by {@link TraktRateGovernor}
+ * within the configured maximum queue wait.
+ */
+public class TraktRateLimitException extends RuntimeException {
+
+    public TraktRateLimitException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,185 @@
+package com.moro.movie_recommender.service.trakt;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.moro.movie_recommender.dto.trakt.TraktRatingDTO;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming, token-level decoder for Trakt's {@code GET /sync/ratings/movies} payload.
+ *
+ * <p>Feeds response chunks into Jackson's non-blocking parser as they arrive and walks the
+ * token stream with a small state machine. Only {@code rating}, {@code rated_at} and
+ * {@code movie.ids.trakt} are read; every other field (titles, slugs, other ids, nested
+ * objects) is tokenized and skipped without building any intermediate objects.
+ */
+public final class TraktRatingsDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // Kinds of JSON containers we track along the current path
+    private static final byte OTHER = 0;
+    private static final byte ROOT = 1;
+    private static final byte ELEMENT = 2;
+    private static final byte MOVIE = 3;
+    private static final byte IDS = 4;
+
+    private static final int MAX_TRACKED_DEPTH = 32;
+
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final byte[] containers = new byte[MAX_TRACKED_DEPTH];
+    private int depth;
+    private String field;
+
+    // Fields of the rating currently being decoded
+    private long traktId;
+    private int rating;
+    private OffsetDateTime ratedAt;
+
+    private TraktRatingsDecoder() {
+        try {
+            this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create non-blocking JSON parser", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * Decodes a ratings response body into a stream of {@link TraktRatingDTO}s.
+     * Each subscription gets its own parser state; buffers are released once fed.
+     *
+     * @param body raw response body chunks
+     * @return ratings in payload order
+     */
+    public static Flux<TraktRatingDTO> decode(Flux<DataBuffer> body) {
+        return Flux.defer(() -> {
+            TraktRatingsDecoder decoder = new TraktRatingsDecoder();
+            return body.concatMapIterable(decoder::feed)
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(decoder.endOfInput())))
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .doFinally(signal -> decoder.close());
+        });
+    }
+
+    private List<TraktRatingDTO> feed(DataBuffer buffer) {
+        try {
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            feeder.feedInput(bytes, 0, bytes.length);
+            return drain();
+        } catch (IOException e) {
+            throw new DecodingException("Invalid Trakt ratings payload: " + e.getMessage(), e);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    private List<TraktRatingDTO> endOfInput() {
+        feeder.endOfInput();
+        try {
+            return drain();
+        } catch (IOException e) {
+            throw new DecodingException("Invalid Trakt ratings payload: " + e.getMessage(), e);
+        }
+    }
+
+    private void close() {
+        try {
+            parser.close();
+        } catch (IOException ignore) {
+            // nothing to release beyond the parser's own buffers
+        }
+    }
+
+    private List<TraktRatingDTO> drain() throws IOException {
+        List<TraktRatingDTO> decoded = null;
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            switch (token) {
+                case FIELD_NAME -> field = parser.currentName();
+                case START_OBJECT, START_ARRAY -> open(token);
+                case END_OBJECT, END_ARRAY -> {
+                    depth--;
+                    // An element object just closed: emit it if it referenced a movie
+                    if (depth == 1 && token == JsonToken.END_OBJECT && traktId > 0) {
+                        if (decoded == null) {
+                            decoded = new ArrayList<>();
+                        }
+                        decoded.add(new TraktRatingDTO(traktId, rating, ratedAt));
+                    }
+                }
+                case VALUE_STRING -> {
+                    if (parent() == ELEMENT && "rated_at".equals(field)) {
+                        ratedAt = parseTimestamp(parser.getText());
+                    }
+                }
+                case VALUE_NUMBER_INT -> {
+                    byte parent = parent();
+                    if (parent == ELEMENT && "rating".equals(field)) {
+                        rating = parser.getIntValue();
+                    } else if (parent == IDS && "trakt".equals(field)) {
+                        traktId = parser.getLongValue();
+                    }
+                }
+                default -> {
+                    // other scalars (floats, booleans, nulls) are never read
+                }
+            }
+        }
+        return decoded != null ? decoded : List.of();
+    }
+
+    private void open(JsonToken token) {
+        byte parent = parent();
+        byte kind = OTHER;
+        if (depth == 0) {
+            if (token != JsonToken.START_ARRAY) {
+                throw new DecodingException("Expected a JSON array of Trakt ratings");
+            }
+            kind = ROOT;
+        } else if (token == JsonToken.START_OBJECT) {
+            if (parent == ROOT) {
+                kind = ELEMENT;
+                traktId = 0;
+                rating = 0;
+                ratedAt = null;
+            } else if (parent == ELEMENT && "movie".equals(field)) {
+                kind = MOVIE;
+            } else if (parent == MOVIE && "ids".equals(field)) {
+                kind = IDS;
+            }
+        }
+        if (depth < MAX_TRACKED_DEPTH) {
+            containers[depth] = kind;
+        }
+        depth++;
+    }
+
+    private byte parent() {
+        if (depth == 0) {
+            return OTHER;
+        }
+        return depth <= MAX_TRACKED_DEPTH ? containers[depth - 1] : OTHER;
+    }
+
+    private static OffsetDateTime parseTimestamp(String text) {
+        try {
+            return OffsetDateTime.parse(text);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.moro.movie_recommender.service.trakt;
+
+import com.moro.movie_recommender.config.TraktProperties;
+import com.moro.movie_recommender.service.MetricsSource;
+import com.moro.movie_recommender.service.UserChangedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Conditional-request cache for Trakt list endpoints.
+ *
+ * <p>Remembers the {@code ETag} / {@code Last-Modified} validators and the decoded items of
+ * each (user, URI) response. Later requests for the same key send
+ * {@code If-None-Match} / {@code If-Modified-Since}; on {@code 304 Not Modified} the
+ * previously decoded list is returned as-is, without reading or parsing a body.
+ *
+ * <p>Entries are keyed by the user's name rather than the access token, so a refreshed token
+ * keeps the user's entries and no token is held as a key. A user's entries are dropped when
+ * the user unlinks Trakt or is deleted. After a relink to another Trakt account, a validator
+ * still matches only a response Trakt would send unchanged.
+ *
+ * <p>Memory is bounded by both entry count and total cached items, with least-recently-used
+ * eviction. The item bound is not a byte bound: a decoded watched movie takes roughly 400
+ * bytes of heap and a rating roughly 130, so the default of two million items can hold several
+ * hundred megabytes when most of them are watched movies. Configured through
+ * {@code trakt.cache.*}.
+ */
+@Component
+public class TraktResponseCache implements MetricsSource {
+
+    /**
+     * One decoded page of a list endpoint.
+     *
+     * @param items     decoded items
+     * @param pageCount value of {@code X-Pagination-Page-Count}, or 1 if absent
+     */
+    public record Page<T>(List<T> items, int pageCount) {}
+
+    private record Key(String userName, String uri) {}
+
+    private record Entry(String etag, String lastModified, Page<?> page) {}
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long maxItems;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedItems;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public TraktResponseCache(TraktProperties props) {
+        TraktProperties.Cache cache = props.getCache();
+        this.enabled = cache.isEnabled();
+        this.maxEntries = Math.max(1, cache.getMaxEntries());
+        this.maxItems = Math.max(1, cache.getMaxItems());
+    }
+
+    /**
+     * Issues a (conditional) GET for {@code uri} and returns the decoded page.
+     *
+     * @param webClient   Trakt WebClient
+     * @param uri         endpoint path including query parameters
+     * @param userName    user the list belongs to; keys the cache entry
+     * @param accessToken bearer token obtained via OAuth exchange
+     * @param decoder     decodes a 200 response body into items
+     * @return the fresh page, or the cached page if Trakt answered 304
+     */
+    public <T> Mono<Page<T>> fetch(WebClient webClient, String uri, String userName, String accessToken,
+                                   Function<ClientResponse, Flux<T>> decoder) {
+        Key key = new Key(userName, uri);
+        Entry cached = enabled ? get(key) : null;
+        return webClient.get()
+                .uri(uri)
+                .headers(h -> {
+                    h.setBearerAuth(accessToken);
+                    if (cached != null && cached.etag() != null) {
+                        h.setIfNoneMatch(cached.etag());
+                    }
+                    if (cached != null && cached.lastModified() != null) {
+                        h.set(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified());
+                    }
+                })
+                .exchangeToMono(response -> {
+                    if (cached != null && response.statusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+                        hits.increment();
+                        @SuppressWarnings("unchecked")
+                        Page<T> page = (Page<T>) cached.page();
+                        return response.releaseBody().thenReturn(page);
+                    }
+                    if (response.statusCode().isError()) {
+                        return response.<Page<T>>createError();
+                    }
+                    misses.increment();
+                    HttpHeaders headers = response.headers().asHttpHeaders();
+                    String etag = headers.getETag();
+                    String lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+                    int pageCount = TraktPager.pageCount(headers);
+                    return decoder.apply(response)
+                            .collectList()
+                            .map(items -> {
+                                Page<T> page = new Page<>(items, pageCount);
+                                if (enabled && (etag != null || lastModified != null)) {
+                                    put(key, new Entry(etag, lastModified, page));
+                                }
+                                return page;
+                            });
+                });
+    }
+
+    /**
+     * Drops the cached lists of a user who unlinked Trakt or was deleted.
+     */
+    @EventListener
+    public void onUserChanged(UserChangedEvent event) {
+        if (event.user() == null || !event.user().hasTraktAccount()) {
+            evictUser(event.userName());
+        }
+    }
+
+    /**
+     * Drops every cached list of {@code userName}.
+     */
+    public synchronized void evictUser(String userName) {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> e = it.next();
+            if (e.getKey().userName().equals(userName)) {
+                cachedItems -= e.getValue().page().items().size();
+                it.remove();
+            }
+        }
+    }
+
+    private synchronized Entry get(Key key) {
+        return entries.get(key);
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            cachedItems -= previous.page().items().size();
+        }
+        cachedItems += entry.page().items().size();
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || cachedItems > maxItems) && eldest.hasNext()) {
+            Map.Entry<Key, Entry> e = eldest.next();
+            cachedItems -= e.getValue().page().items().size();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "traktResponseCache";
+    }
+
+    @Override
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("entries", entries.size());
+        metrics.put("cachedItems", cachedItems);
+        metrics.put("notModifiedHits", hits.sum());
+        metrics.put("misses", misses.sum());
+        metrics.put("evictions", evictions.sum());
+        return metrics;
+    }
+}
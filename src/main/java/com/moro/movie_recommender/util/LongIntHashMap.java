@@ -0,0 +1,193 @@
+package com.moro.movie_recommender.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive {@code long} keys to primitive {@code int} values.
+ *
+ * <p>Used on hot paths (e.g. joining Trakt ratings by Trakt ID) where boxing every key
+ * and value into a {@code HashMap<Long, Integer>} would dominate allocation. Uses linear
+ * probing over a power-of-two table. Not thread-safe.
+ */
+public class LongIntHashMap {
+
+    private static final long EMPTY_KEY = 0L;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final int missingValue;
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    /**
+     * @param expectedSize number of entries expected, used to size the table up front
+     * @param missingValue value returned by {@link #get(long)} for absent keys
+     */
+    public LongIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        int capacity = tableSizeFor(Math.max(4, (int) (expectedSize / LOAD_FACTOR) + 1));
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int missingValue() {
+        return missingValue;
+    }
+
+    /**
+     * Returns the value mapped to {@code key}, or the configured missing value.
+     */
+    public int get(long key) {
+        if (key == EMPTY_KEY) {
+            return hasZeroKey ? zeroValue : missingValue;
+        }
+        int idx = mix(key) & mask;
+        while (true) {
+            long k = keys[idx];
+            if (k == EMPTY_KEY) {
+                return missingValue;
+            }
+            if (k == key) {
+                return values[idx];
+            }
+            idx = (idx + 1) & mask;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        if (key == EMPTY_KEY) {
+            return hasZeroKey;
+        }
+        int idx = mix(key) & mask;
+        while (true) {
+            long k = keys[idx];
+            if (k == EMPTY_KEY) {
+                return false;
+            }
+            if (k == key) {
+                return true;
+            }
+            idx = (idx + 1) & mask;
+        }
+    }
+
+    /**
+     * Associates {@code value} with {@code key}, replacing any previous mapping.
+     *
+     * @return the previous value, or the missing value if there was none
+     */
+    public int put(long key, int value) {
+        if (key == EMPTY_KEY) {
+            int previous = hasZeroKey ? zeroValue : missingValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+        int idx = mix(key) & mask;
+        while (true) {
+            long k = keys[idx];
+            if (k == EMPTY_KEY) {
+                keys[idx] = key;
+                values[idx] = value;
+                if (++size > keys.length * LOAD_FACTOR) {
+                    rehash(keys.length << 1);
+                }
+                return missingValue;
+            }
+            if (k == key) {
+                int previous = values[idx];
+                values[idx] = value;
+                return previous;
+            }
+            idx = (idx + 1) & mask;
+        }
+    }
+
+    /**
+     * Removes the mapping for {@code key}, shifting later entries of its probe run back so
+     * lookups never need tombstones.
+     *
+     * @return the removed value, or the missing value if there was none
+     */
+    public int remove(long key) {
+        if (key == EMPTY_KEY) {
+            if (!hasZeroKey) {
+                return missingValue;
+            }
+            hasZeroKey = false;
+            size--;
+            return zeroValue;
+        }
+        int idx = mix(key) & mask;
+        while (keys[idx] != key) {
+            if (keys[idx] == EMPTY_KEY) {
+                return missingValue;
+            }
+            idx = (idx + 1) & mask;
+        }
+        int removed = values[idx];
+        int gap = idx;
+        for (int next = (gap + 1) & mask; keys[next] != EMPTY_KEY; next = (next + 1) & mask) {
+            int home = mix(keys[next]) & mask;
+            // Move the entry into the gap unless its home lies cyclically in (gap, next]
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        keys[gap] = EMPTY_KEY;
+        size--;
+        return removed;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY_KEY);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[newCapacity];
+        values = new int[newCapacity];
+        mask = newCapacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            if (k != EMPTY_KEY) {
+                int idx = mix(k) & mask;
+                while (keys[idx] != EMPTY_KEY) {
+                    idx = (idx + 1) & mask;
+                }
+                keys[idx] = k;
+                values[idx] = oldValues[i];
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int n) {
+        int highest = Integer.highestOneBit(n);
+        return highest == n ? n : highest << 1;
+    }
+}
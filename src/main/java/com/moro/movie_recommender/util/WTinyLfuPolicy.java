@@ -0,0 +1,275 @@
+package com.moro.movie_recommender.util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which keys stay resident under a weight budget, using W-TinyLFU.
+ *
+ * <p>New keys enter a small LRU admission window (1% of the budget). Keys pushed out of the
+ * window join the main region as candidates, and each candidate competes with the main
+ * region's least recently used key: whichever was accessed less often, according to a
+ * {@link FrequencySketch} of recent history, is evicted. Main is a segmented LRU: keys
+ * accessed again while on probation move to the protected segment (80% of main), and keys
+ * falling off the protected segment go back on probation. One-off accesses therefore never
+ * displace the steadily used keys, while a burst of new keys still gets a chance in the window.
+ *
+ * <p>The policy tracks keys and weights only; the caller stores the values and evicts the keys
+ * it is told to. Not thread-safe.
+ */
+public class WTinyLfuPolicy<K> {
+
+    private static final double WINDOW_SHARE = 0.01;
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final long maxWeight;
+    private final long maxWindowWeight;
+    private final long maxProtectedWeight;
+    private final FrequencySketch sketch;
+
+    // Access-ordered: iteration starts at the least recently used key
+    private final LinkedHashMap<K, Long> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Long> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Long> protectedKeys = new LinkedHashMap<>(16, 0.75f, true);
+    private long windowWeight;
+    private long probationWeight;
+    private long protectedWeight;
+
+    /**
+     * @param maxWeight       total weight the resident keys may have
+     * @param expectedEntries rough number of distinct keys, used to size the frequency sketch
+     */
+    public WTinyLfuPolicy(long maxWeight, int expectedEntries) {
+        this.maxWeight = maxWeight;
+        this.maxWindowWeight = Math.max(1, (long) (maxWeight * WINDOW_SHARE));
+        this.maxProtectedWeight = (long) ((maxWeight - maxWindowWeight) * PROTECTED_SHARE);
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    /**
+     * Records a read of {@code key}. Keys that are not resident only count towards frequency.
+     */
+    public void recordAccess(K key) {
+        sketch.increment(key);
+        if (window.get(key) != null || protectedKeys.get(key) != null) {
+            return;
+        }
+        Long weight = probation.remove(key);
+        if (weight != null) {
+            probationWeight -= weight;
+            protectedKeys.put(key, weight);
+            protectedWeight += weight;
+            demoteProtected();
+        }
+    }
+
+    /**
+     * Makes {@code key} resident with the given weight, or updates the weight of a resident key,
+     * recording an access either way.
+     *
+     * @param evicted receives the keys the caller must now evict, possibly including {@code key}
+     */
+    public void add(K key, long weight, List<K> evicted) {
+        if (contains(key)) {
+            recordAccess(key);
+            updateWeight(key, weight);
+        } else {
+            sketch.increment(key);
+            window.put(key, weight);
+            windowWeight += weight;
+        }
+        while (windowWeight > maxWindowWeight && window.size() > 1) {
+            Map.Entry<K, Long> eldest = window.entrySet().iterator().next();
+            window.remove(eldest.getKey());
+            windowWeight -= eldest.getValue();
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationWeight += eldest.getValue();
+        }
+        evict(evicted);
+    }
+
+    /**
+     * Forgets a key the caller removed.
+     */
+    public void remove(K key) {
+        Long weight;
+        if ((weight = window.remove(key)) != null) {
+            windowWeight -= weight;
+        } else if ((weight = probation.remove(key)) != null) {
+            probationWeight -= weight;
+        } else if ((weight = protectedKeys.remove(key)) != null) {
+            protectedWeight -= weight;
+        }
+    }
+
+    public boolean contains(K key) {
+        return window.containsKey(key) || probation.containsKey(key) || protectedKeys.containsKey(key);
+    }
+
+    public int size() {
+        return window.size() + probation.size() + protectedKeys.size();
+    }
+
+    public long weight() {
+        return windowWeight + probationWeight + protectedWeight;
+    }
+
+    /**
+     * Evicts until the budget is met: the newest probation key (a candidate from the window)
+     * duels the oldest one (the victim), and the less frequently used of the two goes.
+     */
+    private void evict(List<K> evicted) {
+        while (weight() > maxWeight) {
+            if (probation.isEmpty()) {
+                // Everything is protected or in the window; fall back to plain LRU
+                LinkedHashMap<K, Long> from = !protectedKeys.isEmpty() ? protectedKeys : window;
+                K key = from.keySet().iterator().next();
+                remove(key);
+                evicted.add(key);
+                continue;
+            }
+            Iterator<K> oldestFirst = probation.keySet().iterator();
+            K victim = oldestFirst.next();
+            K candidate = victim;
+            while (oldestFirst.hasNext()) {
+                candidate = oldestFirst.next();
+            }
+            K loser = sketch.frequency(candidate) > sketch.frequency(victim) ? victim : candidate;
+            remove(loser);
+            evicted.add(loser);
+        }
+    }
+
+    private void updateWeight(K key, long weight) {
+        Long old;
+        if ((old = window.replace(key, weight)) != null) {
+            windowWeight += weight - old;
+        } else if ((old = probation.replace(key, weight)) != null) {
+            probationWeight += weight - old;
+        } else if ((old = protectedKeys.replace(key, weight)) != null) {
+            protectedWeight += weight - old;
+            demoteProtected();
+        }
+    }
+
+    private void demoteProtected() {
+        while (protectedWeight > maxProtectedWeight && protectedKeys.size() > 1) {
+            Map.Entry<K, Long> eldest = protectedKeys.entrySet().iterator().next();
+            protectedKeys.remove(eldest.getKey());
+            protectedWeight -= eldest.getValue();
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationWeight += eldest.getValue();
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, four per key, behind a doorkeeper: the first time a
+     * key is seen it is only marked in a bit set, so keys seen once never reach the counters.
+     * Once the number of increments reaches ten times the width, all counters are halved and
+     * the doorkeeper is cleared, so old popularity fades.
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0x97cb3127L, 0xc2b2ae3d27d4eb4fL, 0x165667b19e3779f9L, 0x9e3779b97f4a7c15L};
+        private static final long HALF_MASK = 0x7777_7777_7777_7777L;
+
+        private final long[] table; // 16 counters per long
+        private final long[] doorkeeper; // one bit per counter
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(64, Math.min(1 << 24, expectedEntries)) * 2 - 1);
+            this.table = new long[width / 4];
+            this.doorkeeper = new long[width / 16];
+            this.mask = table.length - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int min = 15;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int shift = counterShift(hash, i);
+                min = Math.min(min, (int) ((table[index] >>> shift) & 0xF));
+            }
+            return admitted(hash) ? min + 1 : min;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            if (!admitted(hash)) {
+                admit(hash);
+                added = true;
+            } else {
+                for (int i = 0; i < 4; i++) {
+                    int index = indexOf(hash, i);
+                    int shift = counterShift(hash, i);
+                    if (((table[index] >>> shift) & 0xF) != 0xF) {
+                        table[index] += 1L << shift;
+                        added = true;
+                    }
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        /** Halves every counter and clears the doorkeeper. */
+        void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & HALF_MASK;
+            }
+            Arrays.fill(doorkeeper, 0);
+            additions /= 2;
+        }
+
+        private boolean admitted(int hash) {
+            for (int i = 0; i < 2; i++) {
+                int bit = doorkeeperBit(hash, i);
+                if ((doorkeeper[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void admit(int hash) {
+            for (int i = 0; i < 2; i++) {
+                int bit = doorkeeperBit(hash, i);
+                doorkeeper[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        private int doorkeeperBit(int hash, int i) {
+            return (i == 0 ? hash : spread(hash)) & (doorkeeper.length * 64 - 1);
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & mask;
+        }
+
+        /** Each of the four hashes uses a different counter among the 16 in its long. */
+        private static int counterShift(int hash, int i) {
+            return (((hash >>> (i << 3)) & 3) + (i << 2)) << 2;
+        }
+
+        private static int spread(int h) {
+            h ^= h >>> 17;
+            h *= 0xed5ad4bb;
+            h ^= h >>> 11;
+            h *= 0xac4c1b51;
+            h ^= h >>> 15;
+            return h;
+        }
+    }
+}
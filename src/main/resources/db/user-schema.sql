@@ -0,0 +1,41 @@
+-- User repository schema (storage.backend=r2dbc). Runs on startup with
+-- storage.r2dbc.initialize-schema=true; every statement is idempotent.
+-- Upserts use standard MERGE, so PostgreSQL 15 or later is required.
+
+CREATE TABLE IF NOT EXISTS users (
+    name                  VARCHAR(255) PRIMARY KEY,
+    version               BIGINT       NOT NULL,
+    trakt_access_token    VARCHAR(1024),
+    trakt_refresh_token   VARCHAR(1024),
+    trakt_linked_at       TIMESTAMP WITH TIME ZONE,
+    trakt_username        VARCHAR(255),
+    trakt_user_id         VARCHAR(255),
+    trakt_last_watched_at TIMESTAMP WITH TIME ZONE,
+    trakt_last_rated_at   TIMESTAMP WITH TIME ZONE
+);
+
+-- One row per distinct movie, shared by every user who watched it.
+-- movie_key is 'trakt:<trakt id>', or 'title:<year>:<title>' for movies without a Trakt id.
+CREATE TABLE IF NOT EXISTS movies (
+    movie_key    VARCHAR(600) PRIMARY KEY,
+    title        VARCHAR(512),
+    release_year INTEGER,
+    trakt_id     BIGINT,
+    imdb_id      VARCHAR(32),
+    tmdb_id      BIGINT,
+    slug         VARCHAR(512)
+);
+
+-- A user's movie lists: list_name is 'manual' or 'trakt', list_index the position in it.
+CREATE TABLE IF NOT EXISTS user_movie (
+    user_name       VARCHAR(255) NOT NULL REFERENCES users (name) ON DELETE CASCADE,
+    list_name       VARCHAR(16)  NOT NULL,
+    list_index      INTEGER      NOT NULL,
+    movie_key       VARCHAR(600) NOT NULL REFERENCES movies (movie_key),
+    rating          INTEGER,
+    plays           INTEGER,
+    last_watched_at TIMESTAMP WITH TIME ZONE,
+    PRIMARY KEY (user_name, list_name, list_index)
+);
+
+CREATE INDEX IF NOT EXISTS user_movie_movie ON user_movie (movie_key);
@@ -0,0 +1,104 @@
+package com.moro.movie_recommender.config;
+
+import com.moro.movie_recommender.service.trakt.TraktPoolMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The Trakt {@link WebClient} built by {@link WebClientConfig}, sending concurrent requests
+ * through a small pool to a local server that answers every request after 200 ms.
+ */
+class WebClientConfigTests {
+
+    private final TraktProperties props = new TraktProperties();
+    private final TraktPoolMetrics poolMetrics = new TraktPoolMetrics();
+    private final AtomicInteger requests = new AtomicInteger();
+    private DisposableServer server;
+    private ConnectionProvider connectionProvider;
+
+    @BeforeEach
+    void setUp() {
+        server = HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .handle((request, response) -> {
+                    requests.incrementAndGet();
+                    return Mono.delay(Duration.ofMillis(200))
+                            .then(response.sendString(Mono.just("{\"username\":\"alice\"}")).then());
+                })
+                .bindNow();
+        props.getPool().setMaxConnections(2);
+        props.getPool().setHttp2(false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (connectionProvider != null) {
+            connectionProvider.dispose();
+        }
+        server.disposeNow();
+    }
+
+    @Test
+    void reusesPooledConnections() {
+        WebClient webClient = webClient();
+
+        List<String> bodies = Flux.range(0, 8)
+                .flatMap(i -> me(webClient))
+                .collectList()
+                .block();
+
+        assertEquals(8, bodies.size());
+        Map<String, Object> metrics = poolMetrics.getMetrics();
+        assertEquals(1, metrics.get("pools"));
+        assertEquals(2, metrics.get("maxConnections"));
+        assertEquals(0, metrics.get("activeConnections"));
+        assertTrue((Integer) metrics.get("allocatedConnections") <= 2, "requests queued for the two connections");
+        assertEquals(metrics.get("allocatedConnections"), metrics.get("idleConnections"), "kept alive for reuse");
+    }
+
+    @Test
+    void rejectsAcquiresBeyondThePendingLimit() {
+        props.getPool().setMaxConnections(1);
+        props.getPool().setPendingAcquireMaxCount(1);
+        WebClient webClient = webClient();
+
+        List<String> results = Flux.range(0, 5)
+                .flatMap(i -> me(webClient).onErrorResume(e -> Mono.just("rejected")))
+                .collectList()
+                .block();
+
+        long rejected = results.stream().filter("rejected"::equals).count();
+        assertEquals(2, results.size() - rejected, "one request on the connection and one waiting for it");
+        assertEquals(2, requests.get());
+    }
+
+    private WebClient webClient() {
+        WebClientConfig config = new WebClientConfig();
+        connectionProvider = config.traktConnectionProvider(props, poolMetrics);
+        return config.webClientBuilder(props, connectionProvider).baseUrl("http://localhost:" + server.port()).build();
+    }
+
+    private static Mono<String> me(WebClient webClient) {
+        return webClient.get()
+                .uri("/users/me")
+                .headers(h -> h.setBearerAuth("token"))
+                .retrieve()
+                .bodyToMono(String.class);
+    }
+}
@@ -0,0 +1,161 @@
+package com.moro.movie_recommender.controller;
+
+import com.moro.movie_recommender.config.StorageProperties;
+import com.moro.movie_recommender.dto.ManualMovie;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.service.UserService;
+import com.moro.movie_recommender.service.storage.UserStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link UserController} listing endpoints, bound without a server over an in-memory
+ * {@link UserStore} holding users {@code user00} to {@code user24}.
+ */
+class UserControllerTests {
+
+    private static final int USERS = 25;
+
+    private UserStore store;
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        StorageProperties props = new StorageProperties();
+        props.setEnabled(false);
+        store = new UserStore(props, new MovieCatalog());
+        store.open();
+        UserService userService = new UserService(store, event -> { });
+        for (int i = 0; i < USERS; i++) {
+            userService.createUser(String.format("user%02d", i)).block();
+        }
+        userService.addManualMovie("user03", new ManualMovie("Heat", 1995, 9)).block();
+        client = WebTestClient.bindToController(new UserController(userService, null, null, null, null, null)).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void cursorsWalkThroughEveryUserOnce() {
+        List<String> names = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        String cursor = null;
+        do {
+            Map<String, Object> page = page(10, cursor, "name");
+            List<Map<String, Object>> users = users(page);
+            users.forEach(user -> names.add((String) user.get("name")));
+            pageSizes.add(users.size());
+            cursor = (String) page.get("nextCursor");
+        } while (cursor != null);
+
+        assertEquals(List.of(10, 10, 5), pageSizes);
+        assertEquals(USERS, names.size());
+        for (int i = 0; i < USERS; i++) {
+            assertEquals(String.format("user%02d", i), names.get(i));
+        }
+    }
+
+    @Test
+    void thereIsNoNextPageWhenTheLastPageIsFull() {
+        Map<String, Object> first = page(5, null, "name");
+        assertNotNull(first.get("nextCursor"));
+
+        Map<String, Object> last = page(20, (String) first.get("nextCursor"), "name");
+        assertEquals(20, users(last).size());
+        assertNull(last.get("nextCursor"), "exactly the remaining users fit, so no empty page follows");
+
+        Map<String, Object> all = page(USERS, null, "name");
+        assertEquals(USERS, users(all).size());
+        assertNull(all.get("nextCursor"));
+    }
+
+    @Test
+    void projectsTheRequestedFields() {
+        Map<String, Object> page = page(4, null, "name, manualMovieCount,name");
+        Map<String, Object> user03 = users(page).get(3);
+        assertEquals(List.of("name", "manualMovieCount"), List.copyOf(user03.keySet()));
+        assertEquals(1, user03.get("manualMovieCount"));
+
+        Map<String, Object> full = users(page(1, null, null)).get(0);
+        assertEquals("user00", full.get("name"));
+        assertTrue(full.size() > 2, "without fields, users are returned whole");
+    }
+
+    @Test
+    void rejectsInvalidParameters() {
+        for (String query : List.of("limit=0", "limit=1001", "limit=ten", "limit=10&cursor=not a cursor!",
+                "limit=10&fields=name,password")) {
+            client.get().uri("/api/users?" + query)
+                    .exchange()
+                    .expectStatus().isBadRequest();
+        }
+        client.get().uri("/api/users?limit=10&cursor=***")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.error").isEqualTo("invalid cursor");
+        client.get().uri("/api/users?fields=password")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void streamsOneUserPerLine() {
+        String cursor = (String) page(20, null, "name").get("nextCursor");
+
+        String body = client.get()
+                .uri(uri -> uri.path("/api/users").queryParam("cursor", cursor).queryParam("fields", "name").build())
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        assertNotNull(body);
+        assertTrue(body.endsWith("\n"), "every line is terminated");
+        List<String> lines = List.of(body.split("\n"));
+        assertEquals(List.of("{\"name\":\"user20\"}", "{\"name\":\"user21\"}", "{\"name\":\"user22\"}",
+                "{\"name\":\"user23\"}", "{\"name\":\"user24\"}"), lines);
+    }
+
+    private Map<String, Object> page(int limit, String cursor, String fields) {
+        Map<String, Object> page = client.get()
+                .uri(uri -> uri.path("/api/users")
+                        .queryParam("limit", limit)
+                        .queryParamIfPresent("cursor", Optional.ofNullable(cursor))
+                        .queryParamIfPresent("fields", Optional.ofNullable(fields))
+                        .build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<Map<String, Object>>() {})
+                .returnResult()
+                .getResponseBody();
+        assertNotNull(page);
+        return page;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> users(Map<String, Object> page) {
+        return (List<Map<String, Object>>) page.get("users");
+    }
+}
@@ -0,0 +1,75 @@
+package com.moro.movie_recommender.dto;
+
+import com.moro.movie_recommender.dto.trakt.TraktIdsDTO;
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * {@link MovieCatalog} under concurrent interning: four writers add overlapping movies while a
+ * reader keeps reading every index below the current size.
+ */
+class MovieCatalogTests {
+
+    private static final int MOVIES = 20_000;
+
+    @Test
+    void readersSeeOnlyFullyWrittenMovies() throws Exception {
+        MovieCatalog catalog = new MovieCatalog();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            Future<Integer> reader = executor.submit(() -> {
+                int read = 0;
+                while (writing.get() || read < catalog.size()) {
+                    for (int size = catalog.size(); read < size; read++) {
+                        assertNotNull(catalog.get(read), "movie " + read);
+                        assertNotNull(catalog.traktId(read), "Trakt id of movie " + read);
+                    }
+                }
+                return read;
+            });
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < 4; w++) {
+                int offset = w * MOVIES / 8;
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < MOVIES / 2; i++) {
+                        catalog.intern(movie(offset + i));
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            writing.set(false);
+
+            int distinct = 3 * MOVIES / 8 + MOVIES / 2;
+            assertEquals(distinct, catalog.size());
+            assertEquals(distinct, (int) reader.get());
+            for (int i = 0; i < distinct; i++) {
+                assertEquals(i, catalog.intern(movie(catalog.traktId(i))), "interned once");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static TraktMovieDTO movie(long traktId) {
+        TraktIdsDTO ids = new TraktIdsDTO();
+        ids.setTrakt(traktId);
+        TraktMovieDTO movie = new TraktMovieDTO();
+        movie.setTitle("Movie " + traktId);
+        movie.setYear(2000);
+        movie.setIds(ids);
+        return movie;
+    }
+}
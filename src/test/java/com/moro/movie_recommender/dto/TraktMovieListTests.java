@@ -0,0 +1,63 @@
+package com.moro.movie_recommender.dto;
+
+import com.moro.movie_recommender.dto.trakt.TraktIdsDTO;
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * {@link TraktMovieList} over a {@link MovieCatalog} of its own: materialized movies are
+ * private copies, and re-reading movies without a Trakt id does not grow the catalog.
+ */
+class TraktMovieListTests {
+
+    private final MovieCatalog catalog = new MovieCatalog();
+
+    @Test
+    void materializedMoviesDoNotShareTheCatalogEntry() {
+        TraktMovieList list = TraktMovieList.copyOf(catalog, List.of(movie(UUID.randomUUID().toString(), 2001, 900_000_001L)));
+
+        TraktMovieDTO first = list.get(0);
+        assertNull(first.getUserRating());
+        first.setTitle("changed");
+        first.getIds().setTrakt(1L);
+
+        TraktMovieDTO second = list.get(0);
+        assertNotSame(first, second);
+        assertEquals(900_000_001L, second.getIds().getTrakt());
+        assertEquals(list.getCatalogIndex(0), catalog.indexOf(900_000_001L));
+        assertEquals(second.getTitle(), catalog.get(list.getCatalogIndex(0)).getTitle());
+    }
+
+    @Test
+    void moviesWithoutTraktIdAreInternedOnce() {
+        String title = UUID.randomUUID().toString();
+        TraktMovieList first = TraktMovieList.copyOf(catalog, List.of(movie(title, 1999, null), movie(title, 2000, null)));
+        int size = catalog.size();
+
+        TraktMovieList again = TraktMovieList.copyOf(catalog, List.of(movie(" " + title.toUpperCase() + " ", 1999, null)));
+
+        assertEquals(size, catalog.size());
+        assertEquals(first.getCatalogIndex(0), again.getCatalogIndex(0));
+        assertEquals(first.getCatalogIndex(0) + 1, first.getCatalogIndex(1), "other years are other movies");
+        assertNull(again.getTraktId(0));
+    }
+
+    private static TraktMovieDTO movie(String title, int year, Long traktId) {
+        TraktMovieDTO movie = new TraktMovieDTO();
+        movie.setTitle(title);
+        movie.setYear(year);
+        if (traktId != null) {
+            TraktIdsDTO ids = new TraktIdsDTO();
+            ids.setTrakt(traktId);
+            movie.setIds(ids);
+        }
+        return movie;
+    }
+}
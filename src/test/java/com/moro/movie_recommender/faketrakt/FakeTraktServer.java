@@ -0,0 +1,259 @@
+package com.moro.movie_recommender.faketrakt;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Embedded, Netty-based stand-in for {@code api.trakt.tv}, for load-testing
+ * {@code TraktService} and {@code MovieSyncService} offline.
+ *
+ * <p>Serves the endpoints the app uses ({@code /oauth/token}, {@code /users/me},
+ * {@code /sync/last_activities}, {@code /sync/watched/movies}, {@code /sync/ratings/movies})
+ * from {@link SyntheticLibraries}. List endpoints honour
+ * {@code page}/{@code limit} with Trakt's {@code X-Pagination-*} headers, and send ETags
+ * answering {@code If-None-Match} with 304. Every response can be delayed by a fixed latency,
+ * and a requests-per-second cap answers excess requests with 429 and {@code Retry-After}.
+ */
+public class FakeTraktServer implements AutoCloseable {
+
+    private static final Pattern CODE = Pattern.compile("\"code\"\\s*:\\s*\"code-(\\d+)\"");
+
+    private final SyntheticLibraries libraries;
+    private final Duration latency;
+    private final int maxRequestsPerSecond;
+    private final DisposableServer server;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final AtomicLong windowSecond = new AtomicLong();
+    private final AtomicLong windowCount = new AtomicLong();
+
+    /**
+     * Starts the server on an ephemeral port.
+     *
+     * @param libraries            synthetic user libraries to serve
+     * @param latency              delay added to every response
+     * @param maxRequestsPerSecond requests allowed per wall-clock second before answering 429 (0 = unlimited)
+     */
+    public FakeTraktServer(SyntheticLibraries libraries, Duration latency, int maxRequestsPerSecond) {
+        this.libraries = libraries;
+        this.latency = latency;
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        this.server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes
+                        .post("/oauth/token", this::token)
+                        .get("/users/me", this::me)
+                        .get("/sync/last_activities", this::lastActivities)
+                        .get("/sync/watched/movies", this::watched)
+                        .get("/sync/ratings/movies", this::ratings))
+                .bindNow();
+    }
+
+    /** Authorization code that {@code /oauth/token} exchanges for the given user's token. */
+    public static String codeFor(int userId) {
+        return "code-" + userId;
+    }
+
+    /** @return base URL to configure as {@code trakt.api-base} */
+    public String baseUrl() {
+        return "http://localhost:" + server.port();
+    }
+
+    public long requestCount() {
+        return requests.sum();
+    }
+
+    public long throttledCount() {
+        return throttled.sum();
+    }
+
+    public long notModifiedCount() {
+        return notModified.sum();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    // --- Handlers ---
+
+    private Mono<Void> token(HttpServerRequest request, HttpServerResponse response) {
+        return request.receive().aggregate().asString().defaultIfEmpty("")
+                .flatMap(body -> guard(request, response, ignored -> {
+                    // Codes issued by codeFor(n) log in as user n; anything else as user 0
+                    Matcher code = CODE.matcher(body);
+                    int userId = code.find() ? Math.floorMod(Integer.parseInt(code.group(1)), libraries.userCount()) : 0;
+                    String token = SyntheticLibraries.tokenFor(userId);
+                    return "{\"access_token\":\"" + token + "\",\"refresh_token\":\"refresh-" + token
+                            + "\",\"token_type\":\"bearer\",\"expires_in\":7776000,\"scope\":\"public\"}";
+                }, false));
+    }
+
+    private Mono<Void> me(HttpServerRequest request, HttpServerResponse response) {
+        return guard(request, response, userId ->
+                "{\"username\":\"fake-" + userId + "\",\"private\":false,\"ids\":{\"slug\":\"fake-" + userId + "\"}}", true);
+    }
+
+    private Mono<Void> lastActivities(HttpServerRequest request, HttpServerResponse response) {
+        return guard(request, response, userId -> {
+            SyntheticLibraries.Library library = libraries.library(userId);
+            String watchedAt = SyntheticLibraries.timestamp(SyntheticLibraries.lastWatchedActivity(library));
+            String ratedAt = SyntheticLibraries.timestamp(SyntheticLibraries.lastRatedActivity(library));
+            return "{\"all\":\"" + watchedAt + "\",\"movies\":{\"watched_at\":\"" + watchedAt
+                    + "\",\"collected_at\":\"" + watchedAt + "\",\"rated_at\":\"" + ratedAt
+                    + "\",\"watchlisted_at\":\"" + watchedAt + "\",\"paused_at\":\"" + watchedAt + "\"}}";
+        }, true);
+    }
+
+    private Mono<Void> watched(HttpServerRequest request, HttpServerResponse response) {
+        return list(request, response, "watched", (library, i, out) -> {
+            out.append("{\"plays\":").append(library.plays[i])
+                    .append(",\"last_watched_at\":\"").append(SyntheticLibraries.timestamp(library.lastWatchedAt[i]))
+                    .append("\",\"last_updated_at\":\"").append(SyntheticLibraries.timestamp(library.lastWatchedAt[i]))
+                    .append("\",\"movie\":");
+            SyntheticLibraries.appendMovie(out, library.traktIds[i]);
+            out.append('}');
+            return true;
+        });
+    }
+
+    private Mono<Void> ratings(HttpServerRequest request, HttpServerResponse response) {
+        return list(request, response, "ratings", (library, i, out) -> {
+            if (library.ratings[i] == 0) {
+                return false;
+            }
+            out.append("{\"rated_at\":\"").append(SyntheticLibraries.timestamp(library.ratedAt[i]))
+                    .append("\",\"rating\":").append(library.ratings[i])
+                    .append(",\"type\":\"movie\",\"movie\":");
+            SyntheticLibraries.appendMovie(out, library.traktIds[i]);
+            out.append('}');
+            return true;
+        });
+    }
+
+    // --- Plumbing ---
+
+    /** Writes one library entry as JSON; returns false to skip the entry. */
+    private interface EntryWriter {
+        boolean write(SyntheticLibraries.Library library, int index, StringBuilder out);
+    }
+
+    private Mono<Void> list(HttpServerRequest request, HttpServerResponse response, String listName, EntryWriter writer) {
+        QueryStringDecoder query = new QueryStringDecoder(request.uri());
+        int page = intParam(query, "page", 0);
+        int limit = intParam(query, "limit", 0);
+        return guard(request, response, userId -> {
+            SyntheticLibraries.Library library = libraries.library(userId);
+            StringBuilder out = new StringBuilder(library.size() * 160);
+            int count = 0;
+            int from = page > 0 && limit > 0 ? (page - 1) * limit : 0;
+            int to = page > 0 && limit > 0 ? from + limit : Integer.MAX_VALUE;
+            out.append('[');
+            int written = 0;
+            StringBuilder entry = new StringBuilder(256);
+            for (int i = 0; i < library.size(); i++) {
+                entry.setLength(0);
+                if (!writer.write(library, i, entry)) {
+                    continue;
+                }
+                if (count >= from && count < to) {
+                    if (written++ > 0) {
+                        out.append(',');
+                    }
+                    out.append(entry);
+                }
+                count++;
+            }
+            out.append(']');
+            if (page > 0 && limit > 0) {
+                response.header("X-Pagination-Page", String.valueOf(page))
+                        .header("X-Pagination-Limit", String.valueOf(limit))
+                        .header("X-Pagination-Page-Count", String.valueOf(Math.max(1, (count + limit - 1) / limit)))
+                        .header("X-Pagination-Item-Count", String.valueOf(count));
+            }
+            return out.toString();
+        }, true, listName + "-p" + page + "-l" + limit);
+    }
+
+    private Mono<Void> guard(HttpServerRequest request, HttpServerResponse response,
+                             IntFunction<String> body, boolean authenticated) {
+        return guard(request, response, body, authenticated, null);
+    }
+
+    /**
+     * Applies rate limiting, authentication and conditional-request handling, then sends
+     * the body produced for the authenticated user after the configured latency.
+     */
+    private Mono<Void> guard(HttpServerRequest request, HttpServerResponse response,
+                             IntFunction<String> body, boolean authenticated, String etagKey) {
+        requests.increment();
+        if (!admit()) {
+            throttled.increment();
+            return response.status(HttpResponseStatus.TOO_MANY_REQUESTS)
+                    .header("Retry-After", "1")
+                    .send();
+        }
+        int userId = 0;
+        if (authenticated) {
+            String authorization = request.requestHeaders().get("Authorization");
+            String token = authorization != null && authorization.startsWith("Bearer ") ? authorization.substring(7) : null;
+            userId = libraries.userIdForToken(token);
+            if (userId < 0) {
+                return response.status(HttpResponseStatus.UNAUTHORIZED).send();
+            }
+        }
+        if (etagKey != null) {
+            // Libraries never change, so the ETag only depends on user and request shape
+            String etag = "\"u" + userId + "-" + etagKey + "\"";
+            if (etag.equals(request.requestHeaders().get("If-None-Match"))) {
+                notModified.increment();
+                return Mono.delay(latency).then(response.status(HttpResponseStatus.NOT_MODIFIED).header("ETag", etag).send());
+            }
+            response.header("ETag", etag);
+        }
+        int user = userId;
+        return response.header("Content-Type", "application/json")
+                .sendString(Mono.delay(latency).map(t -> body.apply(user)))
+                .then();
+    }
+
+    private boolean admit() {
+        if (maxRequestsPerSecond <= 0) {
+            return true;
+        }
+        long second = System.currentTimeMillis() / 1000;
+        long current = windowSecond.get();
+        if (current != second && windowSecond.compareAndSet(current, second)) {
+            windowCount.set(0);
+        }
+        return windowCount.incrementAndGet() <= maxRequestsPerSecond;
+    }
+
+    private static int intParam(QueryStringDecoder query, String name, int defaultValue) {
+        List<String> values = query.parameters().get(name);
+        if (values == null || values.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(values.get(0));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.moro.movie_recommender.faketrakt;
+
+import java.time.Instant;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic generator of synthetic Trakt users and movie libraries.
+ *
+ * <p>Nothing is stored: a user's library is regenerated from its user id on demand, so the
+ * fake server can serve e.g. 100k users with 1-10k movies each in constant memory. Movie
+ * popularity is skewed (a small head of the catalog is watched by most users), which gives
+ * the realistic overlap that catalog interning and recommenders rely on.
+ */
+public class SyntheticLibraries {
+
+    /** Activity timestamps are spread over the ten years before this instant. */
+    private static final long EPOCH_SECONDS = Instant.parse("2025-01-01T00:00:00Z").getEpochSecond();
+    private static final long SPAN_SECONDS = 10L * 365 * 24 * 3600;
+
+    private final long seed;
+    private final int userCount;
+    private final int catalogSize;
+    private final int minMovies;
+    private final int maxMovies;
+
+    public SyntheticLibraries(long seed, int userCount, int catalogSize, int minMovies, int maxMovies) {
+        this.seed = seed;
+        this.userCount = userCount;
+        this.catalogSize = catalogSize;
+        this.minMovies = Math.max(1, minMovies);
+        this.maxMovies = Math.min(Math.max(this.minMovies, maxMovies), catalogSize);
+    }
+
+    public int userCount() {
+        return userCount;
+    }
+
+    /** Access token handed out for a user; the fake server maps it back to the user id. */
+    public static String tokenFor(int userId) {
+        return "user-" + userId;
+    }
+
+    /** @return the user id encoded in a bearer token, or -1 if the token is not ours */
+    public int userIdForToken(String token) {
+        if (token == null || !token.startsWith("user-")) {
+            return -1;
+        }
+        try {
+            int id = Integer.parseInt(token.substring(5));
+            return id >= 0 && id < userCount ? id : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Generates a user's library. Entries are sorted by Trakt id.
+     */
+    public Library library(int userId) {
+        SplittableRandom random = new SplittableRandom(seed * 31 + userId);
+        int size = minMovies + random.nextInt(maxMovies - minMovies + 1);
+        BitSet chosen = new BitSet(catalogSize);
+        int picked = 0;
+        while (picked < size) {
+            // Squaring a uniform variate skews picks towards the head of the catalog
+            double u = random.nextDouble();
+            int index = (int) (catalogSize * u * u);
+            if (!chosen.get(index)) {
+                chosen.set(index);
+                picked++;
+            }
+        }
+        Library library = new Library(size);
+        int i = 0;
+        for (int index = chosen.nextSetBit(0); index >= 0; index = chosen.nextSetBit(index + 1)) {
+            library.traktIds[i] = index + 1;
+            library.plays[i] = 1 + (random.nextInt(10) == 0 ? random.nextInt(5) : 0);
+            library.lastWatchedAt[i] = EPOCH_SECONDS - random.nextLong(SPAN_SECONDS);
+            library.ratings[i] = random.nextInt(5) < 2 ? (byte) (1 + random.nextInt(10)) : 0;
+            library.ratedAt[i] = library.lastWatchedAt[i] + random.nextLong(86_400);
+            i++;
+        }
+        return library;
+    }
+
+    /** Most recent watch in a library, used as the user's {@code movies.watched_at} activity. */
+    public static long lastWatchedActivity(Library library) {
+        long max = EPOCH_SECONDS - SPAN_SECONDS;
+        for (long t : library.lastWatchedAt) {
+            max = Math.max(max, t);
+        }
+        return max;
+    }
+
+    /** Most recent rating in a library, used as the user's {@code movies.rated_at} activity. */
+    public static long lastRatedActivity(Library library) {
+        long max = EPOCH_SECONDS - SPAN_SECONDS;
+        for (int i = 0; i < library.size(); i++) {
+            if (library.ratings[i] > 0) {
+                max = Math.max(max, library.ratedAt[i]);
+            }
+        }
+        return max;
+    }
+
+    /** Appends the Trakt JSON representation of a catalog movie. */
+    public static void appendMovie(StringBuilder out, int traktId) {
+        int year = 1950 + traktId % 75;
+        out.append("{\"title\":\"Movie ").append(traktId)
+                .append("\",\"year\":").append(year)
+                .append(",\"ids\":{\"trakt\":").append(traktId)
+                .append(",\"slug\":\"movie-").append(traktId).append('-').append(year)
+                .append("\",\"imdb\":\"tt").append(String.format("%07d", traktId))
+                .append("\",\"tmdb\":").append(100_000 + traktId)
+                .append("}}");
+    }
+
+    public static String timestamp(long epochSeconds) {
+        return Instant.ofEpochSecond(epochSeconds).toString();
+    }
+
+    /** A user's library in columnar form. */
+    public static final class Library {
+        public final int[] traktIds;
+        public final int[] plays;
+        public final long[] lastWatchedAt;
+        public final byte[] ratings;
+        public final long[] ratedAt;
+
+        Library(int size) {
+            this.traktIds = new int[size];
+            this.plays = new int[size];
+            this.lastWatchedAt = new long[size];
+            this.ratings = new byte[size];
+            this.ratedAt = new long[size];
+        }
+
+        public int size() {
+            return traktIds.length;
+        }
+
+        public int ratedCount() {
+            int n = 0;
+            for (byte r : ratings) {
+                if (r > 0) {
+                    n++;
+                }
+            }
+            return n;
+        }
+    }
+}
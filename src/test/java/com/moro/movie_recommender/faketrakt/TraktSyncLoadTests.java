@@ -0,0 +1,127 @@
+package com.moro.movie_recommender.faketrakt;
+
+import com.moro.movie_recommender.config.TraktProperties;
+import com.moro.movie_recommender.config.WebClientConfig;
+import com.moro.movie_recommender.dto.Movie;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.TraktAccount;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.service.MovieSyncService;
+import com.moro.movie_recommender.service.TraktService;
+import com.moro.movie_recommender.service.trakt.TraktPoolMetrics;
+import com.moro.movie_recommender.service.trakt.TraktRateGovernor;
+import com.moro.movie_recommender.service.trakt.TraktResponseCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Offline benchmark of {@link TraktService} and {@link MovieSyncService} against {@link FakeTraktServer}.
+ *
+ * <p>Defaults are small enough for a regular build. Scale up with system properties, e.g.
+ * {@code -Dfaketrakt.users=100000 -Dfaketrakt.minMovies=1000 -Dfaketrakt.maxMovies=10000
+ * -Dfaketrakt.latencyMs=50 -Dfaketrakt.concurrency=64 -Dfaketrakt.pagination=true}.
+ */
+class TraktSyncLoadTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(TraktSyncLoadTests.class);
+
+    private final int users = Integer.getInteger("faketrakt.users", 50);
+    private final int concurrency = Integer.getInteger("faketrakt.concurrency", 16);
+
+    private SyntheticLibraries libraries;
+    private FakeTraktServer server;
+    private ConnectionProvider connectionProvider;
+    private MovieSyncService movieSyncService;
+
+    @BeforeEach
+    void setUp() {
+        libraries = new SyntheticLibraries(42, users,
+                Integer.getInteger("faketrakt.catalogSize", 50_000),
+                Integer.getInteger("faketrakt.minMovies", 100),
+                Integer.getInteger("faketrakt.maxMovies", 2_000));
+        server = new FakeTraktServer(libraries,
+                Duration.ofMillis(Integer.getInteger("faketrakt.latencyMs", 0)),
+                Integer.getInteger("faketrakt.maxRequestsPerSecond", 0));
+
+        TraktProperties props = new TraktProperties();
+        props.setApiBase(server.baseUrl());
+        props.setClientId("fake-client");
+        props.setClientSecret("fake-secret");
+        props.setApiVersion("2");
+        props.getPool().setHttp2(false);
+        props.getPagination().setEnabled(Boolean.getBoolean("faketrakt.pagination"));
+        // The fake server enforces its own cap; don't let the client-side governor hide it
+        props.getRateLimit().setGetLimit(Integer.MAX_VALUE);
+
+        WebClientConfig webClientConfig = new WebClientConfig();
+        connectionProvider = webClientConfig.traktConnectionProvider(props, new TraktPoolMetrics());
+        TraktService traktService = new TraktService(webClientConfig.webClientBuilder(props, connectionProvider),
+                props, new TraktResponseCache(props), new TraktRateGovernor(props));
+        movieSyncService = new MovieSyncService(traktService, props, new MovieCatalog(), event -> { });
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionProvider.dispose();
+        server.close();
+    }
+
+    @Test
+    void syncsSyntheticLibraries() {
+        long start = System.nanoTime();
+        List<User> synced = syncAll();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long movies = 0;
+        for (User user : synced) {
+            int userId = Integer.parseInt(user.getName().substring("load-".length()));
+            SyntheticLibraries.Library library = libraries.library(userId);
+            List<Movie> traktMovies = user.getTraktMovies();
+            assertEquals(library.size(), traktMovies.size(), "movies synced for " + user.getName());
+            assertEquals(library.ratedCount(), traktMovies.stream().map(Movie::getUserRating).filter(Objects::nonNull).count(),
+                    "ratings joined for " + user.getName());
+            movies += traktMovies.size();
+        }
+        assertEquals(0L, movieSyncService.getMetrics().get("failed"));
+        logger.info("Full sync: {} users, {} movies in {}s ({} users/s, {} movies/s), {} requests, {} throttled",
+                users, movies, String.format("%.2f", seconds), String.format("%.1f", users / seconds),
+                String.format("%.0f", movies / seconds), server.requestCount(), server.throttledCount());
+
+        // Second pass: every library is unchanged, so each sync stops after /sync/last_activities
+        long requestsBefore = server.requestCount();
+        start = System.nanoTime();
+        for (User user : Flux.fromIterable(synced).flatMap(movieSyncService::syncTraktMovies, concurrency).collectList().block()) {
+            int userId = Integer.parseInt(user.getName().substring("load-".length()));
+            assertEquals(libraries.library(userId).size(), user.getTraktMovies().size());
+        }
+        seconds = (System.nanoTime() - start) / 1e9;
+        if (server.throttledCount() == 0) {
+            assertEquals(users, server.requestCount() - requestsBefore);
+        }
+        logger.info("No-op re-sync: {} users in {}s ({} users/s)",
+                users, String.format("%.2f", seconds), String.format("%.1f", users / seconds));
+
+        Map<String, Object> metrics = movieSyncService.getMetrics();
+        logger.info("Sync metrics: {}", metrics);
+    }
+
+    private List<User> syncAll() {
+        return Flux.range(0, users)
+                .map(userId -> new User("load-" + userId).withTraktAccount(new TraktAccount(SyntheticLibraries.tokenFor(userId))))
+                .flatMap(movieSyncService::syncTraktMovies, concurrency)
+                .collectList()
+                .block();
+    }
+}
@@ -0,0 +1,152 @@
+package com.moro.movie_recommender.service;
+
+import com.moro.movie_recommender.config.StorageProperties;
+import com.moro.movie_recommender.config.TraktProperties;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.service.storage.OffHeapUserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * {@link FleetSyncScheduler} over an in-memory repository, with a {@link MovieSyncService}
+ * that only counts syncs and takes a fixed time, so that ordering and limits can be observed.
+ */
+class FleetSyncSchedulerTests {
+
+    private static final int LINKED_USERS = 10;
+    private static final int CONCURRENCY = 3;
+
+    private final Map<String, AtomicInteger> syncs = new ConcurrentHashMap<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    private OffHeapUserRepository repository;
+    private UserService userService;
+    private FleetSyncScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        repository = new OffHeapUserRepository(new StorageProperties(), new MovieCatalog());
+        userService = new UserService(repository, event -> { });
+        for (int i = 0; i < LINKED_USERS; i++) {
+            userService.createUser("user" + i).block();
+            userService.linkTraktAccount("user" + i, "token" + i, "refresh" + i).block();
+        }
+        userService.createUser("offline").block();
+
+        TraktProperties props = new TraktProperties();
+        TraktProperties.Scheduler config = props.getScheduler();
+        config.setEnabled(true);
+        config.setTick(Duration.ofMillis(20));
+        config.setPerTickBudget(2);
+        config.setConcurrency(CONCURRENCY);
+        config.setMinInterval(Duration.ofMillis(200));
+        config.setMaxInterval(Duration.ofSeconds(30));
+        config.setActivityHalfLife(Duration.ofMinutes(10));
+        config.setRescanInterval(Duration.ofMillis(50));
+
+        MovieSyncService movieSyncService = new MovieSyncService(null, props, new MovieCatalog(), event -> { }) {
+            @Override
+            public Mono<User> syncTraktMovies(User user) {
+                return Mono.defer(() -> {
+                    syncs.computeIfAbsent(user.getName(), name -> new AtomicInteger()).incrementAndGet();
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    return Mono.delay(Duration.ofMillis(50))
+                            .thenReturn(user)
+                            .doFinally(signal -> running.decrementAndGet());
+                });
+            }
+        };
+        scheduler = new FleetSyncScheduler(userService, movieSyncService, props);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+        repository.close();
+    }
+
+    @Test
+    void syncsEveryLinkedUserWithinTheConcurrencyLimit() {
+        scheduler.start();
+        awaitEverySynced();
+
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < LINKED_USERS; i++) {
+            expected.add("user" + i);
+        }
+        assertEquals(expected, syncs.keySet(), "unlinked users must not be synced");
+        assertTrue(maxRunning.get() <= CONCURRENCY, "ran " + maxRunning.get() + " syncs at once");
+        assertEquals(LINKED_USERS, scheduler.getMetrics().get("trackedUsers"));
+        await(() -> (Long) scheduler.getMetrics().get("completed") >= LINKED_USERS, "syncs to complete");
+        assertEquals(0L, scheduler.getMetrics().get("failed"));
+    }
+
+    @Test
+    void resyncsActiveUsersSooner() throws InterruptedException {
+        scheduler.start();
+        awaitEverySynced();
+
+        long until = System.nanoTime() + Duration.ofMillis(1500).toNanos();
+        while (System.nanoTime() < until) {
+            scheduler.recordActivity("user0");
+            Thread.sleep(20);
+        }
+
+        assertTrue(syncs.get("user0").get() >= 3, "active user synced " + syncs.get("user0") + " times");
+        for (int i = 1; i < LINKED_USERS; i++) {
+            assertEquals(1, syncs.get("user" + i).get(), "idle users wait for the maximum interval");
+        }
+    }
+
+    @Test
+    void stopsTrackingUnlinkedUsers() throws InterruptedException {
+        scheduler.start();
+        awaitEverySynced();
+
+        userService.unlinkTraktAccount("user3").block();
+        await(() -> (int) scheduler.getMetrics().get("trackedUsers") == LINKED_USERS - 1, "rescan to drop user3");
+        await(() -> (int) scheduler.getMetrics().get("queueDepth") == LINKED_USERS - 1, "in-flight syncs to finish");
+
+        int before = syncs.get("user3").get();
+        for (int i = 0; i < 25; i++) {
+            scheduler.recordActivity("user3");
+            Thread.sleep(20);
+        }
+        assertEquals(before, syncs.get("user3").get(), "activity must not requeue an untracked user");
+    }
+
+    private void awaitEverySynced() {
+        await(() -> syncs.size() == LINKED_USERS, "every linked user to be synced");
+    }
+
+    private static void await(BooleanSupplier condition, String what) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Timed out waiting for " + what);
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("Interrupted waiting for " + what);
+            }
+        }
+    }
+}
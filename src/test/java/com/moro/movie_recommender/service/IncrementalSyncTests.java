@@ -0,0 +1,148 @@
+package com.moro.movie_recommender.service;
+
+import com.moro.movie_recommender.config.TraktProperties;
+import com.moro.movie_recommender.dto.Movie;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.TraktAccount;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+import com.moro.movie_recommender.service.trakt.TraktExchangeStub;
+import com.moro.movie_recommender.service.trakt.TraktRateGovernor;
+import com.moro.movie_recommender.service.trakt.TraktResponseCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * {@link MovieSyncService} in incremental mode against {@link TraktExchangeStub}. The user has
+ * watched 60 movies an hour apart and rated every third of them; the tests change the library
+ * after a first sync and check what the next sync fetches and merges.
+ */
+class IncrementalSyncTests {
+
+    private static final String TOKEN = "token";
+    private static final OffsetDateTime START = OffsetDateTime.of(2024, 1, 1, 20, 0, 0, 0, ZoneOffset.UTC);
+
+    private final TraktExchangeStub trakt = new TraktExchangeStub();
+    private TraktExchangeStub.Library library;
+    private MovieSyncService service;
+
+    @BeforeEach
+    void setUp() {
+        library = trakt.library(TOKEN);
+        for (int i = 0; i < 60; i++) {
+            library.watch(1000 + i, START.plusHours(i));
+            if (i % 3 == 0) {
+                library.rate(1000 + i, i % 10 + 1, START.plusHours(i).plusMinutes(30));
+            }
+        }
+
+        TraktProperties props = new TraktProperties();
+        props.setApiBase("https://api.trakt.tv");
+        props.setClientId("client");
+        props.setApiVersion("2");
+        TraktService traktService = new TraktService(trakt.webClientBuilder(), props,
+                new TraktResponseCache(props), new TraktRateGovernor(props));
+        service = new MovieSyncService(traktService, props, new MovieCatalog(), event -> { });
+    }
+
+    @Test
+    void firstSyncIsFullAndSetsTheCheckpoint() {
+        User synced = service.syncTraktMovies(linked()).block();
+
+        assertEquals(60, synced.getTraktMovies().size());
+        assertEquals(20, ratings(synced).size());
+        assertEquals(START.plusHours(59).toInstant(), synced.getTraktAccount().getLastWatchedAt().toInstant());
+        assertEquals(START.plusHours(57).plusMinutes(30).toInstant(), synced.getTraktAccount().getLastRatedAt().toInstant());
+    }
+
+    @Test
+    void unchangedActivitiesCostASingleRequest() {
+        User synced = service.syncTraktMovies(linked()).block();
+        List<Movie> movies = synced.getTraktMovies();
+        long requests = trakt.requestCount();
+
+        User again = service.syncTraktMovies(synced).block();
+
+        assertEquals(requests + 1, trakt.requestCount(), "only /sync/last_activities");
+        assertSame(movies, again.getTraktMovies());
+    }
+
+    @Test
+    void mergesPlaysSinceTheCheckpoint() {
+        User synced = service.syncTraktMovies(linked()).block();
+        OffsetDateTime later = START.plusDays(7);
+        library.watch(1005, later)
+                .watch(5000, later.plusHours(1))
+                .watch(5001, later.plusHours(2))
+                .rate(5001, 8, later.plusHours(3));
+
+        User again = service.syncTraktMovies(synced).block();
+
+        List<Movie> movies = again.getTraktMovies();
+        assertEquals(62, movies.size(), "the re-watched movie is not added twice");
+        assertEquals(5000L, ((TraktMovieDTO) movies.get(60)).getIds().getTrakt());
+        assertNull(((TraktMovieDTO) movies.get(60)).getUserRating());
+        assertEquals(5001L, ((TraktMovieDTO) movies.get(61)).getIds().getTrakt());
+        assertEquals(8, ((TraktMovieDTO) movies.get(61)).getUserRating());
+        assertEquals(later.plusHours(2).toInstant(), again.getTraktAccount().getLastWatchedAt().toInstant());
+        assertEquals(later.plusHours(3).toInstant(), again.getTraktAccount().getLastRatedAt().toInstant());
+    }
+
+    @Test
+    void picksUpBackdatedPlaysWithoutRefetchingRatings() {
+        User synced = service.syncTraktMovies(linked()).block();
+        long requests = trakt.requestCount();
+        library.watch(7000, START.minusDays(30)).watch(1010, START.minusDays(30));
+
+        User again = service.syncTraktMovies(synced).block();
+
+        assertEquals(requests + 2, trakt.requestCount(), "last activities and the watched list, no ratings");
+        List<Movie> movies = again.getTraktMovies();
+        assertEquals(61, movies.size(), "a play watched before the checkpoint is not missed");
+        assertEquals(7000L, ((TraktMovieDTO) movies.get(60)).getIds().getTrakt());
+        assertEquals(2, again.getTraktMovies().getPlays(10));
+        assertEquals(20, ratings(again).size(), "ratings carry over");
+        assertEquals(START.plusHours(59).plusSeconds(2).toInstant(), again.getTraktAccount().getLastWatchedAt().toInstant());
+    }
+
+    @Test
+    void refreshesRatingsWhenOnlyRatingsMoved() {
+        User synced = service.syncTraktMovies(linked()).block();
+        long requests = trakt.requestCount();
+        library.rate(1001, 9, START.plusDays(7)).rate(1003, 2, START.plusDays(7));
+
+        User again = service.syncTraktMovies(synced).block();
+
+        assertEquals(requests + 2, trakt.requestCount(), "last activities and ratings, no history");
+        assertEquals(60, again.getTraktMovies().size());
+        Map<Long, Integer> ratings = ratings(again);
+        assertEquals(21, ratings.size());
+        assertEquals(9, ratings.get(1001L));
+        assertEquals(2, ratings.get(1003L));
+    }
+
+    private static User linked() {
+        return new User("alice").withTraktAccount(new TraktAccount(TOKEN));
+    }
+
+    private static Map<Long, Integer> ratings(User user) {
+        Map<Long, Integer> ratings = new HashMap<>();
+        for (Movie movie : user.getTraktMovies()) {
+            TraktMovieDTO traktMovie = (TraktMovieDTO) movie;
+            if (traktMovie.getUserRating() != null) {
+                ratings.put(traktMovie.getIds().getTrakt(), traktMovie.getUserRating());
+            }
+        }
+        return ratings;
+    }
+}
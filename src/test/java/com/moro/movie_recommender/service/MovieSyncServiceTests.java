@@ -0,0 +1,154 @@
+package com.moro.movie_recommender.service;
+
+import com.moro.movie_recommender.config.TraktProperties;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.TraktAccount;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.service.trakt.TraktExchangeStub;
+import com.moro.movie_recommender.service.trakt.TraktRateGovernor;
+import com.moro.movie_recommender.service.trakt.TraktRateLimitException;
+import com.moro.movie_recommender.service.trakt.TraktResponseCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link MovieSyncService} single-flight behaviour against {@link TraktExchangeStub}: which
+ * concurrent syncs share one Trakt sync, and when a fresh result is reused. Every response is
+ * delayed, so the first sync is still running when the second one starts.
+ */
+class MovieSyncServiceTests {
+
+    private static final OffsetDateTime WATCHED_AT = OffsetDateTime.of(2024, 1, 1, 20, 0, 0, 0, ZoneOffset.UTC);
+
+    private final TraktExchangeStub trakt = new TraktExchangeStub();
+    private TraktService traktService;
+    private TraktProperties props;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 30; i++) {
+            trakt.library(i < 10 ? "token-0" : "token-1").watch(1000 + i, WATCHED_AT.plusHours(i));
+        }
+        trakt.setLatency(Duration.ofMillis(200));
+
+        props = new TraktProperties();
+        props.setApiBase("https://api.trakt.tv");
+        props.setClientId("client");
+        props.setApiVersion("2");
+        props.getSync().setIncremental(false);
+        traktService = new TraktService(trakt.webClientBuilder(), props,
+                new TraktResponseCache(props), new TraktRateGovernor(props));
+    }
+
+    @Test
+    void concurrentSyncsWithTheSameTokenShareOneSync() {
+        MovieSyncService service = newService();
+        User alice = linked("token-0");
+
+        Tuple2<User, User> synced = Mono.zip(service.syncTraktMovies(alice), service.syncTraktMovies(alice)).block();
+
+        assertEquals(10, synced.getT1().getTraktMovies().size());
+        assertEquals(10, synced.getT2().getTraktMovies().size());
+        assertEquals(1L, service.getMetrics().get("started"));
+        assertEquals(1L, service.getMetrics().get("coalesced"));
+    }
+
+    @Test
+    void relinkedAccountDoesNotJoinTheOldTokensSync() {
+        MovieSyncService service = newService();
+        User alice = linked("token-0");
+        User relinked = linked("token-1");
+
+        Tuple2<User, User> synced = Mono.zip(service.syncTraktMovies(alice), service.syncTraktMovies(relinked)).block();
+
+        assertEquals(10, synced.getT1().getTraktMovies().size());
+        assertEquals(20, synced.getT2().getTraktMovies().size());
+        assertEquals(2L, service.getMetrics().get("started"));
+        assertEquals(0L, service.getMetrics().get("coalesced"));
+    }
+
+    @Test
+    void forcedSyncDoesNotJoinARunningSync() {
+        MovieSyncService service = newService();
+        User alice = linked("token-0");
+
+        Mono.zip(service.syncTraktMovies(alice), service.syncTraktMovies(alice, true)).block();
+
+        assertEquals(2L, service.getMetrics().get("started"));
+        assertEquals(0L, service.getMetrics().get("coalesced"));
+    }
+
+    @Test
+    void freshResultsAreReusedOnlyWithinTheFreshnessWindow() {
+        MovieSyncService service = newService();
+        User alice = linked("token-0");
+        service.syncTraktMovies(alice).block();
+        service.syncTraktMovies(alice).block();
+        assertEquals(0L, service.getMetrics().get("freshHits"), "freshness is off by default");
+
+        props.getSync().setFreshness(Duration.ofMinutes(1));
+        service = newService();
+        service.syncTraktMovies(alice).block();
+        long requests = trakt.requestCount();
+        User fresh = service.syncTraktMovies(alice).block();
+        assertEquals(10, fresh.getTraktMovies().size());
+        assertEquals(1L, service.getMetrics().get("freshHits"));
+        assertEquals(requests, trakt.requestCount());
+
+        service.syncTraktMovies(linked("token-1")).block();
+        service.syncTraktMovies(alice, true).block();
+        assertEquals(1L, service.getMetrics().get("freshHits"), "a new token or a forced sync must not reuse the result");
+        assertEquals(3L, service.getMetrics().get("started"));
+    }
+
+    @Test
+    void failedSyncsFailTheCallerAndAreNotReusedAsFresh() {
+        props.getSync().setFreshness(Duration.ofMinutes(1));
+        MovieSyncService service = newService();
+        User alice = linked("token-0");
+        trakt.failNext(1, HttpStatus.INTERNAL_SERVER_ERROR);
+
+        assertThrows(WebClientResponseException.class, () -> service.syncTraktMovies(alice).block());
+        long requests = trakt.requestCount();
+
+        User synced = service.syncTraktMovies(alice).block();
+        assertEquals(10, synced.getTraktMovies().size());
+        assertEquals(0L, service.getMetrics().get("freshHits"));
+        assertEquals(2L, service.getMetrics().get("started"));
+        assertEquals(1L, service.getMetrics().get("failed"));
+        assertTrue(trakt.requestCount() > requests, "the second sync went to Trakt");
+    }
+
+    @Test
+    void rejectedTraktRequestsFailTheSync() {
+        props.getRateLimit().setGetLimit(1);
+        props.getRateLimit().setGetPeriod(Duration.ofHours(1));
+        props.getRateLimit().setMaxQueueWait(Duration.ZERO);
+        traktService = new TraktService(trakt.webClientBuilder(), props,
+                new TraktResponseCache(props), new TraktRateGovernor(props));
+        MovieSyncService service = newService();
+
+        assertThrows(TraktRateLimitException.class, () -> service.syncTraktMovies(linked("token-0")).block());
+        assertEquals(1L, service.getMetrics().get("failed"));
+    }
+
+    private MovieSyncService newService() {
+        return new MovieSyncService(traktService, props, new MovieCatalog(), event -> { });
+    }
+
+    private static User linked(String accessToken) {
+        return new User("alice").withTraktAccount(new TraktAccount(accessToken));
+    }
+}
@@ -0,0 +1,156 @@
+package com.moro.movie_recommender.service;
+
+import com.moro.movie_recommender.config.StorageProperties;
+import com.moro.movie_recommender.dto.ManualMovie;
+import com.moro.movie_recommender.dto.Movie;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.TraktAccount;
+import com.moro.movie_recommender.dto.TraktMovieList;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.dto.trakt.TraktIdsDTO;
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+import com.moro.movie_recommender.service.storage.UserMutation;
+import com.moro.movie_recommender.service.storage.UserStore;
+import com.moro.movie_recommender.service.storage.VersionConflictException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link UserService} optimistic updates over an in-memory {@link UserStore}. Conflicts are
+ * provoked by writing to the store from inside the update, as a concurrent request would.
+ */
+class UserServiceTests {
+
+    private final MovieCatalog catalog = new MovieCatalog();
+    private final List<Object> events = new ArrayList<>();
+    private UserStore store;
+    private UserService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        StorageProperties props = new StorageProperties();
+        props.setEnabled(false);
+        store = new UserStore(props, catalog);
+        store.open();
+        service = new UserService(store, events::add);
+        service.createUser("alice").block();
+        events.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void storeAppliesOnlyAtTheExpectedVersion() {
+        long version = store.get("alice").getVersion();
+        UserMutation.AddManualMovie add = new UserMutation.AddManualMovie("alice", new ManualMovie("Heat", 1995, 9));
+
+        User updated = store.compareAndApply(add, version).block();
+        assertEquals(1, updated.getManualMovies().size());
+
+        assertThrows(VersionConflictException.class, () -> store.compareAndApply(add, version).block());
+        assertEquals(updated.getVersion(), store.get("alice").getVersion());
+        assertEquals(1L, store.getMetrics().get("versionConflicts"));
+    }
+
+    @Test
+    void reappliesAnUpdateAfterAVersionConflict() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        User updated = service.updateUser("alice", user -> {
+            if (attempts.incrementAndGet() == 1) {
+                store.apply(new UserMutation.AddManualMovie("alice", new ManualMovie("Heat", 1995, 9))).block();
+            }
+            return user.withManualMovie(new ManualMovie("The Matrix", 1999, 8));
+        }).block();
+
+        assertEquals(2, attempts.get());
+        assertEquals(List.of("Heat", "The Matrix"), titles(updated.getManualMovies()));
+        assertEquals(updated.getVersion(), store.get("alice").getVersion());
+        assertEquals(1L, store.getMetrics().get("versionConflicts"));
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    void reportsTheConflictOnceEveryAttemptConflicted() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(VersionConflictException.class, () -> service.updateUser("alice", user -> {
+            int attempt = attempts.incrementAndGet();
+            store.apply(new UserMutation.AddManualMovie("alice", new ManualMovie("Movie " + attempt, 2000, 5))).block();
+            return user.withManualMovie(new ManualMovie("Never stored", 2000, 5));
+        }).block());
+
+        assertEquals(8, attempts.get());
+        assertEquals(8L, store.getMetrics().get("versionConflicts"));
+        assertEquals(8, store.get("alice").getManualMovies().size());
+        assertEquals(0, events.size());
+    }
+
+    @Test
+    void unchangedUpdatesAndMissingUsersWriteNothing() {
+        User alice = store.get("alice");
+
+        assertSame(alice, service.updateUser("alice", user -> user).block());
+        assertNull(service.updateUser("nobody", user -> user.withManualMovie(new ManualMovie("Heat", 1995, 9))).block());
+        assertEquals(1L, store.getMetrics().get("mutations"));
+        assertEquals(0, events.size());
+    }
+
+    @Test
+    void syncResultsKeepManualMoviesAddedDuringTheSync() {
+        service.linkTraktAccount("alice", "token", "refresh").block();
+        User beforeSync = store.get("alice");
+        User synced = beforeSync.withTraktMovies(TraktMovieList.copyOf(catalog, List.of(traktMovie(1), traktMovie(2))));
+        service.addManualMovie("alice", new ManualMovie("Heat", 1995, 9)).block();
+
+        User stored = service.saveSyncResult(synced).block();
+
+        assertEquals(List.of("Heat"), titles(stored.getManualMovies()));
+        assertEquals(List.of("Synced movie 1", "Synced movie 2"), titles(stored.getTraktMovies()));
+        assertEquals(stored.getVersion(), store.get("alice").getVersion());
+    }
+
+    @Test
+    void dropsTheResultOfASyncForAReplacedAccount() {
+        service.linkTraktAccount("alice", "old-token", "refresh").block();
+        User synced = store.get("alice").withTraktMovies(TraktMovieList.copyOf(catalog, List.of(traktMovie(1))));
+        service.linkTraktAccount("alice", "new-token", "refresh").block();
+        User relinked = store.get("alice");
+
+        assertSame(relinked, service.saveSyncResult(synced).block());
+        assertEquals(0, store.get("alice").getTraktMovies().size());
+
+        service.unlinkTraktAccount("alice").block();
+        User unlinked = store.get("alice");
+        assertSame(unlinked, service.saveSyncResult(synced.withTraktAccount(new TraktAccount("new-token"))).block());
+        assertEquals(unlinked.getVersion(), store.get("alice").getVersion());
+    }
+
+    private static List<String> titles(List<? extends Movie> movies) {
+        return movies.stream().map(Movie::getTitle).toList();
+    }
+
+    private static TraktMovieDTO traktMovie(int id) {
+        TraktIdsDTO ids = new TraktIdsDTO();
+        ids.setTrakt(840_000_000L + id);
+        TraktMovieDTO movie = new TraktMovieDTO();
+        movie.setTitle("Synced movie " + id);
+        movie.setYear(2010);
+        movie.setIds(ids);
+        return movie;
+    }
+}
@@ -0,0 +1,275 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import com.moro.movie_recommender.config.RecommendationProperties;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.TraktMovieList;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link AlsModel} on two clusters of small synthetic libraries: training against its own
+ * objective, and fold-ins against the normal equations solved independently by Gaussian
+ * elimination.
+ */
+class AlsModelTests {
+
+    private static final int USERS = 200;
+    private static final int ITEMS = 100;
+    private static final int FACTORS = 8;
+
+    private final MovieCatalog catalog = new MovieCatalog();
+    private final Interactions data = libraries();
+
+    @Test
+    void everyIterationLowersTheImplicitObjective() {
+        double previous = Double.POSITIVE_INFINITY;
+        for (int iterations : new int[]{0, 1, 2, 5, 10}) {
+            RecommendationProperties.Als config = config(true);
+            config.setIterations(iterations);
+            double loss = implicitLoss(AlsModel.train(data, config, new int[0]), config);
+            assertTrue(loss < previous, iterations + " iterations: " + loss + " >= " + previous);
+            previous = loss;
+        }
+    }
+
+    @Test
+    void implicitFoldInSolvesTheNormalEquations() {
+        RecommendationProperties.Als config = config(true);
+        AlsModel model = AlsModel.train(data, config, new int[0]);
+        int[] items = {1, 3, 5, 60};
+        float[] ratings = {0, 2, 9, 0};
+
+        float[] vector = model.foldIn("newcomer", library(items, ratings));
+
+        double[][] a = new double[FACTORS][FACTORS];
+        double[] b = new double[FACTORS];
+        addGram(a, model.itemFactors, ITEMS);
+        for (int k = 0; k < items.length; k++) {
+            double confidence = 1 + config.getAlpha() * (1 + ratings[k] / 10);
+            addOuter(a, model.itemFactors, items[k], confidence - 1);
+            addScaled(b, model.itemFactors, items[k], confidence);
+        }
+        addDiagonal(a, config.getRegularization());
+        assertClose(solve(a, b), vector);
+        assertSame(vector, model.userVector("newcomer"));
+        assertEquals(1, model.foldedInCount());
+    }
+
+    @Test
+    void explicitFoldInFitsOnlyTheRatings() {
+        RecommendationProperties.Als config = config(false);
+        AlsModel model = AlsModel.train(data, config, new int[0]);
+        int[] items = {2, 4, 6, 8};
+        float[] ratings = {8, 0, 3, 10};
+
+        float[] vector = model.foldIn("newcomer", library(items, ratings));
+
+        double[][] a = new double[FACTORS][FACTORS];
+        double[] b = new double[FACTORS];
+        int rated = 0;
+        for (int k = 0; k < items.length; k++) {
+            if (ratings[k] > 0) {
+                addOuter(a, model.itemFactors, items[k], 1);
+                addScaled(b, model.itemFactors, items[k], ratings[k]);
+                rated++;
+            }
+        }
+        addDiagonal(a, config.getRegularization() * rated);
+        assertClose(solve(a, b), vector);
+        assertNull(model.foldIn("unrated", library(new int[]{2}, new float[]{0})), "nothing to fit without ratings");
+    }
+
+    @Test
+    void foldInItemSolvesAgainstOneUser() {
+        RecommendationProperties.Als config = config(true);
+        AlsModel model = AlsModel.train(data, config, new int[0]);
+        float[] user = model.userVector(data.userNames[0]);
+        assertNotNull(user);
+
+        float[] vector = model.foldInItem(user, 7);
+
+        double[][] a = new double[FACTORS][FACTORS];
+        double[] b = new double[FACTORS];
+        addGram(a, model.userFactors, model.userFactors.length / FACTORS);
+        double confidence = 1 + config.getAlpha() * (1 + 7 / 10.0);
+        addOuter(a, user, 0, confidence - 1);
+        addScaled(b, user, 0, confidence);
+        addDiagonal(a, config.getRegularization());
+        assertClose(solve(a, b), vector);
+    }
+
+    @Test
+    void anyRatingAddsConfidenceToAWatch() {
+        AlsModel model = AlsModel.train(data, config(true), new int[0]);
+        float[] item = model.itemVector(3);
+        double unrated = dot(model.foldIn("a", library(new int[]{3}, new float[]{0})), item);
+        double rated1 = dot(model.foldIn("b", library(new int[]{3}, new float[]{1})), item);
+        double rated10 = dot(model.foldIn("c", library(new int[]{3}, new float[]{10})), item);
+        assertTrue(unrated < rated1, "a low rating must not count for less than an unrated watch");
+        assertTrue(rated1 < rated10);
+    }
+
+    @Test
+    void moviesUnknownToTheModelAreNotFoldedIn() {
+        AlsModel model = AlsModel.train(data, config(true), new int[0]);
+        assertNull(model.foldIn("newcomer", library(new int[]{ITEMS, ITEMS + 1}, new float[]{5, 0})));
+        assertNull(model.userVector("newcomer"));
+        assertEquals(0, model.foldedInCount());
+    }
+
+    /** Users 0..99 watch mostly movies 0..49, users 100..199 mostly movies 50..99. */
+    private Interactions libraries() {
+        Random random = new Random(3);
+        Interactions.Builder builder = Interactions.builder(1000);
+        for (int u = 0; u < USERS; u++) {
+            int cluster = u < USERS / 2 ? 0 : 1;
+            boolean[] watched = new boolean[ITEMS];
+            TraktMovieList.Builder movies = TraktMovieList.builder(catalog, 20);
+            while (movies.size() < 20) {
+                int item = random.nextDouble() < 0.9
+                        ? cluster * ITEMS / 2 + random.nextInt(ITEMS / 2)
+                        : random.nextInt(ITEMS);
+                if (!watched[item]) {
+                    watched[item] = true;
+                    movies.add(item, random.nextInt(3) == 0 ? 1 + random.nextInt(10) : null, 1, null);
+                }
+            }
+            builder.add("user" + u, movies.build());
+        }
+        // Every movie is watched at least once, so the model covers all of them
+        TraktMovieList.Builder all = TraktMovieList.builder(catalog, ITEMS);
+        for (int item = 0; item < ITEMS; item++) {
+            all.add(item, null, 1, null);
+        }
+        return builder.add("everything", all.build()).build();
+    }
+
+    private static RecommendationProperties.Als config(boolean implicit) {
+        RecommendationProperties.Als config = new RecommendationProperties().getAls();
+        config.setFactors(FACTORS);
+        config.setImplicit(implicit);
+        return config;
+    }
+
+    private TraktMovieList library(int[] items, float[] ratings) {
+        TraktMovieList.Builder builder = TraktMovieList.builder(catalog, items.length);
+        for (int k = 0; k < items.length; k++) {
+            builder.add(items[k], ratings[k] > 0 ? (int) ratings[k] : null, 1, null);
+        }
+        return builder.build();
+    }
+
+    /** The objective of implicit training: confidence-weighted squared error plus regularization. */
+    private double implicitLoss(AlsModel model, RecommendationProperties.Als config) {
+        double loss = 0;
+        for (int u = 0; u < data.userCount(); u++) {
+            double[] confidence = new double[ITEMS];
+            Arrays.fill(confidence, -1);
+            for (int k = data.userOffsets[u]; k < data.userOffsets[u + 1]; k++) {
+                confidence[data.userItems[k]] = 1 + config.getAlpha() * (1 + data.userRatings[k] / 10);
+            }
+            for (int i = 0; i < ITEMS; i++) {
+                double predicted = 0;
+                for (int f = 0; f < FACTORS; f++) {
+                    predicted += model.userFactors[u * FACTORS + f] * model.itemFactors[i * FACTORS + f];
+                }
+                double error = confidence[i] > 0 ? 1 - predicted : predicted;
+                loss += (confidence[i] > 0 ? confidence[i] : 1) * error * error;
+            }
+        }
+        for (float value : model.userFactors) {
+            loss += config.getRegularization() * value * value;
+        }
+        for (float value : model.itemFactors) {
+            loss += config.getRegularization() * value * value;
+        }
+        return loss;
+    }
+
+    /** Adds {@code VᵀV} of the first {@code rows} vectors. */
+    private static void addGram(double[][] a, float[] vectors, int rows) {
+        for (int r = 0; r < rows; r++) {
+            addOuter(a, vectors, r, 1);
+        }
+    }
+
+    /** Adds {@code weight * v vᵀ} of the vector in {@code row}. */
+    private static void addOuter(double[][] a, float[] vectors, int row, double weight) {
+        for (int i = 0; i < FACTORS; i++) {
+            for (int j = 0; j < FACTORS; j++) {
+                a[i][j] += weight * vectors[row * FACTORS + i] * vectors[row * FACTORS + j];
+            }
+        }
+    }
+
+    private static void addScaled(double[] b, float[] vectors, int row, double weight) {
+        for (int i = 0; i < FACTORS; i++) {
+            b[i] += weight * vectors[row * FACTORS + i];
+        }
+    }
+
+    private static void addDiagonal(double[][] a, double value) {
+        for (int i = 0; i < a.length; i++) {
+            a[i][i] += value;
+        }
+    }
+
+    /** Gaussian elimination with partial pivoting. */
+    private static double[] solve(double[][] a, double[] b) {
+        int n = b.length;
+        double[][] m = new double[n][];
+        for (int i = 0; i < n; i++) {
+            m[i] = Arrays.copyOf(a[i], n + 1);
+            m[i][n] = b[i];
+        }
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < n; row++) {
+                if (Math.abs(m[row][col]) > Math.abs(m[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            double[] swap = m[col];
+            m[col] = m[pivot];
+            m[pivot] = swap;
+            for (int row = col + 1; row < n; row++) {
+                double factor = m[row][col] / m[col][col];
+                for (int k = col; k <= n; k++) {
+                    m[row][k] -= factor * m[col][k];
+                }
+            }
+        }
+        double[] x = new double[n];
+        for (int row = n - 1; row >= 0; row--) {
+            double sum = m[row][n];
+            for (int k = row + 1; k < n; k++) {
+                sum -= m[row][k] * x[k];
+            }
+            x[row] = sum / m[row][row];
+        }
+        return x;
+    }
+
+    private static void assertClose(double[] expected, float[] actual) {
+        assertNotNull(actual);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i], 1e-4 * Math.max(1, Math.abs(expected[i])), "component " + i);
+        }
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
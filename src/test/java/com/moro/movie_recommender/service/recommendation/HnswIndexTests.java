@@ -0,0 +1,185 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link HnswIndex} against brute-force scoring with the {@link ScoringKernel}, over clustered
+ * unit vectors shaped like {@link AlsModel#itemEmbedding}s, inserted concurrently.
+ *
+ * <p>{@link #recallAndLatencyAgainstBruteForce()} doubles as an offline benchmark, logging
+ * recall and latency for a range of {@code ef} values. Defaults are small enough for a regular
+ * build; scale up with e.g. {@code -Dhnsw.movies=200000 -Dhnsw.queries=1000}.
+ */
+class HnswIndexTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(HnswIndexTests.class);
+
+    private static final int DIMENSIONS = 33;
+    private static final int K = 20;
+
+    private final int movies = Integer.getInteger("hnsw.movies", 10_000);
+    private final int queries = Integer.getInteger("hnsw.queries", 200);
+    private final Random random = new Random(5);
+    private final float[][] centers = new float[200][DIMENSIONS];
+
+    @Test
+    void recallAndLatencyAgainstBruteForce() {
+        float[] matrix = clusteredVectors(movies);
+        long start = System.nanoTime();
+        HnswIndex index = build(matrix, movies);
+        logger.info("Indexed {} movies in {} ms", movies, (System.nanoTime() - start) / 1_000_000);
+        assertEquals(movies, index.size());
+
+        float[][] queryVectors = new float[queries][];
+        for (int q = 0; q < queries; q++) {
+            queryVectors[q] = nearCenter(1f);
+        }
+        boolean[] watched = new boolean[movies];
+        for (int movie = 0; movie < movies; movie += 50) {
+            watched[movie] = true;
+        }
+
+        ScoringKernel kernel = ScoringKernel.get();
+        float[] packed = kernel.pack(matrix, movies, DIMENSIONS);
+        int[][] truth = new int[queries][K];
+        for (int round = 0; round < 3; round++) { // the last round is timed, after warm-up
+            start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                TopK best = new TopK(K);
+                kernel.topK(queryVectors[q], packed, movies, DIMENSIONS, watched, best);
+                best.drainInto(truth[q], new float[K]);
+            }
+        }
+        logger.info("Brute force ({}): {} us/query", kernel.name(), (System.nanoTime() - start) / 1_000 / queries);
+
+        double recallAt100 = 0;
+        for (int ef : new int[]{20, 50, 100, 200, 400}) {
+            int hits = 0;
+            long nanos = 0;
+            for (int round = 0; round < 3; round++) {
+                hits = 0;
+                start = System.nanoTime();
+                for (int q = 0; q < queries; q++) {
+                    TopK best = new TopK(K);
+                    index.search(queryVectors[q], ef, movie -> !watched[movie], best);
+                    int[] found = new int[best.size()];
+                    best.drainInto(found, new float[found.length]);
+                    hits += overlap(truth[q], found);
+                }
+                nanos = System.nanoTime() - start;
+            }
+            double recall = (double) hits / (queries * K);
+            logger.info("HNSW ef={}: recall@{} {}, {} us/query", ef, K, String.format("%.3f", recall), nanos / 1_000 / queries);
+            if (ef == 100) {
+                recallAt100 = recall;
+            }
+        }
+        assertTrue(recallAt100 >= 0.95, "recall@" + K + " at ef=100 was " + recallAt100);
+    }
+
+    @Test
+    void filterExcludesMoviesButKeepsSearchingPastThem() {
+        float[] matrix = clusteredVectors(2_000);
+        HnswIndex index = build(matrix, 2_000);
+        float[] query = nearCenter(1f);
+
+        TopK unfiltered = new TopK(10);
+        index.search(query, 100, null, unfiltered);
+        int[] best = new int[10];
+        unfiltered.drainInto(best, new float[10]);
+        Set<Integer> excluded = new HashSet<>();
+        for (int movie : best) {
+            excluded.add(movie);
+        }
+
+        TopK filtered = new TopK(10);
+        index.search(query, 100, movie -> !excluded.contains(movie), filtered);
+        assertEquals(10, filtered.size());
+        int[] found = new int[10];
+        filtered.drainInto(found, new float[10]);
+        for (int movie : found) {
+            assertFalse(excluded.contains(movie));
+        }
+    }
+
+    @Test
+    void concurrentInsertsAreAllFindable() {
+        float[] matrix = clusteredVectors(4_000);
+        HnswIndex index = build(matrix, 4_000);
+        assertFalse(index.add(0, slice(matrix, 0)));
+
+        int self = 0;
+        for (int movie = 0; movie < 4_000; movie += 40) {
+            TopK best = new TopK(1);
+            index.search(slice(matrix, movie), 50, null, best);
+            int[] found = new int[1];
+            best.drainInto(found, new float[1]);
+            self += found[0] == movie ? 1 : 0;
+        }
+        assertTrue(self >= 95, self + " of 100 movies were their own nearest neighbour");
+    }
+
+    private HnswIndex build(float[] matrix, int count) {
+        HnswIndex index = new HnswIndex(DIMENSIONS, 16, 200);
+        IntStream.range(0, count).parallel().forEach(movie -> assertTrue(index.add(movie, slice(matrix, movie))));
+        return index;
+    }
+
+    private float[] clusteredVectors(int count) {
+        for (float[] center : centers) {
+            for (int k = 0; k < DIMENSIONS; k++) {
+                center[k] = (float) random.nextGaussian();
+            }
+        }
+        float[] matrix = new float[count * DIMENSIONS];
+        for (int movie = 0; movie < count; movie++) {
+            float[] vector = nearCenter(0.7f);
+            double norm = 0;
+            for (float value : vector) {
+                norm += value * value;
+            }
+            for (int k = 0; k < DIMENSIONS; k++) {
+                matrix[movie * DIMENSIONS + k] = (float) (vector[k] / Math.sqrt(norm));
+            }
+        }
+        return matrix;
+    }
+
+    private float[] nearCenter(float spread) {
+        float[] center = centers[random.nextInt(centers.length)];
+        float[] vector = new float[DIMENSIONS];
+        for (int k = 0; k < DIMENSIONS; k++) {
+            vector[k] = center[k] + (float) random.nextGaussian() * spread;
+        }
+        return vector;
+    }
+
+    private static float[] slice(float[] matrix, int movie) {
+        float[] vector = new float[DIMENSIONS];
+        System.arraycopy(matrix, movie * DIMENSIONS, vector, 0, DIMENSIONS);
+        return vector;
+    }
+
+    private static int overlap(int[] expected, int[] actual) {
+        Set<Integer> set = new HashSet<>();
+        for (int movie : expected) {
+            set.add(movie);
+        }
+        int hits = 0;
+        for (int movie : actual) {
+            hits += set.contains(movie) ? 1 : 0;
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,152 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import com.moro.movie_recommender.config.RecommendationProperties;
+import com.moro.movie_recommender.dto.ManualMovie;
+import com.moro.movie_recommender.dto.Movie;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.Recommendation;
+import com.moro.movie_recommender.dto.TraktMovieList;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.dto.trakt.TraktIdsDTO;
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+import com.moro.movie_recommender.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link ItemCfRecommender} over clustered libraries: users who watch one cluster of movies
+ * get the rest of that cluster recommended.
+ *
+ * <p>{@link #recommendsFromSimilarLibrariesQuickly()} also logs build time and request
+ * latency; scale up with e.g. {@code -Ditemcf.users=200000}.
+ */
+class ItemCfRecommenderTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(ItemCfRecommenderTests.class);
+
+    private static final long BASE_TRAKT_ID = 830_000_000L;
+    private static final int CLUSTERS = 50;
+    private static final int MOVIES_PER_CLUSTER = 100;
+
+    private final int users = Integer.getInteger("itemcf.users", 10_000);
+    private final Random random = new Random(11);
+    private final MovieCatalog catalog = new MovieCatalog();
+
+    @Test
+    void recommendsFromSimilarLibrariesQuickly() {
+        List<User> all = new ArrayList<>(users);
+        for (int u = 0; u < users; u++) {
+            all.add(new User("user" + u, List.of(), clusteredLibrary(u % CLUSTERS, 40)));
+        }
+        ItemCfRecommender recommender = new ItemCfRecommender(userService(all), new RecommendationProperties(), catalog);
+        long start = System.nanoTime();
+        recommender.rebuild().block();
+        logger.info("Built item similarities for {} users in {} ms", users, (System.nanoTime() - start) / 1_000_000);
+
+        int queries = 1000;
+        long micros = 0;
+        for (int round = 0; round < 3; round++) { // the last round is timed, after warm-up
+            start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                recommender.recommend(all.get(q * (users / queries)), 20);
+            }
+            micros = (System.nanoTime() - start) / 1000 / queries;
+        }
+
+        int inCluster = 0;
+        int found = 0;
+        for (int q = 0; q < queries; q++) {
+            User user = all.get(q * (users / queries));
+            Set<String> watched = new HashSet<>();
+            user.getTraktMovies().forEach(movie -> watched.add(movie.getTitle()));
+            for (Recommendation recommendation : recommender.recommend(user, 20)) {
+                assertFalse(watched.contains(recommendation.getMovie().getTitle()), "watched movies are not recommended");
+                inCluster += clusterOf(recommendation.getMovie()) == q * (users / queries) % CLUSTERS ? 1 : 0;
+                found++;
+            }
+        }
+        logger.info("Recommend: {} us; {} recommendations per request, {} from the user's cluster; metrics {}",
+                micros, (double) found / queries, (double) inCluster / found, recommender.getMetrics());
+        assertEquals(20 * queries, found);
+        assertTrue(inCluster > 0.95 * found, "recommendations should come from the cluster the user watches");
+    }
+
+    @Test
+    void manualMoviesCountAsWatchedAndNewUsersGetPopularMovies() {
+        List<User> all = new ArrayList<>();
+        for (int u = 0; u < 40; u++) {
+            all.add(new User("user" + u, List.of(), clusteredLibrary(0, 30)));
+        }
+        ItemCfRecommender recommender = new ItemCfRecommender(userService(all), new RecommendationProperties(), catalog);
+        recommender.rebuild().block();
+
+        User alice = all.get(0);
+        List<Recommendation> before = recommender.recommend(alice, 5);
+        Movie top = before.get(0).getMovie();
+        User withManual = alice.withManualMovie(new ManualMovie(top.getTitle().toUpperCase(), top.getYear(), 9));
+        List<Recommendation> after = recommender.recommend(withManual, 5);
+        assertEquals(5, after.size());
+        assertFalse(after.stream().anyMatch(r -> r.getMovie().getTitle().equals(top.getTitle())),
+                "a manual movie with the same title and year counts as watched");
+
+        // Responses hold copies, so changing one leaves the catalog's movie alone
+        String topTitle = top.getTitle();
+        ((TraktMovieDTO) top).setTitle("Changed");
+        assertEquals(topTitle, recommender.recommend(alice, 5).get(0).getMovie().getTitle());
+
+        List<Recommendation> coldStart = recommender.recommend(new User("newcomer"), 5);
+        assertEquals(5, coldStart.size());
+        assertTrue(coldStart.stream().allMatch(r -> r.getScore() == 0 && clusterOf(r.getMovie()) == 0),
+                "a user without history gets the most watched movies");
+    }
+
+    /** Movies from the cluster, and a few from anywhere. */
+    private TraktMovieList clusteredLibrary(int cluster, int size) {
+        Set<Integer> movies = new HashSet<>();
+        while (movies.size() < size) {
+            int c = random.nextDouble() < 0.95 ? cluster : random.nextInt(CLUSTERS);
+            movies.add(c * MOVIES_PER_CLUSTER + random.nextInt(MOVIES_PER_CLUSTER));
+        }
+        TraktMovieList.Builder builder = TraktMovieList.builder(catalog, size);
+        for (int movie : movies) {
+            Integer rating = random.nextInt(3) == 0 ? 5 + random.nextInt(6) : null;
+            builder.add(intern(movie), rating, 1, null);
+        }
+        return builder.build();
+    }
+
+    private int intern(int movie) {
+        TraktIdsDTO ids = new TraktIdsDTO();
+        ids.setTrakt(BASE_TRAKT_ID + movie);
+        TraktMovieDTO dto = new TraktMovieDTO();
+        dto.setTitle("Item-cf movie " + movie);
+        dto.setYear(2000);
+        dto.setIds(ids);
+        return catalog.intern(dto);
+    }
+
+    private static int clusterOf(Movie movie) {
+        return (int) ((((TraktMovieDTO) movie).getIds().getTrakt() - BASE_TRAKT_ID) / MOVIES_PER_CLUSTER);
+    }
+
+    private static UserService userService(List<User> users) {
+        return new UserService(null, event -> { }) {
+            @Override
+            public Flux<User> streamUsers(String after) {
+                return Flux.fromIterable(users);
+            }
+        };
+    }
+}
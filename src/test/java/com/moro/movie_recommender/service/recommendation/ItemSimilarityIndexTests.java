@@ -0,0 +1,111 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import com.moro.movie_recommender.config.RecommendationProperties;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.TraktMovieList;
+import com.moro.movie_recommender.dto.trakt.TraktIdsDTO;
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link ItemSimilarityIndex} over a few hand-written libraries of movies A, B and C, whose
+ * similarities are worked out by hand.
+ */
+class ItemSimilarityIndexTests {
+
+    private static final long BASE_TRAKT_ID = 810_000_000L;
+
+    private final MovieCatalog catalog = new MovieCatalog();
+    private final int a = index(0);
+    private final int b = index(1);
+    private final int c = index(2);
+
+    @Test
+    void cooccurrenceIsTheCosineOfWatchedSets() {
+        Interactions data = Interactions.builder(100)
+                .add("u1", library(new int[]{a, b}, null))
+                .add("u2", library(new int[]{a, b}, null))
+                .add("u3", library(new int[]{a, c}, null))
+                .build();
+        ItemSimilarityIndex index = ItemSimilarityIndex.build(data, config(1.0, 1, 10));
+
+        // A has 3 viewers, B 2 and C 1; A and B share 2, A and C share 1
+        assertArrayEquals(new int[]{b, c}, neighbors(index, a));
+        assertEquals(2 / Math.sqrt(3 * 2), similarity(index, a, 0), 1e-6);
+        assertEquals(1 / Math.sqrt(3 * 1), similarity(index, a, 1), 1e-6);
+        assertArrayEquals(new int[]{a}, neighbors(index, b));
+        assertArrayEquals(new int[]{a}, neighbors(index, c));
+        assertEquals(4, index.pairCount());
+    }
+
+    @Test
+    void rareCooccurrencesAndNeighboursBeyondTheLimitAreDropped() {
+        Interactions data = Interactions.builder(100)
+                .add("u1", library(new int[]{a, b}, null))
+                .add("u2", library(new int[]{a, b}, null))
+                .add("u3", library(new int[]{a, c}, null))
+                .build();
+
+        assertArrayEquals(new int[]{b}, neighbors(ItemSimilarityIndex.build(data, config(1.0, 2, 10)), a));
+        assertArrayEquals(new int[0], neighbors(ItemSimilarityIndex.build(data, config(1.0, 2, 10)), c));
+        assertArrayEquals(new int[]{b}, neighbors(ItemSimilarityIndex.build(data, config(1.0, 1, 1)), a));
+    }
+
+    @Test
+    void ratingsAreComparedRelativeToEachUsersMean() {
+        // Both users like A and B and dislike C, on different scales
+        Interactions data = Interactions.builder(100)
+                .add("u1", library(new int[]{a, b, c}, new int[]{10, 10, 2}))
+                .add("u2", library(new int[]{a, b, c}, new int[]{6, 6, 3}))
+                .build();
+        RecommendationProperties.ItemCf config = config(0.0, 1, 10);
+        config.setShrinkage(0);
+        ItemSimilarityIndex index = ItemSimilarityIndex.build(data, config);
+
+        assertArrayEquals(new int[]{b}, neighbors(index, a), "opposite tastes are not similar");
+        assertEquals(1.0, similarity(index, a, 0), 1e-5);
+
+        config.setShrinkage(2);
+        assertEquals(0.5, similarity(ItemSimilarityIndex.build(data, config), a, 0), 1e-5,
+                "two co-raters with a shrinkage of 2 halve the similarity");
+    }
+
+    private static RecommendationProperties.ItemCf config(double implicitWeight, int minCooccurrence, int neighbors) {
+        RecommendationProperties.ItemCf config = new RecommendationProperties().getItemCf();
+        config.setImplicitWeight(implicitWeight);
+        config.setMinCooccurrence(minCooccurrence);
+        config.setNeighbors(neighbors);
+        return config;
+    }
+
+    private static int[] neighbors(ItemSimilarityIndex index, int item) {
+        int[] neighbors = new int[index.offsets[item + 1] - index.offsets[item]];
+        System.arraycopy(index.neighbors, index.offsets[item], neighbors, 0, neighbors.length);
+        return neighbors;
+    }
+
+    private static double similarity(ItemSimilarityIndex index, int item, int rank) {
+        return index.similarities[index.offsets[item] + rank];
+    }
+
+    private TraktMovieList library(int[] items, int[] ratings) {
+        TraktMovieList.Builder builder = TraktMovieList.builder(catalog, items.length);
+        for (int k = 0; k < items.length; k++) {
+            builder.add(items[k], ratings != null ? ratings[k] : null, 1, null);
+        }
+        return builder.build();
+    }
+
+    private int index(int movie) {
+        TraktIdsDTO ids = new TraktIdsDTO();
+        ids.setTrakt(BASE_TRAKT_ID + movie);
+        TraktMovieDTO dto = new TraktMovieDTO();
+        dto.setTitle("Similarity movie " + movie);
+        dto.setYear(2000);
+        dto.setIds(ids);
+        return catalog.intern(dto);
+    }
+}
@@ -0,0 +1,75 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import com.moro.movie_recommender.dto.ManualMovie;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.Recommendation;
+import com.moro.movie_recommender.dto.TraktMovieList;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.dto.trakt.TraktIdsDTO;
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+/**
+ * {@link Recommendations#assemble}: manual movies count as watched, and the most watched movies
+ * top up short candidate lists.
+ */
+class RecommendationsTests {
+
+    private static final long BASE_TRAKT_ID = 820_000_000L;
+
+    private final MovieCatalog catalog = new MovieCatalog();
+    private final int[] movies = new int[6];
+
+    RecommendationsTests() {
+        for (int m = 0; m < movies.length; m++) {
+            movies[m] = intern(m);
+        }
+    }
+
+    @Test
+    void dropsManualMoviesAndTopsUpWithPopularOnes() {
+        User user = new User("alice", List.of(new ManualMovie("RECOMMENDATIONS MOVIE 1", 2001, 7)), TraktMovieList.empty());
+        Set<String> manual = Recommendations.manualKeys(user);
+        int[] items = {movies[0], movies[1], movies[2]};
+        float[] scores = {3f, 2f, 1f};
+        int[] popular = {movies[2], movies[3], movies[4], movies[5]};
+
+        List<Recommendation> result = Recommendations.assemble(catalog, items, scores, 3, 4, manual, popular,
+                item -> item == movies[3]);
+
+        assertEquals(List.of(titleOf(0), titleOf(2), titleOf(4), titleOf(5)),
+                result.stream().map(r -> r.getMovie().getTitle()).toList());
+        assertEquals(List.of(3.0, 1.0, 0.0, 0.0), result.stream().map(Recommendation::getScore).toList());
+    }
+
+    @Test
+    void stopsAtTheLimitAndReturnsCopiesOfCatalogMovies() {
+        int[] items = {movies[0], movies[1]};
+        List<Recommendation> result = Recommendations.assemble(catalog, items, new float[]{2f, 1f}, 2, 1, Set.of(),
+                new int[]{movies[2]}, item -> false);
+
+        assertEquals(1, result.size());
+        assertEquals(titleOf(0), result.get(0).getMovie().getTitle());
+        assertNotSame(catalog.get(movies[0]), result.get(0).getMovie());
+    }
+
+    private static String titleOf(int movie) {
+        return "Recommendations movie " + movie;
+    }
+
+    private int intern(int movie) {
+        TraktIdsDTO ids = new TraktIdsDTO();
+        ids.setTrakt(BASE_TRAKT_ID + movie);
+        TraktMovieDTO dto = new TraktMovieDTO();
+        dto.setTitle(titleOf(movie));
+        dto.setYear(2000 + movie);
+        dto.setIds(ids);
+        return catalog.intern(dto);
+    }
+}
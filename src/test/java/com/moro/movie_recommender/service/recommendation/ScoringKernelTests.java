@@ -0,0 +1,61 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The selected {@link ScoringKernel} (SIMD when the build adds {@code jdk.incubator.vector})
+ * against a plain row-major loop.
+ */
+class ScoringKernelTests {
+
+    private final ScoringKernel kernel = ScoringKernel.get();
+
+    @Test
+    void agreesWithScalarKernel() {
+        assertTrue(ScoringKernel.Holder.agree(kernel, new ScalarScoringKernel()), kernel.name());
+    }
+
+    @Test
+    void findsSameTopRowsAsRowMajorLoop() {
+        Random random = new Random(11);
+        for (int dimensions : new int[]{5, 32}) {
+            int rows = 1001;
+            float[] vector = new float[dimensions];
+            float[] matrix = new float[rows * dimensions];
+            for (int k = 0; k < vector.length; k++) {
+                vector[k] = (float) random.nextGaussian();
+            }
+            for (int k = 0; k < matrix.length; k++) {
+                matrix[k] = (float) random.nextGaussian();
+            }
+            boolean[] skip = new boolean[rows];
+            for (int row = 0; row < rows; row += 3) {
+                skip[row] = true;
+            }
+
+            TopK expected = new TopK(10);
+            for (int row = 0; row < rows; row++) {
+                if (!skip[row]) {
+                    float score = 0;
+                    for (int k = 0; k < dimensions; k++) {
+                        score += vector[k] * matrix[row * dimensions + k];
+                    }
+                    expected.offer(row, score);
+                }
+            }
+            TopK actual = new TopK(10);
+            kernel.topK(vector, kernel.pack(matrix, rows, dimensions), rows, dimensions, skip, actual);
+
+            int[] expectedRows = new int[10];
+            int[] actualRows = new int[10];
+            expected.drainInto(expectedRows, new float[10]);
+            actual.drainInto(actualRows, new float[10]);
+            assertArrayEquals(expectedRows, actualRows);
+        }
+    }
+}
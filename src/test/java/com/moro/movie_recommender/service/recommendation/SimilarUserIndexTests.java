@@ -0,0 +1,207 @@
+package com.moro.movie_recommender.service.recommendation;
+
+import com.moro.movie_recommender.config.RecommendationProperties;
+import com.moro.movie_recommender.dto.ManualMovie;
+import com.moro.movie_recommender.dto.Movie;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.SimilarUser;
+import com.moro.movie_recommender.dto.TraktMovieList;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.dto.trakt.TraktIdsDTO;
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+import com.moro.movie_recommender.service.UserChangedEvent;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link SimilarUserIndex} over clustered libraries: lookups against exact Jaccard similarity,
+ * incremental signature updates against recomputation, removals, and change events.
+ *
+ * <p>{@link #findsOverlappingLibrariesQuickly()} also logs lookup latency; scale up with e.g.
+ * {@code -Dsimilar.users=200000}.
+ */
+class SimilarUserIndexTests {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimilarUserIndexTests.class);
+
+    private static final int CLUSTERS = 100;
+    private static final int MOVIES_PER_CLUSTER = 150;
+
+    private final int users = Integer.getInteger("similar.users", 20_000);
+    private final Random random = new Random(9);
+    private final MovieCatalog catalog = new MovieCatalog();
+
+    @Test
+    void findsOverlappingLibrariesQuickly() {
+        SimilarUserIndex index = new SimilarUserIndex(null, new RecommendationProperties());
+        List<Set<Long>> libraries = new ArrayList<>(users);
+        long start = System.nanoTime();
+        for (int u = 0; u < users; u++) {
+            Set<Long> library = clusteredLibrary(u % CLUSTERS);
+            libraries.add(library);
+            index.update(user("user" + u, library, List.of()));
+        }
+        logger.info("Indexed {} users in {} ms", users, (System.nanoTime() - start) / 1_000_000);
+
+        int queries = 1000;
+        long micros = 0;
+        for (int round = 0; round < 3; round++) { // the last round is timed, after warm-up
+            start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                index.findSimilar("user" + q * (users / queries), 10);
+            }
+            micros = (System.nanoTime() - start) / 1000 / queries;
+        }
+
+        double errorSum = 0;
+        int inCluster = 0;
+        int found = 0;
+        for (int q = 0; q < queries; q++) {
+            int u = q * (users / queries);
+            for (SimilarUser similar : index.findSimilar("user" + u, 10)) {
+                int v = Integer.parseInt(similar.getName().substring(4));
+                errorSum += Math.abs(similar.getSimilarity() - jaccard(libraries.get(u), libraries.get(v)));
+                inCluster += v % CLUSTERS == u % CLUSTERS ? 1 : 0;
+                found++;
+            }
+        }
+        logger.info("Lookup: {} us, comparing {} users; {} similar users per lookup, {} in the same cluster, mean estimate error {}",
+                micros, index.getMetrics().get("avgComparisons"), (double) found / queries, (double) inCluster / found,
+                errorSum / found);
+        assertEquals(10 * queries, found);
+        assertTrue(inCluster > 0.99 * found, "similar users should watch the same cluster of movies");
+        assertTrue(errorSum / found < 0.07, "estimated similarity should be close to the exact Jaccard");
+    }
+
+    @Test
+    void appendedMoviesUpdateTheSignatureIncrementally() {
+        MinHash minHash = new MinHash(128, 32, 2, 1);
+        TraktMovieList traktMovies = traktMovies(List.of(1L, 2L, 3L));
+        List<Movie> manualMovies = List.of(new ManualMovie("Heat", 1995, null));
+        int[] signature = minHash.signature(traktMovies, manualMovies);
+
+        TraktMovieList.Builder builder = traktMovies.toBuilder();
+        builder.add(movie(4L), 1, null);
+        TraktMovieList moreTrakt = builder.build();
+        List<Movie> moreManual = List.of(manualMovies.get(0), new ManualMovie("Ran", 1985, null));
+        minHash.addAll(signature, moreTrakt, traktMovies.size(), moreManual, manualMovies.size());
+        assertArrayEquals(minHash.signature(moreTrakt, moreManual), signature);
+
+        SimilarUserIndex index = new SimilarUserIndex(null, new RecommendationProperties());
+        User alice = user("alice", Set.of(1L, 2L, 3L), manualMovies);
+        index.update(alice);
+        index.update(user("bob", Set.of(1L, 2L, 3L, 4L), List.of(new ManualMovie("heat ", 1995, null))));
+        index.update(alice.withTraktMovies(moreTrakt));
+        List<SimilarUser> similar = index.findSimilar("alice", 5);
+        assertEquals(1, similar.size());
+        assertEquals("bob", similar.get(0).getName());
+        assertEquals(1.0, similar.get(0).getSimilarity());
+        assertEquals(1L, index.getMetrics().get("incrementalUpdates"));
+    }
+
+    @Test
+    void onlyAppendsUpdateTheSignatureIncrementally() {
+        SimilarUserIndex index = new SimilarUserIndex(null, new RecommendationProperties());
+        User alice = user("alice", Set.of(1L, 2L, 3L), List.of(new ManualMovie("Heat", 1995, null)));
+        index.update(alice);
+        // Equal movies in new lists, and a manual movie edited without changing its title or year
+        index.update(user("alice", Set.of(1L, 2L, 3L), List.of(new ManualMovie("Heat", 1995, 9))));
+        assertEquals(1L, index.getMetrics().get("fullUpdates"));
+        assertEquals(0L, index.getMetrics().get("incrementalUpdates"));
+
+        index.update(user("alice", Set.of(1L, 2L, 4L), alice.getManualMovies()));
+        index.update(user("alice", Set.of(1L, 2L, 4L), List.of()));
+        assertEquals(3L, index.getMetrics().get("fullUpdates"), "replaced and removed movies need a new signature");
+        assertEquals(0L, index.getMetrics().get("incrementalUpdates"));
+
+        index.update(user("bob", Set.of(1L, 2L, 4L), List.of()));
+        assertEquals(1.0, index.findSimilar("alice", 5).get(0).getSimilarity());
+    }
+
+    @Test
+    void removedUsersAreNotFound() {
+        SimilarUserIndex index = new SimilarUserIndex(null, new RecommendationProperties());
+        index.update(user("alice", Set.of(1L, 2L, 3L), List.of()));
+        index.update(user("bob", Set.of(1L, 2L, 3L), List.of()));
+        index.update(user("carol", Set.of(1L, 2L, 3L), List.of()));
+        index.remove("bob");
+        index.update(user("carol", Set.of(7L, 8L, 9L), List.of()));
+        assertEquals(List.of(), index.findSimilar("alice", 5));
+        assertEquals(List.of(), index.findSimilar("bob", 5));
+        assertEquals(0L, index.getMetrics().get("avgComparisons"), "buckets should hold no stale users");
+    }
+
+    @Test
+    void changeEventsAreAppliedInOrderOffThePublishingThread() throws InterruptedException {
+        SimilarUserIndex index = new SimilarUserIndex(null, new RecommendationProperties());
+        try {
+            index.onUserChanged(new UserChangedEvent("alice", user("alice", Set.of(1L, 2L, 3L), List.of())));
+            index.onUserChanged(new UserChangedEvent("bob", user("bob", Set.of(1L, 2L, 3L), List.of())));
+            index.onUserChanged(new UserChangedEvent("bob", null));
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (!(index.contains("alice") && !index.contains("bob") && index.getMetrics().get("fullUpdates").equals(2L))
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertTrue(index.contains("alice"));
+            assertFalse(index.contains("bob"), "bob was deleted after being indexed");
+            assertEquals(List.of(), index.findSimilar("alice", 5));
+        } finally {
+            index.stop();
+        }
+    }
+
+    /** About 60 movies, nearly all from the cluster's movies, the rest from anywhere. */
+    private Set<Long> clusteredLibrary(int cluster) {
+        Set<Long> library = new HashSet<>();
+        while (library.size() < 60) {
+            boolean own = random.nextDouble() < 0.95;
+            int c = own ? cluster : random.nextInt(CLUSTERS);
+            library.add((long) c * MOVIES_PER_CLUSTER + random.nextInt(MOVIES_PER_CLUSTER) + 1);
+        }
+        return library;
+    }
+
+    private static double jaccard(Set<Long> a, Set<Long> b) {
+        Set<Long> both = new HashSet<>(a);
+        both.retainAll(b);
+        return (double) both.size() / (a.size() + b.size() - both.size());
+    }
+
+    private User user(String name, Set<Long> traktIds, List<Movie> manualMovies) {
+        Long[] sorted = traktIds.toArray(new Long[0]);
+        Arrays.sort(sorted);
+        return new User(name, manualMovies, traktMovies(Arrays.asList(sorted)));
+    }
+
+    private TraktMovieList traktMovies(List<Long> traktIds) {
+        TraktMovieList.Builder builder = TraktMovieList.builder(catalog, traktIds.size());
+        for (long traktId : traktIds) {
+            builder.add(movie(traktId), 1, null);
+        }
+        return builder.build();
+    }
+
+    private static TraktMovieDTO movie(long traktId) {
+        TraktIdsDTO ids = new TraktIdsDTO();
+        ids.setTrakt(traktId);
+        TraktMovieDTO movie = new TraktMovieDTO();
+        movie.setTitle("Movie " + traktId);
+        movie.setYear(2000);
+        movie.setIds(ids);
+        return movie;
+    }
+}
@@ -0,0 +1,97 @@
+package com.moro.movie_recommender.service.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link LogFrames.Reader} over frames written to a temporary file.
+ */
+class LogFramesTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsFramesLargerThanItsBuffer() throws IOException {
+        byte[] small = {1, 2, 3};
+        byte[] large = new byte[3 << 20];
+        new Random(5).nextBytes(large);
+        Path file = write(out -> {
+            LogFrames.write(out, 7, small);
+            LogFrames.write(out, 8, large);
+            LogFrames.write(out, 9, new byte[0]);
+        });
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            LogFrames.Reader reader = new LogFrames.Reader(channel);
+            LogFrames.Frame frame = reader.next();
+            assertEquals(7, frame.seq());
+            assertArrayEquals(small, frame.payload());
+            frame = reader.next();
+            assertEquals(8, frame.seq());
+            assertArrayEquals(large, frame.payload());
+            assertEquals(0, reader.next().payload().length);
+            assertNull(reader.next());
+            assertFalse(reader.stoppedEarly(), "a clean end of file is not damage");
+        }
+    }
+
+    @Test
+    void stopsAtAnImplausibleLength() throws IOException {
+        Path file = write(out -> {
+            LogFrames.write(out, 1, new byte[]{42});
+            out.writeInt(Integer.MAX_VALUE); // a damaged length field
+            out.writeLong(2);
+            out.writeInt(0);
+        });
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            LogFrames.Reader reader = new LogFrames.Reader(channel);
+            assertEquals(1, reader.next().seq());
+            assertNull(reader.next());
+            assertTrue(reader.stoppedEarly());
+        }
+    }
+
+    @Test
+    void reportsAPartialLengthField() throws IOException {
+        Path file = write(out -> {
+            LogFrames.write(out, 1, new byte[]{42});
+            out.writeShort(0);
+        });
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            LogFrames.Reader reader = new LogFrames.Reader(channel);
+            assertEquals(1, reader.next().seq());
+            assertNull(reader.next());
+            assertTrue(reader.stoppedEarly());
+        }
+    }
+
+    private interface FrameWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private Path write(FrameWriter writer) throws IOException {
+        Path file = directory.resolve("frames");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            writer.write(out);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,72 @@
+package com.moro.movie_recommender.service.storage;
+
+import com.moro.movie_recommender.config.StorageProperties;
+import com.moro.movie_recommender.dto.ManualMovie;
+import com.moro.movie_recommender.dto.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link OffHeapUserRepository} with small slabs, so that compaction has work to do.
+ */
+class OffHeapUserRepositoryTests extends UserRepositoryContractTests {
+
+    private OffHeapUserRepository offHeap;
+
+    @BeforeEach
+    void setUp() {
+        StorageProperties props = new StorageProperties();
+        props.getOffHeap().setSlabSize(DataSize.ofKilobytes(16));
+        props.getOffHeap().setMaxSize(DataSize.ofMegabytes(64));
+        offHeap = new OffHeapUserRepository(props, catalog);
+        repository = offHeap;
+    }
+
+    @AfterEach
+    void tearDown() {
+        offHeap.close();
+    }
+
+    @Test
+    void storesUsersLargerThanASlab() {
+        offHeap.apply(new UserMutation.Create("alice")).block();
+        User current = offHeap.findByName("alice").block();
+        User stored = offHeap.apply(new UserMutation.Replace(current.withTraktMovies(traktMovies(3000)))).block();
+
+        User read = offHeap.findByName("alice").block();
+        assertEquals(stored.getTraktMovies(), read.getTraktMovies());
+        assertEquals(3000L, offHeap.getMetrics().get("interactions"));
+
+        offHeap.apply(new UserMutation.Delete("alice")).block();
+        assertEquals(0L, offHeap.getMetrics().get("allocatedBytes"));
+    }
+
+    @Test
+    void compactionKeepsUsersIntact() {
+        for (int i = 0; i < 400; i++) {
+            String name = String.format("user%03d", i);
+            offHeap.apply(new UserMutation.Create(name)).block();
+            offHeap.apply(new UserMutation.AddManualMovie(name, new ManualMovie("Movie " + i, 2000, null))).block();
+        }
+        for (int i = 0; i < 400; i++) {
+            if (i % 8 != 0) {
+                offHeap.apply(new UserMutation.Delete(String.format("user%03d", i))).block();
+            }
+        }
+
+        assertTrue(offHeap.compact() > 0);
+        List<User> users = offHeap.findAllAfter(null).collectList().block();
+        assertEquals(50, users.size());
+        for (User user : users) {
+            int i = Integer.parseInt(user.getName().substring(4));
+            assertEquals("Movie " + i, user.getManualMovies().get(0).getTitle());
+        }
+    }
+}
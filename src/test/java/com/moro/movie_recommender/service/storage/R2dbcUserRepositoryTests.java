@@ -0,0 +1,72 @@
+package com.moro.movie_recommender.service.storage;
+
+import com.moro.movie_recommender.config.R2dbcStorageConfig;
+import com.moro.movie_recommender.config.StorageProperties;
+import com.moro.movie_recommender.dto.Movie;
+import com.moro.movie_recommender.dto.TraktMovieList;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+import io.r2dbc.pool.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link R2dbcUserRepository} against an in-memory H2 database.
+ */
+class R2dbcUserRepositoryTests extends UserRepositoryContractTests {
+
+    private ConnectionPool connectionFactory;
+    private R2dbcUserRepository r2dbc;
+
+    @BeforeEach
+    void setUp() {
+        StorageProperties props = new StorageProperties();
+        props.getR2dbc().setUrl("r2dbc:h2:mem:///users-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        props.getR2dbc().setBatchSize(100);
+
+        R2dbcStorageConfig config = new R2dbcStorageConfig();
+        connectionFactory = config.userConnectionFactory(props);
+        new ResourceDatabasePopulator(new ClassPathResource("db/user-schema.sql")).populate(connectionFactory).block();
+        DatabaseClient db = config.userDatabaseClient(connectionFactory);
+        r2dbc = new R2dbcUserRepository(db,
+                config.userTransactionalOperator(config.userTransactionManager(connectionFactory)), props, catalog);
+        repository = r2dbc;
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.dispose();
+    }
+
+    @Test
+    void writesOnlyTheChangedRows() {
+        repository.apply(new UserMutation.Create("bob")).block();
+        User current = repository.findByName("bob").block();
+        repository.apply(new UserMutation.Replace(current.withTraktMovies(traktMovies(250)))).block();
+        long upserted = (Long) r2dbc.getMetrics().get("upsertedRows");
+
+        // An incremental sync: one rating changed and two movies added
+        List<Movie> synced = new ArrayList<>(traktMovies(252));
+        synced.set(7, ((TraktMovieDTO) synced.get(7)).withUserRating(1));
+        current = repository.findByName("bob").block();
+        repository.apply(new UserMutation.Replace(current.withTraktMovies(TraktMovieList.copyOf(catalog, synced)))).block();
+        assertEquals(upserted + 3, (Long) r2dbc.getMetrics().get("upsertedRows"));
+
+        // A shrinking list is trimmed
+        current = repository.findByName("bob").block();
+        repository.apply(new UserMutation.Replace(current.withTraktMovies(TraktMovieList.copyOf(catalog, synced.subList(0, 100))))).block();
+        User read = repository.findByName("bob").block();
+        assertEquals(100, read.getTraktMovies().size());
+        assertEquals(1, read.getTraktMovies().get(7).getUserRating());
+    }
+}
@@ -0,0 +1,133 @@
+package com.moro.movie_recommender.service.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link SlabAllocator} with 4 KB slabs, so that a slab of the smallest size class holds 64
+ * blocks, and a 64 KB memory limit.
+ */
+class SlabAllocatorTests {
+
+    private static final int SLAB = 4096;
+
+    private SlabAllocator allocator;
+
+    @BeforeEach
+    void setUp() {
+        allocator = new SlabAllocator(SLAB, 16 * SLAB);
+    }
+
+    @AfterEach
+    void tearDown() {
+        allocator.close();
+    }
+
+    @Test
+    void roundsUpToPowerOfTwoSizeClasses() {
+        assertBlockSize(1, 64);
+        assertBlockSize(64, 64);
+        assertBlockSize(65, 128);
+        assertBlockSize(1000, 1024);
+        assertBlockSize(SLAB, SLAB);
+
+        // Records of one size class share a slab
+        long before = allocator.reservedBytes();
+        allocator.allocate(300, "a");
+        allocator.allocate(400, "b");
+        assertEquals(before + SLAB, allocator.reservedBytes());
+        assertThrows(IllegalArgumentException.class, () -> new SlabAllocator(3000, 16 * SLAB));
+    }
+
+    @Test
+    void givesLargeRecordsASlabOfTheirOwn() {
+        long address = allocator.allocate(SLAB + 1, "large");
+        assertEquals(SLAB + 1, allocator.reservedBytes(), "a large slab is exactly as long as its record");
+        assertEquals(SLAB + 1, allocator.allocatedBytes());
+        write(address, SLAB + 1, 7);
+        assertEquals(7, read(address, SLAB + 1));
+
+        allocator.free(address);
+        assertEquals(0, allocator.reservedBytes());
+        assertEquals(0, allocator.slabCount());
+        assertEquals(1, allocator.slabsReleased());
+        assertThrows(IllegalStateException.class, () -> allocator.allocate(16 * SLAB + 1, "too large"));
+    }
+
+    @Test
+    void reusesFreedBlocksAndReleasesEmptySlabs() {
+        long[] addresses = new long[65];
+        for (int i = 0; i < 64; i++) {
+            addresses[i] = allocator.allocate(64, i);
+        }
+        assertEquals(1, allocator.slabCount());
+        allocator.free(addresses[10]);
+        assertEquals(addresses[10], allocator.allocate(64, "reused"), "the freed block is taken again");
+
+        addresses[64] = allocator.allocate(64, 64);
+        assertEquals(2, allocator.slabCount(), "a full slab needs a second one");
+        allocator.free(addresses[64]);
+        assertEquals(1, allocator.slabCount(), "an empty slab is released right away");
+        assertEquals(SLAB, allocator.reservedBytes());
+        assertThrows(IllegalStateException.class, () -> allocator.free(addresses[64]));
+        allocator.free(addresses[0]);
+        assertThrows(IllegalStateException.class, () -> allocator.free(addresses[0]));
+    }
+
+    @Test
+    void compactionMovesBlocksIntoTheFullestSlab() {
+        Map<Integer, Long> addresses = new HashMap<>();
+        for (int i = 0; i < 4 * 64; i++) {
+            long address = allocator.allocate(64, i);
+            write(address, 64, i);
+            addresses.put(i, address);
+        }
+        for (int i = 0; i < 4 * 64; i++) {
+            if (i % 8 != 0) {
+                allocator.free(addresses.remove(i));
+            }
+        }
+        assertEquals(4, allocator.slabCount());
+        assertEquals(0, allocator.compact(0.1, (owner, from, to) -> { }), "occupancy of 1/8 is above 0.1");
+
+        int released = allocator.compact(0.5, (owner, from, to) -> {
+            assertEquals(from, (long) addresses.put((Integer) owner, to));
+            assertNotEquals(from, to);
+        });
+
+        assertEquals(3, released);
+        assertEquals(1, allocator.slabCount());
+        assertEquals(24, allocator.relocatedBlocks());
+        assertEquals(1, allocator.compactions());
+        assertEquals(32 * 64, allocator.allocatedBytes());
+        addresses.forEach((owner, address) -> assertEquals((int) owner, read(address, 64)));
+    }
+
+    private void assertBlockSize(int length, long blockSize) {
+        long before = allocator.allocatedBytes();
+        allocator.allocate(length, length);
+        assertEquals(blockSize, allocator.allocatedBytes() - before, "block for " + length + " bytes");
+    }
+
+    private void write(long address, int length, int value) {
+        MemorySegment segment = allocator.segment(address, length);
+        segment.set(ValueLayout.JAVA_INT_UNALIGNED, 0, value);
+        segment.set(ValueLayout.JAVA_INT_UNALIGNED, length - 4, value);
+    }
+
+    private int read(long address, int length) {
+        MemorySegment segment = allocator.segment(address, length);
+        assertEquals(segment.get(ValueLayout.JAVA_INT_UNALIGNED, 0), segment.get(ValueLayout.JAVA_INT_UNALIGNED, length - 4));
+        return segment.get(ValueLayout.JAVA_INT_UNALIGNED, 0);
+    }
+}
@@ -0,0 +1,118 @@
+package com.moro.movie_recommender.service.storage;
+
+import com.moro.movie_recommender.dto.ManualMovie;
+import com.moro.movie_recommender.dto.Movie;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.TraktMovieList;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.dto.trakt.TraktIdsDTO;
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Behaviour every {@link UserRepository} must share. Subclasses set up {@link #repository}
+ * before each test and may add tests for what is specific to their backend.
+ */
+abstract class UserRepositoryContractTests {
+
+    protected final MovieCatalog catalog = new MovieCatalog();
+    protected UserRepository repository;
+
+    @Test
+    void storesAndReadsBackUsers() {
+        repository.apply(new UserMutation.Create("alice")).block();
+        repository.apply(new UserMutation.LinkTrakt("alice", "token", "refresh", OffsetDateTime.now())).block();
+        repository.apply(new UserMutation.AddManualMovie("alice", new ManualMovie("The Matrix", 1999, 8))).block();
+        repository.apply(new UserMutation.Create("bob")).block();
+        User current = repository.findByName("alice").block();
+        User stored = repository.apply(new UserMutation.Replace(current.withTraktMovies(traktMovies(250)))).block();
+
+        User read = repository.findByName("alice").block();
+        assertEquals(stored.getVersion(), read.getVersion());
+        assertEquals("token", read.getTraktAccessToken());
+        assertEquals(1, read.getManualMovies().size());
+        assertEquals("The Matrix", read.getManualMovies().get(0).getTitle());
+        assertEquals(250, read.getTraktMovies().size());
+        for (int i = 0; i < 250; i++) {
+            TraktMovieDTO movie = (TraktMovieDTO) read.getTraktMovies().get(i);
+            assertEquals(1000L + i, movie.getIds().getTrakt());
+            assertEquals("movie-" + i, movie.getIds().getSlug());
+            assertEquals(i % 10 + 1, movie.getUserRating());
+        }
+        assertEquals(List.of("alice"), repository.findTraktLinkedNames().collectList().block());
+    }
+
+    @Test
+    void detectsConcurrentWrites() {
+        User created = repository.apply(new UserMutation.Create("carol")).block();
+        repository.apply(new UserMutation.AddManualMovie("carol", new ManualMovie("Heat", 1995, null))).block();
+
+        assertThrows(VersionConflictException.class, () -> repository
+                .compareAndApply(new UserMutation.Replace(created.withManualMovie(new ManualMovie("Alien", 1979, 9))),
+                        created.getVersion())
+                .block());
+        assertEquals(List.of("Heat"), repository.findByName("carol").block().getManualMovies().stream()
+                .map(Movie::getTitle).toList());
+        assertNull(repository.apply(new UserMutation.Create("carol")).block());
+    }
+
+    @Test
+    void deletesUsers() {
+        repository.apply(new UserMutation.Create("dave")).block();
+        repository.apply(new UserMutation.LinkTrakt("dave", "token", "refresh", OffsetDateTime.now())).block();
+
+        assertTrue(repository.apply(new UserMutation.Delete("dave")).blockOptional().isPresent());
+        assertFalse(repository.findByName("dave").blockOptional().isPresent());
+        assertFalse(repository.apply(new UserMutation.Delete("dave")).blockOptional().isPresent());
+        assertFalse(repository.apply(new UserMutation.AddManualMovie("dave", new ManualMovie("Heat", 1995, 9)))
+                .blockOptional().isPresent(), "mutations of missing users change nothing");
+        assertEquals(List.of(), repository.findTraktLinkedNames().collectList().block());
+    }
+
+    @Test
+    void pagesThroughUsersInNameOrder() {
+        for (int i = 24; i >= 0; i--) {
+            repository.apply(new UserMutation.Create(String.format("user%02d", i))).block();
+        }
+
+        List<User> first = repository.findPage(null, 10).block();
+        assertEquals(List.of("user00", "user01", "user02", "user03", "user04", "user05", "user06", "user07",
+                "user08", "user09"), first.stream().map(User::getName).toList());
+        List<User> last = repository.findPage("user19", 10).block();
+        assertEquals(List.of("user20", "user21", "user22", "user23", "user24"),
+                last.stream().map(User::getName).toList());
+        assertEquals(List.of(), repository.findPage("user24", 10).block());
+
+        List<String> rest = repository.findAllAfter("user09").map(User::getName).collectList().block();
+        assertEquals(15, rest.size());
+        assertEquals("user10", rest.get(0));
+        assertEquals("user24", rest.get(14));
+        assertEquals(25, repository.findAll().block().size());
+    }
+
+    protected TraktMovieList traktMovies(int count) {
+        List<Movie> movies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            TraktIdsDTO ids = new TraktIdsDTO();
+            ids.setTrakt(1000L + i);
+            ids.setSlug("movie-" + i);
+            TraktMovieDTO movie = new TraktMovieDTO();
+            movie.setTitle("Movie " + i);
+            movie.setYear(1950 + i % 70);
+            movie.setIds(ids);
+            movie.setUserRating(i % 10 + 1);
+            movies.add(movie);
+        }
+        return TraktMovieList.copyOf(catalog, movies);
+    }
+}
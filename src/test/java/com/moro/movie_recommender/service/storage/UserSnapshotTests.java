@@ -0,0 +1,124 @@
+package com.moro.movie_recommender.service.storage;
+
+import com.moro.movie_recommender.dto.ManualMovie;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.TraktMovieList;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.dto.trakt.TraktIdsDTO;
+import com.moro.movie_recommender.dto.trakt.TraktMovieDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link UserSnapshot} written to and mapped from a temporary directory.
+ */
+class UserSnapshotTests {
+
+    private final MovieCatalog catalog = new MovieCatalog();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackWhatWasWritten() throws IOException {
+        List<UserSnapshot.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            User user = new User("user" + i, List.of(new ManualMovie("Movie " + i, 1990 + i % 30, i % 10 + 1)), null);
+            entries.add(new UserSnapshot.Entry(user.getName(), 1000 + i, UserRecordCodec.encode(user)));
+        }
+        long bytes = UserSnapshot.write(directory, 1234, entries);
+
+        Map<String, UserSnapshot.Ref> users = new HashMap<>();
+        assertEquals(1234, UserSnapshot.open(directory, users));
+        assertEquals(bytes, Files.size(directory.resolve(UserSnapshot.FILE_NAME)));
+        assertFalse(Files.exists(directory.resolve(UserSnapshot.FILE_NAME + ".tmp")));
+        assertEquals(100, users.size());
+        for (int i = 0; i < 100; i++) {
+            UserSnapshot.Ref ref = users.get("user" + i);
+            assertEquals(1000 + i, ref.lastSeq());
+            User user = ref.decode(catalog);
+            assertEquals("user" + i, user.getName());
+            assertEquals("Movie " + i, user.getManualMovies().get(0).getTitle());
+            assertEquals(1990 + i % 30, user.getManualMovies().get(0).getYear());
+        }
+    }
+
+    @Test
+    void replacesTheEarlierSnapshot() throws IOException {
+        UserSnapshot.write(directory, 10, List.of(entry("alice", 5)));
+        UserSnapshot.write(directory, 20, List.of(entry("bob", 15)));
+
+        Map<String, UserSnapshot.Ref> users = new HashMap<>();
+        assertEquals(20, UserSnapshot.open(directory, users));
+        assertEquals(List.of("bob"), List.copyOf(users.keySet()));
+    }
+
+    @Test
+    void withoutASnapshotStartsFromTheBeginning() throws IOException {
+        Map<String, UserSnapshot.Ref> users = new HashMap<>();
+        assertEquals(0, UserSnapshot.open(directory, users));
+        assertTrue(users.isEmpty());
+    }
+
+    @Test
+    void rejectsATruncatedSnapshot() throws IOException {
+        UserSnapshot.write(directory, 10, List.of(entry("alice", 5), entry("bob", 6)));
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve(UserSnapshot.FILE_NAME).toFile(), "rw")) {
+            file.setLength(file.length() - 2);
+        }
+
+        assertThrows(IOException.class, () -> UserSnapshot.open(directory, new HashMap<>()));
+    }
+
+    @Test
+    void detectsADamagedRecordWhenDecoding() throws IOException {
+        UserSnapshot.write(directory, 10, List.of(entry("alice", 5)));
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve(UserSnapshot.FILE_NAME).toFile(), "rw")) {
+            long position = 32 + 2; // inside the first record, past the header
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+
+        Map<String, UserSnapshot.Ref> users = new HashMap<>();
+        UserSnapshot.open(directory, users);
+        assertThrows(IllegalStateException.class, () -> users.get("alice").decode(catalog));
+    }
+
+    @Test
+    void rejectsTraktMoviesWithoutTheirPlays() {
+        TraktIdsDTO ids = new TraktIdsDTO();
+        ids.setTrakt(1000L);
+        TraktMovieDTO movie = new TraktMovieDTO();
+        movie.setTitle("Heat");
+        movie.setYear(1995);
+        movie.setIds(ids);
+        User user = new User("alice").withTraktMovies(TraktMovieList.copyOf(catalog, List.of(movie)));
+        byte[] record = UserRecordCodec.encode(user);
+        assertEquals("Heat", UserRecordCodec.decodeUser(ByteBuffer.wrap(record), catalog).getTraktMovies().get(0).getTitle());
+
+        // Name, no manual movies, one Trakt movie: the movie's type follows at byte 17
+        record[17] = 1; // a plain Trakt movie
+        assertThrows(IllegalStateException.class, () -> UserRecordCodec.decodeUser(ByteBuffer.wrap(record), catalog));
+    }
+
+    private static UserSnapshot.Entry entry(String name, long lastSeq) {
+        return new UserSnapshot.Entry(name, lastSeq, UserRecordCodec.encode(new User(name)));
+    }
+}
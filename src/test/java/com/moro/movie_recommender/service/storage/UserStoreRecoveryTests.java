@@ -0,0 +1,190 @@
+package com.moro.movie_recommender.service.storage;
+
+import com.moro.movie_recommender.config.StorageProperties;
+import com.moro.movie_recommender.dto.ManualMovie;
+import com.moro.movie_recommender.dto.Movie;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link UserStore} closed and reopened on the same temporary directory: users come back from
+ * the log, from a snapshot plus the log written after it, and from a log with a torn tail; and a
+ * store whose log fails.
+ */
+class UserStoreRecoveryTests {
+
+    @TempDir
+    Path directory;
+
+    private final MovieCatalog catalog = new MovieCatalog();
+    private UserStore store;
+
+    @AfterEach
+    void tearDown() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void replaysTheLog() throws IOException {
+        store = open(false);
+        store.apply(new UserMutation.Create("alice")).block();
+        store.apply(new UserMutation.AddManualMovie("alice", new ManualMovie("The Matrix", 1999, 8))).block();
+        store.apply(new UserMutation.LinkTrakt("alice", "token", "refresh", OffsetDateTime.now())).block();
+        store.apply(new UserMutation.Create("bob")).block();
+        store.apply(new UserMutation.Delete("bob")).block();
+        long aliceVersion = store.get("alice").getVersion();
+
+        store = reopen(false);
+        User alice = store.get("alice");
+        assertEquals("The Matrix", alice.getManualMovies().get(0).getTitle());
+        assertEquals("token", alice.getTraktAccessToken());
+        assertEquals(aliceVersion, alice.getVersion(), "versions survive a restart");
+        assertNull(store.get("bob"));
+        assertEquals(5L, store.getMetrics().get("replayedRecords"));
+
+        // New versions continue after the recovered ones
+        User changed = store.apply(new UserMutation.AddManualMovie("alice", new ManualMovie("Heat", 1995, 9))).block();
+        assertEquals(6, changed.getVersion());
+    }
+
+    @Test
+    void replaysOnlyTheLogWrittenAfterTheSnapshot() throws Exception {
+        store = open(true);
+        for (int i = 0; i < 50; i++) {
+            store.apply(new UserMutation.Create("user" + i)).block();
+            store.apply(new UserMutation.AddManualMovie("user" + i, new ManualMovie("Movie " + i, 2000, 7))).block();
+        }
+        awaitSnapshot();
+        // Only the segment started for the snapshot is left
+        assertEquals(1, walSegments());
+
+        store = reopen(false);
+        assertEquals(0L, store.getMetrics().get("replayedRecords"));
+        assertEquals(50, (Integer) store.getMetrics().get("unloadedUsers"));
+        store.apply(new UserMutation.AddManualMovie("user7", new ManualMovie("Heat", 1995, 9))).block();
+        store.apply(new UserMutation.Delete("user8")).block();
+        store.apply(new UserMutation.Create("newcomer")).block();
+
+        store = reopen(false);
+        assertEquals(3L, store.getMetrics().get("replayedRecords"));
+        assertEquals(List.of("Movie 7", "Heat"), store.get("user7").getManualMovies().stream().map(Movie::getTitle).toList());
+        assertEquals("Movie 9", store.get("user9").getManualMovies().get(0).getTitle());
+        assertNull(store.get("user8"));
+        assertEquals(50, store.users().size());
+    }
+
+    @Test
+    void dropsATornRecordAtTheEndOfTheLog() throws IOException {
+        store = open(false);
+        store.apply(new UserMutation.Create("alice")).block();
+        store.apply(new UserMutation.AddManualMovie("alice", new ManualMovie("The Matrix", 1999, 8))).block();
+        store.apply(new UserMutation.AddManualMovie("alice", new ManualMovie("Heat", 1995, 9))).block();
+        store.close();
+        Path segment = lastWalSegment();
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(file.length() - 5); // the last write was cut short by a crash
+        }
+
+        store = reopen(false);
+        assertEquals(1, store.get("alice").getManualMovies().size());
+        store.apply(new UserMutation.AddManualMovie("alice", new ManualMovie("Alien", 1979, 8))).block();
+
+        // Records written after the damaged segment are read as well
+        store = reopen(false);
+        assertEquals(List.of("The Matrix", "Alien"),
+                store.get("alice").getManualMovies().stream().map(Movie::getTitle).toList());
+    }
+
+    @Test
+    void failsAsAWholeOnceALogWriteFails() throws IOException {
+        Path storeDirectory = directory.resolve("store");
+        StorageProperties props = new StorageProperties();
+        props.setDirectory(storeDirectory.toString());
+        props.getWal().setFsync(false);
+        props.getWal().setSegmentSize(DataSize.ofBytes(1)); // every batch starts a new segment
+        props.getSnapshot().setWarmUp(false);
+        store = new UserStore(props, catalog);
+        store.open();
+        store.apply(new UserMutation.Create("alice")).block();
+
+        // The next segment cannot be created
+        try (Stream<Path> files = Files.list(storeDirectory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(storeDirectory);
+
+        ManualMovie heat = new ManualMovie("Heat", 1995, 9);
+        assertThrows(RuntimeException.class,
+                () -> store.apply(new UserMutation.AddManualMovie("alice", heat)).block());
+        // The change reached the map but not the log, so nothing is served from the map any more
+        assertEquals(true, store.getMetrics().get("walFailed"));
+        assertThrows(UncheckedIOException.class, () -> store.get("alice"));
+        assertThrows(UncheckedIOException.class, () -> store.findAll().block());
+        assertThrows(UncheckedIOException.class, () -> store.apply(new UserMutation.Create("bob")).block());
+    }
+
+    private UserStore open(boolean snapshotEagerly) throws IOException {
+        StorageProperties props = new StorageProperties();
+        props.setDirectory(directory.toString());
+        props.getWal().setFsync(false);
+        props.getSnapshot().setWarmUp(false);
+        if (snapshotEagerly) {
+            props.getSnapshot().setCheckInterval(Duration.ofMillis(10));
+            props.getSnapshot().setMaxWalSize(DataSize.ofBytes(1));
+        }
+        UserStore opened = new UserStore(props, catalog);
+        opened.open();
+        return opened;
+    }
+
+    private UserStore reopen(boolean snapshotEagerly) throws IOException {
+        store.close();
+        store = null;
+        return open(snapshotEagerly);
+    }
+
+    private void awaitSnapshot() throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (((Long) store.getMetrics().get("walBytesSinceSnapshot") > 0 || (Long) store.getMetrics().get("snapshots") == 0)
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0L, store.getMetrics().get("walBytesSinceSnapshot"));
+        assertTrue((Long) store.getMetrics().get("snapshots") > 0);
+    }
+
+    private long walSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("wal-")).count();
+        }
+    }
+
+    private Path lastWalSegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("wal-")).sorted().reduce((a, b) -> b).orElseThrow();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.moro.movie_recommender.service.storage;
+
+import com.moro.movie_recommender.config.StorageProperties;
+import com.moro.movie_recommender.dto.ManualMovie;
+import com.moro.movie_recommender.dto.Movie;
+import com.moro.movie_recommender.dto.MovieCatalog;
+import com.moro.movie_recommender.dto.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link UserStore} with a hot set too small for all users, so most of them live on disk.
+ */
+class UserStoreTieringTests {
+
+    @TempDir
+    Path directory;
+
+    private final MovieCatalog catalog = new MovieCatalog();
+    private UserStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = open(false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void faultsEvictedUsersBackIn() {
+        for (int i = 0; i < 500; i++) {
+            String name = String.format("user%03d", i);
+            store.apply(new UserMutation.Create(name)).block();
+            store.apply(new UserMutation.AddManualMovie(name, new ManualMovie("Movie " + i, 2000, i % 10 + 1))).block();
+            if (i % 50 == 0) {
+                store.apply(new UserMutation.LinkTrakt(name, "token", "refresh", OffsetDateTime.now())).block();
+            }
+        }
+        assertTrue((Long) store.getMetrics().get("evictions") > 0);
+
+        for (int i = 0; i < 500; i++) {
+            User user = store.findByName(String.format("user%03d", i)).block();
+            assertEquals("Movie " + i, user.getManualMovies().get(0).getTitle());
+        }
+        assertTrue((Long) store.getMetrics().get("faultIns") > 0);
+        assertEquals(500, store.users().size());
+        List<String> linked = store.findTraktLinkedNames().collectList().block();
+        assertEquals(10, linked.size());
+    }
+
+    @Test
+    void keepsFrequentlyUsedUsersHot() {
+        for (int i = 0; i < 20; i++) {
+            store.apply(new UserMutation.Create("regular" + i)).block();
+        }
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 20; i++) {
+                store.get("regular" + i);
+            }
+        }
+        // A one-off pass over many other users must not push the regulars out
+        for (int i = 0; i < 500; i++) {
+            store.apply(new UserMutation.Create("once" + i)).block();
+        }
+        long faultIns = (Long) store.getMetrics().get("faultIns");
+        for (int i = 0; i < 20; i++) {
+            store.get("regular" + i);
+        }
+        assertEquals(faultIns, (Long) store.getMetrics().get("faultIns"));
+    }
+
+    @Test
+    void coldUsersSurviveARestart() throws Exception {
+        createUsers(300);
+        assertTrue((Long) store.getMetrics().get("evictions") > 0);
+
+        // Recovered from the log alone
+        store = reopen(true);
+        assertUsers(300);
+
+        // Recovered from a snapshot taken while most users were cold, plus the log after it
+        createUsers(300, 400);
+        awaitSnapshot();
+        store.apply(new UserMutation.AddManualMovie("user005", new ManualMovie("Heat", 1995, 9))).block();
+        store = reopen(false);
+        assertUsers(400);
+        assertEquals(List.of("Movie 5", "Heat"),
+                store.findByName("user005").block().getManualMovies().stream().map(Movie::getTitle).toList());
+        assertEquals(8, store.findTraktLinkedNames().collectList().block().size());
+    }
+
+    private void createUsers(int count) {
+        createUsers(0, count);
+    }
+
+    private void createUsers(int from, int to) {
+        for (int i = from; i < to; i++) {
+            String name = String.format("user%03d", i);
+            store.apply(new UserMutation.Create(name)).block();
+            store.apply(new UserMutation.AddManualMovie(name, new ManualMovie("Movie " + i, 2000, i % 10 + 1))).block();
+            if (i % 50 == 0) {
+                store.apply(new UserMutation.LinkTrakt(name, "token", "refresh", OffsetDateTime.now())).block();
+            }
+        }
+    }
+
+    private void assertUsers(int count) {
+        assertEquals(count, store.users().size());
+        for (int i = 0; i < count; i++) {
+            User user = store.findByName(String.format("user%03d", i)).block();
+            assertEquals("Movie " + i, user.getManualMovies().get(0).getTitle());
+        }
+    }
+
+    private UserStore open(boolean snapshotEagerly) throws IOException {
+        StorageProperties props = new StorageProperties();
+        props.setDirectory(directory.toString());
+        props.getWal().setFsync(false);
+        props.getSnapshot().setWarmUp(false);
+        if (snapshotEagerly) {
+            props.getSnapshot().setCheckInterval(Duration.ofMillis(10));
+            props.getSnapshot().setMaxWalSize(DataSize.ofBytes(1));
+        }
+        props.getTiering().setEnabled(true);
+        props.getTiering().setMaxHotSize(DataSize.ofKilobytes(16));
+        props.getTiering().setSegmentSize(DataSize.ofKilobytes(64));
+        UserStore opened = new UserStore(props, catalog);
+        opened.open();
+        return opened;
+    }
+
+    private UserStore reopen(boolean snapshotEagerly) throws IOException {
+        store.close();
+        store = null;
+        return open(snapshotEagerly);
+    }
+
+    private void awaitSnapshot() throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (((Long) store.getMetrics().get("walBytesSinceSnapshot") > 0 || (Long) store.getMetrics().get("snapshots") == 0)
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0L, store.getMetrics().get("walBytesSinceSnapshot"));
+    }
+}
@@ -0,0 +1,154 @@
+package com.moro.movie_recommender.service.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link WriteAheadLog} in a temporary directory, without fsync: records are read back in
+ * order, reading stops at a torn or corrupt tail, and covered segments can be deleted.
+ */
+class WriteAheadLogTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackEveryRecordInOrder() throws Exception {
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 1, false, 16, 1 << 20)) {
+            WriteAheadLog.Append last = null;
+            for (int i = 1; i <= 100; i++) {
+                last = wal.append(payload(i));
+                assertEquals(i, last.seq());
+            }
+            last.durable().join();
+            assertEquals(100, wal.getRecords());
+            assertEquals(101, wal.getNextSeq());
+        }
+
+        List<LogFrames.Frame> frames = readAll();
+        assertEquals(100, frames.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i + 1, frames.get(i).seq());
+            assertEquals(String.format("record %03d", i + 1), new String(frames.get(i).payload(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void stopsAtATornFrame() throws Exception {
+        writeRecords(1, 10);
+        Path segment = segments().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(file.length() - 3); // the last record was only partly written
+        }
+
+        List<LogFrames.Frame> frames = readAll();
+        assertEquals(9, frames.size());
+        assertEquals(9, frames.get(8).seq());
+    }
+
+    @Test
+    void stopsAtACorruptFrame() throws Exception {
+        writeRecords(1, 10);
+        Path segment = segments().get(0);
+        long fifth = 4 * (LogFrames.HEADER_BYTES + payload(1).length);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(fifth + LogFrames.HEADER_BYTES);
+            file.write('X'); // fails the checksum
+        }
+
+        List<LogFrames.Frame> frames = readAll();
+        assertEquals(4, frames.size());
+        assertEquals(4, frames.get(3).seq());
+    }
+
+    @Test
+    void startsANewSegmentAfterADamagedOne() throws Exception {
+        writeRecords(1, 10);
+        try (RandomAccessFile file = new RandomAccessFile(segments().get(0).toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        // Recovery continues after the last intact record; the damaged tail is left behind
+        writeRecords(10, 5);
+
+        assertEquals(2, segments().size());
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L, 12L, 13L, 14L),
+                readAll().stream().map(LogFrames.Frame::seq).toList());
+    }
+
+    @Test
+    void rollsSegmentsAndDeletesTheCoveredOnes() throws Exception {
+        long frameBytes = LogFrames.HEADER_BYTES + payload(1).length;
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 1, false, 1, 3 * frameBytes)) {
+            for (int i = 1; i <= 10; i++) {
+                wal.append(payload(i)).durable().join();
+            }
+            // Segments start at 1, 4, 7 and 10
+            assertEquals(4, segments().size());
+
+            long rolled = wal.roll().join();
+            assertEquals(11, rolled);
+            assertEquals(5, segments().size());
+
+            wal.deleteSegmentsBefore(7);
+            assertEquals(3, segments().size());
+            assertEquals(List.of(7L, 8L, 9L, 10L), readAll().stream().map(LogFrames.Frame::seq).toList());
+
+            // The segment being written is kept even when every record is covered
+            wal.deleteSegmentsBefore(Long.MAX_VALUE);
+            assertEquals(1, segments().size());
+            wal.append(payload(11)).durable().join();
+        }
+        assertEquals(List.of(11L), readAll().stream().map(LogFrames.Frame::seq).toList());
+    }
+
+    @Test
+    void syncsEveryBatchWhenEnabled() throws Exception {
+        try (WriteAheadLog wal = new WriteAheadLog(directory, 1, true, 16, 1 << 20)) {
+            List<WriteAheadLog.Append> appends = new ArrayList<>();
+            for (int i = 1; i <= 50; i++) {
+                appends.add(wal.append(payload(i)));
+            }
+            appends.forEach(append -> append.durable().join());
+            assertEquals(wal.getBatches(), wal.getSyncs());
+            assertTrue(wal.getBatches() <= 50);
+        }
+        assertEquals(50, readAll().size());
+    }
+
+    private void writeRecords(long firstSeq, int count) throws IOException {
+        try (WriteAheadLog wal = new WriteAheadLog(directory, firstSeq, false, 16, 1 << 20)) {
+            for (int i = 0; i < count; i++) {
+                wal.append(payload(i + 1));
+            }
+        }
+    }
+
+    private List<LogFrames.Frame> readAll() throws IOException {
+        List<LogFrames.Frame> frames = new ArrayList<>();
+        WriteAheadLog.readAll(directory, frames::add);
+        return frames;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("wal-")).sorted().toList();
+        }
+    }
+
+    /** Payloads of equal length, so frame offsets are easy to work out. */
+    private static byte[] payload(int record) {
+        return String.format("record %03d", record).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,219 @@
+package com.moro.movie_recommender.service.trakt;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-in for Trakt's list endpoints, plugged into a {@link WebClient} as its
+ * exchange function, so that Trakt clients can be tested without a network.
+ *
+ * <p>Each access token owns a {@link Library} that tests may change between requests.
+ * {@code /sync/watched/movies} and {@code /sync/ratings/movies} honour {@code page}/{@code limit}
+ * with {@code X-Pagination-Page-Count}, carry an ETag derived from the list like Trakt's, and
+ * answer a matching {@code If-None-Match} with 304. {@code /sync/last_activities} reports when the latest
+ * play and rating were added, which like on Trakt need not be their watched or rated time. Every response can be
+ * delayed by a fixed latency, and the next requests can be made to fail.
+ */
+public class TraktExchangeStub implements ExchangeFunction {
+
+    /** One user's movies, ordered by Trakt id. */
+    public static final class Library {
+        private final Map<Long, Entry> movies = new TreeMap<>();
+        private OffsetDateTime watchedActivity;
+        private OffsetDateTime ratedActivity;
+
+        /**
+         * Records a play of the movie. A play watched before the latest activity, i.e. added
+         * backdated, moves the activity one second on.
+         */
+        public synchronized Library watch(long traktId, OffsetDateTime watchedAt) {
+            Entry entry = movies.computeIfAbsent(traktId, Entry::new);
+            entry.plays++;
+            if (entry.lastWatchedAt == null || watchedAt.isAfter(entry.lastWatchedAt)) {
+                entry.lastWatchedAt = watchedAt;
+            }
+            watchedActivity = activity(watchedActivity, watchedAt);
+            return this;
+        }
+
+        /**
+         * Rates the movie, replacing any earlier rating.
+         */
+        public synchronized Library rate(long traktId, int rating, OffsetDateTime ratedAt) {
+            Entry entry = movies.computeIfAbsent(traktId, Entry::new);
+            entry.rating = rating;
+            entry.ratedAt = ratedAt;
+            ratedActivity = activity(ratedActivity, ratedAt);
+            return this;
+        }
+
+        public synchronized int watchedCount() {
+            return (int) movies.values().stream().filter(entry -> entry.plays > 0).count();
+        }
+
+        public synchronized int ratedCount() {
+            return (int) movies.values().stream().filter(entry -> entry.rating > 0).count();
+        }
+
+        private static OffsetDateTime activity(OffsetDateTime latest, OffsetDateTime at) {
+            return latest == null || at.isAfter(latest) ? at : latest.plusSeconds(1);
+        }
+    }
+
+    private static final class Entry {
+        final long traktId;
+        int plays;
+        OffsetDateTime lastWatchedAt;
+        int rating;
+        OffsetDateTime ratedAt;
+
+        Entry(long traktId) {
+            this.traktId = traktId;
+        }
+    }
+
+    private final Map<String, Library> libraries = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile HttpStatus failureStatus = HttpStatus.INTERNAL_SERVER_ERROR;
+    private volatile Duration latency = Duration.ZERO;
+
+    /**
+     * @return the library served to {@code accessToken}, created empty on first use
+     */
+    public Library library(String accessToken) {
+        return libraries.computeIfAbsent(accessToken, token -> new Library());
+    }
+
+    /**
+     * Serves the library of {@code accessToken} to {@code refreshed} as well, like a token
+     * obtained by refreshing the access to the same account.
+     */
+    public void refreshToken(String accessToken, String refreshed) {
+        libraries.put(refreshed, library(accessToken));
+    }
+
+    public void setLatency(Duration latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Answers the next {@code count} requests with {@code status}, whatever they ask for.
+     */
+    public void failNext(int count, HttpStatus status) {
+        failureStatus = status;
+        failures.set(count);
+    }
+
+    /**
+     * @return a builder for clients served by this stub
+     */
+    public WebClient.Builder webClientBuilder() {
+        return WebClient.builder().exchangeFunction(this);
+    }
+
+    public long requestCount() {
+        return requests.sum();
+    }
+
+    public long notModifiedCount() {
+        return notModified.sum();
+    }
+
+    @Override
+    public Mono<ClientResponse> exchange(ClientRequest request) {
+        requests.increment();
+        if (failures.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+            return respond(ClientResponse.create(failureStatus));
+        }
+        String authorization = request.headers().getFirst(HttpHeaders.AUTHORIZATION);
+        Library library = authorization != null && authorization.startsWith("Bearer ")
+                ? libraries.get(authorization.substring("Bearer ".length()))
+                : null;
+        if (library == null) {
+            return respond(ClientResponse.create(HttpStatus.UNAUTHORIZED));
+        }
+        String path = request.url().getPath();
+        MultiValueMap<String, String> query = UriComponentsBuilder.fromUri(request.url()).build().getQueryParams();
+        List<String> items = new ArrayList<>();
+        synchronized (library) {
+            if (path.equals("/sync/last_activities")) {
+                return respond(ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .body("{\"movies\":{\"watched_at\":" + quoted(library.watchedActivity)
+                                + ",\"rated_at\":" + quoted(library.ratedActivity) + "}}"));
+            }
+            switch (path) {
+                case "/sync/watched/movies" -> {
+                    for (Entry entry : library.movies.values()) {
+                        if (entry.plays > 0) {
+                            items.add("{\"plays\":" + entry.plays + ",\"last_watched_at\":" + quoted(entry.lastWatchedAt)
+                                    + ",\"movie\":" + movie(entry.traktId) + "}");
+                        }
+                    }
+                }
+                case "/sync/ratings/movies" -> {
+                    for (Entry entry : library.movies.values()) {
+                        if (entry.rating > 0) {
+                            items.add("{\"rated_at\":" + quoted(entry.ratedAt) + ",\"rating\":" + entry.rating
+                                    + ",\"type\":\"movie\",\"movie\":" + movie(entry.traktId) + "}");
+                        }
+                    }
+                }
+                default -> {
+                    return respond(ClientResponse.create(HttpStatus.NOT_FOUND));
+                }
+            }
+        }
+        String etag = "\"" + path + "-" + Integer.toHexString(items.hashCode()) + "\"";
+        if (etag.equals(request.headers().getFirst(HttpHeaders.IF_NONE_MATCH))) {
+            notModified.increment();
+            return respond(ClientResponse.create(HttpStatus.NOT_MODIFIED).header(HttpHeaders.ETAG, etag));
+        }
+
+        ClientResponse.Builder response = ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.ETAG, etag);
+        if (query.containsKey("limit")) {
+            int pageSize = Integer.parseInt(query.getFirst("limit"));
+            int from = Math.min(items.size(), (Integer.parseInt(query.getFirst("page")) - 1) * pageSize);
+            response.header(TraktPager.PAGE_COUNT_HEADER, String.valueOf(Math.max(1, (items.size() + pageSize - 1) / pageSize)));
+            items = items.subList(from, Math.min(items.size(), from + pageSize));
+        }
+        return respond(response.body("[" + String.join(",", items) + "]"));
+    }
+
+    private Mono<ClientResponse> respond(ClientResponse.Builder response) {
+        Mono<ClientResponse> built = Mono.just(response.build());
+        return latency.isZero() ? built : built.delayElement(latency);
+    }
+
+    private static String quoted(OffsetDateTime time) {
+        return time != null ? "\"" + DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(time) + "\"" : "null";
+    }
+
+    private static String movie(long traktId) {
+        return "{\"title\":\"Movie " + traktId + "\",\"year\":2000,\"ids\":{\"trakt\":" + traktId
+                + ",\"slug\":\"movie-" + traktId + "\"}}";
+    }
+}
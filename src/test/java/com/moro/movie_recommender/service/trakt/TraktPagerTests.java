@@ -0,0 +1,159 @@
+package com.moro.movie_recommender.service.trakt;
+
+import com.moro.movie_recommender.config.TraktProperties;
+import com.moro.movie_recommender.dto.trakt.TraktRatingDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link TraktPager} in front of a scripted exchange function serving 1234 ratings. Each page
+ * is answered after a random delay, so that prefetched pages can complete out of order, and
+ * carries an ETag that never changes.
+ */
+class TraktPagerTests {
+
+    private static final int RATINGS = 1234;
+    private static final String ETAG = "\"ratings\"";
+
+    private final Queue<String> requestedUris = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final TraktResponseCache responseCache = new TraktResponseCache(new TraktProperties());
+    private final WebClient webClient = WebClient.builder()
+            .baseUrl("https://api.trakt.tv")
+            .exchangeFunction(this::serve)
+            .build();
+
+    @Test
+    void streamsEveryPageInOrder() {
+        for (int pageSize : new int[] {1, 7, 100, RATINGS, RATINGS + 1}) {
+            requestedUris.clear();
+            List<Long> ids = fetchRatedIds(new TraktPager(webClient, responseCache, pageSize, 3), "/sync/ratings/movies");
+
+            assertEquals(ratedIds(), ids, "pages of " + pageSize);
+            assertEquals((RATINGS + pageSize - 1) / pageSize, requestedUris.size(), "requests for pages of " + pageSize);
+        }
+    }
+
+    @Test
+    void appendsPagingToAnExistingQuery() {
+        List<Long> ids = fetchRatedIds(new TraktPager(webClient, responseCache, 50, 2), "/sync/ratings/movies?extended=metadata");
+
+        assertEquals(ratedIds(), ids);
+        for (String uri : requestedUris) {
+            assertTrue(uri.contains("?extended=metadata&page="), uri);
+        }
+    }
+
+    @Test
+    void treatsResponsesWithoutPagingHeadersAsOnePage() {
+        List<Long> ids = fetchRatedIds(new TraktPager(webClient, responseCache, 100, 2), "/unpaged");
+
+        assertEquals(ratedIds(), ids);
+        assertEquals(1, requestedUris.size());
+    }
+
+    @Test
+    void propagatesErrorResponses() {
+        TraktPager pager = new TraktPager(webClient, responseCache, 100, 2);
+        assertThrows(WebClientResponseException.class, () -> fetchRatedIds(pager, "/missing"));
+    }
+
+    @Test
+    void answersUnchangedPagesFromTheCache() {
+        TraktPager pager = new TraktPager(webClient, responseCache, 100, 4);
+        List<Long> first = fetchRatedIds(pager, "/sync/ratings/movies");
+        int pages = (RATINGS + 99) / 100;
+
+        List<Long> second = fetchRatedIds(pager, "/sync/ratings/movies");
+
+        assertEquals(first, second);
+        assertEquals(pages, notModified.get());
+        assertEquals((long) pages, responseCache.getMetrics().get("notModifiedHits"));
+    }
+
+    @Test
+    void readsThePageCountHeader() {
+        HttpHeaders headers = new HttpHeaders();
+        assertEquals(1, TraktPager.pageCount(headers), "not paginated");
+        headers.set(TraktPager.PAGE_COUNT_HEADER, " 12 ");
+        assertEquals(12, TraktPager.pageCount(headers));
+        headers.set(TraktPager.PAGE_COUNT_HEADER, "many");
+        assertEquals(1, TraktPager.pageCount(headers));
+    }
+
+    private List<Long> fetchRatedIds(TraktPager pager, String uri) {
+        return pager.fetchAll(uri, "alice", "token",
+                        response -> response.bodyToFlux(DataBuffer.class).transform(TraktRatingsDecoder::decode))
+                .map(TraktRatingDTO::getTraktId)
+                .collectList()
+                .block();
+    }
+
+    private static List<Long> ratedIds() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < RATINGS; i++) {
+            ids.add(1000L + i);
+        }
+        return ids;
+    }
+
+    private Mono<ClientResponse> serve(ClientRequest request) {
+        requestedUris.add(request.url().toString());
+        String path = request.url().getPath();
+        if (path.equals("/missing")) {
+            return Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND).build());
+        }
+        if (ETAG.equals(request.headers().getFirst(HttpHeaders.IF_NONE_MATCH))) {
+            notModified.incrementAndGet();
+            return Mono.just(ClientResponse.create(HttpStatus.NOT_MODIFIED).header(HttpHeaders.ETAG, ETAG).build());
+        }
+        MultiValueMap<String, String> query = UriComponentsBuilder.fromUri(request.url()).build().getQueryParams();
+        boolean paged = !path.equals("/unpaged");
+        int limit = paged ? Integer.parseInt(query.getFirst("limit")) : RATINGS;
+        int page = paged ? Integer.parseInt(query.getFirst("page")) : 1;
+        int from = Math.min(RATINGS, (page - 1) * limit);
+        int to = Math.min(RATINGS, from + limit);
+
+        StringBuilder body = new StringBuilder("[");
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                body.append(',');
+            }
+            body.append("{\"rated_at\":\"2024-01-01T00:00:00.000Z\",\"rating\":").append(i % 10 + 1)
+                    .append(",\"type\":\"movie\",\"movie\":{\"title\":\"Movie ").append(i)
+                    .append("\",\"year\":2000,\"ids\":{\"trakt\":").append(1000 + i).append("}}}");
+        }
+        body.append(']');
+
+        ClientResponse.Builder response = ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.ETAG, ETAG)
+                .body(body.toString());
+        if (paged) {
+            response.header(TraktPager.PAGE_COUNT_HEADER, String.valueOf((RATINGS + limit - 1) / limit));
+        }
+        return Mono.delay(Duration.ofMillis(ThreadLocalRandom.current().nextInt(5))).thenReturn(response.build());
+    }
+}
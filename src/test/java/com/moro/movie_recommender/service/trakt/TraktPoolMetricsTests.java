@@ -0,0 +1,75 @@
+package com.moro.movie_recommender.service.trakt;
+
+import org.junit.jupiter.api.Test;
+import reactor.netty.resources.ConnectionPoolMetrics;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link TraktPoolMetrics} fed fixed gauges for pools to two remote addresses.
+ */
+class TraktPoolMetricsTests {
+
+    @Test
+    void sumsGaugesAcrossRegisteredPools() {
+        TraktPoolMetrics metrics = new TraktPoolMetrics();
+        InetSocketAddress api = InetSocketAddress.createUnresolved("api.trakt.tv", 443);
+        InetSocketAddress other = InetSocketAddress.createUnresolved("other.trakt.tv", 443);
+        metrics.registerMetrics("trakt", "1", api, gauges(3, 5, 1, 16));
+        metrics.registerMetrics("trakt", "1", other, gauges(1, 2, 0, 16));
+
+        Map<String, Object> summed = metrics.getMetrics();
+        assertEquals(2, summed.get("pools"));
+        assertEquals(4, summed.get("activeConnections"));
+        assertEquals(3, summed.get("idleConnections"));
+        assertEquals(7, summed.get("allocatedConnections"));
+        assertEquals(1, summed.get("pendingAcquires"));
+        assertEquals(32, summed.get("maxConnections"));
+        assertEquals(64, summed.get("maxPendingAcquires"));
+
+        // Re-registering a pool replaces its gauges; deregistering drops them
+        metrics.registerMetrics("trakt", "1", api, gauges(0, 0, 0, 16));
+        metrics.deRegisterMetrics("trakt", "1", other);
+        Map<String, Object> remaining = metrics.getMetrics();
+        assertEquals(1, remaining.get("pools"));
+        assertEquals(0, remaining.get("allocatedConnections"));
+        assertEquals(16, remaining.get("maxConnections"));
+    }
+
+    private static ConnectionPoolMetrics gauges(int acquired, int allocated, int pending, int max) {
+        return new ConnectionPoolMetrics() {
+            @Override
+            public int acquiredSize() {
+                return acquired;
+            }
+
+            @Override
+            public int allocatedSize() {
+                return allocated;
+            }
+
+            @Override
+            public int idleSize() {
+                return allocated - acquired;
+            }
+
+            @Override
+            public int pendingAcquireSize() {
+                return pending;
+            }
+
+            @Override
+            public int maxAllocatedSize() {
+                return max;
+            }
+
+            @Override
+            public int maxPendingAcquireSize() {
+                return 2 * max;
+            }
+        };
+    }
+}
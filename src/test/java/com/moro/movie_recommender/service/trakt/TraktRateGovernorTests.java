@@ -0,0 +1,138 @@
+package com.moro.movie_recommender.service.trakt;
+
+import com.moro.movie_recommender.config.TraktProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link TraktRateGovernor}'s filter in front of a scripted exchange function, which answers
+ * with queued statuses and counts the requests that reach it.
+ */
+class TraktRateGovernorTests {
+
+    private final TraktProperties props = new TraktProperties();
+    private final Deque<ClientResponse> responses = new ArrayDeque<>();
+    private final AtomicInteger exchanges = new AtomicInteger();
+    private final ExchangeFunction next = request -> {
+        exchanges.incrementAndGet();
+        ClientResponse response = responses.poll();
+        return Mono.just(response != null ? response : ClientResponse.create(HttpStatus.OK).build());
+    };
+
+    @BeforeEach
+    void setUp() {
+        props.getRateLimit().setBackoffBase(Duration.ofMillis(1));
+        props.getRateLimit().setBackoffMax(Duration.ofMillis(5));
+    }
+
+    @Test
+    void queuesRequestsAndRejectsThoseThatWouldWaitTooLong() {
+        props.getRateLimit().setGetLimit(2);
+        props.getRateLimit().setGetPeriod(Duration.ofSeconds(1));
+        props.getRateLimit().setMaxQueueWait(Duration.ofMillis(600));
+        TraktRateGovernor governor = new TraktRateGovernor(props);
+        ExchangeFilterFunction filter = governor.filter();
+
+        long start = System.nanoTime();
+        List<String> results = Flux.range(0, 4)
+                .flatMap(i -> filter.filter(request(HttpMethod.GET), next)
+                        .map(response -> response.statusCode().toString())
+                        .onErrorResume(TraktRateLimitException.class, e -> Mono.just("rejected")))
+                .collectList()
+                .block();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Two permits at once, the third after half a period, the fourth would need a whole one
+        assertEquals(1, results.stream().filter("rejected"::equals).count());
+        assertEquals(3, exchanges.get());
+        assertTrue(elapsedMillis >= 400, "the third request waited " + elapsedMillis + " ms");
+        assertEquals(1L, governor.getMetrics().get("queuedTotal"));
+        assertEquals(1L, governor.getMetrics().get("rejected"));
+        assertEquals(0, governor.getMetrics().get("queuedRequests"));
+    }
+
+    @Test
+    void writesUseTheirOwnBucket() {
+        props.getRateLimit().setGetLimit(1);
+        props.getRateLimit().setGetPeriod(Duration.ofSeconds(10));
+        props.getRateLimit().setMaxQueueWait(Duration.ofMillis(50));
+        ExchangeFilterFunction filter = new TraktRateGovernor(props).filter();
+
+        filter.filter(request(HttpMethod.GET), next).block();
+        assertThrows(TraktRateLimitException.class, () -> filter.filter(request(HttpMethod.GET), next).block());
+        assertEquals(HttpStatus.OK, filter.filter(request(HttpMethod.POST), next).block().statusCode());
+        assertEquals(2, exchanges.get());
+    }
+
+    @Test
+    void retriesThrottledRequestsAfterRetryAfter() {
+        responses.add(ClientResponse.create(HttpStatus.TOO_MANY_REQUESTS).header("Retry-After", "1").build());
+        TraktRateGovernor governor = new TraktRateGovernor(props);
+
+        long start = System.nanoTime();
+        ClientResponse response = governor.filter().filter(request(HttpMethod.POST), next).block();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(HttpStatus.OK, response.statusCode());
+        assertEquals(2, exchanges.get(), "429 is retried for writes too");
+        assertTrue(elapsedMillis >= 900, "retried after " + elapsedMillis + " ms");
+        assertEquals(1L, governor.getMetrics().get("throttled"));
+        assertEquals(1L, governor.getMetrics().get("retries"));
+    }
+
+    @Test
+    void retriesGatewayErrorsOfGetsOnly() {
+        props.getRateLimit().setMaxRetries(2);
+        props.getRateLimit().setWriteLimit(100);
+        for (int i = 0; i < 3; i++) {
+            responses.add(ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+        }
+        TraktRateGovernor governor = new TraktRateGovernor(props);
+
+        ClientResponse get = governor.filter().filter(request(HttpMethod.GET), next).block();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, get.statusCode(), "handed over once retries run out");
+        assertEquals(3, exchanges.get());
+
+        responses.add(ClientResponse.create(HttpStatus.BAD_GATEWAY).build());
+        ClientResponse post = governor.filter().filter(request(HttpMethod.POST), next).block();
+        assertEquals(HttpStatus.BAD_GATEWAY, post.statusCode());
+        assertEquals(4, exchanges.get(), "a write may have been applied, so it is not repeated");
+        assertEquals(2L, governor.getMetrics().get("retries"));
+    }
+
+    @Test
+    void passesRequestsThroughWhenDisabled() {
+        props.getRateLimit().setEnabled(false);
+        props.getRateLimit().setGetLimit(1);
+        props.getRateLimit().setMaxQueueWait(Duration.ZERO);
+        responses.add(ClientResponse.create(HttpStatus.TOO_MANY_REQUESTS).build());
+        ExchangeFilterFunction filter = new TraktRateGovernor(props).filter();
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, filter.filter(request(HttpMethod.GET), next).block().statusCode());
+        assertEquals(HttpStatus.OK, filter.filter(request(HttpMethod.GET), next).block().statusCode());
+        assertEquals(2, exchanges.get());
+    }
+
+    private static ClientRequest request(HttpMethod method) {
+        return ClientRequest.create(method, URI.create("https://api.trakt.tv/sync/watched/movies")).build();
+    }
+}
@@ -0,0 +1,88 @@
+package com.moro.movie_recommender.service.trakt;
+
+import com.moro.movie_recommender.dto.trakt.TraktRatingDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link TraktRatingsDecoder} fed the same payload whole and cut into chunks of every size up
+ * to 40 bytes, so that tokens are split at every possible position.
+ */
+class TraktRatingsDecoderTests {
+
+    private static final String PAYLOAD = """
+            [
+              {"rated_at": "2024-03-01T20:15:00.000Z", "rating": 9, "type": "movie",
+               "movie": {"title": "The Matrix", "year": 1999, "rating": 8.7,
+                         "ids": {"trakt": 481, "slug": "the-matrix-1999", "imdb": "tt0133093", "tmdb": 603}}},
+              {"movie": {"ids": {"tmdb": 949, "trakt": 1234567890123}, "tags": [{"trakt": 5}], "released": null},
+               "rating": 7, "rated_at": "not a timestamp", "extra": {"ids": {"trakt": 99}}},
+              {"rating": 4, "rated_at": "2024-03-02T08:00:00Z", "movie": {"title": "No ids", "ids": {"slug": "x"}}},
+              {"rating": 10, "movie": {"ids": {"trakt": 62}}}
+            ]
+            """;
+
+    @Test
+    void decodesRatingsAcrossChunkBoundaries() {
+        List<TraktRatingDTO> whole = decode(PAYLOAD, Integer.MAX_VALUE);
+        assertEquals(3, whole.size(), "the entry without a Trakt id is skipped");
+
+        assertEquals(481, whole.get(0).getTraktId());
+        assertEquals(9, whole.get(0).getRating());
+        assertEquals(OffsetDateTime.parse("2024-03-01T20:15:00.000Z"), whole.get(0).getRatedAt());
+
+        assertEquals(1234567890123L, whole.get(1).getTraktId(), "ids nested elsewhere are ignored");
+        assertEquals(7, whole.get(1).getRating());
+        assertNull(whole.get(1).getRatedAt(), "unparseable timestamps are dropped");
+
+        assertEquals(62, whole.get(2).getTraktId());
+        assertEquals(10, whole.get(2).getRating());
+        assertNull(whole.get(2).getRatedAt(), "fields of the previous element are not carried over");
+
+        for (int chunkSize = 1; chunkSize <= 40; chunkSize++) {
+            List<TraktRatingDTO> chunked = decode(PAYLOAD, chunkSize);
+            assertEquals(whole.size(), chunked.size(), "chunks of " + chunkSize + " bytes");
+            for (int i = 0; i < whole.size(); i++) {
+                assertEquals(whole.get(i).getTraktId(), chunked.get(i).getTraktId());
+                assertEquals(whole.get(i).getRating(), chunked.get(i).getRating());
+                assertEquals(whole.get(i).getRatedAt(), chunked.get(i).getRatedAt());
+            }
+        }
+    }
+
+    @Test
+    void decodesAnEmptyList() {
+        assertEquals(List.of(), decode("[]", Integer.MAX_VALUE));
+        assertEquals(List.of(), decode(" [ ] ", 1));
+    }
+
+    @Test
+    void rejectsInvalidPayloads() {
+        assertThrows(DecodingException.class, () -> decode("{\"error\": \"unauthorized\"}", Integer.MAX_VALUE));
+        assertThrows(DecodingException.class, () -> decode("[{\"rating\": 9,", 4), "truncated");
+        assertThrows(DecodingException.class, () -> decode("[{\"rating\": 9}}", Integer.MAX_VALUE), "malformed");
+    }
+
+    private static List<TraktRatingDTO> decode(String json, int chunkSize) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        List<DataBuffer> chunks = new ArrayList<>();
+        for (int from = 0; from < bytes.length; from += chunkSize) {
+            byte[] chunk = Arrays.copyOfRange(bytes, from, (int) Math.min(bytes.length, (long) from + chunkSize));
+            chunks.add(DefaultDataBufferFactory.sharedInstance.wrap(chunk));
+        }
+        return TraktRatingsDecoder.decode(Flux.fromIterable(chunks)).collectList().block();
+    }
+}
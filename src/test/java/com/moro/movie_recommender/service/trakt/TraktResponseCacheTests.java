@@ -0,0 +1,190 @@
+package com.moro.movie_recommender.service.trakt;
+
+import com.moro.movie_recommender.config.TraktProperties;
+import com.moro.movie_recommender.dto.TraktAccount;
+import com.moro.movie_recommender.dto.User;
+import com.moro.movie_recommender.dto.trakt.TraktRatingDTO;
+import com.moro.movie_recommender.dto.trakt.TraktWatchedItemDTO;
+import com.moro.movie_recommender.service.TraktService;
+import com.moro.movie_recommender.service.UserChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * {@link TraktResponseCache} in front of {@link TraktExchangeStub}, which answers repeated
+ * requests carrying its ETag with {@code 304 Not Modified}. Two users, alice with
+ * {@code token-0} and bob with {@code token-1}, with 300 movies each, every third of them rated.
+ */
+class TraktResponseCacheTests {
+
+    private static final String WATCHED_URI = "/sync/watched/movies?extended=full";
+    private static final String RATINGS_URI = "/sync/ratings/movies";
+    private static final OffsetDateTime WATCHED_AT = OffsetDateTime.of(2024, 1, 1, 20, 0, 0, 0, ZoneOffset.UTC);
+
+    private final TraktProperties props = new TraktProperties();
+    private final TraktExchangeStub trakt = new TraktExchangeStub();
+    private WebClient webClient;
+
+    @BeforeEach
+    void setUp() {
+        for (String token : List.of("token-0", "token-1")) {
+            TraktExchangeStub.Library library = trakt.library(token);
+            for (int i = 0; i < 300; i++) {
+                library.watch(1000 + i, WATCHED_AT.plusHours(i));
+                if (i % 3 == 0) {
+                    library.rate(1000 + i, i % 10 + 1, WATCHED_AT.plusHours(i + 1));
+                }
+            }
+        }
+        props.setApiBase("https://api.trakt.tv");
+        props.setClientId("client");
+        props.setApiVersion("2");
+        webClient = trakt.webClientBuilder().baseUrl(props.getApiBase()).build();
+    }
+
+    @Test
+    void answersUnchangedListsFromTheCache() {
+        TraktResponseCache cache = new TraktResponseCache(props);
+
+        TraktResponseCache.Page<TraktRatingDTO> first = ratings(cache, "token-0");
+        TraktResponseCache.Page<TraktRatingDTO> second = ratings(cache, "token-0");
+
+        assertSame(first, second, "the decoded page is reused as-is");
+        assertEquals(1, trakt.notModifiedCount());
+        Map<String, Object> metrics = cache.getMetrics();
+        assertEquals(1L, metrics.get("notModifiedHits"));
+        assertEquals(1L, metrics.get("misses"));
+        assertEquals(1, metrics.get("entries"));
+        assertEquals(100L, metrics.get("cachedItems"));
+
+        // Entries are per user
+        assertNotSame(first, ratings(cache, "token-1"));
+        assertEquals(1, trakt.notModifiedCount());
+        assertEquals(2, cache.getMetrics().get("entries"));
+    }
+
+    @Test
+    void refetchesChangedLists() {
+        TraktResponseCache cache = new TraktResponseCache(props);
+        TraktResponseCache.Page<TraktRatingDTO> first = ratings(cache, "token-0");
+
+        trakt.library("token-0").rate(5000, 7, WATCHED_AT);
+        TraktResponseCache.Page<TraktRatingDTO> second = ratings(cache, "token-0");
+
+        assertEquals(0, trakt.notModifiedCount());
+        assertEquals(first.items().size() + 1, second.items().size());
+        assertSame(second, ratings(cache, "token-0"));
+        assertEquals((long) second.items().size(), cache.getMetrics().get("cachedItems"));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntries() {
+        props.getCache().setMaxEntries(2);
+        TraktResponseCache cache = new TraktResponseCache(props);
+        ratings(cache, "token-0");
+        ratings(cache, "token-1");
+        watched(cache, "token-0");
+
+        assertEquals(1L, cache.getMetrics().get("evictions"));
+        ratings(cache, "token-0");
+        assertEquals(0, trakt.notModifiedCount(), "the first entry was evicted");
+        watched(cache, "token-0");
+        assertEquals(1, trakt.notModifiedCount());
+
+        // A bound on items evicts as well, down to the newest entry if need be
+        props.getCache().setMaxEntries(100);
+        props.getCache().setMaxItems(350);
+        TraktResponseCache small = new TraktResponseCache(props);
+        watched(small, "token-0");
+        watched(small, "token-1");
+        assertEquals(1, small.getMetrics().get("entries"));
+        assertEquals(300L, small.getMetrics().get("cachedItems"));
+    }
+
+    @Test
+    void keepsEntriesAcrossATokenRefreshAndDropsThemOnUnlink() {
+        TraktResponseCache cache = new TraktResponseCache(props);
+        TraktResponseCache.Page<TraktRatingDTO> first = ratings(cache, "token-0");
+        watched(cache, "token-0");
+        ratings(cache, "token-1");
+
+        trakt.refreshToken("token-0", "token-0-refreshed");
+        assertSame(first, cache.fetch(webClient, RATINGS_URI, "alice", "token-0-refreshed",
+                response -> response.bodyToFlux(DataBuffer.class).transform(TraktRatingsDecoder::decode)).block());
+        assertEquals(1, trakt.notModifiedCount());
+
+        User alice = new User("alice").withTraktAccount(new TraktAccount("token-0-refreshed"));
+        cache.onUserChanged(new UserChangedEvent("alice", alice));
+        assertEquals(3, cache.getMetrics().get("entries"), "a linked user keeps the entries");
+
+        cache.onUserChanged(new UserChangedEvent("alice", alice.withTraktAccount(null)));
+        assertEquals(1, cache.getMetrics().get("entries"));
+        assertEquals(100L, cache.getMetrics().get("cachedItems"));
+        cache.onUserChanged(new UserChangedEvent("bob", null));
+        assertEquals(0, cache.getMetrics().get("entries"));
+        assertEquals(0L, cache.getMetrics().get("cachedItems"));
+    }
+
+    @Test
+    void sendsUnconditionalRequestsWhenDisabled() {
+        props.getCache().setEnabled(false);
+        TraktResponseCache cache = new TraktResponseCache(props);
+
+        assertNotSame(ratings(cache, "token-0"), ratings(cache, "token-0"));
+        assertEquals(0, trakt.notModifiedCount());
+        assertEquals(0, cache.getMetrics().get("entries"));
+    }
+
+    @Test
+    void joiningRatingsLeavesCachedWatchedItemsUnchanged() {
+        TraktResponseCache cache = new TraktResponseCache(props);
+        TraktService traktService = new TraktService(trakt.webClientBuilder(), props, cache, new TraktRateGovernor(props));
+
+        List<TraktWatchedItemDTO> first = traktService.getWatchedMovies("alice", "token-0").collectList().block();
+        List<TraktWatchedItemDTO> second = traktService.getWatchedMovies("alice", "token-0").collectList().block();
+
+        long rated = first.stream().filter(item -> item.getMovie().getUserRating() != null).count();
+        assertEquals(100, rated);
+        assertEquals(2, trakt.notModifiedCount(), "watched movies and ratings both came from the cache");
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).getMovie().getUserRating(), second.get(i).getMovie().getUserRating());
+            if (first.get(i).getMovie().getUserRating() != null) {
+                assertNotSame(first.get(i), second.get(i), "every call rates its own copies");
+            }
+        }
+
+        // The cached items themselves still hold no ratings
+        List<TraktWatchedItemDTO> cached = watched(cache, "token-0").items();
+        assertEquals(3, trakt.notModifiedCount());
+        assertEquals(first.size(), cached.size());
+        for (TraktWatchedItemDTO item : cached) {
+            assertNull(item.getMovie().getUserRating());
+        }
+    }
+
+    private TraktResponseCache.Page<TraktRatingDTO> ratings(TraktResponseCache cache, String token) {
+        return cache.fetch(webClient, RATINGS_URI, userOf(token), token,
+                response -> response.bodyToFlux(DataBuffer.class).transform(TraktRatingsDecoder::decode)).block();
+    }
+
+    private TraktResponseCache.Page<TraktWatchedItemDTO> watched(TraktResponseCache cache, String token) {
+        return cache.fetch(webClient, WATCHED_URI, userOf(token), token,
+                response -> response.bodyToFlux(TraktWatchedItemDTO.class)).block();
+    }
+
+    private static String userOf(String token) {
+        return token.equals("token-0") ? "alice" : "bob";
+    }
+}
@@ -0,0 +1,58 @@
+package com.moro.movie_recommender.util;
+
+import com.moro.movie_recommender.util.WTinyLfuPolicy.FrequencySketch;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link FrequencySketch} of the smallest width, 64, so that it ages after 640 increments.
+ */
+class FrequencySketchTests {
+
+    @Test
+    void keysSeenOnceOnlyReachTheDoorkeeper() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        sketch.increment("once");
+        assertEquals(1, sketch.frequency("once"));
+        assertEquals(0, sketch.frequency("never"));
+
+        sketch.reset();
+        assertEquals(0, sketch.frequency("once"), "clearing the doorkeeper forgets keys seen once");
+
+        for (int i = 0; i < 3; i++) {
+            sketch.increment("thrice");
+        }
+        assertEquals(3, sketch.frequency("thrice"));
+        sketch.reset();
+        assertEquals(1, sketch.frequency("thrice"), "two counted increments, halved");
+    }
+
+    @Test
+    void countersSaturateAndAgeByHalf() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 40; i++) {
+            sketch.increment("popular");
+        }
+        assertEquals(16, sketch.frequency("popular"), "15 in the counters plus the doorkeeper");
+
+        int increments = 0;
+        while (sketch.frequency("popular") == 16 && increments < 10_000) {
+            sketch.increment(increments++);
+        }
+        assertEquals(7, sketch.frequency("popular"));
+        assertTrue(increments <= 640 - 16, "aged after " + increments + " further increments");
+
+        // Half the sample is carried over, so the next aging comes twice as soon
+        for (int i = 0; i < 40; i++) {
+            sketch.increment("popular");
+        }
+        int sinceAging = 0;
+        while (sketch.frequency("popular") == 16 && sinceAging < 10_000) {
+            sketch.increment(100_000 + sinceAging++);
+        }
+        assertEquals(7, sketch.frequency("popular"));
+        assertTrue(sinceAging < increments, sinceAging + " increments after the first aging");
+    }
+}
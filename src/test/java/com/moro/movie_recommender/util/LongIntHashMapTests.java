@@ -0,0 +1,83 @@
+package com.moro.movie_recommender.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link LongIntHashMap} checked against a {@link HashMap}, with tables kept small so that
+ * probe runs are long and wrap around the end of the table.
+ */
+class LongIntHashMapTests {
+
+    private static final int MISSING = -1;
+
+    @Test
+    void behavesLikeAHashMapUnderRandomUpdates() {
+        Random random = new Random(1);
+        Map<Long, Integer> expected = new HashMap<>();
+        LongIntHashMap map = new LongIntHashMap(4, MISSING);
+        for (int step = 0; step < 100_000; step++) {
+            long key = random.nextInt(300) - 20; // includes 0 and negative keys
+            if (random.nextInt(3) == 0) {
+                assertEquals((int) expected.getOrDefault(key, MISSING), map.remove(key), "remove " + key);
+                expected.remove(key);
+            } else {
+                assertEquals((int) expected.getOrDefault(key, MISSING), map.put(key, step), "put " + key);
+                expected.put(key, step);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (long key = -30; key < 300; key++) {
+            assertEquals((int) expected.getOrDefault(key, MISSING), map.get(key), "get " + key);
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+        }
+    }
+
+    @Test
+    void removalKeepsTheRestOfAProbeRunReachable() {
+        // Every key lands in a table of 16 slots; removing from the middle of the resulting runs
+        // must shift later entries back rather than cut them off
+        for (long removed = 1; removed <= 7; removed++) {
+            LongIntHashMap copy = new LongIntHashMap(7, MISSING);
+            for (long key = 1; key <= 7; key++) {
+                copy.put(key, (int) key * 10);
+            }
+            assertEquals((int) removed * 10, copy.remove(removed));
+            for (long key = 1; key <= 7; key++) {
+                assertEquals(key == removed ? MISSING : (int) key * 10, copy.get(key), "after removing " + removed);
+            }
+            assertEquals(MISSING, copy.remove(removed));
+            assertEquals(6, copy.size());
+        }
+    }
+
+    @Test
+    void handlesTheZeroKeyAndClearing() {
+        LongIntHashMap map = new LongIntHashMap(0, MISSING);
+        assertEquals(MISSING, map.get(0));
+        assertFalse(map.containsKey(0));
+        assertEquals(MISSING, map.put(0, 5));
+        assertEquals(5, map.put(0, 6));
+        assertTrue(map.containsKey(0));
+        assertEquals(1, map.size());
+
+        for (long key = 1; key <= 1000; key++) {
+            map.put(key * 0x1_0000_0000L, (int) key);
+        }
+        assertEquals(1001, map.size());
+        assertEquals(6, map.remove(0));
+        assertEquals(500, map.get(500 * 0x1_0000_0000L));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(MISSING, map.get(500 * 0x1_0000_0000L));
+        assertEquals(MISSING, map.get(0));
+    }
+}
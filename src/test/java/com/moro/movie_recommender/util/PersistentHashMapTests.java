@@ -0,0 +1,143 @@
+package com.moro.movie_recommender.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link PersistentHashMap} with keys whose hash codes are chosen by the test, so that full
+ * collisions and shared hash prefixes can be set up on purpose.
+ */
+class PersistentHashMapTests {
+
+    /** A key with a fixed hash code. Hash codes below 2^16 are not changed by the map's spreading. */
+    private record Key(String name, int hash) {
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    @Test
+    void keysWithEqualHashesAreKeptApart() {
+        Key a = new Key("a", 7);
+        Key b = new Key("b", 7);
+        Key c = new Key("c", 7);
+        PersistentHashMap<Key, Integer> map = PersistentHashMap.<Key, Integer>empty().plus(a, 1).plus(b, 2).plus(c, 3);
+
+        assertEquals(3, map.size());
+        assertEquals(Map.of(a, 1, b, 2, c, 3), map);
+        assertEquals(20, map.plus(b, 20).get(b));
+        assertEquals(2, map.get(b), "replacing a value leaves the original map alone");
+
+        PersistentHashMap<Key, Integer> withoutB = map.minus(b);
+        assertEquals(Map.of(a, 1, c, 3), withoutB);
+        assertSame(withoutB, withoutB.minus(new Key("b", 7)));
+        assertTrue(withoutB.minus(a).minus(c).isEmpty());
+
+        // Same low 5 bits as the collision node, different hash: the node is split one level down
+        Key d = new Key("d", 7 | (1 << 5));
+        PersistentHashMap<Key, Integer> split = map.plus(d, 4);
+        assertEquals(Map.of(a, 1, b, 2, c, 3, d, 4), split);
+        assertEquals(Map.of(a, 1, c, 3, d, 4), split.minus(b));
+    }
+
+    @Test
+    void aLoneRemainingEntryIsPulledUpIntoItsParent() throws ReflectiveOperationException {
+        Key a = new Key("a", 1);
+        Key b = new Key("b", 1 | (1 << 5)); // shares the first 5 bits with a
+        PersistentHashMap<Key, String> both = PersistentHashMap.<Key, String>empty().plus(a, "A").plus(b, "B");
+        assertNull(rootArray(both)[0], "a and b live in a child node");
+
+        PersistentHashMap<Key, String> onlyA = both.minus(b);
+        assertArrayEquals(new Object[] {a, "A"}, rootArray(onlyA));
+        assertEquals(Map.of(a, "A"), onlyA);
+
+        // A collision node left with one entry is inlined the same way
+        Key c = new Key("c", 1);
+        PersistentHashMap<Key, String> colliding = PersistentHashMap.<Key, String>empty().plus(a, "A").plus(c, "C");
+        assertArrayEquals(new Object[] {c, "C"}, rootArray(colliding.minus(a)));
+        assertEquals(2, rootArray(colliding).length);
+        assertNull(rootArray(colliding)[0]);
+    }
+
+    @Test
+    void earlierVersionsAreNotAffectedByUpdates() {
+        List<PersistentHashMap<Integer, Integer>> versions = new ArrayList<>();
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 5000; i++) {
+            if (i % 500 == 0) {
+                versions.add(map);
+            }
+            map = map.plus(i, i);
+        }
+        for (int i = 0; i < 5000; i += 2) {
+            map = map.minus(i).plus(i + 1, -i);
+        }
+
+        assertEquals(2500, map.size());
+        for (int v = 0; v < versions.size(); v++) {
+            PersistentHashMap<Integer, Integer> version = versions.get(v);
+            assertEquals(v * 500, version.size());
+            for (int i = 0; i < v * 500; i++) {
+                assertEquals(i, version.get(i));
+            }
+            assertFalse(version.containsKey(v * 500));
+        }
+    }
+
+    @Test
+    void behavesLikeAHashMapUnderRandomUpdates() {
+        Random random = new Random(13);
+        Map<Key, Integer> expected = new HashMap<>();
+        PersistentHashMap<Key, Integer> map = PersistentHashMap.empty();
+        for (int step = 0; step < 50_000; step++) {
+            // Few distinct hashes, so collisions and deep shared prefixes are common
+            int id = random.nextInt(2000);
+            Key key = new Key("k" + id, (id % 300) * 37);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, step);
+                map = map.plus(key, step);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(expected, map);
+        Map<Key, Integer> iterated = new HashMap<>();
+        map.forEach(iterated::put);
+        assertEquals(expected, iterated);
+    }
+
+    @Test
+    void unchangedMapsAreReturnedAsIs() {
+        Integer value = 1000;
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty().plus("a", value);
+        assertSame(map, map.plus("a", value));
+        assertSame(map, map.minus("b"));
+        assertSame(PersistentHashMap.empty(), map.minus("a"));
+        assertNull(map.get(null));
+    }
+
+    private static Object[] rootArray(PersistentHashMap<?, ?> map) throws ReflectiveOperationException {
+        Field rootField = PersistentHashMap.class.getDeclaredField("root");
+        rootField.setAccessible(true);
+        Object root = rootField.get(map);
+        Field arrayField = root.getClass().getSuperclass().getDeclaredField("array");
+        arrayField.setAccessible(true);
+        return (Object[]) arrayField.get(root);
+    }
+}
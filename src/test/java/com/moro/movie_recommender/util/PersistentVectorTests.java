@@ -0,0 +1,99 @@
+package com.moro.movie_recommender.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link PersistentVector} around the sizes where its shape changes: the tail filling up at
+ * 32 elements, the root's first level filling at 32 + 32 * 32 = 1056, and the next at 32800.
+ */
+class PersistentVectorTests {
+
+    private static final int[] BOUNDARIES = {0, 1, 31, 32, 33, 64, 65, 1055, 1056, 1057, 1088, 1089, 32_800, 32_801, 32_832, 32_833};
+
+    @Test
+    void holdsEveryElementAcrossTailAndRootGrowth() {
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        for (int i = 0; i < 40_000; i++) {
+            vector = vector.plus(i);
+            if (isBoundary(i + 1)) {
+                assertContents(vector, i + 1);
+            }
+        }
+        assertContents(vector, 40_000);
+    }
+
+    @Test
+    void earlierVersionsAreNotAffectedByAppendsOrReplacements() {
+        List<PersistentVector<Integer>> versions = new ArrayList<>();
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        for (int i = 0; i < 33_000; i++) {
+            if (isBoundary(i)) {
+                versions.add(vector);
+            }
+            vector = vector.plus(i);
+        }
+        for (int i = 0; i < vector.size(); i += 7) {
+            vector = vector.with(i, -i);
+        }
+
+        for (PersistentVector<Integer> version : versions) {
+            assertContents(version, version.size());
+        }
+        assertEquals(-7, vector.get(7));
+        assertEquals(8, vector.get(8));
+        assertEquals(-32_998, vector.get(32_998), "replaced in the tail");
+    }
+
+    @Test
+    void replacesInTrieAndTail() {
+        PersistentVector<String> vector = PersistentVector.copyOf(IntStream.range(0, 100).mapToObj(String::valueOf).toList());
+
+        PersistentVector<String> changed = vector.with(5, "five").with(99, "ninety-nine");
+
+        assertEquals("five", changed.get(5));
+        assertEquals("ninety-nine", changed.get(99));
+        assertEquals("5", vector.get(5));
+        assertEquals("99", vector.get(99));
+        assertThrows(IndexOutOfBoundsException.class, () -> vector.with(100, "x"));
+        assertThrows(IndexOutOfBoundsException.class, () -> vector.get(-1));
+    }
+
+    @Test
+    void removesElements() {
+        PersistentVector<Integer> vector = PersistentVector.copyOf(IntStream.range(0, 1100).boxed().toList());
+
+        PersistentVector<Integer> removed = vector.minus(0).minus(1055);
+
+        assertEquals(1098, removed.size());
+        assertEquals(1, removed.get(0));
+        assertEquals(1055, removed.get(1054));
+        assertEquals(1057, removed.get(1055), "1056 was at index 1055 once 0 was gone");
+        assertEquals(1100, vector.size());
+        assertSame(vector, PersistentVector.copyOf(vector));
+    }
+
+    private static boolean isBoundary(int size) {
+        return IntStream.of(BOUNDARIES).anyMatch(boundary -> boundary == size);
+    }
+
+    private static void assertContents(PersistentVector<Integer> vector, int size) {
+        assertEquals(size, vector.size());
+        for (int i = 0; i < size; i++) {
+            assertEquals(i, vector.get(i), "element " + i + " of " + size);
+        }
+        int expected = 0;
+        for (int element : vector) {
+            assertEquals(expected++, element);
+        }
+        assertEquals(size, expected);
+        assertThrows(IndexOutOfBoundsException.class, () -> vector.get(size));
+    }
+}
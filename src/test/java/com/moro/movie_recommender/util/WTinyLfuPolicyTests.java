@@ -0,0 +1,83 @@
+package com.moro.movie_recommender.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link WTinyLfuPolicy} with unit weights and a budget of 100 keys, so that the admission
+ * window holds a single key.
+ */
+class WTinyLfuPolicyTests {
+
+    @Test
+    void rejectsCandidatesLessFrequentThanTheVictim() {
+        WTinyLfuPolicy<String> policy = new WTinyLfuPolicy<>(100, 1000);
+        List<String> evicted = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            policy.add("hot" + i, 1, evicted);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 100; i++) {
+                policy.recordAccess("hot" + i);
+            }
+        }
+        assertTrue(evicted.isEmpty());
+
+        for (int i = 0; i < 500; i++) {
+            policy.add("once" + i, 1, evicted);
+        }
+
+        assertEquals(100, policy.size());
+        assertEquals(100, policy.weight());
+        assertEquals(500, evicted.size());
+        long hotEvicted = evicted.stream().filter(key -> key.startsWith("hot")).count();
+        assertTrue(hotEvicted <= 1, "only the hot key sitting in the window may lose a duel: " + hotEvicted);
+        assertTrue(policy.contains("once499"), "the newest key is still in the window");
+        assertFalse(policy.contains("once0"));
+    }
+
+    @Test
+    void admitsCandidatesMoreFrequentThanTheVictim() {
+        WTinyLfuPolicy<String> policy = new WTinyLfuPolicy<>(100, 1000);
+        List<String> evicted = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            policy.add("stale" + i, 1, evicted);
+        }
+        // Popular before it is ever resident, e.g. a user read from disk again and again
+        for (int i = 0; i < 5; i++) {
+            policy.recordAccess("rising");
+        }
+        policy.add("rising", 1, evicted);
+        policy.add("next", 1, evicted);
+
+        // stale99 ties with the oldest key when it leaves the window and loses; rising wins its duel
+        assertEquals(List.of("stale99", "stale0"), evicted);
+        assertTrue(policy.contains("rising"));
+        assertEquals(100, policy.weight());
+    }
+
+    @Test
+    void tracksWeightsOfUpdatedAndRemovedKeys() {
+        WTinyLfuPolicy<String> policy = new WTinyLfuPolicy<>(100, 1000);
+        List<String> evicted = new ArrayList<>();
+        policy.add("a", 10, evicted);
+        policy.add("b", 20, evicted);
+        policy.add("a", 30, evicted);
+        assertEquals(50, policy.weight());
+
+        policy.remove("b");
+        assertEquals(30, policy.weight());
+        assertFalse(policy.contains("b"));
+
+        // Nothing on probation to duel with: plain LRU, down to the oversized key itself
+        policy.add("c", 120, evicted);
+        assertEquals(List.of("a", "c"), evicted);
+        assertEquals(0, policy.weight());
+    }
+}